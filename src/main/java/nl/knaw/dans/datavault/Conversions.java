@@ -23,6 +23,8 @@ import nl.knaw.dans.datavault.core.ConsistencyCheck;
 import nl.knaw.dans.datavault.core.ImportJob;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.ValueMapping;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -37,6 +39,10 @@ public interface Conversions {
 
     ConsistencyCheckResultDto convert(ConsistencyCheck check);
 
+    // Check types that are not (yet) part of the API, such as FIXITY, are reported without a type
+    @ValueMapping(source = MappingConstants.ANY_REMAINING, target = MappingConstants.NULL)
+    ConsistencyCheckResultDto.TypeEnum convert(ConsistencyCheck.Type type);
+
     // The following properties are ignored because they are either auto-generated or set by the application logic
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "created", ignore = true)
@@ -24,26 +24,79 @@ import io.dropwizard.core.Application;
 import io.dropwizard.core.setup.Bootstrap;
 import io.dropwizard.core.setup.Environment;
 import io.dropwizard.hibernate.HibernateBundle;
+import io.dropwizard.hibernate.SessionFactoryFactory;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.config.ClusterConfig;
+import nl.knaw.dans.datavault.config.ConsistencyCheckScheduleConfig;
 import nl.knaw.dans.datavault.config.DdDataVaultConfig;
+import nl.knaw.dans.datavault.config.DurabilityConfig;
+import nl.knaw.dans.datavault.core.AdaptiveConcurrencyLimiter;
+import nl.knaw.dans.datavault.core.ArchiveAwareItemStore;
+import nl.knaw.dans.datavault.core.ArchiveOffsetIndexer;
+import nl.knaw.dans.datavault.core.ArchiveReadCache;
+import nl.knaw.dans.datavault.core.ChangeJournal;
+import nl.knaw.dans.datavault.core.ClaimingImportJobSource;
+import nl.knaw.dans.datavault.core.ClusterCoordinator;
+import nl.knaw.dans.datavault.core.ConsistencyCheckScheduler;
 import nl.knaw.dans.datavault.core.ConsistencyCheckTaskFactory;
+import nl.knaw.dans.datavault.core.ContentDeduplicator;
+import nl.knaw.dans.datavault.core.DatabaseObjectLockManager;
+import nl.knaw.dans.datavault.core.DeferredInitChecks;
+import nl.knaw.dans.datavault.core.DirectoryCopier;
+import nl.knaw.dans.datavault.core.FixityChecker;
+import nl.knaw.dans.datavault.core.ImportJob;
 import nl.knaw.dans.datavault.core.ImportJobTaskFactory;
+import nl.knaw.dans.datavault.core.IncrementalTopLayerChecker;
+import nl.knaw.dans.datavault.core.IndexedItemStore;
+import nl.knaw.dans.datavault.core.InitCheckResult;
+import nl.knaw.dans.datavault.core.InitCheckRunner;
+import nl.knaw.dans.datavault.core.IoThrottle;
+import nl.knaw.dans.datavault.core.ItemPathIndex;
+import nl.knaw.dans.datavault.core.ItemPathIndexLoader;
+import nl.knaw.dans.datavault.core.JournalingItemStore;
+import nl.knaw.dans.datavault.core.LayerOperations;
 import nl.knaw.dans.datavault.core.LayerThresholdHandler;
+import nl.knaw.dans.datavault.core.ObjectLockManager;
+import nl.knaw.dans.datavault.core.ObjectLockingRepositoryProvider;
 import nl.knaw.dans.datavault.core.OcflRepositoryProvider;
+import nl.knaw.dans.datavault.core.OperationRegistry;
+import nl.knaw.dans.datavault.core.ReadinessGatedTaskSource;
 import nl.knaw.dans.datavault.core.RepositoryProvider;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+import nl.knaw.dans.datavault.core.ShardCountCheck;
+import nl.knaw.dans.datavault.core.ShardedRepositoryProvider;
+import nl.knaw.dans.datavault.core.ShardedListingRecordsChecker;
+import nl.knaw.dans.datavault.core.StripedObjectLockManager;
+import nl.knaw.dans.datavault.core.SyncingItemStore;
 import nl.knaw.dans.datavault.core.UnitOfWorkDeclaringItemStore;
 import nl.knaw.dans.datavault.core.UnitOfWorkDeclaringLayerConsistencyChecker;
 import nl.knaw.dans.datavault.core.UnitOfWorkDeclaringRepositoryProviderAdapter;
 import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.ContentDigestDao;
+import nl.knaw.dans.datavault.db.DirectoryCopyDao;
+import nl.knaw.dans.datavault.db.FixityMismatchDao;
 import nl.knaw.dans.datavault.db.ImportJobDao;
+import nl.knaw.dans.datavault.db.InitCheckResultDao;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.datavault.db.ItemRecordIdGeneration;
+import nl.knaw.dans.datavault.db.RepositorySettingDao;
+import nl.knaw.dans.datavault.db.SharedContentDao;
+import nl.knaw.dans.datavault.db.WriterLeaseDao;
+import nl.knaw.dans.datavault.health.InitChecksHealthCheck;
 import nl.knaw.dans.datavault.resources.ConsistencyChecksApiResource;
+import nl.knaw.dans.datavault.resources.ConsistencyCoverageApiResource;
+import nl.knaw.dans.datavault.resources.ContentDeduplicationApiResource;
 import nl.knaw.dans.datavault.resources.DefaultApiResource;
+import nl.knaw.dans.datavault.resources.FixityChecksApiResource;
+import nl.knaw.dans.datavault.resources.ImportJobControlApiResource;
 import nl.knaw.dans.datavault.resources.ImportsApiResource;
 import nl.knaw.dans.datavault.resources.ItemstoreApiResource;
 import nl.knaw.dans.datavault.resources.LayersApiResource;
 import nl.knaw.dans.datavault.resources.ObjectsApiResource;
 import nl.knaw.dans.datavault.resources.OcflApiResource;
+import nl.knaw.dans.datavault.resources.OperationsApiResource;
 import nl.knaw.dans.layerstore.ConsistencyCheckingAsyncLayerArchiver;
 import nl.knaw.dans.layerstore.ItemRecord;
 import nl.knaw.dans.layerstore.ItemStore;
@@ -53,8 +106,18 @@ import nl.knaw.dans.layerstore.LayeredItemStore;
 import nl.knaw.dans.lib.ocflext.StoreInventoryDbBackedContentManager;
 import nl.knaw.dans.lib.util.PersistenceProviderImpl;
 import nl.knaw.dans.lib.util.pollingtaskexec.PollingTaskExecutor;
+import nl.knaw.dans.lib.util.pollingtaskexec.TaskSource;
+import org.hibernate.SessionFactory;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Pattern;
 
 @Slf4j
@@ -84,6 +147,7 @@ public class DdDataVaultApplication extends Application<DdDataVaultConfig> {
         environment.getObjectMapper().registerModule(new JavaTimeModule());
         environment.getObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         var uowFactory = new UnitOfWorkAwareProxyFactory(hibernateBundle);
+        initializeItemRecordIdSequence(hibernateBundle.getSessionFactory());
 
         var layerDatabaseDao = new LayerDatabaseImpl(new PersistenceProviderImpl<>(hibernateBundle.getSessionFactory(), ItemRecord.class));
         LayeredItemStore layeredItemStore;
@@ -103,65 +167,442 @@ public class DdDataVaultApplication extends Application<DdDataVaultConfig> {
             log.error("Error creating LayeredItemStore", e);
             throw new RuntimeException(e);
         }
-        layeredItemStore.setAllowReadingContentFromArchives(false);
+        // The indexes are only read by the archive read cache; without it, indexing would only read every archive for nothing
+        var archiveOffsetIndexer = configuration.getDataVault().getLayerStore().getArchiveProvider().getOffsetIndexedArchiveRoot()
+            .filter(archiveRoot -> configuration.getDataVault().getLayerStore().getArchiveReadCache().isEnabled())
+            .map(archiveRoot -> new ArchiveOffsetIndexer(
+                archiveRoot,
+                environment.lifecycle().scheduledExecutorService("archive-offset-indexer").build(),
+                Duration.ofMinutes(1)))
+            .orElse(null);
+        if (archiveOffsetIndexer != null) {
+            environment.lifecycle().manage(archiveOffsetIndexer);
+        }
         var layerConsistencyChecker = layeredItemStore.getLayerConsistencyChecker();
-        RepositoryProvider ocflRepositoryProvider = createUnitOfWorkAwareProxy(uowFactory, OcflRepositoryProvider.create(
+        var itemRecordDao = new ItemRecordDao(hibernateBundle.getSessionFactory());
+        var changeJournalConfig = configuration.getDataVault().getLayerStore().getChangeJournal();
+        ItemStore journalingItemStore = null;
+        IncrementalTopLayerChecker incrementalTopLayerChecker = null;
+        if (changeJournalConfig.isEnabled()) {
+            if (changeJournalConfig.getDir() == null) {
+                throw new IllegalStateException("changeJournal.dir must be set when the change journal is enabled");
+            }
+            var changeJournal = new ChangeJournal(
+                changeJournalConfig.getDir(),
+                configuration.getDataVault().getLayerStore().getStagingRoot(),
+                environment.lifecycle().scheduledExecutorService("change-journal-sync").build(),
+                changeJournalConfig.getSyncInterval().toJavaDuration());
+            environment.lifecycle().manage(changeJournal);
+            journalingItemStore = new JournalingItemStore(layeredItemStore, changeJournal);
+            incrementalTopLayerChecker = new IncrementalTopLayerChecker(
+                changeJournal, itemRecordDao, configuration.getDataVault().getLayerStore().getStagingRoot(), layerConsistencyChecker);
+        }
+        ItemStore storageItemStore = journalingItemStore != null ? journalingItemStore : layeredItemStore;
+        if (configuration.getDataVault().getLayerStore().getItemPathIndex().isEnabled()) {
+            var itemPathIndex = new ItemPathIndex();
+            var itemPathIndexLoader = uowFactory.create(
+                ItemPathIndexLoader.class,
+                new Class<?>[] { ItemPathIndex.class, ItemRecordDao.class, ExecutorService.class },
+                new Object[] { itemPathIndex, itemRecordDao, environment.lifecycle().executorService("item-path-index-loader").minThreads(1).maxThreads(1).build() });
+            environment.lifecycle().manage(itemPathIndexLoader);
+            storageItemStore = new IndexedItemStore(
+                storageItemStore, layeredItemStore, itemPathIndex, itemPathIndexLoader, itemRecordDao, hibernateBundle.getSessionFactory());
+        }
+        SyncingItemStore syncingItemStore = null;
+        var durabilityConfig = configuration.getDataVault().getLayerStore().getDurability();
+        if (durabilityConfig.getMode() != DurabilityConfig.Mode.NONE) {
+            syncingItemStore = new SyncingItemStore(
+                storageItemStore,
+                layeredItemStore,
+                configuration.getDataVault().getLayerStore().getStagingRoot(),
+                durabilityConfig.getMode(),
+                environment.lifecycle().executorService("fsync-worker").minThreads(durabilityConfig.getSyncThreads()).maxThreads(durabilityConfig.getSyncThreads()).build(),
+                environment.metrics());
+            storageItemStore = syncingItemStore;
+        }
+        var contentItemStore = createContentItemStore(configuration, environment, layeredItemStore, storageItemStore, archiveOffsetIndexer);
+        var initChecksConfig = configuration.getDataVault().getLayerStore().getInitChecks();
+        var initCheckRunner = new InitCheckRunner(
+            uowFactory,
+            new InitCheckResultDao(hibernateBundle.getSessionFactory()),
+            environment.lifecycle().executorService("init-check-worker").minThreads(initChecksConfig.getWorkerThreads()).maxThreads(initChecksConfig.getWorkerThreads()).build(),
+            initChecksConfig.isSkipUnchanged());
+        var sharedContentDao = new SharedContentDao(hibernateBundle.getSessionFactory());
+        ContentDeduplicator contentDeduplicator = null;
+        // For the calls from the resources, which are made outside a unit of work
+        ContentDeduplicator unitOfWorkContentDeduplicator = null;
+        if (configuration.getDataVault().getLayerStore().getContentDeduplication().isEnabled()) {
+            var contentDigestDao = new ContentDigestDao(hibernateBundle.getSessionFactory());
+            var stagingRoot = configuration.getDataVault().getLayerStore().getStagingRoot();
+            contentDeduplicator = new ContentDeduplicator(contentDigestDao, sharedContentDao, stagingRoot);
+            unitOfWorkContentDeduplicator = uowFactory.create(ContentDeduplicator.class,
+                new Class<?>[] { ContentDigestDao.class, SharedContentDao.class, Path.class },
+                new Object[] { contentDigestDao, sharedContentDao, stagingRoot });
+        }
+        var objectLockManager = createObjectLockManager(configuration, environment);
+        var importBatchDao = new ImportJobDao(hibernateBundle.getSessionFactory());
+        // Managed before the repository providers, so that they know on start whether this instance is the writer
+        var clusterCoordinator = createClusterCoordinator(configuration, environment, importBatchDao);
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setClusterCoordinator(clusterCoordinator);
+        var unwrappedOcflRepositoryProvider = OcflRepositoryProvider.create(
             layeredItemStore,
             configuration.getDataVault().getOcflRepository().getWorkDir(),
             layerConsistencyChecker,
             configuration.getDataVault().getOcflRepository().getRootExtensionsSourcePath(),
             configuration.getDataVault().getOcflRepository().getRootDocsSourcePath(),
             configuration.getDataVault().getOcflRepository().getRootExtensionsInit(),
-            configuration.getDataVault().getLayerStore().getInitChecks(),
-            configuration.getDataVault().getOcflRepository().getRootExtensionsInitChecks()
-        ));
+            initChecksConfig,
+            configuration.getDataVault().getOcflRepository().getRootExtensionsInitChecks(),
+            contentItemStore,
+            initCheckRunner,
+            itemRecordDao,
+            initChecksConfig.isRunInBackground(),
+            storageItemStore,
+            incrementalTopLayerChecker,
+            configuration.getDataVault().getOcflRepository().getStorageLayout(),
+            contentDeduplicator,
+            syncingItemStore,
+            objectLockManager,
+            clusterCoordinator
+        );
+        RepositoryProvider ocflRepositoryProvider = createUnitOfWorkAwareProxy(uowFactory, unwrappedOcflRepositoryProvider, objectLockManager);
+        var additionalShards = createAdditionalShards(configuration, environment, objectLockManager, clusterCoordinator, serviceReadiness);
+        uowFactory.create(ShardCountCheck.class, new Class<?>[] { RepositorySettingDao.class, ItemRecordDao.class },
+                new Object[] { new RepositorySettingDao(hibernateBundle.getSessionFactory()), itemRecordDao })
+            .check(1 + additionalShards.size());
+        if (!additionalShards.isEmpty()) {
+            var shardProviders = new ArrayList<RepositoryProvider>();
+            shardProviders.add(ocflRepositoryProvider);
+            additionalShards.forEach(shard -> shardProviders.add(shard.repositoryProvider()));
+            ocflRepositoryProvider = new ShardedRepositoryProvider(shardProviders);
+        }
         environment.lifecycle().manage(ocflRepositoryProvider);
-        var importBatchDao = new ImportJobDao(hibernateBundle.getSessionFactory());
+        if (initChecksConfig.isRunInBackground()) {
+            // Managed after the repository provider, so that the checks start after it has committed its startup changes
+            var allOcflRepositoryProviders = new ArrayList<OcflRepositoryProvider>();
+            allOcflRepositoryProviders.add(unwrappedOcflRepositoryProvider);
+            additionalShards.forEach(shard -> allOcflRepositoryProviders.add(shard.ocflRepositoryProvider()));
+            environment.lifecycle().manage(new DeferredInitChecks(
+                allOcflRepositoryProviders, serviceReadiness, environment.lifecycle().executorService("deferred-init-checks").build()));
+        }
+        else {
+            // The repository provider performs the init checks when it starts, before the service accepts requests
+            serviceReadiness.setReady();
+        }
+        environment.healthChecks().register("init-checks", new InitChecksHealthCheck(serviceReadiness));
+        var importJobSource = createImportJobSource(configuration, importBatchDao, clusterCoordinator);
         environment.jersey().register(new ImportsApiResource(
             importBatchDao,
             configuration.getDataVault().getIngest().getInbox(),
             configuration.getDataVault().getIngest().getOutbox()
         ));
-        environment.jersey().register(new LayersApiResource(layeredItemStore));
-        environment.jersey().register(new ItemstoreApiResource(createUnitOfWorkAwareProxy(uowFactory, layeredItemStore), configuration.getDataVault().getItemstore()));
+        environment.jersey().register(new ImportJobControlApiResource(importBatchDao, configuration.getDataVault().getIngest().getInbox()));
+        var operationsConfig = configuration.getDataVault().getOperations();
+        var operationRegistry = new OperationRegistry(
+            environment.lifecycle().executorService("operation-worker").minThreads(operationsConfig.getWorkerThreads()).maxThreads(operationsConfig.getWorkerThreads())
+                // Bounded, so that the executor refuses work when it is full instead of queueing it without limit
+                .workQueue(new ArrayBlockingQueue<>(operationsConfig.getQueueCapacity())).build(),
+            operationsConfig.getRetention().toJavaDuration(),
+            operationsConfig.getCompletionWait().toJavaDuration());
+        environment.jersey().register(new OperationsApiResource(operationRegistry));
+        // The operations are executed within their own unit of work, so they are given the content deduplicator itself instead of its proxy
+        environment.jersey().register(new LayersApiResource(layeredItemStore,
+            uowFactory.create(LayerOperations.class, new Class<?>[] { LayeredItemStore.class, ContentDeduplicator.class }, new Object[] { layeredItemStore, contentDeduplicator }),
+            operationRegistry, serviceReadiness));
+        var itemstoreConfig = configuration.getDataVault().getItemstore();
+        var unitOfWorkContentItemStore = createUnitOfWorkAwareProxy(uowFactory, contentItemStore);
+        var directoryCopier = new DirectoryCopier(
+            uowFactory,
+            contentItemStore,
+            unitOfWorkContentItemStore,
+            new DirectoryCopyDao(hibernateBundle.getSessionFactory()),
+            environment.lifecycle().executorService("itemstore-copy-worker").minThreads(itemstoreConfig.getCopyThreads()).maxThreads(itemstoreConfig.getCopyThreads()).build(),
+            itemstoreConfig.getCopyBatchSize(),
+            clusterCoordinator);
+        environment.lifecycle().manage(directoryCopier);
+        environment.jersey().register(new ItemstoreApiResource(unitOfWorkContentItemStore, itemstoreConfig, serviceReadiness, operationRegistry, directoryCopier, objectLockManager,
+            unitOfWorkContentDeduplicator));
         environment.jersey().register(new ObjectsApiResource(ocflRepositoryProvider));
         environment.jersey().register(new OcflApiResource(ocflRepositoryProvider));
+        environment.jersey().register(new ContentDeduplicationApiResource(sharedContentDao));
         environment.jersey().register(new DefaultApiResource());
 
         var consistencyCheckDao = new ConsistencyCheckDao(hibernateBundle.getSessionFactory());
-        environment.jersey().register(new ConsistencyChecksApiResource(consistencyCheckDao));
+        environment.jersey().register(new ConsistencyChecksApiResource(consistencyCheckDao, serviceReadiness));
+        var consistencyCheckExecutorConfig = configuration.getDataVault().getLayerStore().getConsistencyCheckExecutor();
+        var consistencyCheckWorkers = environment.lifecycle().executorService("consistency-check-worker")
+            .minThreads(consistencyCheckExecutorConfig.getWorkerThreads()).maxThreads(consistencyCheckExecutorConfig.getWorkerThreads()).build();
+        var consistencyCheckShardDao = new ConsistencyCheckShardDao(hibernateBundle.getSessionFactory());
+        var shardedListingRecordsChecker = new ShardedListingRecordsChecker(
+            uowFactory,
+            consistencyCheckShardDao,
+            itemRecordDao,
+            consistencyCheckWorkers,
+            configuration.getDataVault().getLayerStore().getStagingRoot(),
+            configuration.getDataVault().getLayerStore().getArchiveProvider().getLocalArchiveRoot().orElse(null),
+            consistencyCheckExecutorConfig.getListingRecordsShardDepth());
+        var fixityMismatchDao = new FixityMismatchDao(hibernateBundle.getSessionFactory());
+        var fixityChecker = new FixityChecker(
+            uowFactory,
+            consistencyCheckShardDao,
+            fixityMismatchDao,
+            unwrappedOcflRepositoryProvider,
+            consistencyCheckWorkers,
+            configuration.getDataVault().getLayerStore().getStagingRoot(),
+            new IoThrottle(consistencyCheckExecutorConfig.getFixityMaxReadRate().toBytes()));
+        environment.jersey().register(new FixityChecksApiResource(consistencyCheckDao, consistencyCheckShardDao, fixityMismatchDao, serviceReadiness));
         environment.lifecycle().manage(createUnitOfWorkAwareProxy(uowFactory,
             new PollingTaskExecutor<>(
                 "consistency-checker-task-executor",
                 environment.lifecycle().scheduledExecutorService("consistency-checker").build(),
-                configuration.getDataVault().getLayerStore().getConsistencyCheckExecutor().getPollingInterval().toJavaDuration(),
-                consistencyCheckDao,
-                new ConsistencyCheckTaskFactory(consistencyCheckDao, layeredItemStore))));
+                consistencyCheckExecutorConfig.getPollingInterval().toJavaDuration(),
+                new ReadinessGatedTaskSource<>(consistencyCheckDao, serviceReadiness),
+                new ConsistencyCheckTaskFactory(consistencyCheckDao, layeredItemStore, shardedListingRecordsChecker, fixityChecker))));
+        environment.jersey().register(new ConsistencyCoverageApiResource(consistencyCheckDao, layeredItemStore, consistencyCheckExecutorConfig.getSchedule()));
+        environment.lifecycle().manage(uowFactory.create(
+            ConsistencyCheckScheduler.class,
+            new Class<?>[] { ConsistencyCheckScheduleConfig.class, ConsistencyCheckDao.class, LayeredItemStore.class, ScheduledExecutorService.class, ServiceReadiness.class },
+            new Object[] { consistencyCheckExecutorConfig.getSchedule(), consistencyCheckDao, layeredItemStore,
+                environment.lifecycle().scheduledExecutorService("consistency-check-scheduler").build(), serviceReadiness }));
+        var importConcurrencyConfig = configuration.getDataVault().getIngest().getConcurrency();
+        var importWorkers = environment.lifecycle().executorService("import-worker");
+        var preemptionConfig = configuration.getDataVault().getIngest().getPreemption();
+        AdaptiveConcurrencyLimiter importConcurrencyLimiter = null;
+        if (importConcurrencyConfig.isAdaptive()) {
+            // The limiter decides how many objects run concurrently, so there must be a worker for every object it may let through
+            importWorkers.minThreads(importConcurrencyConfig.getMaxLimit()).maxThreads(importConcurrencyConfig.getMaxLimit());
+            importConcurrencyLimiter = new AdaptiveConcurrencyLimiter(importConcurrencyConfig, environment.metrics());
+        }
         environment.lifecycle().manage(createUnitOfWorkAwareProxy(uowFactory,
             new PollingTaskExecutor<>(
                 "import-executor-task-executor",
                 environment.lifecycle().scheduledExecutorService("import-executor").build(),
                 configuration.getDataVault().getIngest().getPollingInterval().toJavaDuration(),
-                importBatchDao,
+                new ReadinessGatedTaskSource<>(importJobSource, serviceReadiness),
                 new ImportJobTaskFactory(
                     uowFactory,
                     configuration.getDataVault().getIngest().getInbox(),
                     configuration.getDataVault().getIngest().getOutbox(),
                     importBatchDao,
-                    environment.lifecycle().executorService("import-worker").build(),
+                    importWorkers.build(),
                     ocflRepositoryProvider,
                     Pattern.compile(configuration.getDataVault().getValidObjectIdentifierPattern()),
-                    createUnitOfWorkAwareProxy(uowFactory, layeredItemStore, configuration.getDataVault().getLayerStore().getLayerArchivingThreshold().toBytes()),
-                    configuration.getDataVault().getIngest().isAutoclean()
+                    createUnitOfWorkAwareProxy(uowFactory, layeredItemStore, configuration.getDataVault().getLayerStore().getLayerArchivingThreshold().toBytes(),
+                        additionalShards.stream().map(Shard::layerThresholdHandler).toList(), serviceReadiness, contentDeduplicator),
+                    configuration.getDataVault().getIngest().isAutoclean(),
+                    importConcurrencyLimiter,
+                    preemptionConfig.isEnabled() ? preemptionConfig.getCheckInterval().toJavaDuration() : null,
+                    clusterCoordinator,
+                    configuration.getDataVault().getIngest().getStopRequestCheckInterval().toJavaDuration()
                 )
             )
         ));
 
     }
 
-    private RepositoryProvider createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, RepositoryProvider repositoryProvider) {
-        return uowFactory
-            .create(UnitOfWorkDeclaringRepositoryProviderAdapter.class, new Class<?>[] { RepositoryProvider.class }, new Object[] { repositoryProvider });
+    private String getInstanceId(ClusterConfig clusterConfig) {
+        return clusterConfig.getInstanceId() != null ? clusterConfig.getInstanceId() : ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    private ObjectLockManager createObjectLockManager(DdDataVaultConfig configuration, Environment environment) {
+        var objectLocksConfig = configuration.getDataVault().getObjectLocks();
+        var storageLayout = configuration.getDataVault().getOcflRepository().getStorageLayout();
+        if (!objectLocksConfig.isDatabase()) {
+            return new StripedObjectLockManager(storageLayout, objectLocksConfig.getStripes(), objectLocksConfig.getLockTimeout().toJavaDuration());
+        }
+        var clusterConfig = configuration.getDataVault().getCluster();
+        var objectLockManager = new DatabaseObjectLockManager(
+            storageLayout,
+            objectLocksConfig.getStripes(),
+            objectLocksConfig.getLockTimeout().toJavaDuration(),
+            new WriterLeaseDao(hibernateBundle.getSessionFactory()),
+            getInstanceId(clusterConfig),
+            clusterConfig.getLeaseDuration().toJavaDuration(),
+            clusterConfig.getHeartbeatInterval().toJavaDuration(),
+            environment.lifecycle().scheduledExecutorService("object-lock-heartbeat").build());
+        environment.lifecycle().manage(objectLockManager);
+        return objectLockManager;
+    }
+
+    private ClusterCoordinator createClusterCoordinator(DdDataVaultConfig configuration, Environment environment, ImportJobDao importJobDao) {
+        var clusterConfig = configuration.getDataVault().getCluster();
+        if (!clusterConfig.isEnabled()) {
+            return null;
+        }
+        var clusterCoordinator = new ClusterCoordinator(
+            getInstanceId(clusterConfig),
+            clusterConfig.getLeaseDuration().toJavaDuration(),
+            clusterConfig.getHeartbeatInterval().toJavaDuration(),
+            importJobDao,
+            new WriterLeaseDao(hibernateBundle.getSessionFactory()),
+            environment.lifecycle().scheduledExecutorService("cluster-heartbeat").build());
+        environment.lifecycle().manage(clusterCoordinator);
+        return clusterCoordinator;
+    }
+
+    private TaskSource<ImportJob> createImportJobSource(DdDataVaultConfig configuration, ImportJobDao importJobDao, ClusterCoordinator clusterCoordinator) {
+        if (clusterCoordinator == null) {
+            return importJobDao;
+        }
+        return new ClaimingImportJobSource(importJobDao, clusterCoordinator, configuration.getDataVault().getCluster().getLeaseDuration().toJavaDuration());
+    }
+
+    private record Shard(RepositoryProvider repositoryProvider, OcflRepositoryProvider ocflRepositoryProvider, LayerThresholdHandler layerThresholdHandler) {}
+
+    private void initializeItemRecordIdSequence(SessionFactory sessionFactory) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            ItemRecordIdGeneration.initializeSequence(session);
+            transaction.commit();
+        }
+    }
+
+    /*
+     * Each additional shard gets its own session factory, registered under the default name in a unit-of-work factory of its own, so that the @UnitOfWork annotations of the
+     * shard's components open sessions on the shard's database.
+     */
+    private List<Shard> createAdditionalShards(DdDataVaultConfig configuration, Environment environment, ObjectLockManager objectLockManager, ClusterCoordinator clusterCoordinator,
+        ServiceReadiness serviceReadiness) {
+        var shards = new ArrayList<Shard>();
+        var ocflRepositoryConfig = configuration.getDataVault().getOcflRepository();
+        var initChecksConfig = configuration.getDataVault().getLayerStore().getInitChecks();
+        var durabilityConfig = configuration.getDataVault().getLayerStore().getDurability();
+        if (!ocflRepositoryConfig.getAdditionalShards().isEmpty()) {
+            checkShardingSupported(configuration);
+        }
+        for (int i = 0; i < ocflRepositoryConfig.getAdditionalShards().size(); i++) {
+            var shardConfig = ocflRepositoryConfig.getAdditionalShards().get(i);
+            var shardName = "shard-" + (i + 1);
+            var sessionFactory = new SessionFactoryFactory().build(hibernateBundle, environment, shardConfig.getDatabase(), List.of(ItemRecord.class, InitCheckResult.class),
+                "hibernate-" + shardName);
+            var shardUowFactory = new UnitOfWorkAwareProxyFactory(HibernateBundle.DEFAULT_NAME, sessionFactory);
+            initializeItemRecordIdSequence(sessionFactory);
+            LayeredItemStore shardItemStore;
+            try {
+                shardItemStore = new LayeredItemStore.Builder()
+                    .database(new LayerDatabaseImpl(new PersistenceProviderImpl<>(sessionFactory, ItemRecord.class)))
+                    .stagingRoot(shardConfig.getStagingRoot())
+                    .archiveProvider(shardConfig.getArchiveProvider().build())
+                    .layerConsistencyCheckerProxy(checker -> createUnitOfWorkAwareProxy(shardUowFactory, checker))
+                    .layerArchiver(proxiedChecker -> new ConsistencyCheckingAsyncLayerArchiver(
+                        proxiedChecker, environment.lifecycle().executorService("archiver-worker-" + shardName).build()))
+                    .databaseBackedContentManager(new StoreInventoryDbBackedContentManager())
+                    .validateArchiveRoot(initChecksConfig.isArchiveRoot())
+                    .build();
+            }
+            catch (IOException e) {
+                log.error("Error creating LayeredItemStore for {}", shardName, e);
+                throw new RuntimeException(e);
+            }
+            shardItemStore.setAllowReadingContentFromArchives(false);
+            // The shard is as durable as the main storage root
+            SyncingItemStore shardSyncingItemStore = null;
+            if (durabilityConfig.getMode() != DurabilityConfig.Mode.NONE) {
+                shardSyncingItemStore = new SyncingItemStore(
+                    shardItemStore,
+                    shardItemStore,
+                    shardConfig.getStagingRoot(),
+                    durabilityConfig.getMode(),
+                    environment.lifecycle().executorService("fsync-worker-" + shardName).minThreads(durabilityConfig.getSyncThreads()).maxThreads(durabilityConfig.getSyncThreads())
+                        .build(),
+                    environment.metrics());
+            }
+            // The init checks of the shard run like those of the main shard, but record their results in the shard's database
+            var shardInitCheckRunner = new InitCheckRunner(
+                shardUowFactory,
+                new InitCheckResultDao(sessionFactory),
+                environment.lifecycle().executorService("init-check-worker-" + shardName).minThreads(initChecksConfig.getWorkerThreads()).maxThreads(initChecksConfig.getWorkerThreads())
+                    .build(),
+                initChecksConfig.isSkipUnchanged());
+            var shardProvider = OcflRepositoryProvider.builder()
+                .itemStore(shardItemStore)
+                .workDir(shardConfig.getWorkDir())
+                .layerConsistencyChecker(shardItemStore.getLayerConsistencyChecker())
+                .rootExtensionsSourcePath(ocflRepositoryConfig.getRootExtensionsSourcePath())
+                .rootDocsSourcePath(ocflRepositoryConfig.getRootDocsSourcePath())
+                .rootExtensionsInitEdits(ocflRepositoryConfig.getRootExtensionsInit())
+                .initChecks(initChecksConfig)
+                .rootExtensionsInitChecks(ocflRepositoryConfig.getRootExtensionsInitChecks())
+                .initCheckRunner(shardInitCheckRunner)
+                .itemRecordDao(new ItemRecordDao(sessionFactory))
+                .deferInitChecks(initChecksConfig.isRunInBackground())
+                .storageLayout(ocflRepositoryConfig.getStorageLayout())
+                .storageItemStore(shardSyncingItemStore)
+                .syncingItemStore(shardSyncingItemStore)
+                .objectLockManager(objectLockManager)
+                .clusterCoordinator(clusterCoordinator)
+                .build();
+            shards.add(new Shard(
+                createUnitOfWorkAwareProxy(shardUowFactory, shardProvider, objectLockManager),
+                shardProvider,
+                createUnitOfWorkAwareProxy(shardUowFactory, shardItemStore, configuration.getDataVault().getLayerStore().getLayerArchivingThreshold().toBytes(), List.of(),
+                    // Content deduplication is refused for shards, see checkShardingSupported
+                    serviceReadiness, null)));
+        }
+        return shards;
+    }
+
+    /*
+     * The features below keep state per storage root (a journal, an index, digests or cached content) that is only kept for the main storage root. Rather than silently leaving the objects
+     * in the additional shards without them, the combination is refused.
+     */
+    private void checkShardingSupported(DdDataVaultConfig configuration) {
+        var layerStoreConfig = configuration.getDataVault().getLayerStore();
+        var unsupported = new ArrayList<String>();
+        if (layerStoreConfig.getChangeJournal().isEnabled()) {
+            unsupported.add("layerStore.changeJournal");
+        }
+        if (layerStoreConfig.getItemPathIndex().isEnabled()) {
+            unsupported.add("layerStore.itemPathIndex");
+        }
+        if (layerStoreConfig.getContentDeduplication().isEnabled()) {
+            unsupported.add("layerStore.contentDeduplication");
+        }
+        if (layerStoreConfig.getArchiveReadCache().isEnabled()) {
+            unsupported.add("layerStore.archiveReadCache");
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalStateException("ocflRepository.additionalShards cannot be combined with " + String.join(", ", unsupported) + ", as they only cover the main storage root");
+        }
+        log.warn("Consistency checks, fixity checks and their coverage only cover the main storage root; the objects in the {} additional shard(s) are not checked",
+            configuration.getDataVault().getOcflRepository().getAdditionalShards().size());
+    }
+
+    /*
+     * Archived content is read through the cache. The cache fills itself from the one layered store of the service, so that there is only one view of the top layer and one archiver.
+     */
+    private ItemStore createContentItemStore(DdDataVaultConfig configuration, Environment environment, LayeredItemStore layeredItemStore, ItemStore storageItemStore,
+        ArchiveOffsetIndexer archiveOffsetIndexer) {
+        var cacheConfig = configuration.getDataVault().getLayerStore().getArchiveReadCache();
+        if (!cacheConfig.isEnabled()) {
+            // Without the cache, content in archived layers is not readable through the service
+            layeredItemStore.setAllowReadingContentFromArchives(false);
+            return storageItemStore;
+        }
+        if (cacheConfig.getCacheDir() == null) {
+            throw new IllegalStateException("archiveReadCache.cacheDir must be set when the archive read cache is enabled");
+        }
+        try {
+            var archiveReadCache = new ArchiveReadCache(
+                cacheConfig.getCacheDir(),
+                cacheConfig.getMaxSize().toBytes(),
+                cacheConfig.getMaxConcurrentExtractions(),
+                environment.metrics());
+            layeredItemStore.setAllowReadingContentFromArchives(true);
+            return new ArchiveAwareItemStore(storageItemStore, layeredItemStore,
+                configuration.getDataVault().getLayerStore().getStagingRoot(), archiveReadCache, archiveOffsetIndexer);
+        }
+        catch (IOException e) {
+            log.error("Error creating archive read cache", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The object lock is taken around the unit of work, so that it is only released after the commit
+    private RepositoryProvider createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, RepositoryProvider repositoryProvider, ObjectLockManager objectLockManager) {
+        return new ObjectLockingRepositoryProvider(uowFactory
+            .create(UnitOfWorkDeclaringRepositoryProviderAdapter.class, new Class<?>[] { RepositoryProvider.class }, new Object[] { repositoryProvider }), objectLockManager);
     }
 
     private <R> PollingTaskExecutor<R> createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, PollingTaskExecutor<R> executor) {
@@ -175,15 +616,16 @@ public class DdDataVaultApplication extends Application<DdDataVaultConfig> {
                 new Object[] { delegate });
     }
 
-    private LayerThresholdHandler createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, LayeredItemStore layeredItemStore, long threshold) {
+    private LayerThresholdHandler createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, LayeredItemStore layeredItemStore, long threshold,
+        List<LayerThresholdHandler> additionalShardHandlers, ServiceReadiness serviceReadiness, ContentDeduplicator contentDeduplicator) {
         return uowFactory
-            .create(LayerThresholdHandler.class, new Class<?>[] { LayeredItemStore.class, long.class },
-                new Object[] { layeredItemStore, threshold });
+            .create(LayerThresholdHandler.class, new Class<?>[] { LayeredItemStore.class, long.class, List.class, ServiceReadiness.class, ContentDeduplicator.class },
+                new Object[] { layeredItemStore, threshold, additionalShardHandlers, serviceReadiness, contentDeduplicator });
     }
 
-    private ItemStore createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, LayeredItemStore layeredItemStore) {
+    private ItemStore createUnitOfWorkAwareProxy(UnitOfWorkAwareProxyFactory uowFactory, ItemStore itemStore) {
         return uowFactory
-            .create(UnitOfWorkDeclaringItemStore.class, new Class<?>[] { ItemStore.class }, new Object[] { layeredItemStore });
+            .create(UnitOfWorkDeclaringItemStore.class, new Class<?>[] { ItemStore.class }, new Object[] { itemStore });
     }
 
 }
\ No newline at end of file
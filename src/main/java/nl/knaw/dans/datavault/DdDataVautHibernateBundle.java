@@ -19,13 +19,32 @@ import io.dropwizard.db.PooledDataSourceFactory;
 import io.dropwizard.hibernate.HibernateBundle;
 import nl.knaw.dans.datavault.config.DdDataVaultConfig;
 import nl.knaw.dans.datavault.core.ConsistencyCheck;
+import nl.knaw.dans.datavault.core.ConsistencyCheckShard;
+import nl.knaw.dans.datavault.core.ContentDigest;
+import nl.knaw.dans.datavault.core.DirectoryCopy;
+import nl.knaw.dans.datavault.core.FixityMismatch;
 import nl.knaw.dans.datavault.core.ImportJob;
+import nl.knaw.dans.datavault.core.InitCheckResult;
+import nl.knaw.dans.datavault.core.RepositorySetting;
+import nl.knaw.dans.datavault.core.SharedContent;
+import nl.knaw.dans.datavault.core.WriterLease;
+import nl.knaw.dans.datavault.db.ItemRecordIdGeneration;
 import nl.knaw.dans.layerstore.ItemRecord;
+import org.hibernate.cfg.Configuration;
 
 public class DdDataVautHibernateBundle extends HibernateBundle<DdDataVaultConfig> {
 
     public DdDataVautHibernateBundle() {
-        super(ItemRecord.class, ImportJob.class, ConsistencyCheck.class);
+        super(ItemRecord.class, ImportJob.class, ConsistencyCheck.class, ConsistencyCheckShard.class, FixityMismatch.class, InitCheckResult.class, WriterLease.class,
+            ContentDigest.class, SharedContent.class, RepositorySetting.class, DirectoryCopy.class);
+    }
+
+    /*
+     * Also applied to the session factories of the additional shards, which are built with this bundle.
+     */
+    @Override
+    protected void configure(Configuration configuration) {
+        ItemRecordIdGeneration.configure(configuration);
     }
 
     @Override
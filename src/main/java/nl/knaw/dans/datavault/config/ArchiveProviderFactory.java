@@ -21,6 +21,9 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo.Id;
 import io.dropwizard.jackson.Discoverable;
 import nl.knaw.dans.layerstore.ArchiveProvider;
 
+import java.nio.file.Path;
+import java.util.Optional;
+
 // Based on https://www.dropwizard.io/en/stable/manual/configuration.html#polymorphic-configuration. However, I could not get
 // discoverability to work, so we are using explicit registration of subtypes.
 @JsonTypeInfo(use = Id.NAME, property = "type")
@@ -31,4 +34,18 @@ import nl.knaw.dans.layerstore.ArchiveProvider;
 })
 public interface ArchiveProviderFactory extends Discoverable {
     ArchiveProvider build();
+
+    /**
+     * @return the directory with the archive files, if it is accessible on the local file system
+     */
+    default Optional<Path> getLocalArchiveRoot() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return the local directory with archives for which an offset index must be maintained, or empty if the archives are not indexed
+     */
+    default Optional<Path> getOffsetIndexedArchiveRoot() {
+        return Optional.empty();
+    }
 }
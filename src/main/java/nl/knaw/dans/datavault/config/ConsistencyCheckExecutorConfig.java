@@ -15,10 +15,37 @@
  */
 package nl.knaw.dans.datavault.config;
 
+import io.dropwizard.util.DataSize;
 import io.dropwizard.util.Duration;
 import lombok.Data;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
 @Data
 public class ConsistencyCheckExecutorConfig {
     private Duration pollingInterval = Duration.seconds(10);
+
+    /**
+     * The number of shards of a LISTING_RECORDS or FIXITY check that are checked in parallel.
+     */
+    @Min(1)
+    private int workerThreads = 4;
+
+    /**
+     * The number of path segments of the directories that a layer is split into for a LISTING_RECORDS check. With the NTuple storage layout the first segment is shared by all objects.
+     */
+    @Min(1)
+    private int listingRecordsShardDepth = 2;
+
+    /**
+     * The maximum combined rate at which a FIXITY check reads content, per second. Zero means unlimited.
+     */
+    @NotNull
+    private DataSize fixityMaxReadRate = DataSize.megabytes(50);
+
+    @Valid
+    @NotNull
+    private ConsistencyCheckScheduleConfig schedule = new ConsistencyCheckScheduleConfig();
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.LocalTime;
+
+/**
+ * Consistency checks that are scheduled automatically at a fixed interval. Every run schedules a LAYER_IDS check and LISTING_RECORDS checks for the layers that were checked least recently, so
+ * that all layers are covered once per coverage period.
+ */
+@Data
+public class ConsistencyCheckScheduleConfig {
+    private boolean enabled = false;
+
+    /**
+     * The time of day of the first run after startup.
+     */
+    @NotNull
+    private LocalTime runAt = LocalTime.of(2, 0);
+
+    @NotNull
+    private Duration interval = Duration.days(1);
+
+    private boolean layerIds = true;
+
+    /**
+     * The period in which every layer should get a LISTING_RECORDS check. The number of layers per run is derived from this.
+     */
+    @NotNull
+    private Duration listingRecordsCoveragePeriod = Duration.days(30);
+
+    /**
+     * Upper bound on the number of LISTING_RECORDS checks per run, to bound the resource cost of a single run.
+     */
+    @Min(0)
+    private int maxListingRecordsChecksPerRun = 20;
+}
@@ -39,4 +39,16 @@ public class DataVaultConfig {
     @NotNull
     @Valid
     private ItemstoreConfig itemstore;
+
+    @NotNull
+    @Valid
+    private ClusterConfig cluster = new ClusterConfig();
+
+    @NotNull
+    @Valid
+    private OperationsConfig operations = new OperationsConfig();
+
+    @NotNull
+    @Valid
+    private ObjectLocksConfig objectLocks = new ObjectLocksConfig();
 }
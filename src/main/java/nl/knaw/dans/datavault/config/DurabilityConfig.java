@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.config;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class DurabilityConfig {
+    public enum Mode {
+        /**
+         * Leave it to the operating system when written content reaches the disk.
+         */
+        NONE,
+        /**
+         * Sync all files and directories written for a version together, before the version is acknowledged.
+         */
+        PER_OBJECT,
+        /**
+         * Sync every file and directory as soon as it has been written.
+         */
+        PER_FILE
+    }
+
+    @NotNull
+    private Mode mode = Mode.NONE;
+    @Min(1)
+    private int syncThreads = 8;
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.config;
+
+import lombok.Data;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+@Data
+public class ImportConcurrencyConfig {
+    private boolean adaptive = false;
+    @Min(1)
+    private int minLimit = 1;
+    @Min(1)
+    private int maxLimit = 8;
+    @Min(1)
+    private int initialLimit = 2;
+    // The number of finished objects after which the limit is reconsidered
+    @Min(1)
+    private int windowSize = 8;
+    // The relative change in throughput or latency that is regarded as significant
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double tolerance = 0.1;
+    // The factor by which the limit is multiplied when it is decreased
+    @DecimalMin("0.1")
+    @DecimalMax("0.9")
+    private double backoffRatio = 0.7;
+}
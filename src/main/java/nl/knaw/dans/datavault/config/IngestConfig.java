@@ -18,6 +18,7 @@ package nl.knaw.dans.datavault.config;
 import io.dropwizard.util.Duration;
 import lombok.Data;
 
+import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
 
@@ -31,4 +32,13 @@ public class IngestConfig {
     private Duration pollingInterval = Duration.seconds(10);
     // Automatically remove successfully ingested object import directories and clean batch directories when all succeeded.
     private boolean autoclean = true;
+    // How often a running batch checks whether it was paused or cancelled
+    @NotNull
+    private Duration stopRequestCheckInterval = Duration.seconds(5);
+    @Valid
+    @NotNull
+    private ImportConcurrencyConfig concurrency = new ImportConcurrencyConfig();
+    @Valid
+    @NotNull
+    private ImportPreemptionConfig preemption = new ImportPreemptionConfig();
 }
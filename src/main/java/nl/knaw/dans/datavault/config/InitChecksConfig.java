@@ -17,9 +17,24 @@ package nl.knaw.dans.datavault.config;
 
 import lombok.Data;
 
+import javax.validation.constraints.Min;
+
 @Data
 public class InitChecksConfig {
     private boolean layerIds = true;
     private boolean topLayerListingRecords = true;
     private boolean archiveRoot = true;
+    /**
+     * Skip a check if nothing it depends on has changed since it last succeeded.
+     */
+    private boolean skipUnchanged = true;
+    /**
+     * The number of checks that run in parallel.
+     */
+    @Min(1)
+    private int workerThreads = 2;
+    /**
+     * Run the checks in the background after startup. Until they have passed, the service is read-only. Off by default, so that a failing check stops the service from starting.
+     */
+    private boolean runInBackground = false;
 }
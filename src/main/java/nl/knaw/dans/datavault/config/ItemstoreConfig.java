@@ -18,12 +18,22 @@ package nl.knaw.dans.datavault.config;
 import lombok.Data;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 @Data
 public class ItemstoreConfig {
-    @NotNull
-    private String workDir;
+    /**
+     * The number of batches of files that copyDirectoryInto writes in parallel.
+     */
+    @Min(1)
+    private int copyThreads = 4;
+
+    /**
+     * The number of files that copyDirectoryInto writes in one transaction.
+     */
+    @Min(1)
+    private int copyBatchSize = 100;
 
     @NotNull
     @Valid
@@ -36,4 +36,19 @@ public class LayerStoreConfig {
     @Valid
     @NotNull
     private InitChecksConfig initChecks;
+    @Valid
+    @NotNull
+    private ArchiveReadCacheConfig archiveReadCache = new ArchiveReadCacheConfig();
+    @Valid
+    @NotNull
+    private ChangeJournalConfig changeJournal = new ChangeJournalConfig();
+    @Valid
+    @NotNull
+    private ItemPathIndexConfig itemPathIndex = new ItemPathIndexConfig();
+    @Valid
+    @NotNull
+    private ContentDeduplicationConfig contentDeduplication = new ContentDeduplicationConfig();
+    @Valid
+    @NotNull
+    private DurabilityConfig durability = new DurabilityConfig();
 }
@@ -37,4 +37,13 @@ public class OcflRepositoryConfig {
     @Valid
     @NotNull
     private RootExtensionsInitChecksConfig rootExtensionsInitChecks;
+
+    @Valid
+    @NotNull
+    private StorageLayoutConfig storageLayout = new StorageLayoutConfig();
+
+    // Objects are spread over the main storage root and these shards by a hash of the object ID, so the number of shards must not change once objects have been stored
+    @Valid
+    @NotNull
+    private List<RepositoryShardConfig> additionalShards = List.of();
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class OperationsConfig {
+    /**
+     * The number of long-running operations (copying into or out of the item store, creating and closing layers) that are executed in parallel.
+     */
+    @Min(1)
+    private int workerThreads = 2;
+
+    /**
+     * The number of operations that can wait for a worker. While that many are waiting, new operations are refused with 503 Service Unavailable.
+     */
+    @Min(1)
+    private int queueCapacity = 100;
+
+    /**
+     * How long a request waits for its operation to finish. If the operation finishes in time, the end-point responds with its outcome, as it did when the work was done in the request
+     * thread; otherwise it responds with 202 Accepted and the status of the operation. If zero, the end-points always respond with 202 Accepted.
+     */
+    @NotNull
+    private Duration completionWait = Duration.seconds(30);
+
+    /**
+     * How long the status of a finished operation can be retrieved.
+     */
+    @NotNull
+    private Duration retention = Duration.days(1);
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.config;
+
+import io.dropwizard.db.DataSourceFactory;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+
+/**
+ * An additional storage root of a sharded repository. Each shard has its own layered store, with its own database for the listing records, so that its layers are managed independently of
+ * those of the other shards.
+ */
+@Data
+public class RepositoryShardConfig {
+    @Valid
+    @NotNull
+    private DataSourceFactory database;
+    @NotNull
+    private Path stagingRoot;
+    @Valid
+    @NotNull
+    private ArchiveProviderFactory archiveProvider;
+    @NotNull
+    private Path workDir;
+}
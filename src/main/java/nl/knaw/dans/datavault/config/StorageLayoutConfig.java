@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.config;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+
+/**
+ * Settings for the NTuple omit-prefix storage layout of the OCFL repository. Only used when the repository is created; an existing repository keeps the layout it was created with.
+ */
+@Data
+public class StorageLayoutConfig {
+    @NotEmpty
+    private String delimiter = ":";
+    @Min(1)
+    private int tupleSize = 3;
+    @Min(1)
+    private int numberOfTuples = 3;
+}
@@ -21,13 +21,28 @@ import nl.knaw.dans.layerstore.ArchiveProvider;
 import nl.knaw.dans.layerstore.TarArchiveProvider;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 @JsonTypeName("TAR")
 public class TarArchiveProviderFactory implements ArchiveProviderFactory {
     @JsonProperty
     private Path archiveRoot;
+
+    @JsonProperty
+    private boolean writeOffsetIndex = false;
+
     @Override
     public ArchiveProvider build() {
         return new TarArchiveProvider(archiveRoot);
     }
+
+    @Override
+    public Optional<Path> getLocalArchiveRoot() {
+        return Optional.of(archiveRoot);
+    }
+
+    @Override
+    public Optional<Path> getOffsetIndexedArchiveRoot() {
+        return writeOffsetIndex ? Optional.of(archiveRoot) : Optional.empty();
+    }
 }
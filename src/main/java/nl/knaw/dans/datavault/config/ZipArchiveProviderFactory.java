@@ -21,6 +21,7 @@ import nl.knaw.dans.layerstore.ArchiveProvider;
 import nl.knaw.dans.layerstore.ZipArchiveProvider;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 @JsonTypeName("ZIP")
 public class ZipArchiveProviderFactory implements ArchiveProviderFactory {
@@ -28,8 +29,21 @@ public class ZipArchiveProviderFactory implements ArchiveProviderFactory {
     @JsonProperty
     private Path archiveRoot;
 
+    @JsonProperty
+    private boolean writeOffsetIndex = false;
+
     @Override
     public ArchiveProvider build() {
         return new ZipArchiveProvider(archiveRoot);
     }
+
+    @Override
+    public Optional<Path> getLocalArchiveRoot() {
+        return Optional.of(archiveRoot);
+    }
+
+    @Override
+    public Optional<Path> getOffsetIndexedArchiveRoot() {
+        return writeOffsetIndex ? Optional.of(archiveRoot) : Optional.empty();
+    }
 }
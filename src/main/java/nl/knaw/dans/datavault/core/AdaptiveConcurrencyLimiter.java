@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.config.ImportConcurrencyConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of objects that are imported concurrently, and adapts the limit to the observed throughput and latency (additive increase, multiplicative decrease). After every window
+ * of finished objects the limit is:
+ * <ul>
+ *     <li>decreased by the backoff ratio if the throughput dropped, or if the latency rose without a matching rise in throughput, as extra concurrency then only adds queueing in the
+ *     database or on the disk;</li>
+ *     <li>increased by one if the limit was reached during the window, as more concurrency may help;</li>
+ *     <li>kept otherwise.</li>
+ * </ul>
+ * Throughput is measured over the time that at least one object was being imported, so that idle time between batches does not count.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+    public enum Decision {
+        INCREASE,
+        DECREASE,
+        HOLD
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int windowSize;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final LongSupplier nanoClock;
+
+    private final Timer objectTime;
+    private final Counter increases;
+    private final Counter decreases;
+    private final Counter holds;
+
+    private int limit;
+    private int inFlight;
+
+    // The current window
+    private int completions;
+    private long latencyNanos;
+    private long busyNanos;
+    private long lastChangeNanos;
+    private boolean saturated;
+
+    // The previous window; zero if there is none yet
+    private double previousThroughput;
+    private double previousLatency;
+
+    public AdaptiveConcurrencyLimiter(ImportConcurrencyConfig config, MetricRegistry metrics) {
+        this(config, metrics, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(ImportConcurrencyConfig config, MetricRegistry metrics, LongSupplier nanoClock) {
+        if (config.getMinLimit() > config.getMaxLimit()) {
+            throw new IllegalArgumentException("minLimit must not be greater than maxLimit");
+        }
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.windowSize = config.getWindowSize();
+        this.tolerance = config.getTolerance();
+        this.backoffRatio = config.getBackoffRatio();
+        this.nanoClock = nanoClock;
+        this.lastChangeNanos = nanoClock.getAsLong();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, config.getInitialLimit()));
+        this.objectTime = metrics.timer(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, "object-time"));
+        this.increases = metrics.counter(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, "increases"));
+        this.decreases = metrics.counter(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, "decreases"));
+        this.holds = metrics.counter(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, "holds"));
+        metrics.register(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, "limit"), (Gauge<Integer>) this::getLimit);
+        metrics.register(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, "in-flight"), (Gauge<Integer>) this::getInFlight);
+    }
+
+    /**
+     * Waits until another object may be imported. Every call must be followed by a call to {@link #release(long)}.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            saturated = true;
+            wait();
+        }
+        updateBusyTime();
+        inFlight++;
+        if (inFlight >= limit) {
+            saturated = true;
+        }
+    }
+
+    /**
+     * Reports that an object import has finished, successfully or not, and reconsiders the limit if the window is complete.
+     *
+     * @param elapsedNanos the time the import of the object took
+     */
+    public synchronized void release(long elapsedNanos) {
+        updateBusyTime();
+        inFlight--;
+        objectTime.update(elapsedNanos, TimeUnit.NANOSECONDS);
+        completions++;
+        latencyNanos += elapsedNanos;
+        if (completions >= windowSize) {
+            adjustLimit();
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void updateBusyTime() {
+        var now = nanoClock.getAsLong();
+        if (inFlight > 0) {
+            busyNanos += now - lastChangeNanos;
+        }
+        lastChangeNanos = now;
+    }
+
+    private void adjustLimit() {
+        var throughput = completions / Math.max(busyNanos / 1e9, 1e-9);
+        var latency = (double) latencyNanos / completions;
+        var decision = decide(throughput, latency);
+        var oldLimit = limit;
+        switch (decision) {
+            case INCREASE -> {
+                limit = Math.min(maxLimit, limit + 1);
+                increases.inc();
+            }
+            case DECREASE -> {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+                decreases.inc();
+            }
+            case HOLD -> holds.inc();
+        }
+        log.debug("Import concurrency {}: {} -> {} (throughput {} objects/s, mean latency {} ms)", decision, oldLimit, limit, String.format("%.2f", throughput),
+            String.format("%.1f", latency / 1e6));
+        previousThroughput = throughput;
+        previousLatency = latency;
+        completions = 0;
+        latencyNanos = 0;
+        busyNanos = 0;
+        saturated = inFlight >= limit;
+    }
+
+    private Decision decide(double throughput, double latency) {
+        if (previousThroughput > 0) {
+            if (throughput < previousThroughput * (1 - tolerance)) {
+                return Decision.DECREASE;
+            }
+            if (latency > previousLatency * (1 + tolerance) && throughput < previousThroughput * (1 + tolerance)) {
+                return Decision.DECREASE;
+            }
+        }
+        return saturated ? Decision.INCREASE : Decision.HOLD;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * Delegates to an {@link ItemStore}, but serves files that are not found in any staged layer through an {@link ArchiveReadCache}. Files in staged layers are read directly from disk, so only
+ * content that must be extracted from an archived layer ends up in the cache. If an {@link ArchiveOffsetIndexer} is configured, files in indexed archives are extracted by seeking directly to
+ * their data instead of through the layer store.
+ *
+ * Content that must be extracted is read through the layered store that the delegate wraps, with archive reads enabled, so that there is one view of the layers.
+ *
+ * Staged layers are detected by their directories under the staging root. When a layer directory disappears, the layer has been archived and the cache is cleared, because paths that were
+ * cached from an older layer may now be shadowed by the newly archived one. Paths that are deleted or moved away are removed from the cache, together with everything under them.
+ */
+@Slf4j
+public class ArchiveAwareItemStore implements ItemStore {
+    private final ItemStore delegate;
+    // Used only to fill the cache; reads content from archived layers
+    private final ItemStore archiveReadingItemStore;
+    private final Path stagingRoot;
+    private final ArchiveReadCache archiveReadCache;
+    // May be null, in which case all archived content is read through the delegate
+    private final ArchiveOffsetIndexer archiveOffsetIndexer;
+
+    // Listed again only when a layer directory is added or removed, not on every read
+    private final CachedDirectoryListing<NavigableSet<Long>> stagedLayerIdsListing;
+
+    private Set<Long> lastSeenStagedLayerIds = Set.of();
+
+    public ArchiveAwareItemStore(ItemStore delegate, ItemStore archiveReadingItemStore, Path stagingRoot, ArchiveReadCache archiveReadCache, ArchiveOffsetIndexer archiveOffsetIndexer) {
+        this.delegate = delegate;
+        this.archiveReadingItemStore = archiveReadingItemStore;
+        this.stagingRoot = stagingRoot;
+        this.archiveReadCache = archiveReadCache;
+        this.archiveOffsetIndexer = archiveOffsetIndexer;
+        this.stagedLayerIdsListing = new CachedDirectoryListing<>(stagingRoot, () -> Collections.unmodifiableNavigableSet(StagedLayers.listLayerIds(stagingRoot)));
+    }
+
+    @Override
+    public List<Item> listDirectory(String directoryPath) throws IOException {
+        return delegate.listDirectory(directoryPath);
+    }
+
+    @Override
+    public List<Item> listRecursive(String directoryPath) throws IOException {
+        return delegate.listRecursive(directoryPath);
+    }
+
+    @Override
+    public boolean existsPathLike(String path) {
+        return delegate.existsPathLike(path);
+    }
+
+    @Override
+    public InputStream readFile(String path) throws IOException {
+        // Inventories are kept in the database, so reading them is cheap and they must never be served from a stale cached copy
+        if (DatabaseBackedContent.isDatabaseBacked(path)) {
+            return delegate.readFile(path);
+        }
+        var stagedLayerIds = stagedLayerIdsListing.get();
+        clearCacheIfLayersWereArchived(stagedLayerIds);
+        for (var layerId : stagedLayerIds) {
+            if (Files.isRegularFile(stagingRoot.resolve(layerId.toString()).resolve(path))) {
+                return delegate.readFile(path);
+            }
+        }
+        if (archiveOffsetIndexer != null) {
+            for (var archive : archiveOffsetIndexer.listArchives().entrySet()) {
+                if (stagedLayerIds.contains(archive.getKey())) {
+                    // Still being archived; the staged copy was checked above
+                    continue;
+                }
+                var index = archiveOffsetIndexer.getIndex(archive.getValue());
+                if (index.isEmpty()) {
+                    // Cannot tell whether this layer shadows an older one, so leave it to the layer store
+                    break;
+                }
+                if (index.get().getEntry(path).isPresent()) {
+                    return archiveReadCache.readFile(path, () -> index.get().openEntry(path));
+                }
+            }
+        }
+        return archiveReadCache.readFile(path, () -> archiveReadingItemStore.readFile(path));
+    }
+
+    @Override
+    public void writeFile(String path, InputStream content) throws IOException {
+        delegate.writeFile(path, content);
+    }
+
+    @Override
+    public void moveDirectoryInto(Path source, String destination) throws IOException {
+        delegate.moveDirectoryInto(source, destination);
+    }
+
+    @Override
+    public void moveDirectoryInternal(String source, String destination) throws IOException {
+        delegate.moveDirectoryInternal(source, destination);
+        archiveReadCache.invalidate(source);
+    }
+
+    @Override
+    public void deleteDirectory(String path) throws IOException {
+        delegate.deleteDirectory(path);
+        archiveReadCache.invalidate(path);
+    }
+
+    @Override
+    public void deleteFiles(List<String> paths) throws IOException {
+        delegate.deleteFiles(paths);
+        for (var path : paths) {
+            archiveReadCache.invalidate(path);
+        }
+    }
+
+    @Override
+    public void createDirectories(String path) throws IOException {
+        delegate.createDirectories(path);
+    }
+
+    @Override
+    public void copyDirectoryOutOf(String source, Path destination) throws IOException {
+        delegate.copyDirectoryOutOf(source, destination);
+    }
+
+    private synchronized void clearCacheIfLayersWereArchived(Set<Long> stagedLayerIds) {
+        if (!stagedLayerIds.containsAll(lastSeenStagedLayerIds)) {
+            log.debug("Staged layers changed from {} to {}", lastSeenStagedLayerIds, stagedLayerIds);
+            archiveReadCache.clear();
+        }
+        lastSeenStagedLayerIds = stagedLayerIds;
+    }
+}
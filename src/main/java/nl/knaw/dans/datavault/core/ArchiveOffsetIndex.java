@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.Getter;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Sidecar index of the entries in a TAR or ZIP layer archive. For every file entry it records the offset of the entry data in the archive, its length and its SHA-256 checksum, so that a single
+ * file can be read with one seek instead of a scan of the whole archive.
+ *
+ * The index is stored next to the archive, in a file with the extension {@value #SIDECAR_EXTENSION}. The size and modification time of the archive at indexing time are recorded in the header,
+ * so that an index that does not belong to the current archive file is never used.
+ */
+public class ArchiveOffsetIndex {
+    public static final String SIDECAR_EXTENSION = ".offsets";
+    private static final String HEADER_PREFIX = "# dd-data-vault archive offset index v1";
+
+    /**
+     * The location of a file in the archive.
+     *
+     * @param offset       the offset of the entry data from the start of the archive
+     * @param storedLength the number of bytes the entry data occupies in the archive
+     * @param length       the length of the file after decompression
+     * @param deflated     whether the entry data is deflate-compressed (ZIP only)
+     * @param sha256       the SHA-256 checksum of the file
+     */
+    public record Entry(long offset, long storedLength, long length, boolean deflated, String sha256) {}
+
+    @Getter
+    private final Path archive;
+    private final long archiveSize;
+    private final long archiveLastModified;
+    private final Map<String, Entry> entries;
+
+    private ArchiveOffsetIndex(Path archive, long archiveSize, long archiveLastModified, Map<String, Entry> entries) {
+        this.archive = archive;
+        this.archiveSize = archiveSize;
+        this.archiveLastModified = archiveLastModified;
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    public static Path getSidecar(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + SIDECAR_EXTENSION);
+    }
+
+    /**
+     * Creates an index by reading all entries of the given archive. The archive type is derived from the file extension.
+     *
+     * @param archive the TAR or ZIP file
+     * @return the index
+     * @throws IOException if the archive cannot be read
+     */
+    public static ArchiveOffsetIndex create(Path archive) throws IOException {
+        var size = Files.size(archive);
+        var lastModified = Files.getLastModifiedTime(archive).toMillis();
+        var name = archive.getFileName().toString();
+        if (name.endsWith(".tar")) {
+            return new ArchiveOffsetIndex(archive, size, lastModified, readTarEntries(archive));
+        }
+        else if (name.endsWith(".zip")) {
+            return new ArchiveOffsetIndex(archive, size, lastModified, readZipEntries(archive));
+        }
+        throw new IllegalArgumentException("Unsupported archive type: " + archive);
+    }
+
+    /**
+     * Loads the sidecar index of the given archive.
+     *
+     * @param archive the archive
+     * @return the index, or empty if there is no index or it was created for a different version of the archive file
+     * @throws IOException if the index exists but cannot be read
+     */
+    public static Optional<ArchiveOffsetIndex> load(Path archive) throws IOException {
+        var sidecar = getSidecar(archive);
+        if (!Files.exists(sidecar) || !Files.exists(archive)) {
+            return Optional.empty();
+        }
+        try (var reader = Files.newBufferedReader(sidecar, StandardCharsets.UTF_8)) {
+            var index = readHeader(archive, sidecar, reader);
+            if (!index.matchesArchive()) {
+                return Optional.empty();
+            }
+            var entries = new HashMap<String, Entry>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var fields = line.split("\t", 6);
+                entries.put(fields[5], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), "1".equals(fields[3]), fields[4]));
+            }
+            return Optional.of(new ArchiveOffsetIndex(archive, index.archiveSize, index.archiveLastModified, entries));
+        }
+        catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Checks whether the given archive has a sidecar index that was created for the current version of the archive file. Only the header of the sidecar is read.
+     *
+     * @param archive the archive
+     * @return true if the archive has an up-to-date index
+     * @throws IOException if the index exists but cannot be read
+     */
+    public static boolean hasIndex(Path archive) throws IOException {
+        var sidecar = getSidecar(archive);
+        if (!Files.exists(sidecar) || !Files.exists(archive)) {
+            return false;
+        }
+        try (var reader = Files.newBufferedReader(sidecar, StandardCharsets.UTF_8)) {
+            return readHeader(archive, sidecar, reader).matchesArchive();
+        }
+        catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static ArchiveOffsetIndex readHeader(Path archive, Path sidecar, BufferedReader reader) throws IOException {
+        var header = reader.readLine();
+        if (header == null || !header.startsWith(HEADER_PREFIX)) {
+            throw new IOException("Not an archive offset index: " + sidecar);
+        }
+        var headerFields = header.substring(HEADER_PREFIX.length()).trim().split(" ");
+        return new ArchiveOffsetIndex(archive, Long.parseLong(headerFields[0]), Long.parseLong(headerFields[1]), new HashMap<>());
+    }
+
+    /**
+     * Writes the index to the sidecar file of the archive, replacing any existing index atomically.
+     *
+     * @throws IOException if the sidecar cannot be written
+     */
+    public void save() throws IOException {
+        var sidecar = getSidecar(archive);
+        var partial = sidecar.resolveSibling(sidecar.getFileName() + ".part");
+        try (var writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            writer.write(HEADER_PREFIX + " " + archiveSize + " " + archiveLastModified + "\n");
+            for (var e : entries.entrySet()) {
+                var entry = e.getValue();
+                writer.write(entry.offset() + "\t" + entry.storedLength() + "\t" + entry.length() + "\t" + (entry.deflated() ? "1" : "0") + "\t" + entry.sha256() + "\t" + e.getKey() + "\n");
+            }
+        }
+        Files.move(partial, sidecar, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * @return true if the archive file still has the size and modification time it had when it was indexed
+     */
+    public boolean matchesArchive() throws IOException {
+        return Files.exists(archive)
+            && Files.size(archive) == archiveSize
+            && Files.getLastModifiedTime(archive).toMillis() == archiveLastModified;
+    }
+
+    public Optional<Entry> getEntry(String path) {
+        return Optional.ofNullable(entries.get(normalize(path)));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Opens the file at the given path by seeking directly to its data in the archive.
+     *
+     * @param path the item store path of the file
+     * @return a stream on the (decompressed) content of the file, which fails at its end if the length or checksum of the content differs from the index
+     * @throws IOException if the file is not in the index or the archive cannot be read
+     */
+    public InputStream openEntry(String path) throws IOException {
+        var entry = getEntry(path).orElseThrow(() -> new NoSuchFileException(path + " in " + archive));
+        var channel = FileChannel.open(archive, StandardOpenOption.READ);
+        try {
+            channel.position(entry.offset());
+            InputStream in = new BoundedInputStream(new BufferedInputStream(Channels.newInputStream(channel)), entry.storedLength());
+            in = entry.deflated() ? new InflaterInputStream(in, new Inflater(true)) : in;
+            return new VerifyingInputStream(in, path, entry);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /*
+     * A stale or wrong offset would otherwise return the bytes of another part of the archive without any error. The content is checked against the index when the end of the stream is
+     * reached, so that a reader that consumes the whole file never gets wrong content silently.
+     */
+    private class VerifyingInputStream extends FilterInputStream {
+        private final String path;
+        private final Entry entry;
+        private final MessageDigest digest = DigestUtils.getSha256Digest();
+        private long length;
+        private boolean verified;
+
+        VerifyingInputStream(InputStream in, String path, Entry entry) {
+            super(in);
+            this.path = path;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if (b == -1) {
+                verify();
+            }
+            else {
+                digest.update((byte) b);
+                length++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            var n = super.read(buffer, offset, count);
+            if (n == -1) {
+                verify();
+            }
+            else {
+                digest.update(buffer, offset, n);
+                length += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read instead of skipped, so that the skipped bytes are included in the checksum
+            var buffer = new byte[8192];
+            var skipped = 0L;
+            while (skipped < n) {
+                var read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void verify() throws IOException {
+            if (verified) {
+                return;
+            }
+            verified = true;
+            if (length != entry.length()) {
+                throw new IOException("Read " + length + " bytes of " + path + " from " + archive + ", but the offset index records " + entry.length());
+            }
+            if (!Hex.encodeHexString(digest.digest()).equals(entry.sha256())) {
+                throw new IOException("Checksum of " + path + " read from " + archive + " does not match the offset index");
+            }
+        }
+    }
+
+    private static Map<String, Entry> readTarEntries(Path archive) throws IOException {
+        var entries = new HashMap<String, Entry>();
+        try (var tarFile = new TarFile(archive)) {
+            for (var tarEntry : tarFile.getEntries()) {
+                // isFile() is also true for hard links, which have no content of their own; they are left out, so that they are read through the layer store instead
+                if (tarEntry.isFile() && !tarEntry.isLink() && !tarEntry.isSymbolicLink()) {
+                    String sha256;
+                    try (var in = tarFile.getInputStream(tarEntry)) {
+                        sha256 = DigestUtils.sha256Hex(in);
+                    }
+                    entries.put(normalize(tarEntry.getName()), new Entry(tarEntry.getDataOffset(), tarEntry.getSize(), tarEntry.getSize(), false, sha256));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, Entry> readZipEntries(Path archive) throws IOException {
+        var entries = new HashMap<String, Entry>();
+        try (var zipFile = new ZipFile(archive.toFile())) {
+            var zipEntries = zipFile.getEntries();
+            while (zipEntries.hasMoreElements()) {
+                var zipEntry = zipEntries.nextElement();
+                // Entries with other compression methods are left out, so that they are read through the layer store instead
+                if (!zipEntry.isDirectory() && (zipEntry.getMethod() == ZipArchiveEntry.STORED || zipEntry.getMethod() == ZipArchiveEntry.DEFLATED)) {
+                    String sha256;
+                    try (var in = zipFile.getInputStream(zipEntry)) {
+                        sha256 = DigestUtils.sha256Hex(in);
+                    }
+                    entries.put(normalize(zipEntry.getName()), new Entry(zipEntry.getDataOffset(), zipEntry.getCompressedSize(), zipEntry.getSize(),
+                        zipEntry.getMethod() == ZipArchiveEntry.DEFLATED, sha256));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String normalize(String entryName) {
+        var name = entryName;
+        while (name.startsWith("./") || name.startsWith("/")) {
+            name = name.startsWith("./") ? name.substring(2) : name.substring(1);
+        }
+        return name;
+    }
+}
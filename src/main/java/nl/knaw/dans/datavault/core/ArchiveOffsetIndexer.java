@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains the {@link ArchiveOffsetIndex} sidecar files for the TAR and ZIP archives under an archive root. Archives are picked up shortly after they have been written; an archive is only
+ * indexed once it has not been modified for some time, so that an archive that is still being written is not indexed.
+ */
+@Slf4j
+public class ArchiveOffsetIndexer implements Managed {
+    private static final Duration MINIMUM_ARCHIVE_AGE = Duration.ofMinutes(1);
+    private static final int MAX_LOADED_INDEXES = 64;
+
+    private final Path archiveRoot;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final Duration interval;
+
+    // Indexes of large archives can be big, so only the most recently used ones are kept in memory
+    private final Map<Path, ArchiveOffsetIndex> loadedIndexes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, ArchiveOffsetIndex> eldest) {
+            return size() > MAX_LOADED_INDEXES;
+        }
+    });
+
+    // Listed again only when an archive is added or removed, not on every read of archived content
+    private final CachedDirectoryListing<Map<Long, Path>> archiveListing;
+
+    public ArchiveOffsetIndexer(Path archiveRoot, ScheduledExecutorService scheduledExecutorService, Duration interval) {
+        this.archiveRoot = archiveRoot;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.interval = interval;
+        this.archiveListing = new CachedDirectoryListing<>(archiveRoot, () -> Collections.unmodifiableMap(readArchiveRoot()));
+    }
+
+    @Override
+    public void start() {
+        scheduledExecutorService.scheduleWithFixedDelay(this::indexNewArchives, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an index for every archive that does not have an up-to-date one. A failure to index one archive does not prevent the others from being indexed.
+     */
+    public void indexNewArchives() {
+        Map<Long, Path> archives;
+        try {
+            archives = listArchives();
+        }
+        catch (Exception e) {
+            // Never let an exception escape, as that would cancel the scheduled task
+            log.error("Error listing archives under {}", archiveRoot, e);
+            return;
+        }
+        for (var archive : archives.values()) {
+            try {
+                if (isOldEnough(archive) && !hasUpToDateIndex(archive)) {
+                    log.info("Creating offset index for archive {}", archive);
+                    var index = ArchiveOffsetIndex.create(archive);
+                    index.save();
+                    loadedIndexes.put(archive, index);
+                    log.info("Offset index for archive {} created with {} entries", archive, index.size());
+                }
+            }
+            catch (Exception e) {
+                log.error("Error creating offset index for archive {}", archive, e);
+            }
+        }
+    }
+
+    /**
+     * Lists the archived layers for which an archive file exists under the archive root.
+     *
+     * @return the archive files by layer ID, ordered from newest to oldest layer
+     * @throws IOException if the archive root cannot be listed
+     */
+    public Map<Long, Path> listArchives() throws IOException {
+        return archiveListing.get();
+    }
+
+    private Map<Long, Path> readArchiveRoot() throws IOException {
+        var archives = new TreeMap<Long, Path>((a, b) -> Long.compare(b, a));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveRoot, "*.{tar,zip}")) {
+            for (var archive : stream) {
+                var name = archive.getFileName().toString();
+                try {
+                    archives.put(Long.parseLong(name.substring(0, name.lastIndexOf('.'))), archive);
+                }
+                catch (NumberFormatException e) {
+                    log.debug("Ignoring non-layer file {} in archive root", archive);
+                }
+            }
+        }
+        return archives;
+    }
+
+    /**
+     * Returns the index of the given archive, if it has a valid one.
+     *
+     * @param archive the archive file
+     * @return the index, or empty if the archive has not been indexed (yet)
+     * @throws IOException if the index exists but cannot be read
+     */
+    public Optional<ArchiveOffsetIndex> getIndex(Path archive) throws IOException {
+        var index = loadedIndexes.get(archive);
+        if (index != null && index.matchesArchive()) {
+            return Optional.of(index);
+        }
+        var loaded = ArchiveOffsetIndex.load(archive);
+        loaded.ifPresentOrElse(i -> loadedIndexes.put(archive, i), () -> loadedIndexes.remove(archive));
+        return loaded;
+    }
+
+    private boolean hasUpToDateIndex(Path archive) throws IOException {
+        var index = loadedIndexes.get(archive);
+        if (index != null && index.matchesArchive()) {
+            return true;
+        }
+        return ArchiveOffsetIndex.hasIndex(archive);
+    }
+
+    private boolean isOldEnough(Path archive) throws IOException {
+        return Files.getLastModifiedTime(archive).toInstant().isBefore(Instant.now().minus(MINIMUM_ARCHIVE_AGE));
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Disk-backed LRU cache for files extracted from archived layers. Concurrent requests for the same path share a single extraction, and the number of extractions running at the same time is
+ * bounded, so that the archive storage is read sequentially instead of by many competing scans.
+ */
+@Slf4j
+public class ArchiveReadCache {
+    private final Path cacheDir;
+    private final long maxSizeInBytes;
+    private final Semaphore extractionPermits;
+
+    // Access-ordered, so that iteration starts at the least recently used entry
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> pendingExtractions = new HashMap<>();
+    private long currentSizeInBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Timer extractionTime;
+
+    @FunctionalInterface
+    public interface ContentLoader {
+        InputStream load() throws IOException;
+    }
+
+    public ArchiveReadCache(Path cacheDir, long maxSizeInBytes, int maxConcurrentExtractions, MetricRegistry metrics) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.extractionPermits = new Semaphore(maxConcurrentExtractions, true);
+        this.hits = metrics.counter(MetricRegistry.name(ArchiveReadCache.class, "hits"));
+        this.misses = metrics.counter(MetricRegistry.name(ArchiveReadCache.class, "misses"));
+        this.evictions = metrics.counter(MetricRegistry.name(ArchiveReadCache.class, "evictions"));
+        this.extractionTime = metrics.timer(MetricRegistry.name(ArchiveReadCache.class, "extraction-time"));
+        metrics.register(MetricRegistry.name(ArchiveReadCache.class, "size-in-bytes"), (Gauge<Long>) this::getCurrentSizeInBytes);
+        // The index is kept in memory only, so anything left over from a previous run is unreachable
+        if (Files.exists(cacheDir)) {
+            FileUtils.cleanDirectory(cacheDir.toFile());
+        }
+        Files.createDirectories(cacheDir);
+    }
+
+    /**
+     * Returns the content of the file at the given item store path, loading it through {@code loader} if it is not cached yet.
+     *
+     * @param path   the item store path of the file
+     * @param loader reads the file from the underlying store; only called on a cache miss
+     * @return a stream on the cached copy of the file
+     * @throws IOException if the file could not be loaded or cached
+     */
+    public InputStream readFile(String path, ContentLoader loader) throws IOException {
+        while (true) {
+            CompletableFuture<Path> extraction;
+            boolean extractHere = false;
+            synchronized (this) {
+                var entry = entries.get(path);
+                if (entry != null) {
+                    hits.inc();
+                    return Files.newInputStream(entry.file());
+                }
+                misses.inc();
+                extraction = pendingExtractions.get(path);
+                if (extraction == null) {
+                    extraction = new CompletableFuture<>();
+                    pendingExtractions.put(path, extraction);
+                    extractHere = true;
+                }
+            }
+            if (extractHere) {
+                extract(path, loader, extraction);
+            }
+            try {
+                return Files.newInputStream(awaitExtraction(extraction));
+            }
+            catch (NoSuchFileException e) {
+                // Evicted between extraction and opening; try again
+                log.debug("Cached copy of {} was evicted before it could be opened, retrying", path);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the cache. To be called when the content behind the cached paths may have changed.
+     */
+    public synchronized void clear() {
+        log.info("Clearing archive read cache ({} entries, {} bytes)", entries.size(), currentSizeInBytes);
+        for (var entry : entries.values()) {
+            deleteSilently(entry.file());
+        }
+        entries.clear();
+        currentSizeInBytes = 0;
+    }
+
+    /**
+     * Removes the entry for the given path, and the entries for all paths under it, from the cache. To be called when the content at the path has been deleted or moved away.
+     *
+     * @param path the item store path of a file or directory
+     */
+    public synchronized void invalidate(String path) {
+        var prefix = path.endsWith("/") ? path : path + "/";
+        var iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                currentSizeInBytes -= entry.getValue().sizeInBytes();
+                deleteSilently(entry.getValue().file());
+            }
+        }
+    }
+
+    public synchronized long getCurrentSizeInBytes() {
+        return currentSizeInBytes;
+    }
+
+    private void extract(String path, ContentLoader loader, CompletableFuture<Path> extraction) {
+        var target = cacheDir.resolve(DigestUtils.sha256Hex(path));
+        var partial = cacheDir.resolve(target.getFileName() + ".part");
+        try {
+            extractionPermits.acquire();
+            try (var timer = extractionTime.time(); var in = loader.load()) {
+                log.debug("Extracting {} from archive into read cache", path);
+                Files.copy(in, partial, REPLACE_EXISTING);
+            }
+            finally {
+                extractionPermits.release();
+            }
+            Files.move(partial, target, REPLACE_EXISTING, ATOMIC_MOVE);
+            synchronized (this) {
+                add(path, new CacheEntry(target, Files.size(target)));
+                pendingExtractions.remove(path);
+            }
+            extraction.complete(target);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failExtraction(path, partial, extraction, new InterruptedIOException("Interrupted while waiting to extract " + path));
+        }
+        catch (IOException | RuntimeException e) {
+            failExtraction(path, partial, extraction, e);
+        }
+    }
+
+    private void failExtraction(String path, Path partial, CompletableFuture<Path> extraction, Exception e) {
+        deleteSilently(partial);
+        synchronized (this) {
+            pendingExtractions.remove(path);
+        }
+        extraction.completeExceptionally(e);
+    }
+
+    private Path awaitExtraction(CompletableFuture<Path> extraction) throws IOException {
+        try {
+            return extraction.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for extraction");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Extraction failed", e.getCause());
+        }
+    }
+
+    // Must be called while holding the monitor
+    private void add(String path, CacheEntry entry) {
+        var previous = entries.put(path, entry);
+        if (previous != null) {
+            currentSizeInBytes -= previous.sizeInBytes();
+        }
+        currentSizeInBytes += entry.sizeInBytes();
+        // A single entry that exceeds the budget is kept until the next entry is added
+        var iterator = entries.entrySet().iterator();
+        while (currentSizeInBytes > maxSizeInBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            if (eldest.getValue() == entry) {
+                break;
+            }
+            iterator.remove();
+            currentSizeInBytes -= eldest.getValue().sizeInBytes();
+            deleteSilently(eldest.getValue().file());
+            evictions.inc();
+        }
+    }
+
+    private void deleteSilently(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            log.warn("Could not delete cached file {}", file, e);
+        }
+    }
+
+    private record CacheEntry(Path file, long sizeInBytes) {}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps the result of listing a directory until the modification time of the directory changes, which happens whenever an entry is added to it, removed from it or renamed in it. A listing
+ * is only kept once the last change is older than the timestamp granularity of the file system, as a change made in the same tick as the listing would not change the modification time.
+ *
+ * @param <T> the type of the listing, which must not be changed by its users
+ */
+public class CachedDirectoryListing<T> {
+    private static final Duration SETTLE_TIME = Duration.ofSeconds(2);
+
+    @FunctionalInterface
+    public interface Lister<T> {
+        T list() throws IOException;
+    }
+
+    private final Path directory;
+    private final Lister<T> lister;
+
+    private T listing;
+    private FileTime listedAt;
+
+    public CachedDirectoryListing(Path directory, Lister<T> lister) {
+        this.directory = directory;
+        this.lister = lister;
+    }
+
+    /**
+     * @return the listing, from the cache if the directory has not changed since it was made
+     * @throws IOException if the directory cannot be listed
+     */
+    public synchronized T get() throws IOException {
+        // Read before listing, so that a change made while listing leads to a new listing the next time
+        var modified = Files.getLastModifiedTime(directory);
+        if (listing != null && modified.equals(listedAt)) {
+            return listing;
+        }
+        var result = lister.list();
+        if (modified.toInstant().isBefore(Instant.now().minus(SETTLE_TIME))) {
+            listing = result;
+            listedAt = modified;
+        }
+        else {
+            listing = null;
+        }
+        return result;
+    }
+}
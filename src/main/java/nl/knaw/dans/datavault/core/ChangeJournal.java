@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal of the paths changed in the top layer, written before the changes are made. There is one journal file per layer. A journal file that starts with a checkpoint line
+ * covers all changes to its layer since the layer was last verified, so that verifying the layer again only requires checking the journaled paths.
+ *
+ * <p>Appends are not forced to disk one by one; the journal is synced at a fixed interval and on shutdown. A marker file records a clean shutdown. If the marker is missing on startup, the
+ * last appends may have been lost, and no journal is trusted until the next checkpoint.</p>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ChangeJournal implements Managed {
+    private static final String CHECKPOINT = "CHECKPOINT";
+    private static final String CLEAN_SHUTDOWN_MARKER = "clean-shutdown";
+
+    public enum Kind {
+        /**
+         * Only the item at the path itself.
+         */
+        PATH,
+        /**
+         * The item at the path and everything below it.
+         */
+        TREE
+    }
+
+    public record Entry(Kind kind, String path) {}
+
+    private final Path journalDir;
+    private final Path stagingRoot;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final Duration syncInterval;
+
+    private boolean recoveredCleanly;
+    private long currentLayerId = -1;
+    private FileChannel currentChannel;
+
+    @Override
+    public synchronized void start() throws IOException {
+        Files.createDirectories(journalDir);
+        recoveredCleanly = Files.deleteIfExists(journalDir.resolve(CLEAN_SHUTDOWN_MARKER));
+        if (!recoveredCleanly) {
+            log.warn("No clean shutdown marker found in {}; journals are not trusted until the top layer has been fully checked", journalDir);
+        }
+        scheduledExecutorService.scheduleWithFixedDelay(this::sync, syncInterval.toMillis(), syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() throws IOException {
+        closeCurrentChannel();
+        Files.write(journalDir.resolve(CLEAN_SHUTDOWN_MARKER), new byte[0]);
+    }
+
+    /**
+     * Records changes that are about to be made to a layer.
+     *
+     * @param layerId the layer that will be changed
+     * @param entries the changed paths
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void record(long layerId, Collection<Entry> entries) throws IOException {
+        var line = new StringBuilder();
+        for (var entry : entries) {
+            line.append(entry.kind().name()).append(' ').append(escape(entry.path())).append('\n');
+        }
+        var buffer = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+        var channel = getChannel(layerId);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns the changes to a layer since its last checkpoint.
+     *
+     * @param layerId the layer
+     * @return the changed paths, or empty if the journal does not cover all changes since the last verification
+     * @throws IOException if the journal could not be read
+     */
+    public synchronized Optional<Set<Entry>> readChangesSinceCheckpoint(long layerId) throws IOException {
+        if (!recoveredCleanly) {
+            return Optional.empty();
+        }
+        var journalFile = getJournalFile(layerId);
+        if (!Files.exists(journalFile)) {
+            // Nothing was recorded; only trustworthy if there is nothing to record
+            return isLayerEmpty(layerId) ? Optional.of(Set.of()) : Optional.empty();
+        }
+        var lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !CHECKPOINT.equals(lines.get(0))) {
+            return Optional.empty();
+        }
+        var entries = new LinkedHashSet<Entry>();
+        for (var line : lines.subList(1, lines.size())) {
+            var separator = line.indexOf(' ');
+            if (separator < 0) {
+                // A partially written last line; the change itself was not made yet when it was written
+                log.warn("Ignoring incomplete journal line for layer {}: {}", layerId, line);
+                continue;
+            }
+            entries.add(new Entry(Kind.valueOf(line.substring(0, separator)), unescape(line.substring(separator + 1))));
+        }
+        return Optional.of(entries);
+    }
+
+    /**
+     * Marks the layer as verified: discards the journaled changes, and trusts the journal of the layer from now on.
+     *
+     * @param layerId the layer that was verified
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void checkpoint(long layerId) throws IOException {
+        if (layerId == currentLayerId) {
+            closeCurrentChannel();
+        }
+        var journalFile = getJournalFile(layerId);
+        try (var channel = FileChannel.open(journalFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((CHECKPOINT + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        recoveredCleanly = true;
+        log.debug("Checkpoint written for layer {}", layerId);
+        deleteJournalsOfOtherLayers(layerId);
+    }
+
+    /**
+     * Forces the journal of the current layer to disk.
+     */
+    public synchronized void sync() {
+        try {
+            if (currentChannel != null) {
+                currentChannel.force(false);
+            }
+        }
+        catch (IOException e) {
+            // Never let an exception escape, as that would cancel the scheduled task
+            log.error("Could not sync change journal of layer {}", currentLayerId, e);
+        }
+    }
+
+    private FileChannel getChannel(long layerId) throws IOException {
+        if (layerId != currentLayerId) {
+            closeCurrentChannel();
+            var journalFile = getJournalFile(layerId);
+            var isNew = !Files.exists(journalFile);
+            currentChannel = FileChannel.open(journalFile, CREATE, WRITE, APPEND);
+            currentLayerId = layerId;
+            if (isNew && isLayerEmpty(layerId)) {
+                // Every change to this layer goes into the journal, so it covers the layer from the start
+                currentChannel.write(ByteBuffer.wrap((CHECKPOINT + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return currentChannel;
+    }
+
+    private void closeCurrentChannel() throws IOException {
+        if (currentChannel != null) {
+            currentChannel.force(false);
+            currentChannel.close();
+            currentChannel = null;
+            currentLayerId = -1;
+        }
+    }
+
+    private boolean isLayerEmpty(long layerId) throws IOException {
+        var layerDir = stagingRoot.resolve(Long.toString(layerId));
+        if (!Files.isDirectory(layerDir)) {
+            return true;
+        }
+        try (var children = Files.list(layerDir)) {
+            return children.findAny().isEmpty();
+        }
+    }
+
+    private void deleteJournalsOfOtherLayers(long layerId) throws IOException {
+        try (var journalFiles = Files.newDirectoryStream(journalDir, "*.journal")) {
+            for (var journalFile : journalFiles) {
+                if (!journalFile.equals(getJournalFile(layerId)) && !journalFile.equals(getJournalFile(currentLayerId))) {
+                    Files.delete(journalFile);
+                }
+            }
+        }
+    }
+
+    private Path getJournalFile(long layerId) {
+        return journalDir.resolve(layerId + ".journal");
+    }
+
+    static String escape(String path) {
+        return path.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    static String unescape(String escaped) {
+        var result = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            var c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                result.append(escaped.charAt(++i) == 'n' ? '\n' : escaped.charAt(i));
+            }
+            else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.db.ImportJobDao;
+import nl.knaw.dans.lib.util.pollingtaskexec.TaskSource;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Hands out import jobs by claiming them, so that instances that share a database never run the same job at the same time. Only the instance that is the writer of the layer store claims
+ * jobs; the other instances are standbys. The lease of a claimed job is tracked by the {@link ClusterCoordinator}, which renews it until the job ends.
+ */
+@RequiredArgsConstructor
+public class ClaimingImportJobSource implements TaskSource<ImportJob> {
+    private final ImportJobDao importJobDao;
+    private final ClusterCoordinator clusterCoordinator;
+    private final Duration leaseDuration;
+
+    @Override
+    public Optional<ImportJob> nextInput() {
+        if (!clusterCoordinator.isWriter()) {
+            return Optional.empty();
+        }
+        var claimedAt = System.nanoTime();
+        return importJobDao.claimNext(clusterCoordinator.getInstanceId(), leaseDuration)
+            .map(jobId -> {
+                clusterCoordinator.jobClaimed(jobId, claimedAt);
+                return importJobDao.get(jobId);
+            });
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ImportJobDao;
+import nl.knaw.dans.datavault.db.WriterLeaseDao;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the instances of the service that share a database, as an active and one or more standby instances. Only the instance that holds the {@link WriterLease} of the layered store
+ * claims import jobs, so that only one instance writes to the top layer at a time; the other instances are read-only and take over when the writer stops sending heartbeats. This gives
+ * failover, not more ingest capacity. The heartbeat also renews the leases of the import jobs that this instance is running.
+ *
+ * An instance considers itself the writer only until shortly before its lease would expire, counted on its own clock from the moment the lease was last renewed, so that it stops claiming
+ * work before another instance can acquire the lease, even if the database cannot be reached. The lease of every job that this instance claimed is tracked the same way: a running job asks
+ * {@link #holdsLease(UUID)} before every object, and stops once its lease could have been taken over. A job lease that has run out is never renewed again, even if it was not taken over.
+ */
+@Slf4j
+public class ClusterCoordinator implements Managed {
+    public static final String LAYER_STORE_LEASE = "layer-store";
+
+    @Getter
+    private final String instanceId;
+    private final Duration leaseDuration;
+    private final Duration heartbeatInterval;
+    private final ImportJobDao importJobDao;
+    private final WriterLeaseDao writerLeaseDao;
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    // For every job that this instance claimed and is running, the moment on this instance's clock until which it holds the lease of the job
+    private final Map<UUID, Long> jobLeasesUntilNanos = new ConcurrentHashMap<>();
+
+    private volatile long writerUntilNanos = System.nanoTime();
+    private volatile boolean stopped;
+
+    public ClusterCoordinator(String instanceId, Duration leaseDuration, Duration heartbeatInterval, ImportJobDao importJobDao, WriterLeaseDao writerLeaseDao,
+        ScheduledExecutorService scheduledExecutorService) {
+        if (heartbeatInterval.multipliedBy(2).compareTo(leaseDuration) > 0) {
+            throw new IllegalArgumentException("leaseDuration must be at least twice the heartbeatInterval");
+        }
+        this.instanceId = instanceId;
+        this.leaseDuration = leaseDuration;
+        this.heartbeatInterval = heartbeatInterval;
+        this.importJobDao = importJobDao;
+        this.writerLeaseDao = writerLeaseDao;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    public boolean isWriter() {
+        return System.nanoTime() - writerUntilNanos < 0;
+    }
+
+    /**
+     * Starts tracking the lease of a job that this instance just claimed. The lease is counted from the given moment, which must be taken before the claim was made.
+     *
+     * @param jobId          the job
+     * @param claimedAtNanos the value of {@link System#nanoTime()} before the claim
+     */
+    public void jobClaimed(UUID jobId, long claimedAtNanos) {
+        jobLeasesUntilNanos.put(jobId, claimedAtNanos + leaseDuration.minus(heartbeatInterval).toNanos());
+    }
+
+    /**
+     * Stops renewing the lease of a job, because this instance is done with it.
+     *
+     * @param jobId the job
+     */
+    public void jobEnded(UUID jobId) {
+        jobLeasesUntilNanos.remove(jobId);
+    }
+
+    /**
+     * Tells whether this instance may still change the vault and the state of the given job on its behalf. Once this returns false for a job, it does so for good, as another instance may
+     * have taken the job over.
+     *
+     * @param jobId the job
+     * @return whether this instance is the writer and still holds the lease of the job
+     */
+    public boolean holdsLease(UUID jobId) {
+        var until = jobLeasesUntilNanos.get(jobId);
+        return isWriter() && until != null && System.nanoTime() - until < 0;
+    }
+
+    @Override
+    public void start() {
+        log.info("Joining cluster as instance {}", instanceId);
+        heartbeat();
+        scheduledExecutorService.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        writerUntilNanos = System.nanoTime();
+        importJobDao.releaseLeases(instanceId);
+        writerLeaseDao.release(LAYER_STORE_LEASE, instanceId);
+        log.info("Left cluster as instance {}", instanceId);
+    }
+
+    void heartbeat() {
+        if (stopped) {
+            return;
+        }
+        try {
+            var wasWriter = isWriter();
+            var renewedAt = System.nanoTime();
+            if (writerLeaseDao.tryAcquire(LAYER_STORE_LEASE, instanceId, leaseDuration)) {
+                // One heartbeat interval short of the lease, to allow for clock differences between the instances
+                writerUntilNanos = renewedAt + leaseDuration.minus(heartbeatInterval).toNanos();
+                if (!wasWriter) {
+                    log.info("Instance {} is now the writer of the layer store", instanceId);
+                }
+            }
+            else if (wasWriter) {
+                log.warn("Instance {} lost the writer lease of the layer store", instanceId);
+                writerUntilNanos = System.nanoTime();
+            }
+            if (isWriter()) {
+                // A former writer must not keep its jobs, so that the new writer can take them over
+                renewJobLeases(renewedAt);
+            }
+        }
+        catch (RuntimeException e) {
+            // The lease runs out by itself if this keeps failing
+            log.error("Cluster heartbeat failed", e);
+        }
+    }
+
+    private void renewJobLeases(long renewedAt) {
+        var held = jobLeasesUntilNanos.entrySet().stream()
+            .filter(entry -> renewedAt - entry.getValue() < 0)
+            .map(Map.Entry::getKey)
+            .toList();
+        if (held.isEmpty()) {
+            return;
+        }
+        var renewed = importJobDao.renewLeases(instanceId, held, leaseDuration);
+        for (var jobId : held) {
+            if (renewed.contains(jobId)) {
+                jobLeasesUntilNanos.computeIfPresent(jobId, (id, until) -> renewedAt + leaseDuration.minus(heartbeatInterval).toNanos());
+            }
+            else {
+                // Another instance took the job over, or it was ended by someone else
+                log.warn("Instance {} lost the lease of import job {}", instanceId, jobId);
+                jobLeasesUntilNanos.computeIfPresent(jobId, (id, until) -> renewedAt);
+            }
+        }
+        log.trace("Renewed {} import job leases", renewed.size());
+    }
+}
@@ -26,9 +26,14 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
+import javax.persistence.OneToMany;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -43,7 +48,7 @@ import java.util.UUID;
 @AllArgsConstructor
 public class ConsistencyCheck {
     public enum Type {
-        LAYER_IDS, LISTING_RECORDS
+        LAYER_IDS, LISTING_RECORDS, FIXITY
     }
 
     public enum Result {
@@ -78,4 +83,24 @@ public class ConsistencyCheck {
     @Lob
     private String message;
 
+    /**
+     * For a FIXITY check: only check objects whose ID starts with this prefix, or all objects if null.
+     */
+    @Column(name = "object_id_prefix")
+    private String objectIdPrefix;
+
+    /**
+     * For a FIXITY check: the fraction of the objects to check, or all objects if null.
+     */
+    @Column(name = "sample_rate")
+    private Double sampleRate;
+
+    /**
+     * The progress of a sharded check. The shards are written by the workers that check them, so this list is read-only.
+     */
+    @OneToMany
+    @JoinColumn(name = "consistency_check_id", insertable = false, updatable = false)
+    @OrderBy("pathPrefix")
+    @ToString.Exclude
+    private List<ConsistencyCheckShard> shards = new ArrayList<>();
 }
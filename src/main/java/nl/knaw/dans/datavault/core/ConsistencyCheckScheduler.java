@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import io.dropwizard.lifecycle.Managed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.config.ConsistencyCheckScheduleConfig;
+import nl.knaw.dans.datavault.core.ConsistencyCheck.Type;
+import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Schedules recurring consistency checks, so that the whole store is checked regularly without a single run costing too much. Every run schedules a LAYER_IDS check and LISTING_RECORDS
+ * checks for the layers that were checked least recently. The number of layers per run is chosen so that every layer is checked once per coverage period. The checks are executed by the
+ * consistency check executor, like the checks that are requested via the API.
+ *
+ * <p>Must be wrapped in a UnitOfWorkAwareProxy, so that {@link #scheduleChecks()} runs in a unit of work.</p>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConsistencyCheckScheduler implements Managed {
+    private final ConsistencyCheckScheduleConfig config;
+    private final ConsistencyCheckDao consistencyCheckDao;
+    private final LayeredItemStore layeredItemStore;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final ServiceReadiness serviceReadiness;
+
+    @Override
+    public void start() {
+        if (!config.isEnabled()) {
+            log.info("Scheduled consistency checks are disabled");
+            return;
+        }
+        var initialDelay = getDelayUntilNextRun(ZonedDateTime.now());
+        log.info("Scheduling consistency checks every {}, starting in {}", config.getInterval(), initialDelay);
+        scheduledExecutorService.scheduleAtFixedRate(this::scheduleChecks, initialDelay.toMillis(), config.getInterval().toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules the checks for one run.
+     */
+    @UnitOfWork
+    public void scheduleChecks() {
+        if (!serviceReadiness.isReady()) {
+            log.info("Service is not ready ({}); not scheduling consistency checks in this run", serviceReadiness.getMessage());
+            return;
+        }
+        try {
+            if (config.isLayerIds()) {
+                scheduleLayerIdsCheck();
+            }
+            scheduleListingRecordsChecks();
+        }
+        catch (Exception e) {
+            // Never let an exception escape, as that would cancel the scheduled task
+            log.error("Error scheduling consistency checks", e);
+        }
+    }
+
+    private void scheduleLayerIdsCheck() {
+        if (!consistencyCheckDao.findUnfinishedByType(Type.LAYER_IDS).isEmpty()) {
+            log.info("Previous LAYER_IDS check has not finished yet; not scheduling another one");
+            return;
+        }
+        consistencyCheckDao.create(newCheck(Type.LAYER_IDS, 0));
+        log.info("Scheduled LAYER_IDS check");
+    }
+
+    private void scheduleListingRecordsChecks() throws IOException {
+        // The top layer is still being written to; it is checked when it is archived
+        var topLayerId = layeredItemStore.getTopLayerId();
+        var closedLayerIds = layeredItemStore.listLayerIds().stream()
+            .filter(layerId -> !layerId.equals(topLayerId))
+            .toList();
+        var pendingLayerIds = consistencyCheckDao.findUnfinishedByType(Type.LISTING_RECORDS).stream()
+            .map(ConsistencyCheck::getLayerId)
+            .collect(Collectors.toSet());
+        var latestChecks = consistencyCheckDao.findLatestFinishedByTypePerLayer(Type.LISTING_RECORDS);
+        var layersPerRun = getLayersPerRun(closedLayerIds.size());
+        var selected = closedLayerIds.stream()
+            .filter(layerId -> !pendingLayerIds.contains(layerId))
+            // Layers that were never checked first, then the ones checked longest ago
+            .sorted(Comparator.comparing((Long layerId) -> latestChecks.containsKey(layerId) ? latestChecks.get(layerId).getFinished() : OffsetDateTime.MIN))
+            .limit(layersPerRun)
+            .toList();
+        for (var layerId : selected) {
+            consistencyCheckDao.create(newCheck(Type.LISTING_RECORDS, layerId));
+        }
+        log.info("Scheduled LISTING_RECORDS checks for {} of {} closed layers: {}", selected.size(), closedLayerIds.size(), selected);
+    }
+
+    /**
+     * Computes how many layers must be checked per run to check all layers once per coverage period, capped at the configured maximum.
+     *
+     * @param layerCount the number of layers to cover
+     * @return the number of layers to check in one run
+     */
+    int getLayersPerRun(int layerCount) {
+        var runsPerPeriod = Math.max(1, config.getListingRecordsCoveragePeriod().toMilliseconds() / config.getInterval().toMilliseconds());
+        var layersPerRun = (layerCount + runsPerPeriod - 1) / runsPerPeriod;
+        return (int) Math.min(layersPerRun, config.getMaxListingRecordsChecksPerRun());
+    }
+
+    Duration getDelayUntilNextRun(ZonedDateTime now) {
+        var nextRun = now.with(config.getRunAt());
+        if (!nextRun.isAfter(now)) {
+            nextRun = nextRun.plusDays(1);
+        }
+        return Duration.between(now, nextRun);
+    }
+
+    private ConsistencyCheck newCheck(Type type, long layerId) {
+        var consistencyCheck = new ConsistencyCheck();
+        consistencyCheck.setCreated(OffsetDateTime.now(ZoneOffset.UTC));
+        consistencyCheck.setType(type);
+        consistencyCheck.setLayerId(layerId);
+        return consistencyCheck;
+    }
+}
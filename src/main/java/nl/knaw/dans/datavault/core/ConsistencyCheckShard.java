@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * One part of a sharded consistency check. For a LISTING_RECORDS check, a shard covers the items under one directory at the shard depth of the layer, or, for the {@link #SHALLOW_ITEMS}
+ * shard, the items above the shard depth. For a FIXITY check, a shard covers a list of objects. Shards are finished and committed one by one, so that an interrupted check can resume with the shards
+ * that were not finished yet.
+ */
+@Entity
+@Table(name = "consistency_check_shard")
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+public class ConsistencyCheckShard {
+    public static final String SHALLOW_ITEMS = "/";
+
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @Column(name = "consistency_check_id", nullable = false)
+    private UUID consistencyCheckId;
+
+    /**
+     * The directory of a LISTING_RECORDS shard, or the first object ID of a FIXITY shard.
+     */
+    @Column(name = "path_prefix", nullable = false)
+    private String pathPrefix;
+
+    /**
+     * The IDs of the objects in a FIXITY shard, one per line.
+     */
+    @Column(name = "object_ids")
+    @Lob
+    @ToString.Exclude
+    private String objectIds;
+
+    @Column(name = "started")
+    private OffsetDateTime started;
+
+    @Column(name = "finished")
+    private OffsetDateTime finished;
+
+    /**
+     * The number of item records in the database that were compared to the storage, or the number of files whose digest was verified.
+     */
+    @Column(name = "records_checked")
+    private Long recordsChecked;
+
+    /**
+     * The number of files that a FIXITY shard could not check, because they are only available in archived layers.
+     */
+    @Column(name = "items_skipped")
+    private Long itemsSkipped;
+
+    /**
+     * The number of objects of a FIXITY shard that are done. A resumed shard continues with the object after them.
+     */
+    @Column(name = "objects_checked")
+    private Integer objectsChecked;
+
+    /**
+     * The number of fixity mismatches found so far by a FIXITY shard.
+     */
+    @Column(name = "mismatches")
+    private Long mismatches;
+
+    @Column(name = "result")
+    private ConsistencyCheck.Result result;
+
+    @Column(name = "message")
+    @Lob
+    private String message;
+
+    public ConsistencyCheckShard(UUID consistencyCheckId, String pathPrefix) {
+        this.consistencyCheckId = consistencyCheckId;
+        this.pathPrefix = pathPrefix;
+    }
+}
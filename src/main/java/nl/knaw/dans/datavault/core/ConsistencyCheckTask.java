@@ -36,6 +36,8 @@ public class ConsistencyCheckTask implements Runnable {
     private final ConsistencyCheckDao consistencyCheckDao;
     private final ConsistencyCheck consistencyCheck;
     private final LayeredItemStore layeredItemStore;
+    private final ShardedListingRecordsChecker shardedListingRecordsChecker;
+    private final FixityChecker fixityChecker;
 
     @Override
     @UnitOfWork
@@ -58,20 +60,66 @@ public class ConsistencyCheckTask implements Runnable {
             }
         }
         else if (consistencyCheck.getType().equals(Type.LISTING_RECORDS)) {
-            log.debug("Checking consistency of listing records for layer {}", consistencyCheck.getLayerId());
-            try {
-                layeredItemStore.checkLayerItemRecords(consistencyCheck.getLayerId());
-                consistencyCheckDao.finish(consistencyCheck, Result.OK, null);
-                log.debug("Consistency check passed");
-            }
-            catch (IOException e) {
-                log.error("Error checking layer IDs", e);
-                consistencyCheckDao.finish(consistencyCheck, Result.ERROR, e.getMessage());
+            if (shardedListingRecordsChecker.canCheck(consistencyCheck.getLayerId())) {
+                checkListingRecordsSharded();
             }
-            catch (ItemsMismatchException e) {
-                log.error("Listing records mismatch", e);
-                consistencyCheckDao.finish(consistencyCheck, Result.NOT_OK, e.getMessage());
+            else {
+                checkListingRecords();
             }
         }
+        else if (consistencyCheck.getType().equals(Type.FIXITY)) {
+            checkFixity();
+        }
+    }
+
+    private void checkFixity() {
+        log.debug("Checking fixity of objects{}", consistencyCheck.getObjectIdPrefix() == null ? "" : " with prefix " + consistencyCheck.getObjectIdPrefix());
+        try {
+            var outcome = fixityChecker.check(consistencyCheck);
+            consistencyCheckDao.finish(consistencyCheck, outcome.result(), outcome.message());
+        }
+        catch (IOException e) {
+            log.error("Error checking fixity", e);
+            consistencyCheckDao.finish(consistencyCheck, Result.ERROR, e.getMessage());
+        }
+        catch (InterruptedException e) {
+            // Leave the check unfinished, so that the remaining shards are checked after a restart
+            log.warn("Interrupted while checking fixity");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkListingRecordsSharded() {
+        log.debug("Checking consistency of listing records for layer {} in shards", consistencyCheck.getLayerId());
+        try {
+            var outcome = shardedListingRecordsChecker.check(consistencyCheck);
+            consistencyCheckDao.finish(consistencyCheck, outcome.result(), outcome.message());
+        }
+        catch (IOException e) {
+            log.error("Error checking listing records", e);
+            consistencyCheckDao.finish(consistencyCheck, Result.ERROR, e.getMessage());
+        }
+        catch (InterruptedException e) {
+            // Leave the check unfinished, so that the remaining shards are checked after a restart
+            log.warn("Interrupted while checking listing records for layer {}", consistencyCheck.getLayerId());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkListingRecords() {
+        log.debug("Checking consistency of listing records for layer {}", consistencyCheck.getLayerId());
+        try {
+            layeredItemStore.checkLayerItemRecords(consistencyCheck.getLayerId());
+            consistencyCheckDao.finish(consistencyCheck, Result.OK, null);
+            log.debug("Consistency check passed");
+        }
+        catch (IOException e) {
+            log.error("Error checking layer IDs", e);
+            consistencyCheckDao.finish(consistencyCheck, Result.ERROR, e.getMessage());
+        }
+        catch (ItemsMismatchException e) {
+            log.error("Listing records mismatch", e);
+            consistencyCheckDao.finish(consistencyCheck, Result.NOT_OK, e.getMessage());
+        }
     }
 }
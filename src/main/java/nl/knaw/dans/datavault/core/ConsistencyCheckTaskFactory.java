@@ -24,9 +24,11 @@ import nl.knaw.dans.lib.util.pollingtaskexec.TaskFactory;
 public class ConsistencyCheckTaskFactory implements TaskFactory<ConsistencyCheck> {
     private final ConsistencyCheckDao dao;
     private final LayeredItemStore layeredItemStore;
+    private final ShardedListingRecordsChecker shardedListingRecordsChecker;
+    private final FixityChecker fixityChecker;
 
     @Override
     public Runnable create(ConsistencyCheck record) {
-        return new ConsistencyCheckTask(dao, record, layeredItemStore);
+        return new ConsistencyCheckTask(dao, record, layeredItemStore, shardedListingRecordsChecker, fixityChecker);
     }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ContentDigestDao;
+import nl.knaw.dans.datavault.db.SharedContentDao;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Deduplicates content across objects. OCFL only deduplicates within an object, so identical files in different objects are stored once per object. This class looks up the digests of newly
+ * stored content files in the {@link ContentDigest content deduplication index} and replaces files whose content is already stored in the same staged layer with hard links to the stored file.
+ * Every replacement is recorded as {@link SharedContent}, for reporting the bytes saved.
+ * <p>
+ * The item store paths and the content of the files stay the same, so the item records and the consistency checks are not affected. The archives are, as GNU tar and DMFTAR store a hard
+ * link as a link entry without content of its own; therefore the links of a layer are replaced with copies of the content before it is archived, see {@link #unshareLayer(long)}, and before
+ * the top layer is replaced by a new one, see {@link #retireTopLayer(LayerSwitch)}. Only OCFL content files are deduplicated, as they are never modified after they have been written.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ContentDeduplicator {
+    private final ContentDigestDao contentDigestDao;
+    private final SharedContentDao sharedContentDao;
+    private final Path stagingRoot;
+    // Held for reading while files are linked and for writing while the top layer is replaced, so that no link is made in a layer after it has been unshared
+    private final ReadWriteLock topLayerLock = new ReentrantReadWriteLock();
+
+    /**
+     * Replaces the top layer, e.g. by calling {@link nl.knaw.dans.layerstore.LayeredItemStore#newTopLayer()}.
+     *
+     * @param <T> the result of the replacement
+     */
+    @FunctionalInterface
+    public interface LayerSwitch<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Deduplicates the given content files, which must just have been stored in the top layer. Errors are logged, but not thrown, as a file that is not deduplicated is still correct. Must be
+     * called within a unit of work.
+     *
+     * @param digestAlgorithm the OCFL name of the digest algorithm of the digests
+     * @param digestsByPath   the digests of the content files, by item store path
+     * @return the number of bytes saved
+     */
+    public long deduplicate(String digestAlgorithm, Map<String, String> digestsByPath) {
+        if (digestsByPath.isEmpty()) {
+            return 0;
+        }
+        topLayerLock.readLock().lock();
+        try {
+            return deduplicateInTopLayer(digestAlgorithm, digestsByPath);
+        }
+        finally {
+            topLayerLock.readLock().unlock();
+        }
+    }
+
+    private long deduplicateInTopLayer(String digestAlgorithm, Map<String, String> digestsByPath) {
+        long layerId;
+        try {
+            var layerIds = StagedLayers.listLayerIds(stagingRoot);
+            if (layerIds.isEmpty()) {
+                return 0;
+            }
+            layerId = layerIds.first();
+        }
+        catch (IOException e) {
+            log.warn("Could not find the top staged layer; content not deduplicated", e);
+            return 0;
+        }
+        var layerDir = stagingRoot.resolve(Long.toString(layerId));
+        long bytesSaved = 0;
+        for (var entry : digestsByPath.entrySet()) {
+            try {
+                bytesSaved += deduplicateFile(layerId, layerDir, entry.getKey(), digestAlgorithm, entry.getValue().toLowerCase());
+            }
+            catch (IOException e) {
+                log.warn("Could not deduplicate {}; it keeps its own copy of the content", entry.getKey(), e);
+            }
+        }
+        if (bytesSaved > 0) {
+            log.debug("Saved {} bytes by sharing content in layer {}", bytesSaved, layerId);
+        }
+        return bytesSaved;
+    }
+
+    /**
+     * Replaces the hard links in a staged layer with copies of the content, so that every file can be read back from the archive of the layer on its own. The shared content of the layer is
+     * forgotten, as it no longer saves any bytes. The top staged layer is left alone, as it is still written to and cannot be archived yet. Wrapped in a UnitOfWorkAwareProxy on app
+     * initialization, as it is called outside a unit of work.
+     *
+     * @param layerId the layer
+     * @return the number of files that were copied
+     * @throws IOException if a link could not be replaced
+     */
+    @UnitOfWork
+    public int unshareLayer(long layerId) throws IOException {
+        var layerIds = StagedLayers.listLayerIds(stagingRoot);
+        if (!layerIds.isEmpty() && layerIds.first() == layerId) {
+            return 0;
+        }
+        return unshareStagedLayer(layerId);
+    }
+
+    /**
+     * Replaces the hard links in the top staged layer with copies of the content and then replaces the top layer, so that the layer can be archived by the layer store without a separate call
+     * to {@link #unshareLayer(long)}. No content is linked until the top layer has been replaced. Must be called within a unit of work.
+     *
+     * @param layerSwitch replaces the top layer
+     * @param <T>         the result of the replacement
+     * @return the result of the replacement
+     * @throws IOException if a link could not be replaced or the top layer could not be replaced
+     */
+    public <T> T retireTopLayer(LayerSwitch<T> layerSwitch) throws IOException {
+        topLayerLock.writeLock().lock();
+        try {
+            var layerIds = StagedLayers.listLayerIds(stagingRoot);
+            if (!layerIds.isEmpty()) {
+                unshareStagedLayer(layerIds.first());
+            }
+            return layerSwitch.run();
+        }
+        finally {
+            topLayerLock.writeLock().unlock();
+        }
+    }
+
+    private int unshareStagedLayer(long layerId) throws IOException {
+        var layerDir = stagingRoot.resolve(Long.toString(layerId));
+        int copied = 0;
+        if (Files.isDirectory(layerDir)) {
+            try (var paths = Files.walk(layerDir)) {
+                for (var file : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                    // Checked again for every file, as the last of the files that share content is no longer linked when the others have been copied
+                    if ((int) Files.getAttribute(file, "unix:nlink") > 1) {
+                        // Copy next to the file and rename it over the file, so that the path never lacks content
+                        var copy = file.resolveSibling(file.getFileName() + ".unshare");
+                        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+                        Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        copied++;
+                    }
+                }
+            }
+        }
+        sharedContentDao.deleteByLayerId(layerId);
+        contentDigestDao.deleteByLayerId(layerId);
+        if (copied > 0) {
+            log.info("Replaced {} hard links with copies of the content in layer {}", copied, layerId);
+        }
+        return copied;
+    }
+
+    /**
+     * Forgets the content that is shared by or with the given item store paths, and with the files under them, after they have been deleted, so that the bytes saved are not reported for
+     * them anymore and no new file is linked to them. Wrapped in a UnitOfWorkAwareProxy on app initialization, as it is called outside a unit of work.
+     *
+     * @param paths the deleted files or directories
+     */
+    @UnitOfWork
+    public void forgetDeleted(List<String> paths) {
+        var forgotten = sharedContentDao.deleteByPaths(paths);
+        contentDigestDao.deleteByStoragePaths(paths);
+        if (forgotten > 0) {
+            log.debug("Forgot {} shared content files after deleting {}", forgotten, paths);
+        }
+    }
+
+    private long deduplicateFile(long layerId, Path layerDir, String path, String digestAlgorithm, String digest) throws IOException {
+        var file = layerDir.resolve(path);
+        if (!Files.isRegularFile(file)) {
+            // Not in the top staged layer, e.g. because a new layer was created in the meantime
+            return 0;
+        }
+        var stored = contentDigestDao.findByDigestAndLayerId(digest, layerId);
+        if (stored.isPresent() && !Files.isRegularFile(layerDir.resolve(stored.get().getStoragePath()))) {
+            // The stored file has been deleted, so this file takes its place
+            contentDigestDao.delete(stored.get());
+            stored = Optional.empty();
+        }
+        var size = Files.size(file);
+        if (stored.isEmpty()) {
+            contentDigestDao.save(ContentDigest.builder()
+                .digest(digest)
+                .digestAlgorithm(digestAlgorithm)
+                .storagePath(path)
+                .layerId(layerId)
+                .size(size)
+                .build());
+            return 0;
+        }
+        var source = layerDir.resolve(stored.get().getStoragePath());
+        if (Files.isSameFile(source, file)) {
+            return 0;
+        }
+        if (Files.size(source) != size) {
+            log.warn("{} and {} have the same {} digest, but a different size; not deduplicated", source, file, digestAlgorithm);
+            return 0;
+        }
+        // Link next to the file and rename it over the file, so that the path never lacks content
+        var link = file.resolveSibling(file.getFileName() + ".dedup");
+        Files.deleteIfExists(link);
+        Files.createLink(link, source);
+        Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sharedContentDao.create(SharedContent.builder()
+            .storagePath(path)
+            .sourcePath(stored.get().getStoragePath())
+            .digest(digest)
+            .layerId(layerId)
+            .size(size)
+            .created(OffsetDateTime.now())
+            .build());
+        return size;
+    }
+}
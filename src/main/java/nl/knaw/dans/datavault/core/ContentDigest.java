@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * An entry in the content deduplication index: the item store path at which content with a given digest was first stored in a layer. Other content files with the same digest that are
+ * stored in that layer while it is staged are replaced with hard links to this file. Hard links cannot cross layers, so each layer has entries of its own.
+ */
+@Entity
+@Table(name = "content_digest", indexes = @Index(name = "content_digest_digest_layer_idx", columnList = "digest, layer_id"))
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentDigest {
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    /**
+     * The digest of the content, as recorded in the inventory of the object. Not unique within a layer, as concurrent imports may both store the same content before seeing each other's
+     * entry; any of them can be used.
+     */
+    @Column(name = "digest", nullable = false)
+    private String digest;
+
+    @Column(name = "digest_algorithm", nullable = false)
+    private String digestAlgorithm;
+
+    @Column(name = "storage_path", nullable = false)
+    private String storagePath;
+
+    @Column(name = "layer_id", nullable = false)
+    private long layerId;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+}
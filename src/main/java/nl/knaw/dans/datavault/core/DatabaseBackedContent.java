@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.layerstore.Item;
+
+import java.nio.file.Path;
+
+/**
+ * The rule for which files have their content kept in the database instead of in the storage of a layer, as configured with the {@link nl.knaw.dans.lib.ocflext.StoreInventoryDbBackedContentManager}.
+ * The full and the incremental consistency checks both use it, so that they cannot disagree about whether such a file must be present in storage.
+ */
+public final class DatabaseBackedContent {
+    private DatabaseBackedContent() {
+    }
+
+    /**
+     * @param path an item store path
+     * @return whether the content of the file at the path is kept in the database, which is the case for inventories and their sidecars
+     */
+    public static boolean isDatabaseBacked(String path) {
+        return Path.of(path).getFileName().toString().startsWith("inventory.json");
+    }
+
+    /**
+     * @param path the item store path of a listing record
+     * @param type the type of the listing record
+     * @return whether the record is consistent with the storage of its layer without a file at the path
+     */
+    public static boolean mayBeAbsentFromStorage(String path, Item.Type type) {
+        return type == Item.Type.File && isDatabaseBacked(path);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.config.StorageLayoutConfig;
+import nl.knaw.dans.datavault.db.WriterLeaseDao;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks objects across the instances that share a database, with a {@link WriterLease} per object. Within the instance the objects are first locked with the striped locks, so that only one
+ * thread at a time asks the database for the lease of an object. The leases held are renewed every heartbeat interval, so that a lock outlives a long-running change, but not a crashed
+ * instance.
+ *
+ * Like the leases of the {@link ClusterCoordinator}, a lease is considered held only until shortly before it would expire, counted on this instance's clock from the moment it was last
+ * renewed. A lease that could not be renewed in time, or that was taken over, is never renewed again, and {@link #checkObjectLocked(String)} fails for it until the lock is released, so that
+ * the change is rolled back instead of committed.
+ */
+@Slf4j
+public class DatabaseObjectLockManager extends StripedObjectLockManager implements Managed {
+    private static final String LEASE_PREFIX = "object:";
+    private static final long POLL_INTERVAL_MILLIS = 500;
+
+    private final WriterLeaseDao writerLeaseDao;
+    private final String instanceId;
+    private final Duration leaseDuration;
+    private final Duration heartbeatInterval;
+    private final Duration timeout;
+    private final ScheduledExecutorService scheduledExecutorService;
+    // The number of times the lease of each object is held by this instance
+    private final Map<String, Integer> holdCounts = new ConcurrentHashMap<>();
+    // For every lease held, the moment on this instance's clock until which it is held; only changed within the compute of holdCounts for the same key, or by the thread acquiring it
+    private final Map<String, Long> leasesUntilNanos = new ConcurrentHashMap<>();
+
+    public DatabaseObjectLockManager(StorageLayoutConfig storageLayout, int numberOfStripes, Duration timeout, WriterLeaseDao writerLeaseDao, String instanceId,
+        Duration leaseDuration, Duration heartbeatInterval, ScheduledExecutorService scheduledExecutorService) {
+        super(storageLayout, numberOfStripes, timeout);
+        if (heartbeatInterval.multipliedBy(2).compareTo(leaseDuration) > 0) {
+            throw new IllegalArgumentException("leaseDuration must be at least twice the heartbeatInterval");
+        }
+        this.writerLeaseDao = writerLeaseDao;
+        this.instanceId = instanceId;
+        this.leaseDuration = leaseDuration;
+        this.heartbeatInterval = heartbeatInterval;
+        this.timeout = timeout;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    @Override
+    public void start() {
+        scheduledExecutorService.scheduleWithFixedDelay(this::renewLeases, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        for (var key : holdCounts.keySet()) {
+            writerLeaseDao.release(LEASE_PREFIX + key, instanceId);
+        }
+    }
+
+    @Override
+    protected Lock lock(SortedSet<String> keys) {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        var stripes = lockStripes(keys, deadline);
+        var held = new ArrayList<String>();
+        try {
+            // In the order of the keys, so that instances locking more than one object do not deadlock each other
+            for (var key : keys) {
+                var count = holdCounts.merge(key, 1, Integer::sum);
+                held.add(key);
+                if (count == 1) {
+                    acquireLease(key, deadline);
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            release(held, stripes);
+            throw e;
+        }
+        return () -> release(held, stripes);
+    }
+
+    private void release(List<String> keys, List<ReentrantLock> stripes) {
+        try {
+            for (var key : keys) {
+                holdCounts.computeIfPresent(key, (k, count) -> {
+                    if (count > 1) {
+                        return count - 1;
+                    }
+                    leasesUntilNanos.remove(k);
+                    writerLeaseDao.release(LEASE_PREFIX + key, instanceId);
+                    return null;
+                });
+            }
+        }
+        finally {
+            unlockStripes(stripes);
+        }
+    }
+
+    private void acquireLease(String key, long deadline) {
+        var acquiredAt = System.nanoTime();
+        while (!writerLeaseDao.tryAcquire(LEASE_PREFIX + key, instanceId, leaseDuration)) {
+            acquiredAt = System.nanoTime();
+            if (acquiredAt - deadline > 0) {
+                throw new IllegalStateException("Timed out waiting for the lock on object " + key + ", which is held by another instance");
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the lock on object " + key, e);
+            }
+        }
+        leasesUntilNanos.put(key, heldUntil(acquiredAt));
+    }
+
+    @Override
+    protected void checkLocked(String key) {
+        var until = leasesUntilNanos.get(key);
+        if (until == null || System.nanoTime() - until >= 0) {
+            throw new IllegalStateException("Instance " + instanceId + " lost the lock on object " + key + "; the change is not committed");
+        }
+    }
+
+    void renewLeases() {
+        for (var key : holdCounts.keySet()) {
+            try {
+                // Within compute, so that the lease cannot be released at the same time
+                holdCounts.computeIfPresent(key, (k, count) -> {
+                    var until = leasesUntilNanos.get(k);
+                    var renewedAt = System.nanoTime();
+                    // Not acquired yet, or already lost; a lost lease is not renewed, as another instance may have changed the object in the meantime
+                    if (until == null || renewedAt - until >= 0) {
+                        return count;
+                    }
+                    if (writerLeaseDao.tryAcquire(LEASE_PREFIX + k, instanceId, leaseDuration)) {
+                        leasesUntilNanos.put(k, heldUntil(renewedAt));
+                    }
+                    else {
+                        log.error("Instance {} lost the lock on object {} while changing it; the change will be rolled back", instanceId, k);
+                        leasesUntilNanos.put(k, renewedAt);
+                    }
+                    return count;
+                });
+            }
+            catch (RuntimeException e) {
+                // The lease runs out by itself if this keeps failing
+                log.error("Could not renew the lock on object {}", key, e);
+            }
+        }
+    }
+
+    // One heartbeat interval short of the lease, to allow for clock differences between the instances
+    private long heldUntil(long renewedAt) {
+        return renewedAt + leaseDuration.minus(heartbeatInterval).toNanos();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Performs the init checks of the {@link OcflRepositoryProvider}s of all shards in the background, so that the service can serve read requests while they are running. Must be started after the repository
+ * provider, so that everything the provider wrote on startup has been committed. The {@link ServiceReadiness} is set when the checks are done.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DeferredInitChecks implements Managed {
+    private final List<OcflRepositoryProvider> ocflRepositoryProviders;
+    private final ServiceReadiness serviceReadiness;
+    private final ExecutorService executorService;
+
+    @Override
+    public void start() {
+        executorService.execute(() -> {
+            try {
+                for (var ocflRepositoryProvider : ocflRepositoryProviders) {
+                    ocflRepositoryProvider.performDeferredInitChecks();
+                }
+                serviceReadiness.setReady();
+            }
+            catch (Exception e) {
+                log.error("Init checks failed", e);
+                serviceReadiness.setFailed("Init checks failed: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import io.dropwizard.lifecycle.Managed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.DirectoryCopyDao;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a directory tree from the local file system into the item store, writing the files straight into the top layer instead of staging a copy of the tree first. The files are divided
+ * into batches that are written in parallel, each in a unit of work of its own. If any batch fails, the destination directory is deleted again, so that the copy is all or nothing.
+ *
+ * Every copy is recorded as a {@link DirectoryCopy} before anything is written. If the service stops in the middle of a copy, the partial destination is removed by the writer instance
+ * when the service is started again, or, if another instance was the writer at that moment, before the first copy that this instance makes once it has become the writer.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DirectoryCopier implements Managed {
+    private final UnitOfWorkAwareProxyFactory unitOfWorkAwareProxyFactory;
+    // Must not be wrapped in units of work, as it is called from within the units of work of the batches
+    private final ItemStore itemStore;
+    // Wrapped in a UnitOfWorkAwareProxy, for the calls outside the batches
+    private final ItemStore unitOfWorkItemStore;
+    private final DirectoryCopyDao directoryCopyDao;
+    private final ExecutorService executorService;
+    private final int filesPerBatch;
+    // Null if the service does not run in a cluster
+    private final ClusterCoordinator clusterCoordinator;
+
+    private boolean leftoversRemoved;
+
+    @Override
+    public void start() throws IOException {
+        if (clusterCoordinator != null && !clusterCoordinator.isWriter()) {
+            log.info("Not the writer of the layer store; leaving interrupted directory copies to be cleaned up later");
+            return;
+        }
+        removeLeftovers();
+    }
+
+    /**
+     * Copies the source directory to the destination in the item store. The caller must hold the lock on the destination path, so that it cannot be created by another request between the
+     * check that it does not exist yet and the copy.
+     *
+     * @param source      the directory to copy
+     * @param destination the path of the new directory in the item store
+     * @throws IllegalStateException if the destination already exists
+     * @throws IOException           if the copy failed; the destination has been removed again
+     * @throws InterruptedException  if interrupted while waiting for the batches; the destination has been removed again
+     */
+    public void copy(Path source, String destination) throws IOException, InterruptedException {
+        removeLeftovers();
+        if (exists(destination)) {
+            throw new IllegalStateException("Destination already exists: " + destination);
+        }
+        var directories = new ArrayList<Path>();
+        var files = new ArrayList<Path>();
+        try (var paths = Files.walk(source)) {
+            paths.forEach(path -> (Files.isDirectory(path) ? directories : files).add(source.relativize(path)));
+        }
+        directoryCopyDao.create(destination);
+        try {
+            // The directories first, so that the batches of files can be written in any order
+            createBatch(source, destination, directories, List.of()).call();
+            var batches = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < files.size(); i += filesPerBatch) {
+                batches.add(executorService.submit(createBatch(source, destination, List.of(), files.subList(i, Math.min(i + filesPerBatch, files.size())))));
+            }
+            awaitAll(batches);
+            log.debug("Copied {} directories and {} files from {} to item store at {}", directories.size(), files.size(), source, destination);
+        }
+        catch (IOException | InterruptedException | RuntimeException e) {
+            rollBack(destination, e);
+            throw e;
+        }
+        directoryCopyDao.delete(destination);
+    }
+
+    /*
+     * Synchronized, so that no copy is recorded by this instance before the records of the interrupted copies have been dealt with.
+     */
+    private synchronized void removeLeftovers() throws IOException {
+        if (leftoversRemoved) {
+            return;
+        }
+        for (var copy : directoryCopyDao.findAll()) {
+            var destination = copy.getDestination();
+            log.warn("Removing {} from the item store, as the copy to it that was started at {} was interrupted", destination, copy.getStarted());
+            if (exists(destination)) {
+                unitOfWorkItemStore.deleteDirectory(destination);
+            }
+            directoryCopyDao.delete(destination);
+        }
+        leftoversRemoved = true;
+    }
+
+    /*
+     * Looks the path up segment by segment, as existsPathLike would treat the wildcards of a LIKE pattern in the path as wildcards and could match other paths.
+     */
+    private boolean exists(String path) throws IOException {
+        var parent = "";
+        var segments = path.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            var current = parent.isEmpty() ? segments[i] : parent + "/" + segments[i];
+            var item = unitOfWorkItemStore.listDirectory(parent).stream()
+                .filter(it -> it.getPath().equals(current))
+                .findFirst();
+            if (item.isEmpty()) {
+                return false;
+            }
+            if (i < segments.length - 1 && item.get().getType() != Item.Type.Directory) {
+                return false;
+            }
+            parent = current;
+        }
+        return true;
+    }
+
+    private DirectoryCopyBatch createBatch(Path source, String destination, List<Path> directories, List<Path> files) {
+        return unitOfWorkAwareProxyFactory.create(
+            DirectoryCopyBatch.class,
+            new Class[] { ItemStore.class, Path.class, String.class, List.class, List.class },
+            new Object[] { itemStore, source, destination, directories, files });
+    }
+
+    private void awaitAll(List<Future<Integer>> batches) throws IOException, InterruptedException {
+        IOException failure = null;
+        try {
+            // Wait for all batches, also after a failure, so that none is still writing when the destination is deleted
+            for (var batch : batches) {
+                try {
+                    batch.get();
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException ioException ? ioException : new IOException("Could not copy batch of files", e.getCause());
+                        batches.forEach(b -> b.cancel(false));
+                    }
+                }
+                catch (CancellationException e) {
+                    // Cancelled after an earlier failure
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            batches.forEach(b -> b.cancel(true));
+            throw e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void rollBack(String destination, Exception cause) {
+        log.error("Copy to item store at {} failed; removing the destination again", destination, cause);
+        try {
+            unitOfWorkItemStore.deleteDirectory(destination);
+            directoryCopyDao.delete(destination);
+        }
+        catch (IOException | RuntimeException e) {
+            log.error("Could not remove {} after failed copy", destination, e);
+            cause.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.OffsetDateTime;
+
+/**
+ * A copy of a directory into the item store that has been started by the {@link DirectoryCopier} and has not been completed or rolled back yet. If the service stops in the middle of a copy,
+ * the record is left behind, so that the partial destination can be removed when the service is started again.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity(name = "directory_copy")
+public class DirectoryCopy {
+    @Id
+    @Column(nullable = false, length = 1024)
+    private String destination;
+
+    @Column(nullable = false)
+    private OffsetDateTime started;
+}
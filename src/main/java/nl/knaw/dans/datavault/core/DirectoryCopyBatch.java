@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.layerstore.ItemStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes a batch of directories and files from a source directory into the item store. Runs in a unit of work of its own, so that the listing records of the batch are inserted in one
+ * transaction.
+ */
+@RequiredArgsConstructor
+public class DirectoryCopyBatch implements Callable<Integer> {
+    private final ItemStore itemStore;
+    private final Path source;
+    private final String destination;
+    // Relative to the source
+    private final List<Path> directories;
+    // Relative to the source
+    private final List<Path> files;
+
+    @Override
+    @UnitOfWork
+    public Integer call() throws IOException {
+        for (var directory : directories) {
+            itemStore.createDirectories(resolve(directory));
+        }
+        for (var file : files) {
+            try (var is = Files.newInputStream(source.resolve(file))) {
+                itemStore.writeFile(resolve(file), is);
+            }
+        }
+        return files.size();
+    }
+
+    private String resolve(Path relativePath) {
+        var path = relativePath.toString().replace('\\', '/');
+        if (path.isEmpty()) {
+            return destination;
+        }
+        return destination.isEmpty() ? path : destination + "/" + path;
+    }
+}
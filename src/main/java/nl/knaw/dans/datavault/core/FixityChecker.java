@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.core.ConsistencyCheck.Result;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.FixityMismatchDao;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Performs a FIXITY check: recomputes the digests of the content files in the staged layers and compares them with the digests in the inventories of the objects. The objects are divided over
+ * {@link ConsistencyCheckShard shards} that are checked in parallel, with the combined read rate limited by an {@link IoThrottle}, so that the check does not starve ingest. Progress is recorded
+ * per shard, and mismatches are recorded per object as {@link FixityMismatch}es.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FixityChecker {
+    private final UnitOfWorkAwareProxyFactory unitOfWorkAwareProxyFactory;
+    private final ConsistencyCheckShardDao shardDao;
+    private final FixityMismatchDao fixityMismatchDao;
+    // Must not be wrapped in units of work, as it is called from within the units of work of the shard operations
+    private final RepositoryProvider repositoryProvider;
+    private final ExecutorService executorService;
+    private final Path stagingRoot;
+    private final IoThrottle ioThrottle;
+
+    /**
+     * Checks the shards of the given check that are not finished yet and combines the results of all its shards. Must be called within a unit of work.
+     *
+     * @param consistencyCheck the FIXITY check
+     * @return the combined result
+     * @throws IOException          if the objects could not be divided over shards
+     * @throws InterruptedException if interrupted while waiting for the shards
+     */
+    public ConsistencyCheckOutcome check(ConsistencyCheck consistencyCheck) throws IOException, InterruptedException {
+        var pendingShardIds = planShards(consistencyCheck);
+        var operations = unitOfWorkAwareProxyFactory.create(
+            FixityShardOperations.class,
+            new Class[] { ConsistencyCheckShardDao.class, FixityMismatchDao.class, RepositoryProvider.class },
+            new Object[] { shardDao, fixityMismatchDao, repositoryProvider });
+        var shardChecks = pendingShardIds.stream()
+            .map(shardId -> new FixityShardCheck(shardId, consistencyCheck.getId(), consistencyCheck.getSampleRate(), operations, stagingRoot, ioThrottle))
+            .toList();
+        for (var future : executorService.invokeAll(shardChecks)) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedIOException || e.getCause() instanceof ClosedByInterruptException) {
+                    // The check must not be finished, so that it resumes with the unfinished shards
+                    throw new InterruptedException("Fixity check " + consistencyCheck.getId() + " was interrupted");
+                }
+                log.error("Shard of fixity check {} failed", consistencyCheck.getId(), e.getCause());
+            }
+        }
+        return combineResults(consistencyCheck.getId());
+    }
+
+    private List<UUID> planShards(ConsistencyCheck consistencyCheck) throws IOException, InterruptedException {
+        var planner = unitOfWorkAwareProxyFactory.create(
+            FixityShardPlanner.class,
+            new Class[] { UUID.class, String.class, ConsistencyCheckShardDao.class, RepositoryProvider.class },
+            new Object[] { consistencyCheck.getId(), consistencyCheck.getObjectIdPrefix(), shardDao, repositoryProvider });
+        try {
+            // On a worker thread, because the shards must be committed in a unit of work of their own
+            return executorService.submit(planner).get();
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Could not divide objects over shards", e.getCause());
+        }
+    }
+
+    private ConsistencyCheckOutcome combineResults(UUID consistencyCheckId) {
+        var shards = shardDao.findByConsistencyCheckId(consistencyCheckId);
+        long filesChecked = 0;
+        long filesSkipped = 0;
+        long unfinished = 0;
+        long failed = 0;
+        for (var shard : shards) {
+            if (shard.getFinished() == null) {
+                unfinished++;
+                continue;
+            }
+            filesChecked += shard.getRecordsChecked();
+            filesSkipped += shard.getItemsSkipped() == null ? 0 : shard.getItemsSkipped();
+            if (shard.getResult() == Result.ERROR) {
+                failed++;
+            }
+        }
+        var mismatches = fixityMismatchDao.countByConsistencyCheckId(consistencyCheckId);
+        var message = String.format("%d files checked, %d files in archived layers skipped, %d mismatches", filesChecked, filesSkipped, mismatches);
+        Result result;
+        if (unfinished > 0 || failed > 0) {
+            result = Result.ERROR;
+            message += String.format("; %d shards failed and %d shards did not finish", failed, unfinished);
+        }
+        else {
+            result = mismatches == 0 ? Result.OK : Result.NOT_OK;
+        }
+        log.info("Fixity check {} finished with result {}: {}", consistencyCheckId, result, message);
+        return new ConsistencyCheckOutcome(result, message);
+    }
+}
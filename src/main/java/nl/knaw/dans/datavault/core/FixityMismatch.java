@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * A problem found by a FIXITY check: a file whose content does not match the digest in the inventory, or an object that could not be checked at all.
+ */
+@Entity
+@Table(name = "fixity_mismatch")
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FixityMismatch {
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @Column(name = "consistency_check_id", nullable = false)
+    private UUID consistencyCheckId;
+
+    @Column(name = "object_id", nullable = false)
+    private String objectId;
+
+    /**
+     * The path of the file relative to the storage root, or null if the object as a whole could not be checked.
+     */
+    @Column(name = "storage_relative_path")
+    private String storageRelativePath;
+
+    @Column(name = "digest_algorithm")
+    private String digestAlgorithm;
+
+    @Column(name = "expected_digest")
+    private String expectedDigest;
+
+    @Column(name = "actual_digest")
+    private String actualDigest;
+
+    @Column(name = "message")
+    @Lob
+    private String message;
+}
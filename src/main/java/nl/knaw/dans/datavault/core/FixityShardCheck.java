@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Recomputes the digests of the content files of the objects in one shard of a FIXITY check and compares them with the digests in the inventories. Only files that are present in a staged
+ * layer are checked; files that are only available in archived layers are counted as skipped. Reads are throttled by an {@link IoThrottle} that is shared by all shards.
+ *
+ * The progress is committed after every object, through the {@link FixityShardOperations}, and no transaction is open while content is read. If the check is interrupted, for example because
+ * the service is shutting down, the shard is left unfinished and resumes after the last object that was committed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FixityShardCheck implements Callable<Void> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Map<String, String> JAVA_DIGEST_ALGORITHMS = Map.of(
+        "md5", "MD5",
+        "sha1", "SHA-1",
+        "sha256", "SHA-256",
+        "sha512", "SHA-512");
+
+    private final UUID shardId;
+    private final UUID consistencyCheckId;
+    private final Double sampleRate;
+    private final FixityShardOperations operations;
+    private final Path stagingRoot;
+    private final IoThrottle ioThrottle;
+
+    @Override
+    public Void call() throws IOException {
+        var shard = operations.start(shardId);
+        var objectIds = shard.getObjectIds().split("\n");
+        var objectsDone = shard.getObjectsChecked() == null ? 0 : shard.getObjectsChecked();
+        if (objectsDone > 0) {
+            log.debug("Resuming fixity check of shard starting at object {} after {} objects", shard.getPathPrefix(), objectsDone);
+        }
+        else {
+            log.debug("Checking fixity of shard starting at object {}", shard.getPathPrefix());
+        }
+        try {
+            // Listed once for the shard; a layer that is archived in the meantime only makes its files count as skipped
+            var stagedLayerIds = StagedLayers.listLayerIds(stagingRoot);
+            for (int i = objectsDone; i < objectIds.length; i++) {
+                if (isSampled(objectIds[i])) {
+                    checkObject(objectIds[i], i + 1, stagedLayerIds);
+                }
+            }
+            operations.finish(shardId);
+        }
+        catch (InterruptedIOException | ClosedByInterruptException e) {
+            log.warn("Fixity check of shard starting at object {} was interrupted", shard.getPathPrefix());
+            throw e;
+        }
+        catch (IOException | RuntimeException e) {
+            log.error("Error checking fixity of shard starting at object {}", shard.getPathPrefix(), e);
+            operations.fail(shardId, e);
+        }
+        return null;
+    }
+
+    private boolean isSampled(String objectId) {
+        if (sampleRate == null || sampleRate >= 1.0) {
+            return true;
+        }
+        // Deterministic for a given check, so that a resumed shard checks the same objects
+        return Math.floorMod((consistencyCheckId + objectId).hashCode(), 1_000_000) < sampleRate * 1_000_000;
+    }
+
+    private void checkObject(String objectId, int objectsChecked, NavigableSet<Long> stagedLayerIds) throws IOException {
+        var mismatches = new ArrayList<FixityMismatch>();
+        var objectFiles = operations.listFiles(objectId);
+        if (objectFiles.isEmpty()) {
+            mismatches.add(createMismatch(FixityMismatch.builder().objectId(objectId).message("Object not found")));
+            operations.recordObject(shardId, objectsChecked, 0, 0, mismatches);
+            return;
+        }
+        var algorithm = objectFiles.get().digestAlgorithm();
+        var javaAlgorithm = JAVA_DIGEST_ALGORITHMS.get(algorithm);
+        if (javaAlgorithm == null) {
+            mismatches.add(createMismatch(FixityMismatch.builder().objectId(objectId).digestAlgorithm(algorithm).message("Unsupported digest algorithm")));
+            operations.recordObject(shardId, objectsChecked, 0, 0, mismatches);
+            return;
+        }
+        long filesChecked = 0;
+        long filesSkipped = 0;
+        for (var file : objectFiles.get().expectedDigests().entrySet()) {
+            if (checkFile(objectId, file.getKey(), javaAlgorithm, algorithm, file.getValue(), stagedLayerIds, mismatches)) {
+                filesChecked++;
+            }
+            else {
+                filesSkipped++;
+            }
+        }
+        operations.recordObject(shardId, objectsChecked, filesChecked, filesSkipped, mismatches);
+    }
+
+    private boolean checkFile(String objectId, String storageRelativePath, String javaAlgorithm, String algorithm, String expectedDigest, NavigableSet<Long> stagedLayerIds,
+        List<FixityMismatch> mismatches) throws IOException {
+        var stagedFile = StagedLayers.findFile(stagingRoot, stagedLayerIds, storageRelativePath);
+        if (stagedFile.isEmpty()) {
+            return false;
+        }
+        String actualDigest;
+        try {
+            actualDigest = computeDigest(stagedFile.get(), javaAlgorithm);
+        }
+        catch (NoSuchFileException e) {
+            // The layer was archived after the staging root was listed
+            return false;
+        }
+        if (!actualDigest.equalsIgnoreCase(expectedDigest)) {
+            log.error("Fixity mismatch in object {}: {} has {} digest {}, expected {}", objectId, storageRelativePath, algorithm, actualDigest, expectedDigest);
+            mismatches.add(createMismatch(FixityMismatch.builder()
+                .objectId(objectId)
+                .storageRelativePath(storageRelativePath)
+                .digestAlgorithm(algorithm)
+                .expectedDigest(expectedDigest)
+                .actualDigest(actualDigest)
+                .message("Digest mismatch")));
+        }
+        return true;
+    }
+
+    private String computeDigest(Path file, String javaAlgorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(javaAlgorithm);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Digest algorithm not available: " + javaAlgorithm, e);
+        }
+        var buffer = new byte[BUFFER_SIZE];
+        try (var in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                ioThrottle.acquire(n);
+                digest.update(buffer, 0, n);
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private FixityMismatch createMismatch(FixityMismatch.FixityMismatchBuilder builder) {
+        return builder.consistencyCheckId(consistencyCheckId).build();
+    }
+}
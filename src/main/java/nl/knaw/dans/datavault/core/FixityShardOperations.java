@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.core.ConsistencyCheck.Result;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.FixityMismatchDao;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The database work of a {@link FixityShardCheck}. Each operation runs in a unit of work of its own, so that no transaction stays open while content is read at the throttled rate, and the
+ * progress of a shard is committed after every object. Wrapped in a UnitOfWorkAwareProxy by the {@link FixityChecker}.
+ */
+@RequiredArgsConstructor
+public class FixityShardOperations {
+    private final ConsistencyCheckShardDao shardDao;
+    private final FixityMismatchDao fixityMismatchDao;
+    // Must not be wrapped in units of work, as it is called from within the units of work of these operations
+    private final RepositoryProvider repositoryProvider;
+
+    /**
+     * The content files of an object with the digests recorded in its inventory.
+     *
+     * @param digestAlgorithm the digest algorithm of the object
+     * @param expectedDigests the expected digest by storage relative path
+     */
+    public record ObjectFiles(String digestAlgorithm, Map<String, String> expectedDigests) {}
+
+    @UnitOfWork
+    public ConsistencyCheckShard start(UUID shardId) {
+        return shardDao.start(shardDao.get(shardId));
+    }
+
+    /**
+     * @param objectId the object
+     * @return the content files of all versions of the object, or empty if the object does not exist
+     */
+    @UnitOfWork
+    public Optional<ObjectFiles> listFiles(String objectId) {
+        var details = repositoryProvider.describeObject(objectId);
+        if (details.isEmpty()) {
+            return Optional.empty();
+        }
+        var algorithm = details.get().getDigestAlgorithm();
+        var head = details.get().getHeadVersionNum();
+        var headNumber = Integer.parseInt(head.substring(1));
+        var expectedDigests = new LinkedHashMap<String, String>();
+        for (int v = 1; v <= headNumber; v++) {
+            var files = repositoryProvider.listFiles(objectId, formatVersion(v, head))
+                .orElseThrow(() -> new NoSuchElementException("Version missing from object " + objectId));
+            for (var file : files) {
+                // Unchanged files occur in every version, but are stored only once
+                expectedDigests.putIfAbsent(file.getStorageRelativePath(), file.getFixity().get(algorithm));
+            }
+        }
+        return Optional.of(new ObjectFiles(algorithm, expectedDigests));
+    }
+
+    /**
+     * Records the outcome of one object and the position of the shard in its list of objects, so that a resumed shard continues after it.
+     *
+     * @param shardId        the shard
+     * @param objectsChecked the number of objects of the shard that are done, including this one
+     * @param filesChecked   the number of files of the object whose digest was verified
+     * @param filesSkipped   the number of files of the object that are only available in archived layers
+     * @param mismatches     the mismatches found in the object
+     */
+    @UnitOfWork
+    public void recordObject(UUID shardId, int objectsChecked, long filesChecked, long filesSkipped, List<FixityMismatch> mismatches) {
+        mismatches.forEach(fixityMismatchDao::create);
+        shardDao.recordProgress(shardDao.get(shardId), objectsChecked, filesChecked, filesSkipped, mismatches.size());
+    }
+
+    @UnitOfWork
+    public void finish(UUID shardId) {
+        var shard = shardDao.get(shardId);
+        var filesChecked = valueOf(shard.getRecordsChecked());
+        var mismatches = valueOf(shard.getMismatches());
+        var summary = String.format("%d files checked, %d files in archived layers skipped, %d mismatches", filesChecked, valueOf(shard.getItemsSkipped()), mismatches);
+        shardDao.finish(shard, filesChecked, mismatches == 0 ? Result.OK : Result.NOT_OK, summary);
+    }
+
+    @UnitOfWork
+    public void fail(UUID shardId, Exception e) {
+        var shard = shardDao.get(shardId);
+        shardDao.finish(shard, valueOf(shard.getRecordsChecked()), Result.ERROR, e.getClass().getName() + ": " + e.getMessage());
+    }
+
+    private static long valueOf(Long value) {
+        return value == null ? 0 : value;
+    }
+
+    private static String formatVersion(int version, String head) {
+        // Keep the zero-padding of the object, if any
+        if (head.length() > 2 && head.charAt(1) == '0') {
+            return "v" + String.format("%0" + (head.length() - 1) + "d", version);
+        }
+        return "v" + version;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Divides the objects to be checked by a FIXITY check over shards, or, if the check was interrupted before, finds the shards that have not been finished yet. Runs in its own unit of work, so
+ * that the shards are committed before the workers start on them.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FixityShardPlanner implements Callable<List<UUID>> {
+    private static final int OBJECTS_PER_SHARD = 50;
+
+    private final UUID consistencyCheckId;
+    private final String objectIdPrefix;
+    private final ConsistencyCheckShardDao shardDao;
+    private final RepositoryProvider repositoryProvider;
+
+    @Override
+    @UnitOfWork
+    public List<UUID> call() {
+        var shards = new ArrayList<>(shardDao.findByConsistencyCheckId(consistencyCheckId));
+        if (shards.isEmpty()) {
+            var objectIds = repositoryProvider.listObjectIds().stream()
+                .filter(id -> objectIdPrefix == null || id.startsWith(objectIdPrefix))
+                .sorted()
+                .toList();
+            for (int i = 0; i < objectIds.size(); i += OBJECTS_PER_SHARD) {
+                var shardObjectIds = objectIds.subList(i, Math.min(i + OBJECTS_PER_SHARD, objectIds.size()));
+                var shard = new ConsistencyCheckShard(consistencyCheckId, shardObjectIds.get(0));
+                shard.setObjectIds(String.join("\n", shardObjectIds));
+                shards.add(shardDao.create(shard));
+            }
+            log.info("Split fixity check {} of {} objects into {} shards", consistencyCheckId, objectIds.size(), shards.size());
+        }
+        else {
+            log.info("Resuming fixity check {}", consistencyCheckId);
+        }
+        var pending = shards.stream()
+            .filter(shard -> shard.getFinished() == null)
+            .map(ConsistencyCheckShard::getId)
+            .toList();
+        log.info("{} of {} shards of fixity check {} still to be checked", pending.size(), shards.size(), consistencyCheckId);
+        return pending;
+    }
+}
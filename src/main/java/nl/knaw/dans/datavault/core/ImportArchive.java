@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarFile;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A TAR or ZIP file in the inbox that takes the place of a batch directory or an object import directory. The entries are mapped to paths under a mount point, so that the layout of the
+ * archive can be validated as if it were unpacked, while the content files are streamed from the archive when the versions are added. Only the listing of the archive is read on opening;
+ * nothing is extracted to disk.
+ */
+@Slf4j
+public class ImportArchive implements Closeable {
+    private static final List<String> EXTENSIONS = List.of(".zip", ".tar");
+
+    @FunctionalInterface
+    private interface EntryContent {
+        InputStream open() throws IOException;
+    }
+
+    private final Path archive;
+    /**
+     * The path that the root of the archive is mapped to.
+     */
+    @Getter
+    private final Path mountPoint;
+    // The ZipFile, or null for a TAR file, which is only opened to read the listing
+    private final Closeable archiveFile;
+    // Sorted, so that the files under a directory form a contiguous range
+    private final TreeMap<String, EntryContent> files = new TreeMap<>();
+    private final Map<String, SortedSet<String>> directories = new HashMap<>();
+
+    private ImportArchive(Path archive, Path mountPoint) throws IOException {
+        this.archive = archive;
+        this.mountPoint = mountPoint;
+        directories.put("", new TreeSet<>());
+        if (archive.getFileName().toString().endsWith(".tar")) {
+            // Only the listing is read through the TarFile; see openTarEntry
+            archiveFile = null;
+            try (var tarFile = new TarFile(archive)) {
+                for (var entry : tarFile.getEntries()) {
+                    // Checked first, as isFile() is also true for hard links, which have no content of their own
+                    if (entry.isSymbolicLink() || entry.isLink() || entry.isSparse() || !entry.isDirectory() && !entry.isFile()) {
+                        throw new IllegalArgumentException("Unsupported entry type in import archive " + archive + ": " + entry.getName());
+                    }
+                    var offset = entry.getDataOffset();
+                    var size = entry.getSize();
+                    addEntry(entry.getName(), entry.isDirectory() ? null : () -> openTarEntry(offset, size));
+                }
+            }
+        }
+        else {
+            var zipFile = new ZipFile(archive.toFile());
+            archiveFile = zipFile;
+            try {
+                var entries = zipFile.getEntries();
+                while (entries.hasMoreElements()) {
+                    var entry = entries.nextElement();
+                    if (entry.isUnixSymlink()) {
+                        throw new IllegalArgumentException("Unsupported entry type in import archive " + archive + ": " + entry.getName());
+                    }
+                    addEntry(entry.getName(), entry.isDirectory() ? null : () -> zipFile.getInputStream(entry));
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                zipFile.close();
+                throw e;
+            }
+        }
+        log.debug("Opened import archive {} with {} files", archive, files.size());
+    }
+
+    /**
+     * @param path a path in the inbox
+     * @return whether the path is a TAR or ZIP file that can be imported
+     */
+    public static boolean isImportArchive(Path path) {
+        var name = path.getFileName().toString();
+        return Files.isRegularFile(path) && EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * Opens an archive that contains a batch, i.e. with an object import directory for every top-level directory. The archive itself is the mount point.
+     *
+     * @param archive the TAR or ZIP file
+     * @return the opened archive
+     * @throws IOException if the archive cannot be read
+     */
+    public static ImportArchive openBatch(Path archive) throws IOException {
+        return new ImportArchive(archive, archive);
+    }
+
+    /**
+     * Opens an archive that contains a single object import directory, i.e. with the version directories and version info JSON files at the top level. The mount point is the name of the
+     * archive without its extension, so that it can be used as the object identifier.
+     *
+     * @param archive the TAR or ZIP file
+     * @return the opened archive
+     * @throws IOException if the archive cannot be read
+     */
+    public static ImportArchive openObject(Path archive) throws IOException {
+        var name = archive.getFileName().toString();
+        return new ImportArchive(archive, archive.resolveSibling(name.substring(0, name.lastIndexOf('.'))));
+    }
+
+    /**
+     * @param dir a directory under the mount point
+     * @return the entries directly under the directory, in order of name
+     */
+    public List<Path> list(Path dir) {
+        var children = directories.get(toEntryName(dir));
+        if (children == null) {
+            throw new IllegalArgumentException("Not a directory in import archive " + archive + ": " + dir);
+        }
+        return children.stream().map(dir::resolve).toList();
+    }
+
+    public boolean isDirectory(Path path) {
+        return directories.containsKey(toEntryName(path));
+    }
+
+    /**
+     * @param jsonFile the path of a version info JSON file under the mount point
+     * @return the parsed file
+     * @throws IOException if the file cannot be read or is not valid JSON
+     */
+    public VersionInfoJsonReader readVersionInfo(Path jsonFile) throws IOException {
+        var content = files.get(toEntryName(jsonFile));
+        if (content == null) {
+            throw new IllegalArgumentException("Version info JSON file does not exist: " + jsonFile);
+        }
+        try (var in = content.open()) {
+            return new VersionInfoJsonReader(in);
+        }
+    }
+
+    /**
+     * @param versionDir a version directory under the mount point
+     * @return the content files of the version, read from the archive on demand
+     */
+    public VersionContent getVersionContent(Path versionDir) {
+        var prefix = toEntryName(versionDir) + "/";
+        // '0' is the character after '/', so this is exactly the range of paths that start with the prefix
+        var versionFiles = files.subMap(prefix, prefix.substring(0, prefix.length() - 1) + "0");
+        return new VersionContent() {
+
+            @Override
+            public List<String> listFiles() {
+                return versionFiles.keySet().stream().map(name -> name.substring(prefix.length())).toList();
+            }
+
+            @Override
+            public InputStream openFile(String logicalPath) throws IOException {
+                var content = versionFiles.get(prefix + logicalPath);
+                if (content == null) {
+                    throw new IOException("File not found in import archive " + archive + ": " + prefix + logicalPath);
+                }
+                return content.open();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (archiveFile != null) {
+            archiveFile.close();
+        }
+    }
+
+    /*
+     * The objects of a batch are imported in parallel. A TarFile reads its entries by positioning its one channel and then reading from it, so concurrent readers would get each other's
+     * bytes. Every reader therefore gets a channel of its own. A ZipFile reads with positional reads, so it can be shared.
+     */
+    private InputStream openTarEntry(long offset, long size) throws IOException {
+        var channel = FileChannel.open(archive, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+            return new BoundedInputStream(new BufferedInputStream(Channels.newInputStream(channel)), size);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void addEntry(String entryName, EntryContent content) {
+        var name = normalize(entryName);
+        if (name.isEmpty()) {
+            return;
+        }
+        if (files.containsKey(name) || (content != null && directories.containsKey(name))) {
+            throw new IllegalArgumentException("Duplicate entry in import archive " + archive + ": " + entryName);
+        }
+        if (content != null) {
+            files.put(name, content);
+        }
+        else {
+            directories.putIfAbsent(name, new TreeSet<>());
+        }
+        // Not every archiver writes entries for the directories
+        var child = name;
+        var slash = child.lastIndexOf('/');
+        while (true) {
+            var parent = slash < 0 ? "" : child.substring(0, slash);
+            if (files.containsKey(parent)) {
+                throw new IllegalArgumentException("Duplicate entry in import archive " + archive + ": " + parent);
+            }
+            directories.computeIfAbsent(parent, k -> new TreeSet<>()).add(child.substring(slash + 1));
+            if (parent.isEmpty()) {
+                break;
+            }
+            child = parent;
+            slash = child.lastIndexOf('/');
+        }
+    }
+
+    private String normalize(String entryName) {
+        var segments = new ArrayList<String>();
+        for (var segment : entryName.replace('\\', '/').split("/")) {
+            if (segment.equals("..")) {
+                throw new IllegalArgumentException("Entry in import archive " + archive + " points outside of the archive: " + entryName);
+            }
+            if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private String toEntryName(Path path) {
+        if (!path.startsWith(mountPoint)) {
+            throw new IllegalArgumentException("Path is not in import archive " + archive + ": " + path);
+        }
+        return mountPoint.relativize(path).toString().replace('\\', '/');
+    }
+}
@@ -19,6 +19,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.Column;
@@ -34,6 +35,8 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Entity(name = "import_job")
+// Only the changed columns are written, so that a running job does not overwrite a stop request made while it runs
+@DynamicUpdate
 public class ImportJob {
     public enum Status {
         PENDING,
@@ -42,6 +45,11 @@ public class ImportJob {
         FAILED
     }
 
+    public enum StopRequest {
+        PAUSE,
+        CANCEL
+    }
+
     @Id
     @GeneratedValue(generator = "UUID")
     @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
@@ -54,6 +62,10 @@ public class ImportJob {
     @Column
     private boolean singleObject;
 
+    // Jobs with a higher priority are dispatched first, and may preempt running batches with a lower priority; null counts as 0
+    @Column
+    private Integer priority;
+
     @Column(nullable = false)
     private OffsetDateTime created;
 
@@ -70,4 +82,19 @@ public class ImportJob {
     @Lob
     private String message;
 
+    // The instance that claimed the job; see ImportJobDao.claimNext
+    @Column
+    private String claimedBy;
+
+    // Until when the claim holds; renewed by the heartbeat of the claiming instance
+    @Column
+    private OffsetDateTime leaseExpires;
+
+    // Set through the API; a paused job is not dispatched until it is resumed, a cancelled job fails as soon as it is picked up or its current objects are done
+    @Column
+    private StopRequest stopRequest;
+
+    public int getPriorityOrDefault() {
+        return priority != null ? priority : 0;
+    }
 }
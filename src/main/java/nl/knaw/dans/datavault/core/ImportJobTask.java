@@ -25,12 +25,16 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -38,6 +42,13 @@ import java.util.regex.Pattern;
 
 @Slf4j
 public class ImportJobTask implements Runnable {
+    private enum StopReason {
+        PREEMPTED,
+        PAUSED,
+        CANCELLED,
+        LEASE_LOST
+    }
+
     private final UUID id;
     /**
      * The full path to the import batch directory.
@@ -51,8 +62,26 @@ public class ImportJobTask implements Runnable {
     private final LayerThresholdHandler layerThresholdHandler;
     private final boolean autoclean;
     private final BatchCleaner batchCleaner;
+    // Limits the number of objects of a batch that are imported concurrently, or null if the executor service is the only limit
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    // How often a batch checks whether it must yield to a job with a higher priority, or null if batches are never preempted
+    private final Duration preemptionCheckInterval;
+    // Tracks the lease of the job if it was claimed by this instance of a cluster, or null if clustering is disabled
+    private final ClusterCoordinator clusterCoordinator;
+    // Polls the database for pause and cancel requests while the objects of a batch are started
+    private final StopRequestCheck stopRequestCheck;
 
     private ImportJob importJob;
+    // Whether the job went back to the queue, to be continued later
+    private boolean yielded;
+    // Why the batch stopped starting new objects, or null if it did not
+    private StopReason stopReason;
+    // Null if the batch is not preempted by jobs with a higher priority
+    private PreemptionCheck preemptionCheck;
+    // The archive that takes the place of the batch or object import directory, or null if the job is for a directory
+    private ImportArchive archive;
+    // The version info JSON files read while validating the layout, by object directory name and version directory name
+    private final Map<String, Map<String, VersionInfoJsonReader>> versionInfos = new HashMap<>();
 
     public ImportJobTask(
         UUID id,
@@ -79,6 +108,64 @@ public class ImportJobTask implements Runnable {
         LayerThresholdHandler layerThresholdHandler,
         boolean autoclean,
         BatchCleaner batchCleaner
+    ) {
+        this(id, batchOrObjectImportDir, batchOutbox, importJobDao, executorService, repositoryProvider, validObjectIdentifierPattern, layerThresholdHandler, autoclean, batchCleaner, null,
+            null);
+    }
+
+    public ImportJobTask(
+        UUID id,
+        Path batchOrObjectImportDir,
+        Path batchOutbox,
+        ImportJobDao importJobDao,
+        ExecutorService executorService,
+        RepositoryProvider repositoryProvider,
+        Pattern validObjectIdentifierPattern,
+        LayerThresholdHandler layerThresholdHandler,
+        boolean autoclean,
+        BatchCleaner batchCleaner,
+        AdaptiveConcurrencyLimiter concurrencyLimiter,
+        Duration preemptionCheckInterval
+    ) {
+        this(id, batchOrObjectImportDir, batchOutbox, importJobDao, executorService, repositoryProvider, validObjectIdentifierPattern, layerThresholdHandler, autoclean, batchCleaner,
+            concurrencyLimiter, preemptionCheckInterval, null);
+    }
+
+    public ImportJobTask(
+        UUID id,
+        Path batchOrObjectImportDir,
+        Path batchOutbox,
+        ImportJobDao importJobDao,
+        ExecutorService executorService,
+        RepositoryProvider repositoryProvider,
+        Pattern validObjectIdentifierPattern,
+        LayerThresholdHandler layerThresholdHandler,
+        boolean autoclean,
+        BatchCleaner batchCleaner,
+        AdaptiveConcurrencyLimiter concurrencyLimiter,
+        Duration preemptionCheckInterval,
+        ClusterCoordinator clusterCoordinator
+    ) {
+        // Without an interval, the database is asked before every object
+        this(id, batchOrObjectImportDir, batchOutbox, importJobDao, executorService, repositoryProvider, validObjectIdentifierPattern, layerThresholdHandler, autoclean, batchCleaner,
+            concurrencyLimiter, preemptionCheckInterval, clusterCoordinator, Duration.ZERO);
+    }
+
+    public ImportJobTask(
+        UUID id,
+        Path batchOrObjectImportDir,
+        Path batchOutbox,
+        ImportJobDao importJobDao,
+        ExecutorService executorService,
+        RepositoryProvider repositoryProvider,
+        Pattern validObjectIdentifierPattern,
+        LayerThresholdHandler layerThresholdHandler,
+        boolean autoclean,
+        BatchCleaner batchCleaner,
+        AdaptiveConcurrencyLimiter concurrencyLimiter,
+        Duration preemptionCheckInterval,
+        ClusterCoordinator clusterCoordinator,
+        Duration stopRequestCheckInterval
     ) {
         this.id = id;
         this.batchOrObjectImportDir = batchOrObjectImportDir;
@@ -90,6 +177,10 @@ public class ImportJobTask implements Runnable {
         this.layerThresholdHandler = layerThresholdHandler;
         this.autoclean = autoclean;
         this.batchCleaner = batchCleaner != null ? batchCleaner : new BatchCleaner(batchOrObjectImportDir, batchOutbox);
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.preemptionCheckInterval = preemptionCheckInterval;
+        this.clusterCoordinator = clusterCoordinator;
+        this.stopRequestCheck = new StopRequestCheck(importJobDao, id, stopRequestCheckInterval);
     }
 
     @UnitOfWork
@@ -99,7 +190,16 @@ public class ImportJobTask implements Runnable {
         importJob.setStarted(OffsetDateTime.now());
         log.info("Starting import batch task {}", id);
         try {
-            processImportJob();
+            // The job may have been paused or cancelled after it was picked up
+            if (importJob.getStopRequest() == ImportJob.StopRequest.CANCEL) {
+                cancelled("Cancelled while waiting to be run");
+            }
+            else if (importJob.getStopRequest() == ImportJob.StopRequest.PAUSE) {
+                yieldToQueue("Paused while waiting to be run");
+            }
+            else {
+                processImportJob();
+            }
         }
         catch (IllegalArgumentException e) {
             handleBatchLayoutError(e);
@@ -109,12 +209,18 @@ public class ImportJobTask implements Runnable {
         }
         finally {
             finishImportJob();
+            if (clusterCoordinator != null) {
+                clusterCoordinator.jobEnded(id);
+            }
         }
         log.info("Import batch task {} finished", id);
     }
 
     private void processImportJob() throws IOException, InterruptedException {
-        if (importJob.isSingleObject()) {
+        if (ImportArchive.isImportArchive(batchOrObjectImportDir)) {
+            processArchiveImport();
+        }
+        else if (importJob.isSingleObject()) {
             processSingleObjectImport();
         }
         else {
@@ -122,6 +228,38 @@ public class ImportJobTask implements Runnable {
         }
     }
 
+    private void processArchiveImport() throws IOException, InterruptedException {
+        try (var openedArchive = importJob.isSingleObject() ? ImportArchive.openObject(batchOrObjectImportDir) : ImportArchive.openBatch(batchOrObjectImportDir)) {
+            archive = openedArchive;
+            if (importJob.isSingleObject()) {
+                // Only the archive itself is validated, as the other entries in the batch directory are not part of this job
+                checkLayout(archive.getMountPoint().getParent(), List.of(archive.getMountPoint()));
+                var future = executorService.submit(createObjectTask(archive.getMountPoint()));
+                handleObjectImportResult(future);
+            }
+            else {
+                processBatchObjectImport();
+            }
+        }
+        finally {
+            archive = null;
+        }
+        if (importJob.getStatus() == Status.SUCCESS && !autoclean) {
+            moveArchiveToOutbox();
+        }
+    }
+
+    private void moveArchiveToOutbox() {
+        var processed = batchOutbox.resolve("processed");
+        try {
+            Files.createDirectories(processed);
+            Files.move(batchOrObjectImportDir, processed.resolve(batchOrObjectImportDir.getFileName()));
+        }
+        catch (IOException e) {
+            log.error("Failed to move import archive {} to outbox {}", batchOrObjectImportDir, processed, e);
+        }
+    }
+
     private void handleBatchLayoutError(IllegalArgumentException e) {
         log.error("Invalid batch layout for batch directory {}. Leaving input in place.", importJob.getPath(), e);
         failed(e.getClass().getName() + ": " + e.getMessage());
@@ -132,14 +270,24 @@ public class ImportJobTask implements Runnable {
         failed(e.getClass().getName() + ": " + e.getMessage());
     }
 
+    /*
+     * An instance that lost the lease of the job must leave it to the instance that took it over, so its outcome is not written to the database.
+     */
     private void finishImportJob() {
-        importJob.setFinished(OffsetDateTime.now());
+        if (stopReason == StopReason.LEASE_LOST || !holdsLease()) {
+            log.warn("Lost the lease of import job {}; leaving it to the instance that takes it over", id);
+            importJobDao.detach(importJob);
+            return;
+        }
+        if (!yielded) {
+            importJob.setFinished(OffsetDateTime.now());
+        }
         importJobDao.update(importJob);
     }
 
     private void processSingleObjectImport() throws IOException {
         checkBatchLayout(batchOrObjectImportDir.getParent());
-        var future = executorService.submit(new ObjectCreateOrUpdateTask(batchOrObjectImportDir, batchOutbox, repositoryProvider));
+        var future = executorService.submit(createObjectTask(batchOrObjectImportDir));
         handleObjectImportResult(future);
     }
 
@@ -161,19 +309,95 @@ public class ImportJobTask implements Runnable {
         var objectImportDirs = getOrderedObjectImportDirs(batchOrObjectImportDir);
         var tasks = createObjectTasksFromDirs(objectImportDirs);
         log.info("Starting {} tasks for batch directory {}", tasks.size(), batchOrObjectImportDir);
-        @SuppressWarnings("unchecked")
-        var futures = (List<Future<?>>) (List<?>) executorService.invokeAll(tasks.stream().map(Executors::callable).toList());
+        // An archive cannot be continued later, as its objects are not moved out of the inbox one by one
+        if (preemptionCheckInterval != null && archive == null) {
+            preemptionCheck = new PreemptionCheck(importJobDao, importJob.getPriorityOrDefault(), preemptionCheckInterval);
+        }
+        var futures = concurrencyLimiter != null ? submitWithinLimit(tasks) : invokeAll(tasks);
         handleBatchImportResults(tasks, objectImportDirs, futures);
     }
 
+    @SuppressWarnings("unchecked")
+    private List<Future<?>> invokeAll(List<ObjectCreateOrUpdateTask> tasks) throws InterruptedException {
+        return (List<Future<?>>) (List<?>) executorService.invokeAll(tasks.stream().map(task -> Executors.callable(stoppable(task))).toList());
+    }
+
+    /*
+     * The objects that are still waiting for a worker when the batch stops are skipped, so that their task stays PENDING. Objects in progress are finished with all their versions, as an
+     * object import directory cannot be continued part way.
+     */
+    private Runnable stoppable(ObjectCreateOrUpdateTask task) {
+        return () -> {
+            if (!shouldStop()) {
+                task.run();
+            }
+        };
+    }
+
+    /*
+     * Pause and cancel requests and jobs with a higher priority are each looked up in the database at most once per check interval, so that the workers do not wait for each other on a
+     * transaction before every object. The lease of the job is checked first, so that no object is started after another instance may have taken the job over.
+     */
+    private synchronized boolean shouldStop() {
+        if (stopReason == StopReason.CANCELLED || stopReason == StopReason.LEASE_LOST) {
+            return true;
+        }
+        if (!holdsLease()) {
+            stopReason = StopReason.LEASE_LOST;
+            return true;
+        }
+        var stopRequest = stopRequestCheck.getStopRequest();
+        if (stopRequest == ImportJob.StopRequest.CANCEL) {
+            stopReason = StopReason.CANCELLED;
+        }
+        else if (stopRequest == ImportJob.StopRequest.PAUSE && archive == null) {
+            stopReason = StopReason.PAUSED;
+        }
+        else if (stopReason == null && preemptionCheck != null && preemptionCheck.isPreempted()) {
+            stopReason = StopReason.PREEMPTED;
+        }
+        return stopReason != null;
+    }
+
+    private boolean holdsLease() {
+        return clusterCoordinator == null || clusterCoordinator.holdsLease(id);
+    }
+
+    private List<Future<?>> submitWithinLimit(List<ObjectCreateOrUpdateTask> tasks) throws InterruptedException {
+        var futures = new ArrayList<Future<?>>();
+        for (var task : tasks) {
+            if (shouldStop()) {
+                // The remaining objects are left PENDING
+                break;
+            }
+            concurrencyLimiter.acquire();
+            futures.add(executorService.submit(() -> {
+                var start = System.nanoTime();
+                try {
+                    task.run();
+                }
+                finally {
+                    concurrencyLimiter.release(System.nanoTime() - start);
+                }
+            }));
+        }
+        for (var future : futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                // Reported by handleBatchImportResults
+            }
+        }
+        return futures;
+    }
+
     private List<Path> getOrderedObjectImportDirs(Path batchDir) throws IOException {
         var dirs = new ArrayList<Path>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(batchDir)) {
-            for (Path path : stream) {
-                var name = path.getFileName().toString();
-                if (Files.isDirectory(path) && validObjectIdentifierPattern.matcher(name).matches()) {
-                    dirs.add(path);
-                }
+        for (Path path : listEntries(batchDir)) {
+            var name = path.getFileName().toString();
+            if (isDirectory(path) && validObjectIdentifierPattern.matcher(name).matches()) {
+                dirs.add(path);
             }
         }
         dirs.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
@@ -183,11 +407,19 @@ public class ImportJobTask implements Runnable {
     private List<ObjectCreateOrUpdateTask> createObjectTasksFromDirs(List<Path> objectImportDirs) {
         var tasks = new ArrayList<ObjectCreateOrUpdateTask>();
         for (var path : objectImportDirs) {
-            tasks.add(new ObjectCreateOrUpdateTask(path, batchOutbox, repositoryProvider));
+            tasks.add(createObjectTask(path));
         }
         return tasks;
     }
 
+    private ObjectCreateOrUpdateTask createObjectTask(Path objectImportDir) {
+        var objectVersionInfos = versionInfos.getOrDefault(objectImportDir.getFileName().toString(), Map.of());
+        if (archive != null) {
+            return new ObjectCreateOrUpdateTask(objectImportDir, batchOutbox, repositoryProvider, objectVersionInfos, archive);
+        }
+        return new ObjectCreateOrUpdateTask(objectImportDir, batchOutbox, repositoryProvider, objectVersionInfos);
+    }
+
     private void handleBatchImportResults(List<ObjectCreateOrUpdateTask> tasks, List<Path> objectImportDirs, List<Future<?>> futures) {
         if (futures.stream().allMatch(this::checkFuture)) {
             if (tasks.stream().allMatch(task -> task.getStatus() == ObjectCreateOrUpdateTask.Status.SUCCESS)) {
@@ -204,6 +436,12 @@ public class ImportJobTask implements Runnable {
                     batchCleaner.deleteBatchDirsIfSucceeded();
                 }
             }
+            else if (stopReason != null) {
+                if (autoclean) {
+                    batchCleaner.cleanSuccessfulProcessedObjects(tasks, objectImportDirs);
+                }
+                handleStoppedBatch(tasks, objectImportDirs);
+            }
             else {
                 if (autoclean) {
                     batchCleaner.cleanSuccessfulProcessedObjects(tasks, objectImportDirs);
@@ -220,6 +458,62 @@ public class ImportJobTask implements Runnable {
         importJob.setStatus(Status.SUCCESS);
     }
 
+    /*
+     * A batch that was paused or preempted goes back to the queue, unless one of its objects failed. The objects already imported have been moved out of the inbox, so only the others
+     * are imported when it is picked up again. The outcome of every object is recorded in the outbox.
+     */
+    private void handleStoppedBatch(List<ObjectCreateOrUpdateTask> tasks, List<Path> objectImportDirs) {
+        var done = tasks.stream().filter(task -> task.getStatus() == ObjectCreateOrUpdateTask.Status.SUCCESS).count();
+        var failedObjects = tasks.stream().filter(task -> task.getStatus() == ObjectCreateOrUpdateTask.Status.FAILED).count();
+        var summary = String.format("after %d of %d objects (%d failed); see %s", done, tasks.size(), failedObjects, writeObjectReport(tasks, objectImportDirs));
+        if (stopReason == StopReason.LEASE_LOST) {
+            // The job is not changed; the instance that takes it over imports the objects that are still in the inbox
+            log.warn("Import batch {}: stopped because the lease was lost {}", id, summary);
+        }
+        else if (stopReason == StopReason.CANCELLED) {
+            cancelled("Cancelled " + summary);
+        }
+        else if (failedObjects > 0) {
+            failed("One or more tasks failed. Check error documents in '" + batchOutbox + "'.");
+        }
+        else if (stopReason == StopReason.PAUSED) {
+            yieldToQueue("Paused " + summary);
+        }
+        else {
+            yieldToQueue("Yielded to a job with a higher priority " + summary);
+        }
+    }
+
+    private Path writeObjectReport(List<ObjectCreateOrUpdateTask> tasks, List<Path> objectImportDirs) {
+        var report = batchOutbox.resolve("import-job-" + id + "-objects.txt");
+        var lines = new ArrayList<String>();
+        for (int i = 0; i < tasks.size(); i++) {
+            var status = tasks.get(i).getStatus();
+            lines.add(objectImportDirs.get(i).getFileName() + "\t" + (status == ObjectCreateOrUpdateTask.Status.PENDING ? "NOT_STARTED" : status));
+        }
+        try {
+            Files.write(report, lines);
+        }
+        catch (IOException e) {
+            log.error("Could not write the outcome of the objects of import job {} to {}", id, report, e);
+        }
+        return report;
+    }
+
+    private void yieldToQueue(String message) {
+        log.info("Import batch {}: {}", id, message);
+        yielded = true;
+        importJob.setStatus(Status.PENDING);
+        importJob.setMessage(message);
+        importJob.setClaimedBy(null);
+        importJob.setLeaseExpires(null);
+    }
+
+    private void cancelled(String message) {
+        log.info("Import job {}: {}", id, message);
+        failed(message);
+    }
+
     private void failed(String message) {
         importJob.setStatus(Status.FAILED);
         importJob.setMessage(message);
@@ -236,24 +530,27 @@ public class ImportJobTask implements Runnable {
     }
 
     private void checkBatchLayout(Path path) throws IOException {
+        checkLayout(path, listEntries(path));
+    }
+
+    private void checkLayout(Path path, List<Path> objectDirs) throws IOException {
         log.debug("Validating batch layout for batch directory {}", path);
         List<Path> invalidObjectImportDirectories = new LinkedList<>();
         List<String> invalidVersionDirectories = new LinkedList<>();
         List<Path> nonConsecutiveVersionDirs = new LinkedList<>();
 
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-            for (Path objectDir : stream) {
-                var result = validateObjectImportDirectoryLayout(objectDir);
-                if (result.isHasInvalidObjectImportDirName()) {
-                    invalidObjectImportDirectories.add(objectDir);
+        for (Path objectDir : objectDirs) {
+            var result = validateObjectImportDirectoryLayout(objectDir);
+            versionInfos.put(objectDir.getFileName().toString(), result.getVersionInfos());
+            if (result.isHasInvalidObjectImportDirName()) {
+                invalidObjectImportDirectories.add(objectDir);
+            }
+            else {
+                if (!result.getInvalidVersionDirectories().isEmpty()) {
+                    invalidVersionDirectories.addAll(result.getInvalidVersionDirectories());
                 }
-                else {
-                    if (!result.getInvalidVersionDirectories().isEmpty()) {
-                        invalidVersionDirectories.addAll(result.getInvalidVersionDirectories());
-                    }
-                    if (result.isHasNonConsecutiveVersions()) {
-                        nonConsecutiveVersionDirs.add(objectDir);
-                    }
+                if (result.isHasNonConsecutiveVersions()) {
+                    nonConsecutiveVersionDirs.add(objectDir);
                 }
             }
         }
@@ -294,11 +591,11 @@ public class ImportJobTask implements Runnable {
                 result.getInvalidVersionDirectories().add(unknown + ": unknown entry");
             }
             addNonConsecutiveVersionDirs(objectImportDir, versionDirNames, result);
-            // Validate that every version info JSON file can be loaded by VersionInfoJsonReader
+            // Validate that every version info JSON file can be loaded by VersionInfoJsonReader, and keep the result for adding the version
             for (var baseName : versionInfoBaseNames) {
                 var jsonFile = objectImportDir.resolve(baseName + ".json");
                 try {
-                    new VersionInfoJsonReader(jsonFile); // Constructor validates file
+                    result.getVersionInfos().put(baseName, readVersionInfo(jsonFile)); // Constructor validates file
                 }
                 catch (Exception e) {
                     result.getInvalidVersionDirectories().add(jsonFile + ": invalid version info JSON file: " + e.getClass().getSimpleName() + ": " + e.getMessage());
@@ -313,23 +610,40 @@ public class ImportJobTask implements Runnable {
 
     private EntryClassification classifyObjectDirEntries(Path objectDir) throws IOException {
         var classification = new EntryClassification();
-        try (DirectoryStream<Path> versionStream = Files.newDirectoryStream(objectDir)) {
-            for (var entry : versionStream) {
-                var name = entry.getFileName().toString();
-                if (isValidObjectVersionImportDirName(name)) {
-                    classification.versionDirNames.add(name);
-                }
-                else if (isValidVersionPropertiesFileName(name)) {
-                    classification.versionInfoBaseNames.add(name.substring(0, name.length() - ".json".length()));
-                }
-                else {
-                    classification.unknownEntries.add(entry);
-                }
+        for (var entry : listEntries(objectDir)) {
+            var name = entry.getFileName().toString();
+            if (isValidObjectVersionImportDirName(name)) {
+                classification.versionDirNames.add(name);
+            }
+            else if (isValidVersionPropertiesFileName(name)) {
+                classification.versionInfoBaseNames.add(name.substring(0, name.length() - ".json".length()));
+            }
+            else {
+                classification.unknownEntries.add(entry);
             }
         }
         return classification;
     }
 
+    private List<Path> listEntries(Path dir) throws IOException {
+        if (archive != null) {
+            return archive.list(dir);
+        }
+        var entries = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            stream.forEach(entries::add);
+        }
+        return entries;
+    }
+
+    private boolean isDirectory(Path path) {
+        return archive != null ? archive.isDirectory(path) : Files.isDirectory(path);
+    }
+
+    private VersionInfoJsonReader readVersionInfo(Path jsonFile) throws IOException {
+        return archive != null ? archive.readVersionInfo(jsonFile) : new VersionInfoJsonReader(jsonFile);
+    }
+
     private void addSetMismatchInvalidEntries(Path objectDir, List<String> versionDirNames, List<String> versionInfoBaseNames, ObjectValidationResult result) {
         var versionDirSet = new HashSet<>(versionDirNames);
         var versionInfoSet = new HashSet<>(versionInfoBaseNames);
@@ -383,6 +697,7 @@ public class ImportJobTask implements Runnable {
     @Data
     private static class ObjectValidationResult {
         private final List<String> invalidVersionDirectories = new ArrayList<>(); // Now stores error messages with reasons
+        private final Map<String, VersionInfoJsonReader> versionInfos = new HashMap<>();
         private boolean hasInvalidObjectImportDirName;
         private boolean hasNonConsecutiveVersions;
     }
@@ -22,6 +22,7 @@ import nl.knaw.dans.lib.util.pollingtaskexec.TaskFactory;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
@@ -37,6 +38,13 @@ public class ImportJobTaskFactory implements TaskFactory<ImportJob> {
     private final Pattern validObjectIdentifierPattern;
     private final LayerThresholdHandler layerThresholdHandler;
     private final boolean autoclean;
+    // Null if the number of concurrent object imports is not adapted
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    // Null if running batches are not preempted by jobs with a higher priority
+    private final Duration preemptionCheckInterval;
+    // Null if clustering is disabled
+    private final ClusterCoordinator clusterCoordinator;
+    private final Duration stopRequestCheckInterval;
 
     @Override
     public Runnable create(ImportJob record) {
@@ -53,7 +61,12 @@ public class ImportJobTaskFactory implements TaskFactory<ImportJob> {
                 RepositoryProvider.class,
                 Pattern.class,
                 LayerThresholdHandler.class,
-                boolean.class
+                boolean.class,
+                BatchCleaner.class,
+                AdaptiveConcurrencyLimiter.class,
+                Duration.class,
+                ClusterCoordinator.class,
+                Duration.class
             },
             new Object[] {
                 record.getId(),
@@ -64,7 +77,12 @@ public class ImportJobTaskFactory implements TaskFactory<ImportJob> {
                 repositoryProvider,
                 validObjectIdentifierPattern,
                 layerThresholdHandler,
-                autoclean
+                autoclean,
+                null,
+                concurrencyLimiter,
+                preemptionCheckInterval,
+                clusterCoordinator,
+                stopRequestCheckInterval
             }
         );
     }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.LayerConsistencyChecker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Checks that the listing records of the top layer match its contents, using the {@link ChangeJournal} to limit the check to the paths changed since the layer was last verified. If the
+ * journal does not cover all changes, the full check of the layer store is performed instead. Either way, a successful check becomes the new checkpoint of the journal. Like the full
+ * check, it accepts records of {@link DatabaseBackedContent database-backed content} without a file in storage.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IncrementalTopLayerChecker {
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+
+    private final ChangeJournal changeJournal;
+    private final ItemRecordDao itemRecordDao;
+    private final Path stagingRoot;
+    private final LayerConsistencyChecker layerConsistencyChecker;
+
+    /**
+     * Checks the top layer. Must be called within a unit of work.
+     *
+     * @param layerId the top layer
+     * @throws Exception if the check failed or revealed inconsistencies
+     */
+    public void check(long layerId) throws Exception {
+        var changes = changeJournal.readChangesSinceCheckpoint(layerId);
+        if (changes.isEmpty() || changes.get().stream().anyMatch(entry -> entry.path().isEmpty())) {
+            log.info("Change journal does not cover layer {}; performing full check", layerId);
+            layerConsistencyChecker.check(layerId);
+        }
+        else {
+            log.info("Checking {} journaled changes in layer {}", changes.get().size(), layerId);
+            var mismatches = new ArrayList<String>();
+            for (var entry : changes.get()) {
+                if (entry.kind() == ChangeJournal.Kind.TREE) {
+                    checkTree(layerId, entry.path(), mismatches);
+                }
+                else {
+                    checkPath(layerId, entry.path(), mismatches);
+                }
+            }
+            if (!mismatches.isEmpty()) {
+                throw new IllegalStateException(String.format("Listing records of layer %d do not match its contents (%d mismatches): %s", layerId, mismatches.size(),
+                    String.join("; ", mismatches.subList(0, Math.min(mismatches.size(), MAX_REPORTED_MISMATCHES)))));
+            }
+        }
+        changeJournal.checkpoint(layerId);
+    }
+
+    /**
+     * Records that the top layer is verified without checking it, because it is known to be unchanged since it was last checked. Without a checkpoint, the next check would have to be a full
+     * check if the journal was not trusted on startup.
+     *
+     * @param layerId the top layer
+     * @throws IOException if the checkpoint could not be written
+     */
+    public void markVerified(long layerId) throws IOException {
+        changeJournal.checkpoint(layerId);
+    }
+
+    private void checkPath(long layerId, String path, List<String> mismatches) {
+        var onStorage = getTypeOnStorage(stagingRoot.resolve(Long.toString(layerId)).resolve(path));
+        var inDatabase = itemRecordDao.findType(layerId, path);
+        if (onStorage.isEmpty() && inDatabase.isPresent() && DatabaseBackedContent.mayBeAbsentFromStorage(path, inDatabase.get())) {
+            return;
+        }
+        if (!onStorage.equals(inDatabase)) {
+            mismatches.add(describe(path, onStorage, inDatabase));
+        }
+    }
+
+    private void checkTree(long layerId, String path, List<String> mismatches) throws IOException {
+        var layerDir = stagingRoot.resolve(Long.toString(layerId));
+        var onStorage = new HashMap<String, Item.Type>();
+        var treeRoot = layerDir.resolve(path);
+        if (Files.exists(treeRoot)) {
+            try (var files = Files.walk(treeRoot)) {
+                for (var file : (Iterable<Path>) files::iterator) {
+                    onStorage.put(layerDir.relativize(file).toString(), Files.isDirectory(file) ? Item.Type.Directory : Item.Type.File);
+                }
+            }
+        }
+        var inDatabase = new HashMap<String, Item.Type>();
+        itemRecordDao.forEachInSubtree(layerId, path, inDatabase::put);
+        compare(onStorage, inDatabase, mismatches);
+    }
+
+    private static void compare(Map<String, Item.Type> onStorage, Map<String, Item.Type> inDatabase, List<String> mismatches) {
+        for (var entry : onStorage.entrySet()) {
+            var recorded = Optional.ofNullable(inDatabase.get(entry.getKey()));
+            if (!recorded.equals(Optional.of(entry.getValue()))) {
+                mismatches.add(describe(entry.getKey(), Optional.of(entry.getValue()), recorded));
+            }
+        }
+        for (var entry : inDatabase.entrySet()) {
+            if (!onStorage.containsKey(entry.getKey()) && !DatabaseBackedContent.mayBeAbsentFromStorage(entry.getKey(), entry.getValue())) {
+                mismatches.add(describe(entry.getKey(), Optional.empty(), Optional.of(entry.getValue())));
+            }
+        }
+    }
+
+    private static Optional<Item.Type> getTypeOnStorage(Path file) {
+        if (Files.isDirectory(file)) {
+            return Optional.of(Item.Type.Directory);
+        }
+        return Files.exists(file) ? Optional.of(Item.Type.File) : Optional.empty();
+    }
+
+    private static String describe(String path, Optional<Item.Type> onStorage, Optional<Item.Type> inDatabase) {
+        return String.format("%s: %s on storage, %s in database", path, onStorage.map(Enum::name).orElse("absent"), inDatabase.map(Enum::name).orElse("absent"));
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.core.ItemPathIndex.Change;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Delegates to an {@link ItemStore}, but answers path lookups from an {@link ItemPathIndex} when it is ready, so that they do not depend on the load of the database. After every change the
+ * records of the changed paths in the top layer are collected; where the outcome of a change is not obvious, the records are read back from the database within the same transaction. The
+ * collected changes are applied to the index when the transaction has been committed, so that other threads never see uncommitted changes in the index. Until then, lookups by the changing
+ * thread of paths that overlap with its changes go to the database, which does show them.
+ *
+ * If the transaction of a change is rolled back, its changes are discarded. If the top layer changes while a change is being made, the index is rebuilt, and lookups go to the database until the
+ * rebuild has finished. Patterns with a <code>%</code> or <code>_</code> wildcard are always passed on to the database.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class IndexedItemStore implements ItemStore {
+    private final ItemStore delegate;
+    private final LayeredItemStore layeredItemStore;
+    private final ItemPathIndex itemPathIndex;
+    private final ItemPathIndexLoader itemPathIndexLoader;
+    private final ItemRecordDao itemRecordDao;
+    private final SessionFactory sessionFactory;
+
+    // The changes made in the current transaction of the thread, which are applied to the index when it commits
+    private final ThreadLocal<PendingChanges> pendingChanges = new ThreadLocal<>();
+
+    private record PendingChanges(Transaction transaction, List<Change> changes) {}
+
+    @Override
+    public List<Item> listDirectory(String directoryPath) throws IOException {
+        if (canUseIndex(directoryPath)) {
+            var items = itemPathIndex.listDirectory(directoryPath);
+            if (items.isPresent()) {
+                return items.get();
+            }
+        }
+        return delegate.listDirectory(directoryPath);
+    }
+
+    @Override
+    public List<Item> listRecursive(String directoryPath) throws IOException {
+        if (canUseIndex(directoryPath)) {
+            var items = itemPathIndex.listRecursive(directoryPath);
+            if (items.isPresent()) {
+                return items.get();
+            }
+        }
+        return delegate.listRecursive(directoryPath);
+    }
+
+    @Override
+    public boolean existsPathLike(String path) {
+        if (canUseIndex(path)) {
+            return itemPathIndex.exists(path);
+        }
+        return delegate.existsPathLike(path);
+    }
+
+    @Override
+    public InputStream readFile(String path) throws IOException {
+        return delegate.readFile(path);
+    }
+
+    @Override
+    public void writeFile(String path, InputStream content) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.writeFile(path, content);
+        applyChanges(layerId, () -> {
+            var changes = parentDirectories(layerId, path);
+            changes.add(new Change(layerId, path, false, Map.of(path, Item.Type.File)));
+            return changes;
+        });
+    }
+
+    @Override
+    public void moveDirectoryInto(Path source, String destination) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.moveDirectoryInto(source, destination);
+        applyChanges(layerId, () -> {
+            var changes = parentDirectories(layerId, destination);
+            changes.add(readSubtree(layerId, destination));
+            return changes;
+        });
+    }
+
+    @Override
+    public void moveDirectoryInternal(String source, String destination) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.moveDirectoryInternal(source, destination);
+        applyChanges(layerId, () -> {
+            var changes = parentDirectories(layerId, destination);
+            changes.add(readSubtree(layerId, source));
+            changes.add(readSubtree(layerId, destination));
+            return changes;
+        });
+    }
+
+    @Override
+    public void deleteDirectory(String path) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.deleteDirectory(path);
+        applyChanges(layerId, () -> List.of(readSubtree(layerId, path)));
+    }
+
+    @Override
+    public void deleteFiles(List<String> paths) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.deleteFiles(paths);
+        applyChanges(layerId, () -> paths.stream()
+            .map(path -> new Change(layerId, path, false, Map.of()))
+            .toList());
+    }
+
+    @Override
+    public void createDirectories(String path) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.createDirectories(path);
+        applyChanges(layerId, () -> {
+            var changes = parentDirectories(layerId, path);
+            changes.add(new Change(layerId, path, false, Map.of(path, Item.Type.Directory)));
+            return changes;
+        });
+    }
+
+    @Override
+    public void copyDirectoryOutOf(String source, Path destination) throws IOException {
+        delegate.copyDirectoryOutOf(source, destination);
+    }
+
+    private boolean canUseIndex(String path) {
+        return itemPathIndex.isReady() && !path.contains("%") && !path.contains("_") && !overlapsPendingChanges(path);
+    }
+
+    private boolean overlapsPendingChanges(String path) {
+        var pending = pendingChanges.get();
+        if (pending == null) {
+            return false;
+        }
+        return pending.changes().stream().map(Change::path).anyMatch(changedPath -> path.isEmpty()
+            || changedPath.equals(path)
+            || changedPath.startsWith(path + "/")
+            || path.startsWith(changedPath + "/"));
+    }
+
+    private void applyChanges(long layerIdBefore, Supplier<List<Change>> changes) {
+        var pending = getPendingChanges();
+        long layerId = layeredItemStore.getTopLayerId();
+        if (layerId != layerIdBefore) {
+            log.debug("Top layer changed from {} to {} during a change; rebuilding item path index", layerIdBefore, layerId);
+            itemPathIndexLoader.requestRebuild();
+            return;
+        }
+        pending.changes().addAll(changes.get());
+    }
+
+    // The parents of a changed path exist as directories in the top layer afterward; only the ones that are new to the index need to be applied
+    private List<Change> parentDirectories(long layerId, String path) {
+        var changes = new ArrayList<Change>();
+        var separatorIndex = path.indexOf('/');
+        while (separatorIndex > 0) {
+            var parent = path.substring(0, separatorIndex);
+            if (!itemPathIndex.existsInLayer(layerId, parent)) {
+                changes.add(new Change(layerId, parent, false, Map.of(parent, Item.Type.Directory)));
+            }
+            separatorIndex = path.indexOf('/', separatorIndex + 1);
+        }
+        return changes;
+    }
+
+    private Change readSubtree(long layerId, String path) {
+        var records = new HashMap<String, Item.Type>();
+        itemRecordDao.forEachInSubtree(layerId, path, records::put);
+        return new Change(layerId, path, true, records);
+    }
+
+    private PendingChanges getPendingChanges() {
+        var transaction = sessionFactory.getCurrentSession().getTransaction();
+        var pending = pendingChanges.get();
+        if (pending != null && pending.transaction() == transaction) {
+            return pending;
+        }
+        var newPending = new PendingChanges(transaction, new ArrayList<>());
+        pendingChanges.set(newPending);
+        transaction.registerSynchronization(new Synchronization() {
+
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                pendingChanges.remove();
+                if (status == Status.STATUS_COMMITTED) {
+                    newPending.changes().forEach(itemPathIndex::apply);
+                }
+                else {
+                    log.debug("Transaction with changes to the item store was not committed; discarding {} index changes", newPending.changes().size());
+                }
+            }
+        });
+        return newPending;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+/**
+ * A check that is performed on service startup. The fingerprint summarizes the state that the check depends on; if it is the same as when the check last succeeded, the check may be skipped.
+ *
+ * @param name        the name under which the result of the check is recorded
+ * @param fingerprint computes the fingerprint; must be much cheaper than the check itself
+ * @param action      performs the check; throws an exception if the check fails
+ * @param onSkipped   performed instead of the check when it is skipped, to record that the state it depends on is still verified
+ */
+public record InitCheck(String name, Fingerprint fingerprint, Action action, Action onSkipped) {
+
+    public InitCheck(String name, Fingerprint fingerprint, Action action) {
+        this(name, fingerprint, action, () -> {
+        });
+    }
+
+    @FunctionalInterface
+    public interface Fingerprint {
+        String compute() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void perform() throws Exception;
+    }
+}
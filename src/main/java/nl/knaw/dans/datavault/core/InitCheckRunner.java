@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.InitCheckResultDao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the {@link InitCheck}s of the service, in parallel where possible. The last successful outcome of each check is recorded in the database together with its fingerprint, so that a check
+ * can be skipped on the next startup if nothing it depends on has changed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class InitCheckRunner {
+    private final UnitOfWorkAwareProxyFactory unitOfWorkAwareProxyFactory;
+    private final InitCheckResultDao initCheckResultDao;
+    private final ExecutorService executorService;
+    private final boolean skipUnchanged;
+
+    /**
+     * Creates a runner that performs every check on the calling thread, and does not record or skip anything.
+     *
+     * @return the runner
+     */
+    public static InitCheckRunner serial() {
+        return new InitCheckRunner(null, null, null, false);
+    }
+
+    /**
+     * Runs the given checks in parallel, each on a worker thread and in a unit of work of its own. The checks must therefore not depend on uncommitted changes of the calling unit of work.
+     *
+     * @param initChecks the checks
+     * @throws IllegalStateException if one or more checks failed; the first failure is the cause
+     */
+    public void runInParallel(List<InitCheck> initChecks) {
+        if (executorService == null) {
+            initChecks.forEach(this::runInCurrentUnitOfWork);
+            return;
+        }
+        var futures = new ArrayList<Future<Boolean>>();
+        for (var initCheck : initChecks) {
+            futures.add(executorService.submit(unitOfWorkAwareProxyFactory.create(
+                InitCheckTask.class,
+                new Class[] { InitCheck.class, InitCheckResultDao.class, boolean.class },
+                new Object[] { initCheck, initCheckResultDao, skipUnchanged })));
+        }
+        IllegalStateException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            }
+            catch (ExecutionException e) {
+                log.error("Init check '{}' failed", initChecks.get(i).name(), e.getCause());
+                if (failure == null) {
+                    failure = new IllegalStateException("Init check '" + initChecks.get(i).name() + "' failed", e.getCause());
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for init checks", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Runs the given check on the calling thread, in the unit of work of the caller. Use this for checks that depend on changes that the caller has not committed yet.
+     *
+     * @param initCheck the check
+     * @throws IllegalStateException if the check failed
+     */
+    public void runInCurrentUnitOfWork(InitCheck initCheck) {
+        try {
+            new InitCheckTask(initCheck, initCheckResultDao, skipUnchanged).call();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Init check '" + initCheck.name() + "' failed", e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.InitCheckResultDao;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Performs one {@link InitCheck}, unless its fingerprint is unchanged since it last succeeded, and records the fingerprint on success. When wrapped in a UnitOfWorkAwareProxy it runs in a unit of
+ * work of its own, so that it can be run on a worker thread.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class InitCheckTask implements Callable<Boolean> {
+    private final InitCheck initCheck;
+    // Null if results are not recorded
+    private final InitCheckResultDao initCheckResultDao;
+    private final boolean skipUnchanged;
+
+    /**
+     * @return true if the check was performed, false if it was skipped
+     * @throws Exception if the check failed
+     */
+    @Override
+    @UnitOfWork
+    public Boolean call() throws Exception {
+        var name = initCheck.name();
+        if (initCheckResultDao == null) {
+            perform();
+            return true;
+        }
+        var fingerprint = initCheck.fingerprint().compute();
+        var lastSuccess = initCheckResultDao.find(name);
+        if (skipUnchanged && lastSuccess.isPresent() && lastSuccess.get().getFingerprint().equals(fingerprint)) {
+            log.info("Skipping init check '{}': nothing changed since it succeeded at {}", name, lastSuccess.get().getSucceeded());
+            initCheck.onSkipped().perform();
+            return false;
+        }
+        perform();
+        initCheckResultDao.recordSuccess(name, fingerprint);
+        return true;
+    }
+
+    private void perform() throws Exception {
+        var start = System.currentTimeMillis();
+        log.info("Performing init check '{}'...", initCheck.name());
+        initCheck.action().perform();
+        log.info("Init check '{}' OK ({} ms).", initCheck.name(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.layerstore.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the paths of the item records of all layers, used to answer path lookups without a database query. For every path the index holds the layers that have a record for it,
+ * and the type of the item in each of those layers. The paths are stored in a {@link PathTrie}, so that the long prefixes that the paths of an object share are stored only once.
+ *
+ * The index is filled from the database by an {@link ItemPathIndexLoader} and kept up to date by applying a {@link Change} for every change to the item store. Changes that are applied while
+ * the index is being rebuilt are replayed on the rebuilt index, so that they are not lost. Until the first rebuild has finished, and after the index has been invalidated, the index is not ready
+ * and must not be used for lookups.
+ */
+public class ItemPathIndex {
+
+    /**
+     * The records of a layer for a path, or for a path and everything under it, as found in the database after a change to the item store.
+     *
+     * @param layerId the layer
+     * @param path    the path
+     * @param subtree whether the records cover everything under the path as well
+     * @param records the records found, mapping paths to types
+     */
+    public record Change(long layerId, String path, boolean subtree, Map<String, Item.Type> records) {}
+
+    /**
+     * Collects the records for a new version of the index.
+     */
+    public static class Rebuild {
+        private final PathTrie paths = new PathTrie();
+
+        public void add(long layerId, String path, Item.Type type) {
+            paths.add(path, layerId, type);
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private PathTrie paths = new PathTrie();
+    private volatile boolean ready;
+
+    // Guarded by this; not null while a rebuild is in progress
+    private List<Change> changesDuringRebuild;
+    private boolean invalidatedDuringRebuild;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Marks the index as not ready, e.g. because a change that was applied to it has been rolled back. The index stays unusable until the next rebuild that was started after this call has
+     * finished.
+     */
+    public synchronized void invalidate() {
+        ready = false;
+        if (changesDuringRebuild != null) {
+            invalidatedDuringRebuild = true;
+        }
+    }
+
+    public synchronized Rebuild beginRebuild() {
+        changesDuringRebuild = new ArrayList<>();
+        invalidatedDuringRebuild = false;
+        return new Rebuild();
+    }
+
+    /**
+     * Replaces the contents of the index with the rebuilt contents, after replaying the changes that were applied since the rebuild began. The index is ready afterwards, unless it was
+     * invalidated during the rebuild.
+     *
+     * @param rebuild the rebuilt contents
+     */
+    public synchronized void finishRebuild(Rebuild rebuild) {
+        for (var change : changesDuringRebuild) {
+            apply(rebuild.paths, change);
+        }
+        lock.writeLock().lock();
+        try {
+            paths = rebuild.paths;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        ready = !invalidatedDuringRebuild;
+        changesDuringRebuild = null;
+    }
+
+    public synchronized void abortRebuild() {
+        changesDuringRebuild = null;
+    }
+
+    public synchronized void apply(Change change) {
+        lock.writeLock().lock();
+        try {
+            apply(paths, change);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return paths.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean exists(String path) {
+        lock.readLock().lock();
+        try {
+            return paths.exists(path);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean existsInLayer(long layerId, String path) {
+        lock.readLock().lock();
+        try {
+            return paths.existsInLayer(layerId, path);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the items directly under a directory.
+     *
+     * @param directoryPath the directory, or the empty string for the root
+     * @return the items, or empty if the path is not a directory in the index
+     */
+    public Optional<List<Item>> listDirectory(String directoryPath) {
+        lock.readLock().lock();
+        try {
+            if (!isDirectory(directoryPath)) {
+                return Optional.empty();
+            }
+            var items = new ArrayList<Item>();
+            paths.forEachChild(directoryPath, (path, type) -> items.add(toItem(path, type)));
+            return Optional.of(items);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists all items under a directory, at any depth.
+     *
+     * @param directoryPath the directory, or the empty string for the root
+     * @return the items, or empty if the path is not a directory in the index
+     */
+    public Optional<List<Item>> listRecursive(String directoryPath) {
+        lock.readLock().lock();
+        try {
+            if (!isDirectory(directoryPath)) {
+                return Optional.empty();
+            }
+            var items = new ArrayList<Item>();
+            paths.forEachDescendant(directoryPath, (path, type) -> items.add(toItem(path, type)));
+            return Optional.of(items);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isDirectory(String path) {
+        return path.isEmpty() || paths.getType(path) == Item.Type.Directory;
+    }
+
+    private static Item toItem(String path, Item.Type type) {
+        return Item.builder().path(path).type(type).build();
+    }
+
+    private static void apply(PathTrie paths, Change change) {
+        if (change.subtree()) {
+            paths.removeDescendants(change.path(), change.layerId());
+        }
+        paths.remove(change.path(), change.layerId());
+        change.records().forEach((path, type) -> paths.add(path, change.layerId(), type));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import io.dropwizard.lifecycle.Managed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fills the {@link ItemPathIndex} from the item records in the database, on startup and whenever the index has been invalidated. The records are read in the background, one layer at a time;
+ * until the rebuild has finished, lookups go to the database. Must be created as a unit-of-work-aware proxy, and the executor must have a single thread, so that rebuilds do not overlap.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ItemPathIndexLoader implements Managed {
+    private final ItemPathIndex itemPathIndex;
+    private final ItemRecordDao itemRecordDao;
+    private final ExecutorService executorService;
+
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+
+    @Override
+    public void start() {
+        requestRebuild();
+    }
+
+    /**
+     * Invalidates the index and schedules a rebuild. Requests that arrive while a rebuild is waiting to start are combined.
+     */
+    public void requestRebuild() {
+        itemPathIndex.invalidate();
+        if (rebuildRequested.compareAndSet(false, true)) {
+            executorService.execute(this::rebuildInBackground);
+        }
+    }
+
+    private void rebuildInBackground() {
+        rebuildRequested.set(false);
+        try {
+            rebuild();
+        }
+        catch (RuntimeException e) {
+            log.error("Could not rebuild the item path index; lookups will go to the database", e);
+        }
+    }
+
+    @UnitOfWork(readOnly = true)
+    public void rebuild() {
+        log.info("Rebuilding item path index");
+        var start = System.currentTimeMillis();
+        var rebuild = itemPathIndex.beginRebuild();
+        try {
+            for (var layerId : itemRecordDao.listLayerIds()) {
+                itemRecordDao.forEachInLayer(layerId, (path, type) -> rebuild.add(layerId, path, type));
+            }
+            itemPathIndex.finishRebuild(rebuild);
+        }
+        catch (RuntimeException e) {
+            itemPathIndex.abortRebuild();
+            throw e;
+        }
+        log.info("Rebuilt item path index with {} paths in {} ms", itemPathIndex.size(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.core.ChangeJournal.Entry;
+import nl.knaw.dans.datavault.core.ChangeJournal.Kind;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records every change to the layered item store in a {@link ChangeJournal} before making it. Parent directories are journaled along with the changed paths, as they may be created
+ * implicitly.
+ */
+@RequiredArgsConstructor
+public class JournalingItemStore implements ItemStore {
+    private final LayeredItemStore delegate;
+    private final ChangeJournal changeJournal;
+
+    @Override
+    public List<Item> listDirectory(String directoryPath) throws IOException {
+        return delegate.listDirectory(directoryPath);
+    }
+
+    @Override
+    public List<Item> listRecursive(String directoryPath) throws IOException {
+        return delegate.listRecursive(directoryPath);
+    }
+
+    @Override
+    public boolean existsPathLike(String path) {
+        return delegate.existsPathLike(path);
+    }
+
+    @Override
+    public InputStream readFile(String path) throws IOException {
+        return delegate.readFile(path);
+    }
+
+    @Override
+    public void writeFile(String path, InputStream content) throws IOException {
+        var entries = withParents(Kind.PATH, path);
+        var layerId = record(entries);
+        delegate.writeFile(path, content);
+        recordIfTopLayerChanged(layerId, entries);
+    }
+
+    @Override
+    public void moveDirectoryInto(Path source, String destination) throws IOException {
+        var entries = withParents(Kind.TREE, destination);
+        var layerId = record(entries);
+        delegate.moveDirectoryInto(source, destination);
+        recordIfTopLayerChanged(layerId, entries);
+    }
+
+    @Override
+    public void moveDirectoryInternal(String source, String destination) throws IOException {
+        var entries = withParents(Kind.TREE, destination);
+        entries.add(new Entry(Kind.TREE, source));
+        var layerId = record(entries);
+        delegate.moveDirectoryInternal(source, destination);
+        recordIfTopLayerChanged(layerId, entries);
+    }
+
+    @Override
+    public void deleteDirectory(String path) throws IOException {
+        var entries = List.of(new Entry(Kind.TREE, path));
+        var layerId = record(entries);
+        delegate.deleteDirectory(path);
+        recordIfTopLayerChanged(layerId, entries);
+    }
+
+    @Override
+    public void deleteFiles(List<String> paths) throws IOException {
+        var entries = paths.stream().map(path -> new Entry(Kind.PATH, path)).toList();
+        var layerId = record(entries);
+        delegate.deleteFiles(paths);
+        recordIfTopLayerChanged(layerId, entries);
+    }
+
+    @Override
+    public void createDirectories(String path) throws IOException {
+        var entries = withParents(Kind.PATH, path);
+        var layerId = record(entries);
+        delegate.createDirectories(path);
+        recordIfTopLayerChanged(layerId, entries);
+    }
+
+    @Override
+    public void copyDirectoryOutOf(String source, Path destination) throws IOException {
+        delegate.copyDirectoryOutOf(source, destination);
+    }
+
+    private long record(List<Entry> entries) throws IOException {
+        long layerId = delegate.getTopLayerId();
+        changeJournal.record(layerId, entries);
+        return layerId;
+    }
+
+    private void recordIfTopLayerChanged(long layerId, List<Entry> entries) throws IOException {
+        // A new top layer may have been created while the change was made, in which case the change may have ended up in the new layer
+        long topLayerId = delegate.getTopLayerId();
+        if (topLayerId != layerId) {
+            changeJournal.record(topLayerId, entries);
+        }
+    }
+
+    private static List<Entry> withParents(Kind kind, String path) {
+        var entries = new ArrayList<Entry>();
+        var parts = path.split("/");
+        var parent = new StringBuilder();
+        for (int i = 0; i < parts.length - 1; i++) {
+            if (!parts[i].isEmpty()) {
+                parent.append(parent.isEmpty() ? "" : "/").append(parts[i]);
+                entries.add(new Entry(Kind.PATH, parent.toString()));
+            }
+        }
+        entries.add(new Entry(kind, path));
+        return entries;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.layerstore.Item;
+import org.apache.commons.compress.archivers.tar.TarFile;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Lists the items that are actually present in the storage of a layer, per {@link ConsistencyCheckShard shard}. Staged layers are listed from the staging directory; archived layers only if
+ * their archive is a TAR or ZIP file on the local file system. For other layers {@link #canList(long)} returns false.
+ *
+ * A layer is split into one shard per directory at the shard depth, that is, with that many path segments. The items above the shard depth, and the files at the shard depth, form the
+ * {@link ConsistencyCheckShard#SHALLOW_ITEMS} shard. With the NTuple storage layout all object IDs share their first tuple, so the shard depth must be greater than one to get more than one
+ * shard.
+ */
+@Slf4j
+public class LayerContentLister {
+    private final Path stagingRoot;
+    private final Path archiveRoot;
+    private final int shardDepth;
+
+    // An archive can only be read as a whole, so its listing is kept for the shards that follow
+    private long listedArchiveLayerId = -1;
+    private Map<String, Map<String, Item.Type>> listedArchiveShards;
+
+    /**
+     * @param stagingRoot the staging root of the layer store
+     * @param archiveRoot the local directory with the TAR or ZIP archives, or null if the archives are not locally accessible
+     * @param shardDepth  the number of path segments of the shard directories
+     */
+    public LayerContentLister(Path stagingRoot, Path archiveRoot, int shardDepth) {
+        this.stagingRoot = stagingRoot;
+        this.archiveRoot = archiveRoot;
+        this.shardDepth = shardDepth;
+    }
+
+    public int getShardDepth() {
+        return shardDepth;
+    }
+
+    public boolean canList(long layerId) {
+        return Files.isDirectory(getStagingDir(layerId)) || findArchive(layerId).isPresent();
+    }
+
+    /**
+     * @param layerId the layer
+     * @return the path prefixes of the shards that the layer can be split into
+     * @throws IOException if the layer cannot be read
+     */
+    public List<String> listShardPrefixes(long layerId) throws IOException {
+        var prefixes = new TreeSet<String>();
+        var stagingDir = getStagingDir(layerId);
+        if (Files.isDirectory(stagingDir)) {
+            try (var paths = Files.walk(stagingDir, shardDepth)) {
+                paths.filter(p -> !p.equals(stagingDir))
+                    .forEach(p -> prefixes.add(getShardPrefix(toItemPath(stagingDir.relativize(p)), Files.isDirectory(p) ? Item.Type.Directory : Item.Type.File)));
+            }
+        }
+        else {
+            prefixes.addAll(getArchiveShards(layerId).keySet());
+        }
+        return List.copyOf(prefixes);
+    }
+
+    /**
+     * @param layerId    the layer
+     * @param pathPrefix the shard
+     * @return the items in the shard by path
+     * @throws IOException if the layer cannot be read
+     */
+    public Map<String, Item.Type> listShard(long layerId, String pathPrefix) throws IOException {
+        var stagingDir = getStagingDir(layerId);
+        if (!Files.isDirectory(stagingDir)) {
+            return new HashMap<>(getArchiveShards(layerId).getOrDefault(pathPrefix, Map.of()));
+        }
+        var items = new HashMap<String, Item.Type>();
+        if (ConsistencyCheckShard.SHALLOW_ITEMS.equals(pathPrefix)) {
+            try (var paths = Files.walk(stagingDir, shardDepth)) {
+                paths.filter(p -> !p.equals(stagingDir)).forEach(p -> {
+                    var path = toItemPath(stagingDir.relativize(p));
+                    var type = Files.isDirectory(p) ? Item.Type.Directory : Item.Type.File;
+                    if (ConsistencyCheckShard.SHALLOW_ITEMS.equals(getShardPrefix(path, type))) {
+                        items.put(path, type);
+                    }
+                });
+            }
+        }
+        else {
+            var shardDir = stagingDir.resolve(pathPrefix);
+            if (Files.exists(shardDir)) {
+                try (var paths = Files.walk(shardDir)) {
+                    paths.forEach(p -> items.put(toItemPath(stagingDir.relativize(p)), Files.isDirectory(p) ? Item.Type.Directory : Item.Type.File));
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @param path the item path
+     * @param type the item type
+     * @return the prefix of the shard that the item belongs to
+     */
+    String getShardPrefix(String path, Item.Type type) {
+        var segments = path.split("/");
+        if (segments.length > shardDepth) {
+            return String.join("/", Arrays.asList(segments).subList(0, shardDepth));
+        }
+        if (segments.length == shardDepth && type == Item.Type.Directory) {
+            return path;
+        }
+        return ConsistencyCheckShard.SHALLOW_ITEMS;
+    }
+
+    private Path getStagingDir(long layerId) {
+        return stagingRoot.resolve(Long.toString(layerId));
+    }
+
+    private Optional<Path> findArchive(long layerId) {
+        if (archiveRoot == null) {
+            return Optional.empty();
+        }
+        return List.of(".tar", ".zip").stream()
+            .map(extension -> archiveRoot.resolve(layerId + extension))
+            .filter(Files::isRegularFile)
+            .findFirst();
+    }
+
+    private synchronized Map<String, Map<String, Item.Type>> getArchiveShards(long layerId) throws IOException {
+        if (listedArchiveLayerId != layerId) {
+            var archive = findArchive(layerId).orElseThrow(() -> new IOException("No local archive found for layer " + layerId));
+            log.debug("Reading listing of archive {}", archive);
+            listedArchiveShards = groupByShard(readArchiveListing(archive));
+            listedArchiveLayerId = layerId;
+        }
+        return listedArchiveShards;
+    }
+
+    private static Map<String, Item.Type> readArchiveListing(Path archive) throws IOException {
+        var items = new HashMap<String, Item.Type>();
+        if (archive.getFileName().toString().endsWith(".tar")) {
+            try (var tarFile = new TarFile(archive)) {
+                for (var entry : tarFile.getEntries()) {
+                    addWithParents(items, entry.getName(), entry.isDirectory());
+                }
+            }
+        }
+        else {
+            try (var zipFile = new ZipFile(archive.toFile())) {
+                var entries = zipFile.getEntries();
+                while (entries.hasMoreElements()) {
+                    var entry = entries.nextElement();
+                    addWithParents(items, entry.getName(), entry.isDirectory());
+                }
+            }
+        }
+        return items;
+    }
+
+    private static void addWithParents(Map<String, Item.Type> items, String entryName, boolean isDirectory) {
+        var path = entryName.replaceAll("^(\\./|/)+", "").replaceAll("/+$", "");
+        if (path.isEmpty()) {
+            return;
+        }
+        items.put(path, isDirectory ? Item.Type.Directory : Item.Type.File);
+        // Not every archiver writes entries for the directories, but the layer store has records for them
+        var slash = path.lastIndexOf('/');
+        while (slash > 0) {
+            path = path.substring(0, slash);
+            items.putIfAbsent(path, Item.Type.Directory);
+            slash = path.lastIndexOf('/');
+        }
+    }
+
+    private Map<String, Map<String, Item.Type>> groupByShard(Map<String, Item.Type> items) {
+        var shards = new HashMap<String, Map<String, Item.Type>>();
+        for (var item : items.entrySet()) {
+            shards.computeIfAbsent(getShardPrefix(item.getKey(), item.getValue()), k -> new HashMap<>()).put(item.getKey(), item.getValue());
+        }
+        return shards;
+    }
+
+    private static String toItemPath(Path relativePath) {
+        return relativePath.toString().replace('\\', '/');
+    }
+}
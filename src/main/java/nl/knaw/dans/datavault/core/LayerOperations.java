@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+
+import java.io.IOException;
+
+/**
+ * The operations on layers that are executed in the background by the {@link OperationRegistry}. Wrapped in a UnitOfWorkAwareProxy on app initialization, as they run outside the request
+ * threads.
+ * <p>
+ * If content deduplication is enabled, the hard links of a layer are replaced with copies before it is archived, as GNU tar and DMFTAR archive a hard link as a link entry without content.
+ * This is done here rather than in the request threads, as it copies every shared file of the layer.
+ */
+@RequiredArgsConstructor
+public class LayerOperations {
+    private final LayeredItemStore layeredItemStore;
+    // May be null
+    private final ContentDeduplicator contentDeduplicator;
+
+    @UnitOfWork
+    public long newTopLayer() throws IOException {
+        if (contentDeduplicator != null) {
+            return contentDeduplicator.retireTopLayer(layeredItemStore::newTopLayer);
+        }
+        return layeredItemStore.newTopLayer();
+    }
+
+    @UnitOfWork
+    public void archiveLayer(long layerId, boolean rearchive) throws IOException {
+        if (contentDeduplicator != null) {
+            contentDeduplicator.unshareLayer(layerId);
+        }
+        layeredItemStore.archiveLayer(layerId, rearchive);
+    }
+
+    @UnitOfWork
+    public void closeLayer(long layerId) throws IOException {
+        if (contentDeduplicator != null && Long.valueOf(layerId).equals(layeredItemStore.getTopLayerId())) {
+            contentDeduplicator.retireTopLayer(() -> {
+                layeredItemStore.closeLayer(layerId);
+                return null;
+            });
+        }
+        else {
+            layeredItemStore.closeLayer(layerId);
+        }
+    }
+}
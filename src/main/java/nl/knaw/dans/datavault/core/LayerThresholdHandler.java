@@ -21,23 +21,42 @@ import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.layerstore.LayeredItemStore;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
- * Defines a UnitOfWork to handle the archiving of layers when the threshold is reached.
+ * Defines a UnitOfWork to handle the archiving of layers when the threshold is reached. In a sharded repository, the handlers of the other shards are called as well; they must be proxied with
+ * the units of work of their own databases. No new top layer is created while the service is read-only, for instance because this instance is no longer the writer of the layer store. If
+ * content deduplication is enabled, the hard links of the old top layer are replaced with copies before it is handed to the archiver.
  */
 @RequiredArgsConstructor
 @Slf4j
 public class LayerThresholdHandler {
     private final LayeredItemStore layeredItemStore;
     private final long layerArchivingThreshold;
+    private final List<LayerThresholdHandler> additionalShardHandlers;
+    private final ServiceReadiness serviceReadiness;
+    // May be null
+    private final ContentDeduplicator contentDeduplicator;
 
     @UnitOfWork
     public void newTopLayerIfThresholdReached() throws IOException {
+        if (!serviceReadiness.isReady()) {
+            log.warn("Service is read-only ({}); not checking the layer archiving threshold", serviceReadiness.getMessage());
+            return;
+        }
         if (layeredItemStore.getTopLayerSizeInBytes() >= layerArchivingThreshold) {
             log.info("Archiving threshold reached, creating new top layer");
-            layeredItemStore.newTopLayer();
+            if (contentDeduplicator != null) {
+                contentDeduplicator.retireTopLayer(layeredItemStore::newTopLayer);
+            }
+            else {
+                layeredItemStore.newTopLayer();
+            }
             log.info("New top layer created with id {}", layeredItemStore.getTopLayerId());
         }
+        for (var shardHandler : additionalShardHandlers) {
+            shardHandler.newTopLayerIfThresholdReached();
+        }
     }
 
 }
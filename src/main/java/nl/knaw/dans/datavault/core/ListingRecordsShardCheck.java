@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.core.ConsistencyCheck.Result;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the item records of one shard of a layer with the items actually present in the layer. Runs in its own unit of work, so that the result of the shard is committed as soon as it is
+ * finished. If the check is interrupted, for example because the service is shutting down, the shard is left unfinished, so that it is checked again when the check is resumed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ListingRecordsShardCheck implements Callable<Void> {
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+
+    private final UUID shardId;
+    private final long layerId;
+    private final ConsistencyCheckShardDao shardDao;
+    private final ItemRecordDao itemRecordDao;
+    private final LayerContentLister layerContentLister;
+
+    @Override
+    @UnitOfWork
+    public Void call() throws IOException {
+        var shard = shardDao.start(shardDao.get(shardId));
+        log.debug("Checking listing records of layer {}, shard '{}'", layerId, shard.getPathPrefix());
+        try {
+            var storedItems = layerContentLister.listShard(layerId, shard.getPathPrefix());
+            var mismatches = new ArrayList<String>();
+            var mismatchCount = new long[] { 0 };
+            var recordsChecked = itemRecordDao.forEachInShard(layerId, shard.getPathPrefix(), layerContentLister.getShardDepth(), (path, type) -> {
+                var storedType = storedItems.remove(path);
+                if (storedType == null) {
+                    if (!DatabaseBackedContent.mayBeAbsentFromStorage(path, type)) {
+                        addMismatch(mismatches, mismatchCount, "in database but not in storage: " + path);
+                    }
+                }
+                else if (storedType != type) {
+                    addMismatch(mismatches, mismatchCount, "type " + type + " in database but " + storedType + " in storage: " + path);
+                }
+            });
+            for (var path : storedItems.keySet()) {
+                addMismatch(mismatches, mismatchCount, "in storage but not in database: " + path);
+            }
+            if (mismatchCount[0] == 0) {
+                shardDao.finish(shard, recordsChecked, Result.OK, null);
+            }
+            else {
+                log.error("Listing records of layer {}, shard '{}' do not match storage: {} mismatches", layerId, shard.getPathPrefix(), mismatchCount[0]);
+                shardDao.finish(shard, recordsChecked, Result.NOT_OK, formatMismatches(mismatches, mismatchCount[0]));
+            }
+        }
+        catch (InterruptedIOException | ClosedByInterruptException e) {
+            // Rolls back the unit of work, so that the shard stays unfinished
+            log.warn("Checking listing records of layer {}, shard '{}' was interrupted", layerId, shard.getPathPrefix());
+            throw e;
+        }
+        catch (Exception e) {
+            log.error("Error checking listing records of layer {}, shard '{}'", layerId, shard.getPathPrefix(), e);
+            shardDao.finish(shard, 0, Result.ERROR, e.getClass().getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void addMismatch(List<String> mismatches, long[] mismatchCount, String mismatch) {
+        if (mismatches.size() < MAX_REPORTED_MISMATCHES) {
+            mismatches.add(mismatch);
+        }
+        mismatchCount[0]++;
+    }
+
+    private String formatMismatches(List<String> mismatches, long mismatchCount) {
+        var message = String.join("\n", mismatches);
+        if (mismatchCount > mismatches.size()) {
+            message += "\n... and " + (mismatchCount - mismatches.size()) + " more";
+        }
+        return message;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Creates the shards of a listing records check, or, if the check was interrupted before, finds the shards that have not been finished yet. Runs in its own unit of work, so that the shards
+ * are committed before the workers start on them.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ListingRecordsShardPlanner implements Callable<List<UUID>> {
+    private final UUID consistencyCheckId;
+    private final long layerId;
+    private final ConsistencyCheckShardDao shardDao;
+    private final LayerContentLister layerContentLister;
+
+    @Override
+    @UnitOfWork
+    public List<UUID> call() throws IOException {
+        var shards = new ArrayList<>(shardDao.findByConsistencyCheckId(consistencyCheckId));
+        if (shards.isEmpty()) {
+            for (var prefix : layerContentLister.listShardPrefixes(layerId)) {
+                shards.add(shardDao.create(new ConsistencyCheckShard(consistencyCheckId, prefix)));
+            }
+            log.info("Split listing records check of layer {} into {} shards", layerId, shards.size());
+        }
+        else {
+            log.info("Resuming listing records check of layer {}", layerId);
+        }
+        var pending = shards.stream()
+            .filter(shard -> shard.getFinished() == null)
+            .map(ConsistencyCheckShard::getId)
+            .toList();
+        log.info("{} of {} shards of layer {} still to be checked", pending.size(), shards.size(), layerId);
+        return pending;
+    }
+}
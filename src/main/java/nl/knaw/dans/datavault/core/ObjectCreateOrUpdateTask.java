@@ -27,6 +27,7 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.StreamSupport;
 
 /**
@@ -48,10 +49,35 @@ public class ObjectCreateOrUpdateTask implements Runnable {
     private final Path batchOutbox;
     @NonNull
     private final RepositoryProvider repositoryProvider;
+    // The version info JSON files that were already read while validating the layout, by version directory name; the others are read when the version is added
+    private Map<String, VersionInfoJsonReader> versionInfos = Map.of();
+    // The archive that the object import directory is in, or null if it is a directory in the inbox
+    private ImportArchive archive;
 
     @Getter
     private Status status = Status.PENDING;
 
+    public ObjectCreateOrUpdateTask(Path objectDirectory, Path batchOutbox, RepositoryProvider repositoryProvider, @NonNull Map<String, VersionInfoJsonReader> versionInfos) {
+        this(objectDirectory, batchOutbox, repositoryProvider);
+        this.versionInfos = versionInfos;
+    }
+
+    /**
+     * Creates a task for an object import directory in an import archive. The content files are streamed from the archive, and only an error document is written to the outbox, as the
+     * archive cannot be moved in parts.
+     *
+     * @param objectDirectory    the object import directory under the mount point of the archive
+     * @param batchOutbox        the outbox of the batch
+     * @param repositoryProvider the repository provider
+     * @param versionInfos       the version info JSON files, by version directory name
+     * @param archive            the archive
+     */
+    public ObjectCreateOrUpdateTask(Path objectDirectory, Path batchOutbox, RepositoryProvider repositoryProvider, @NonNull Map<String, VersionInfoJsonReader> versionInfos,
+        @NonNull ImportArchive archive) {
+        this(objectDirectory, batchOutbox, repositoryProvider, versionInfos);
+        this.archive = archive;
+    }
+
     @Override
     public void run() {
         status = Status.RUNNING;
@@ -75,6 +101,12 @@ public class ObjectCreateOrUpdateTask implements Runnable {
     }
 
     private List<Path> getVersionDirectoriesInOrder() throws IOException {
+        if (archive != null) {
+            return archive.list(objectDirectory).stream()
+                .filter(archive::isDirectory)
+                .sorted(VersionDirectoryComparator.INSTANCE)
+                .toList();
+        }
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(objectDirectory)) {
             return StreamSupport.stream(stream.spliterator(), false)
                 .filter(Files::isDirectory)
@@ -83,13 +115,25 @@ public class ObjectCreateOrUpdateTask implements Runnable {
         }
     }
 
-    private void addVersionsToRepository(List<Path> versions) {
+    private void addVersionsToRepository(List<Path> versions) throws IOException {
         for (var version : versions) {
             var versionName = version.getFileName().toString();
             var objectId = objectDirectory.getFileName().toString();
             var versionNumber = parseVersionNumber(versionName);
             log.debug("Adding version {} to repository for object directory {}", versionName, objectDirectory);
-            repositoryProvider.addVersion(objectId, versionNumber, version);
+            var versionInfo = versionInfos.get(versionName);
+            if (archive != null) {
+                if (versionInfo == null) {
+                    versionInfo = archive.readVersionInfo(version.resolveSibling(versionName + ".json"));
+                }
+                repositoryProvider.addVersion(objectId, versionNumber, archive.getVersionContent(version), versionInfo);
+            }
+            else if (versionInfo != null) {
+                repositoryProvider.addVersion(objectId, versionNumber, version, versionInfo);
+            }
+            else {
+                repositoryProvider.addVersion(objectId, versionNumber, version);
+            }
         }
     }
 
@@ -100,6 +144,14 @@ public class ObjectCreateOrUpdateTask implements Runnable {
     private void moveDirectoryToOutbox(String subdir, Exception exception) throws IOException {
         var outboxSubdir = batchOutbox.resolve(subdir);
         Files.createDirectories(outboxSubdir);
+        if (archive != null) {
+            if (exception != null) {
+                try (var errorDocument = new PrintStream(outboxSubdir.resolve(objectDirectory.getFileName() + "-error.txt").toFile())) {
+                    exception.printStackTrace(errorDocument);
+                }
+            }
+            return;
+        }
         try {
             Files.move(objectDirectory, outboxSubdir.resolve(objectDirectory.getFileName()));
             if (exception != null) {
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.config.StorageLayoutConfig;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Serializes the changes to an object, so that import jobs and item store operations that touch the same object cannot interleave, while changes to different objects run in parallel.
+ * Objects are identified by the name of their object root directory, which in the NTuple omit-prefix storage layout is the object ID without its prefix. Objects whose IDs differ only in
+ * their prefix therefore share a lock, which costs some concurrency, but not safety.
+ *
+ * Locks are reentrant and must be released by the thread that acquired them, preferably with try-with-resources.
+ */
+public abstract class ObjectLockManager {
+    /**
+     * A held lock.
+     */
+    public interface Lock extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final String delimiter;
+    private final int numberOfTuples;
+
+    protected ObjectLockManager(StorageLayoutConfig storageLayout) {
+        var layout = storageLayout != null ? storageLayout : new StorageLayoutConfig();
+        this.delimiter = layout.getDelimiter();
+        this.numberOfTuples = layout.getNumberOfTuples();
+    }
+
+    /**
+     * Locks the object with the given ID, waiting until it is available.
+     *
+     * @param objectId the object ID
+     * @return the lock, to be closed when the change is done
+     * @throws IllegalStateException if the lock could not be acquired in time
+     */
+    public Lock lockObject(String objectId) {
+        return lock(new TreeSet<>(List.of(toKey(objectId))));
+    }
+
+    /**
+     * Checks that the lock on the object with the given ID, which the calling thread holds, has not been lost in the meantime. To be called before a change to the object is committed, so
+     * that it is rolled back if another instance may have changed the object as well.
+     *
+     * @param objectId the object ID
+     * @throws IllegalStateException if the lock may have been taken over
+     */
+    public void checkObjectLocked(String objectId) {
+        checkLocked(toKey(objectId));
+    }
+
+    /**
+     * Locks the objects that the given paths in the storage belong to, all at once. A path above the object roots, such as the root extensions or a tuple directory, is locked
+     * exclusively: it also excludes changes to every object, as any of them may be under it.
+     *
+     * @param itemPaths the paths relative to the storage root
+     * @return the lock, to be closed when the change is done
+     * @throws IllegalStateException if the locks could not be acquired in time
+     */
+    public Lock lockItemPaths(Collection<String> itemPaths) {
+        var keys = new TreeSet<String>();
+        for (var itemPath : itemPaths) {
+            var segments = itemPath.split("/");
+            keys.add(segments.length <= numberOfTuples ? "/" + itemPath : segments[numberOfTuples]);
+        }
+        return lock(keys);
+    }
+
+    /**
+     * Acquires the locks for the given keys. To prevent deadlocks between callers that lock more than one object, implementations must acquire the underlying locks in a fixed order, and
+     * release the ones already acquired if they fail.
+     *
+     * @param keys the keys, sorted
+     * @return the lock on all the keys
+     */
+    protected abstract Lock lock(SortedSet<String> keys);
+
+    /**
+     * Checks that the lock for the given key has not been lost. Locks held within this process cannot be lost, so this does nothing by default.
+     *
+     * @param key the key
+     * @throws IllegalStateException if the lock may have been taken over
+     */
+    protected void checkLocked(String key) {
+    }
+
+    /**
+     * @param key a key
+     * @return whether the key is for a path above the object roots, which must exclude changes to all objects
+     */
+    protected static boolean isAboveObjectRoots(String key) {
+        return key.startsWith("/");
+    }
+
+    private String toKey(String objectId) {
+        var index = objectId.lastIndexOf(delimiter);
+        return index == -1 ? objectId : objectId.substring(index + delimiter.length());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.AllArgsConstructor;
+import nl.knaw.dans.datavault.api.OcflExtensionFileDetailsDto;
+import nl.knaw.dans.datavault.api.OcflFileDetailsDto;
+import nl.knaw.dans.datavault.api.OcflObjectDetailsDto;
+import nl.knaw.dans.datavault.api.OcflObjectVersionDto;
+import nl.knaw.dans.datavault.api.OcflVersionDetailsDto;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Delegates to a {@link RepositoryProvider} that is wrapped in a UnitOfWorkAwareProxy, and holds the lock on the object while a version is added to it. The lock is taken outside the unit of
+ * work, so that it is only released after the change has been committed; otherwise another thread could read the object before the change is visible.
+ */
+@AllArgsConstructor
+public class ObjectLockingRepositoryProvider implements RepositoryProvider {
+    private final RepositoryProvider delegate;
+    // If null, the objects are not locked
+    private final ObjectLockManager objectLockManager;
+
+    @Override
+    public void addVersion(String objectId, int version, Path objectVersionDirectory) {
+        withObjectLock(objectId, () -> delegate.addVersion(objectId, version, objectVersionDirectory));
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, Path objectVersionDirectory, VersionInfoJsonReader versionInfo) {
+        withObjectLock(objectId, () -> delegate.addVersion(objectId, version, objectVersionDirectory, versionInfo));
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, VersionContent content, VersionInfoJsonReader versionInfo) {
+        withObjectLock(objectId, () -> delegate.addVersion(objectId, version, content, versionInfo));
+    }
+
+    @Override
+    public Optional<OcflObjectVersionDto> getOcflObjectVersion(String objectId, int version) {
+        return delegate.getOcflObjectVersion(objectId, version);
+    }
+
+    @Override
+    public List<String> listObjectIds() {
+        return delegate.listObjectIds();
+    }
+
+    @Override
+    public Optional<OcflObjectDetailsDto> describeObject(String objectId) {
+        return delegate.describeObject(objectId);
+    }
+
+    @Override
+    public Optional<OcflVersionDetailsDto> getVersionDetails(String objectId, String versionNumber) {
+        return delegate.getVersionDetails(objectId, versionNumber);
+    }
+
+    @Override
+    public Optional<List<OcflFileDetailsDto>> listFiles(String objectId, String versionNumber) {
+        return delegate.listFiles(objectId, versionNumber);
+    }
+
+    @Override
+    public List<OcflExtensionFileDetailsDto> listExtensionFiles(String objectId) {
+        return delegate.listExtensionFiles(objectId);
+    }
+
+    @Override
+    public InputStream getExtensionFile(String objectId, String path) {
+        return delegate.getExtensionFile(objectId, path);
+    }
+
+    @Override
+    public void start() throws Exception {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        delegate.stop();
+    }
+
+    private void withObjectLock(String objectId, Runnable action) {
+        if (objectLockManager == null) {
+            action.run();
+            return;
+        }
+        try (var lock = objectLockManager.lockObject(objectId)) {
+            action.run();
+        }
+    }
+}
@@ -19,9 +19,12 @@ import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
 import io.dropwizard.lifecycle.Managed;
+import io.ocfl.api.OcflObjectUpdater;
+import io.ocfl.api.OcflOption;
 import io.ocfl.api.OcflRepository;
 import io.ocfl.api.exception.NotFoundException;
 import io.ocfl.api.model.ObjectVersionId;
+import io.ocfl.api.model.VersionInfo;
 import io.ocfl.core.OcflRepositoryBuilder;
 import io.ocfl.core.extension.UnsupportedExtensionBehavior;
 import io.ocfl.core.extension.storage.layout.config.NTupleOmitPrefixStorageLayoutConfig;
@@ -41,28 +44,36 @@ import nl.knaw.dans.datavault.api.OcflVersionDetailsDto;
 import nl.knaw.dans.datavault.config.InitChecksConfig;
 import nl.knaw.dans.datavault.config.RootExtensionsInitChecksConfig;
 import nl.knaw.dans.datavault.config.RootExtensionsInitEdit;
+import nl.knaw.dans.datavault.config.StorageLayoutConfig;
+import nl.knaw.dans.datavault.core.VersionInfoJsonReader.VersionDelta;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
 import nl.knaw.dans.layerstore.Item;
-import nl.knaw.dans.layerstore.ItemsMismatchException;
+import nl.knaw.dans.layerstore.ItemStore;
 import nl.knaw.dans.layerstore.LayerConsistencyChecker;
-import nl.knaw.dans.layerstore.LayerIdsMismatchException;
 import nl.knaw.dans.layerstore.LayeredItemStore;
 import nl.knaw.dans.lib.ocflext.LayeredStorage;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
@@ -94,32 +105,166 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
     private final InitChecksConfig initChecks;
     private final RootExtensionsInitChecksConfig rootExtensionsInitChecks;
 
+    // Used for reading file content; may differ from layeredItemStore, e.g. to serve content from archived layers through a cache
+    private final ItemStore contentItemStore;
+
+    // If null, the init checks are performed one after the other and never skipped
+    private final InitCheckRunner initCheckRunner;
+
+    // Used for the fingerprints of the init checks; only needed if initCheckRunner records results
+    private final ItemRecordDao itemRecordDao;
+
+    // If true, start() leaves the init checks to performDeferredInitChecks()
+    private final boolean deferInitChecks;
+
+    // Used for all access to the storage by the OCFL library, so that changes can be journaled and lookups indexed; if null, layeredItemStore is used
+    private final ItemStore storageItemStore;
+
+    // If not null, the top layer is checked incrementally
+    private final IncrementalTopLayerChecker incrementalTopLayerChecker;
+
+    // Layout for a new repository; if null, the defaults of StorageLayoutConfig are used
+    private final StorageLayoutConfig storageLayout;
+
+    // If not null, the new content files of every version are deduplicated against the other content in the top layer
+    private final ContentDeduplicator contentDeduplicator;
+
+    // If not null, the storage item store syncs the changes to the staged layers; the changes made for a version are synced as a group
+    private final SyncingItemStore syncingItemStore;
+
+    // If not null, versions are only added to an object while holding its lock, so that concurrent jobs cannot interleave their changes to the same object. The lock is taken by the
+    // ObjectLockingRepositoryProvider around the unit of work; here it is only checked that it is still held before the change is committed.
+    private final ObjectLockManager objectLockManager;
+
+    // If not null, only the writer of the layer store creates the top layer and writes the root extensions and docs on start
+    private final ClusterCoordinator clusterCoordinator;
+
     private OcflRepository ocflRepository;
     private OcflStorage ocflStorage;
     private PropertyRegistryValidator propertyRegistryValidator;
     private ObjectVersionPropertiesValidator objectVersionPropertiesValidator;
+    private boolean topLayerCreatedOnStart;
 
     @Builder
     public static OcflRepositoryProvider create(LayeredItemStore itemStore, Path workDir, LayerConsistencyChecker layerConsistencyChecker,
         Path rootExtensionsSourcePath, Path rootDocsSourcePath, List<RootExtensionsInitEdit> rootExtensionsInitEdits, InitChecksConfig initChecks,
-        RootExtensionsInitChecksConfig rootExtensionsInitChecks) {
+        RootExtensionsInitChecksConfig rootExtensionsInitChecks, ItemStore contentItemStore, InitCheckRunner initCheckRunner, ItemRecordDao itemRecordDao,
+        boolean deferInitChecks, ItemStore storageItemStore, IncrementalTopLayerChecker incrementalTopLayerChecker, StorageLayoutConfig storageLayout,
+        ContentDeduplicator contentDeduplicator, SyncingItemStore syncingItemStore, ObjectLockManager objectLockManager, ClusterCoordinator clusterCoordinator) {
         return new OcflRepositoryProvider(itemStore, workDir, layerConsistencyChecker, rootExtensionsSourcePath, rootDocsSourcePath, rootExtensionsInitEdits, initChecks,
-            rootExtensionsInitChecks);
+            rootExtensionsInitChecks, contentItemStore, initCheckRunner, itemRecordDao, deferInitChecks,
+            storageItemStore, incrementalTopLayerChecker, storageLayout, contentDeduplicator, syncingItemStore, objectLockManager, clusterCoordinator);
     }
 
     @Override
     public void addVersion(String objectId, int version, Path objectVersionDirectory) {
+        addVersion(objectId, version, objectVersionDirectory, VersionInfoJsonReader.forVersionDirectory(objectVersionDirectory));
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, Path objectVersionDirectory, VersionInfoJsonReader reader) {
+        checkingObjectLock(objectId, () -> inWriteGroup(() -> addVersionFromDirectory(objectId, version, objectVersionDirectory, reader)));
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, VersionContent content, VersionInfoJsonReader reader) {
+        checkingObjectLock(objectId, () -> inWriteGroup(() -> addVersionFromContent(objectId, version, content, reader)));
+    }
+
+    /*
+     * The head version check of OCFL and the load and save of the object version properties are only safe if no other thread changes the object in the meantime. The lock is held by the
+     * caller until after the commit; if it has been lost while the version was added, the check throws, so that the unit of work is rolled back.
+     */
+    private void checkingObjectLock(String objectId, Runnable action) {
+        action.run();
+        if (objectLockManager != null) {
+            objectLockManager.checkObjectLocked(objectId);
+        }
+    }
+
+    /*
+     * The version is only acknowledged when everything written for it has been synced, if required by the durability mode.
+     */
+    private void inWriteGroup(Runnable action) {
+        if (syncingItemStore != null) {
+            syncingItemStore.runInGroup(action);
+        }
+        else {
+            action.run();
+        }
+    }
+
+    private void addVersionFromDirectory(String objectId, int version, Path objectVersionDirectory, VersionInfoJsonReader reader) {
         log.debug("Adding version import directory {} to object {} as version v{}", objectVersionDirectory, objectId, version);
+        var ovp = prepareObjectVersionProperties(objectId, version, reader);
+        var delta = reader.getVersionDelta();
+        if (delta.isPresent()) {
+            addDeltaVersion(objectId, version, objectVersionDirectory, delta.get(), reader.getVersionInfo());
+        }
+        else {
+            // putObject wants the version number of HEAD, so we need to subtract 1 from the version number
+            ocflRepository.putObject(ObjectVersionId.version(objectId, version - 1), objectVersionDirectory, reader.getVersionInfo());
+        }
+        deduplicateNewContent(objectId, version);
+        ovp.save();
+    }
+
+    private void addVersionFromContent(String objectId, int version, VersionContent content, VersionInfoJsonReader reader) {
+        log.debug("Adding streamed content to object {} as version v{}", objectId, version);
+        var ovp = prepareObjectVersionProperties(objectId, version, reader);
+        var delta = reader.getVersionDelta();
+        if (delta.isPresent()) {
+            validateDelta(objectId, version, delta.get());
+        }
+        var logicalPaths = content.listFiles();
+        // Like putObject, updateObject wants the version number of HEAD. The files are digested while they are written to the work directory, so they are read only once.
+        ocflRepository.updateObject(ObjectVersionId.version(objectId, version - 1), reader.getVersionInfo(), updater -> {
+            if (delta.isPresent()) {
+                applyDelta(updater, delta.get());
+            }
+            else {
+                // Without a delta the new version consists of the given files only, as with putObject
+                updater.clearVersionState();
+            }
+            for (var logicalPath : logicalPaths) {
+                try (var in = content.openFile(logicalPath)) {
+                    updater.writeFile(in, logicalPath, OcflOption.OVERWRITE);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        deduplicateNewContent(objectId, version);
+        ovp.save();
+    }
+
+    private void deduplicateNewContent(String objectId, int version) {
+        if (contentDeduplicator == null) {
+            return;
+        }
+        var objectVersion = ocflRepository.getObject(ObjectVersionId.version(objectId, version));
+        var digestAlgorithm = ocflRepository.describeObject(objectId).getDigestAlgorithm();
+        // Only the files that are stored in this version; unchanged files are already shared with earlier versions by OCFL itself
+        var versionPrefix = ocflStorage.objectRootPath(objectId) + "/" + objectVersion.getVersionNum() + "/";
+        var digestsByPath = new HashMap<String, String>();
+        for (var file : objectVersion.getFiles()) {
+            if (file.getStorageRelativePath().startsWith(versionPrefix)) {
+                digestsByPath.put(file.getStorageRelativePath(), file.getFixity().get(digestAlgorithm));
+            }
+        }
+        contentDeduplicator.deduplicate(digestAlgorithm.getOcflName(), digestsByPath);
+    }
+
+    private ObjectVersionProperties prepareObjectVersionProperties(String objectId, int version, VersionInfoJsonReader reader) {
         if (ocflRepository == null) {
             throw new IllegalStateException("OCFL repository is not yet started");
         }
-        var versionInfoFile = objectVersionDirectory.resolveSibling(objectVersionDirectory.getFileName().toString() + ".json");
-        var reader = createVersionInfoJsonReader(versionInfoFile);
         // Validate custom properties against the storage-root property registry before writing anything
         propertyRegistryValidator.validate(reader.getObjectVersionProperties());
 
         // Precompute candidate object_version_properties for the new version and validate against schema
-        var ovp = new ObjectVersionProperties(layeredItemStore, ocflStorage.objectRootPath(objectId));
+        var ovp = new ObjectVersionProperties(getStorageItemStore(), ocflStorage.objectRootPath(objectId));
         try {
             ovp.load();
             reader.getObjectVersionProperties().forEach((key, value) -> ovp.putProperty(version, key, value));
@@ -128,10 +273,53 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
         catch (IOException e) {
             throw new RuntimeException("Failed to prepare object version properties", e);
         }
+        return ovp;
+    }
 
-        // putObject wants the version number of HEAD, so we need to subtract 1 from the version number
-        ocflRepository.putObject(ObjectVersionId.version(objectId, version - 1), objectVersionDirectory, reader.getVersionInfo());
-        ovp.save();
+    /*
+     * Builds the new version from the state of the previous one, so that only the added and changed files have to be delivered and hashed.
+     */
+    private void addDeltaVersion(String objectId, int version, Path objectVersionDirectory, VersionDelta delta, VersionInfo versionInfo) {
+        validateDelta(objectId, version, delta);
+        List<Path> files;
+        try (var paths = Files.walk(objectVersionDirectory)) {
+            files = paths.filter(Files::isRegularFile).toList();
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to list version directory " + objectVersionDirectory, e);
+        }
+        log.debug("Adding version v{} to object {} as delta: {} renamed, {} removed, {} added or changed", version, objectId, delta.renamed().size(), delta.removed().size(),
+            files.size());
+        // Like putObject, updateObject wants the version number of HEAD
+        ocflRepository.updateObject(ObjectVersionId.version(objectId, version - 1), versionInfo, updater -> {
+            applyDelta(updater, delta);
+            for (var file : files) {
+                updater.addPath(file, toLogicalPath(objectVersionDirectory.relativize(file)), OcflOption.OVERWRITE);
+            }
+        });
+    }
+
+    private void validateDelta(String objectId, int version, VersionDelta delta) {
+        if (version == 1) {
+            throw new IllegalArgumentException("A version delta requires a previous version, but " + objectId + " v1 is the first version");
+        }
+        var previousVersion = ocflRepository.describeVersion(ObjectVersionId.version(objectId, version - 1));
+        var missing = Stream.concat(delta.removed().stream(), delta.renamed().keySet().stream())
+            .filter(logicalPath -> !previousVersion.containsFile(logicalPath))
+            .toList();
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Version delta refers to files that are not in " + objectId + " v" + (version - 1) + ": " + missing);
+        }
+    }
+
+    private static void applyDelta(OcflObjectUpdater updater, VersionDelta delta) {
+        // Renames first, so that a renamed file can be replaced by a new file under its old name
+        delta.renamed().forEach(updater::renameFile);
+        delta.removed().forEach(updater::removeFile);
+    }
+
+    private static String toLogicalPath(Path relativePath) {
+        return relativePath.toString().replace('\\', '/');
     }
 
     @Override
@@ -216,11 +404,11 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
             var objectRoot = ocflStorage.objectRootPath(objectId);
             var extensionsPath = Path.of(objectRoot).resolve("extensions").toString();
 
-            if (!layeredItemStore.existsPathLike(extensionsPath)) {
+            if (!getStorageItemStore().existsPathLike(extensionsPath)) {
                 return List.of();
             }
 
-            return layeredItemStore.listRecursive(extensionsPath).stream()
+            return getStorageItemStore().listRecursive(extensionsPath).stream()
                 .filter(item -> item.getType() == Item.Type.File)
                 .map(item -> {
                     var rel = Path.of(extensionsPath).relativize(Path.of(item.getPath())).toString();
@@ -248,10 +436,10 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
             var objectRoot = ocflStorage.objectRootPath(objectId);
             var fullPath = Path.of(objectRoot).resolve("extensions").resolve(path).toString();
 
-            if (!layeredItemStore.existsPathLike(fullPath)) {
+            if (!getStorageItemStore().existsPathLike(fullPath)) {
                 throw new NoSuchElementException("Extension file not found: " + path + " in object " + objectId);
             }
-            return layeredItemStore.readFile(fullPath);
+            return getContentItemStore().readFile(fullPath);
         }
         catch (IOException e) {
             throw new RuntimeException("Failed to read extension file '" + path + "' for object " + objectId, e);
@@ -266,22 +454,26 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
                 .collect(Collectors.toMap(e -> e.getKey().getOcflName(), Map.Entry::getValue)));
     }
 
-    private VersionInfoJsonReader createVersionInfoJsonReader(Path versionPropertiesFile) {
-        try {
-            return new VersionInfoJsonReader(versionPropertiesFile);
-        }
-        catch (IOException e) {
-            throw new RuntimeException("Failed to read version info JSON file from " + versionPropertiesFile, e);
-        }
-    }
-
     @Override
     public void start() {
         log.info("Starting OCFL repository provider");
-        var layeredStorage = new LayeredStorage(initTopLayer(layeredItemStore));
-        performInitChecks(layeredItemStore);
+        var writer = clusterCoordinator == null || clusterCoordinator.isWriter();
+        if (writer) {
+            initTopLayer(layeredItemStore);
+        }
+        else {
+            checkInitializedByWriter(layeredItemStore);
+        }
+        var layeredStorage = new LayeredStorage(getStorageItemStore());
+        if (!deferInitChecks) {
+            performInitChecks(layeredItemStore);
+        }
         ocflStorage = new OcflStorageBuilder().storage(layeredStorage).build();
-        var layoutConfig = new NTupleOmitPrefixStorageLayoutConfig().setDelimiter(":").setTupleSize(3); // TODO: make configurable
+        var layout = storageLayout != null ? storageLayout : new StorageLayoutConfig();
+        var layoutConfig = new NTupleOmitPrefixStorageLayoutConfig()
+            .setDelimiter(layout.getDelimiter())
+            .setTupleSize(layout.getTupleSize())
+            .setNumberOfTuples(layout.getNumberOfTuples());
         try {
             ocflRepository = new OcflRepositoryBuilder()
                 .unsupportedExtensionBehavior(UnsupportedExtensionBehavior.WARN)
@@ -291,27 +483,21 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
                 .storage(ocflStorage)
                 .workDir(Files.createDirectories(workDir)).build();
 
-            addExtensions();
-            addRootDocs();
-            propertyRegistryValidator = new PropertyRegistryValidator(layeredItemStore);
-            objectVersionPropertiesValidator = new ObjectVersionPropertiesValidator(layeredItemStore);
-
-            if (getRootExtensionsInitChecks().isPropertyRegistry()) {
-                log.info("Validating OCFL repository property registry");
-                propertyRegistryValidator.validate();
-                log.info("OCFL repository property registry OK");
+            if (writer) {
+                addExtensions();
+                addRootDocs();
             }
             else {
-                log.warn("Validation of the root extension 'property-registry' has been disabled.");
+                log.info("Instance {} is not the writer of the layer store; leaving the root extensions and docs to the writer", clusterCoordinator.getInstanceId());
             }
-            if (getRootExtensionsInitChecks().isPackagingFormatRegistry()) {
-                PackagingFormatRegistryValidator packagingFormatRegistryValidator = new PackagingFormatRegistryValidator(layeredItemStore);
-                log.info("Validating OCFL repository packaging format registry");
-                packagingFormatRegistryValidator.validate();
-                log.info("OCFL repository packaging format registry OK");
+            propertyRegistryValidator = new PropertyRegistryValidator(layeredItemStore);
+            objectVersionPropertiesValidator = new ObjectVersionPropertiesValidator(layeredItemStore);
+
+            if (deferInitChecks) {
+                log.info("Init checks are deferred; they will run in the background");
             }
             else {
-                log.warn("Validation of the root extension 'packaging-format-registry' has been disabled.");
+                performRootExtensionsInitChecks();
             }
             log.info("OCFL repository provider started");
         }
@@ -320,42 +506,139 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
         }
     }
 
-    private LayeredItemStore initTopLayer(LayeredItemStore layeredItemStore) {
+    private void initTopLayer(LayeredItemStore layeredItemStore) {
         try {
             if (layeredItemStore.getTopLayerId() == null) {
                 layeredItemStore.newTopLayer();
+                topLayerCreatedOnStart = true;
             }
-            return layeredItemStore;
         }
         catch (IOException e) {
             throw new RuntimeException("Failed to initialize top layer", e);
         }
     }
 
+    private void checkInitializedByWriter(LayeredItemStore layeredItemStore) {
+        if (layeredItemStore.getTopLayerId() == null) {
+            throw new IllegalStateException("The layer store has no top layer yet and instance " + clusterCoordinator.getInstanceId()
+                + " is not the writer; start the instance that is the writer first");
+        }
+    }
+
+    /**
+     * Performs all init checks in parallel, each in a unit of work of its own. Used when the init checks are deferred; must only be called after the unit of work of {@link #start()} has been
+     * committed.
+     */
+    public void performDeferredInitChecks() {
+        var initChecksToRun = createLayerInitChecks(layeredItemStore);
+        initChecksToRun.addAll(createRootExtensionsInitChecks());
+        getInitCheckRunner().runInParallel(initChecksToRun);
+    }
+
     private void performInitChecks(LayeredItemStore layeredItemStore) {
-        try {
-            if (initChecks.isLayerIds()) {
-                log.info("Checking layer IDs consistency between storage and database...");
-                layeredItemStore.checkSameLayersOnStorageAndDb();
-                log.info("Layer IDs OK.");
-            }
-            else {
-                log.warn("Initial check of layer IDs consistency between storage and database has been disabled.");
-            }
-            if (initChecks.isTopLayerListingRecords()) {
-                log.info("Checking top layer listing records consistency...");
-                layerConsistencyChecker.check(layeredItemStore.getTopLayerId());
-                log.info("Top layer listing records OK.");
-            }
-            else {
-                log.warn("Initial check of top layer listing records consistency has been disabled.");
-            }
+        var initChecksToRun = createLayerInitChecks(layeredItemStore);
+        if (topLayerCreatedOnStart) {
+            // The new top layer has not been committed yet, so other units of work would not see it
+            initChecksToRun.forEach(getInitCheckRunner()::runInCurrentUnitOfWork);
+        }
+        else {
+            // Nothing has been written yet, so these can run in parallel, each in a unit of work of its own
+            getInitCheckRunner().runInParallel(initChecksToRun);
+        }
+    }
+
+    private List<InitCheck> createLayerInitChecks(LayeredItemStore layeredItemStore) {
+        var initChecksToRun = new ArrayList<InitCheck>();
+        if (initChecks.isLayerIds()) {
+            // The layer IDs in the database only change together with the layers on storage, so the storage side suffices; listing the database side would scan all item records
+            initChecksToRun.add(new InitCheck("layer-ids",
+                () -> fingerprint(layeredItemStore.listLayerIds()),
+                layeredItemStore::checkSameLayersOnStorageAndDb));
+        }
+        else {
+            log.warn("Initial check of layer IDs consistency between storage and database has been disabled.");
+        }
+        if (initChecks.isTopLayerListingRecords()) {
+            initChecksToRun.add(new InitCheck("top-layer-listing-records",
+                () -> {
+                    var topLayerId = layeredItemStore.getTopLayerId();
+                    return fingerprint(topLayerId, layeredItemStore.getTopLayerSizeInBytes(), itemRecordDao.countByLayerId(topLayerId));
+                },
+                () -> checkTopLayer(layeredItemStore.getTopLayerId()),
+                () -> markTopLayerVerified(layeredItemStore.getTopLayerId())));
         }
-        catch (IOException | LayerIdsMismatchException | ItemsMismatchException e) {
-            throw new IllegalStateException("Initialization check revealed consistency issues", e);
+        else {
+            log.warn("Initial check of top layer listing records consistency has been disabled.");
+        }
+        return initChecksToRun;
+    }
+
+    private void checkTopLayer(long topLayerId) throws Exception {
+        if (incrementalTopLayerChecker != null) {
+            incrementalTopLayerChecker.check(topLayerId);
+        }
+        else {
+            layerConsistencyChecker.check(topLayerId);
+        }
+    }
+
+    private void markTopLayerVerified(long topLayerId) throws IOException {
+        if (incrementalTopLayerChecker != null) {
+            incrementalTopLayerChecker.markVerified(topLayerId);
         }
     }
 
+    private void performRootExtensionsInitChecks() {
+        // The extensions may just have been written in the current unit of work, so these cannot run on other threads
+        createRootExtensionsInitChecks().forEach(getInitCheckRunner()::runInCurrentUnitOfWork);
+    }
+
+    private List<InitCheck> createRootExtensionsInitChecks() {
+        var initChecksToRun = new ArrayList<InitCheck>();
+        if (getRootExtensionsInitChecks().isPropertyRegistry()) {
+            initChecksToRun.add(new InitCheck("property-registry",
+                () -> fingerprintOfFiles("extensions/property-registry"),
+                propertyRegistryValidator::validate));
+        }
+        else {
+            log.warn("Validation of the root extension 'property-registry' has been disabled.");
+        }
+        if (getRootExtensionsInitChecks().isPackagingFormatRegistry()) {
+            initChecksToRun.add(new InitCheck("packaging-format-registry",
+                () -> fingerprintOfFiles("extensions/packaging-format-registry"),
+                () -> new PackagingFormatRegistryValidator(layeredItemStore).validate()));
+        }
+        else {
+            log.warn("Validation of the root extension 'packaging-format-registry' has been disabled.");
+        }
+        return initChecksToRun;
+    }
+
+    private String fingerprintOfFiles(String directory) throws IOException {
+        var digests = new ArrayList<String>();
+        if (layeredItemStore.existsPathLike(directory)) {
+            var files = layeredItemStore.listRecursive(directory).stream()
+                .filter(item -> item.getType() == Item.Type.File)
+                .map(Item::getPath)
+                .sorted()
+                .toList();
+            for (var file : files) {
+                try (var in = layeredItemStore.readFile(file)) {
+                    digests.add(file + "=" + DigestUtils.sha256Hex(in));
+                }
+            }
+        }
+        return fingerprint(digests);
+    }
+
+    /*
+     * The version of the service is part of every fingerprint, because a new version may check more strictly.
+     */
+    private static String fingerprint(Object... parts) {
+        var version = OcflRepositoryProvider.class.getPackage().getImplementationVersion();
+        return DigestUtils.sha256Hex(version + "|" + Arrays.deepToString(parts));
+    }
+
     private void addExtensions() throws IOException {
         Path tempExtensionsPath = workDir.resolve("extensions");
         if (rootExtensionsSourcePath != null) {
@@ -373,7 +656,7 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
                                     log.info("Extension {} already exists in the OCFL repository, skipping", extensionPath);
                                 }
                                 else {
-                                    layeredItemStore.moveDirectoryInto(path, extensionPath);
+                                    getStorageItemStore().moveDirectoryInto(path, extensionPath);
                                 }
                             }
                         }
@@ -410,7 +693,7 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
                         }
                         var destFileName = entry.getFileName().toString();
                         try (var is = Files.newInputStream(entry)) {
-                            layeredItemStore.writeFile(destFileName, is);
+                            getStorageItemStore().writeFile(destFileName, is);
                         }
                     }
                 }
@@ -522,6 +805,18 @@ public class OcflRepositoryProvider implements RepositoryProvider, Managed {
         return false;
     }
 
+    private InitCheckRunner getInitCheckRunner() {
+        return initCheckRunner != null ? initCheckRunner : InitCheckRunner.serial();
+    }
+
+    private ItemStore getStorageItemStore() {
+        return storageItemStore != null ? storageItemStore : layeredItemStore;
+    }
+
+    private ItemStore getContentItemStore() {
+        return contentItemStore != null ? contentItemStore : layeredItemStore;
+    }
+
     private List<RootExtensionsInitEdit> getRootExtensionsInitEdits() {
         return rootExtensionsInitEdits != null ? rootExtensionsInitEdits : List.of();
     }
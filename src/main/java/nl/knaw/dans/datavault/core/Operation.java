@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-running operation that was requested through the API and is executed in the background by the {@link OperationRegistry}. Its state is only kept in memory, so it is lost on a
+ * restart.
+ */
+@Getter
+public class Operation {
+    public enum Status {
+        PENDING,
+        RUNNING,
+        SUCCESS,
+        FAILED
+    }
+
+    private final UUID id;
+    private final String type;
+    private final OffsetDateTime created;
+    private volatile OffsetDateTime started;
+    private volatile OffsetDateTime finished;
+    // Written last, so that a reader that sees a final status also sees the fields set before it
+    private volatile Status status = Status.PENDING;
+    // E.g. the ID of a new layer; null if the operation has no result
+    private volatile Object result;
+    private volatile String message;
+    // The exception the operation failed with; null if it did not fail
+    private volatile Exception failure;
+    @Getter(AccessLevel.NONE)
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
+
+    Operation(UUID id, String type) {
+        this.id = id;
+        this.type = type;
+        this.created = OffsetDateTime.now();
+    }
+
+    void start() {
+        started = OffsetDateTime.now();
+        status = Status.RUNNING;
+    }
+
+    /**
+     * Waits until the operation has finished, successfully or not.
+     *
+     * @param timeout how long to wait at most
+     * @return whether the operation has finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitFinished(Duration timeout) throws InterruptedException {
+        return finishedLatch.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    void succeed(Object result) {
+        this.result = result;
+        finished = OffsetDateTime.now();
+        status = Status.SUCCESS;
+        finishedLatch.countDown();
+    }
+
+    void fail(Exception failure) {
+        this.failure = failure;
+        this.message = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+        finished = OffsetDateTime.now();
+        status = Status.FAILED;
+        finishedLatch.countDown();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Executes long-running operations, such as copying large directories into the item store, on an executor of their own, so that they do not occupy the request threads of the server. The
+ * client receives the {@link Operation} if it does not finish within the completion wait, and polls its status. Finished operations are forgotten after the retention period.
+ */
+@Slf4j
+public class OperationRegistry {
+    private final ExecutorService executorService;
+    private final Duration retention;
+    // How long a request waits for its operation to finish before it is answered with the status of the operation
+    @Getter
+    private final Duration completionWait;
+    private final Map<UUID, Operation> operations = new ConcurrentHashMap<>();
+
+    public OperationRegistry(ExecutorService executorService, Duration retention) {
+        this(executorService, retention, Duration.ZERO);
+    }
+
+    public OperationRegistry(ExecutorService executorService, Duration retention, Duration completionWait) {
+        this.executorService = executorService;
+        this.retention = retention;
+        this.completionWait = completionWait;
+    }
+
+    @FunctionalInterface
+    public interface Work {
+        /**
+         * @return the result of the operation, or null if it has none
+         * @throws Exception if the operation failed
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Submits an operation for execution.
+     *
+     * @param type a short description of the operation, e.g. "copy-directory-into"
+     * @param work the work to do
+     * @return the operation, in status PENDING
+     * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept any more work
+     */
+    public Operation submit(String type, Work work) {
+        removeExpired();
+        var operation = new Operation(UUID.randomUUID(), type);
+        operations.put(operation.getId(), operation);
+        try {
+            executorService.execute(() -> run(operation, work));
+        }
+        catch (RuntimeException e) {
+            operations.remove(operation.getId());
+            throw e;
+        }
+        return operation;
+    }
+
+    public Optional<Operation> get(UUID id) {
+        return Optional.ofNullable(operations.get(id));
+    }
+
+    private void run(Operation operation, Work work) {
+        operation.start();
+        log.debug("Started operation {} ({})", operation.getId(), operation.getType());
+        try {
+            operation.succeed(work.run());
+            log.debug("Finished operation {} ({})", operation.getId(), operation.getType());
+        }
+        catch (Exception e) {
+            log.error("Operation {} ({}) failed", operation.getId(), operation.getType(), e);
+            operation.fail(e);
+        }
+    }
+
+    private void removeExpired() {
+        var threshold = OffsetDateTime.now().minus(retention);
+        operations.values().removeIf(operation -> operation.getFinished() != null && operation.getFinished().isBefore(threshold));
+    }
+}
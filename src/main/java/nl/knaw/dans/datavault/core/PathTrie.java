@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.layerstore.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact store of the paths of an {@link ItemPathIndex}. Paths are split into segments and stored as a tree, so that a prefix shared by many paths, such as the NTuple directories of the
+ * object roots, is stored only once. Short segment names, which tend to occur many times, such as <code>content</code> or <code>inventory.json</code>, share a single string instance. The children of a node
+ * are kept in an array sorted by name, and the records of a node in a <code>long[]</code>, with the layer ID in the high bits and the item type in the lowest bit.
+ *
+ * Not thread-safe; {@link ItemPathIndex} takes care of the locking.
+ */
+final class PathTrie {
+    private static final char SEPARATOR = '/';
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final long[] NO_RECORDS = new long[0];
+    // Longer names, such as digests and the names of content files, are rarely repeated, so sharing them would cost more than it saves
+    private static final int MAX_SHARED_NAME_LENGTH = 16;
+
+    private static final class Node {
+        private final String name;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        private long[] records = NO_RECORDS;
+
+        private Node(String name) {
+            this.name = name;
+        }
+
+        private int indexOfChild(String childName) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = children[middle].name.compareTo(childName);
+                if (comparison < 0) {
+                    low = middle + 1;
+                }
+                else if (comparison > 0) {
+                    high = middle - 1;
+                }
+                else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Node getChild(String childName) {
+            int index = indexOfChild(childName);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node getOrAddChild(String childName, Map<String, String> names) {
+            int index = indexOfChild(childName);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertionPoint = -(index + 1);
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, insertionPoint, children, insertionPoint + 1, childCount - insertionPoint);
+            var child = new Node(childName.length() <= MAX_SHARED_NAME_LENGTH ? names.computeIfAbsent(childName, name -> name) : childName);
+            children[insertionPoint] = child;
+            childCount++;
+            return child;
+        }
+
+        private void removeChild(Node child) {
+            int index = indexOfChild(child.name);
+            if (index >= 0) {
+                System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+                children[--childCount] = null;
+                if (childCount == 0) {
+                    children = NO_CHILDREN;
+                }
+            }
+        }
+
+        private boolean hasRecords() {
+            return records.length > 0;
+        }
+
+        private boolean hasLayer(long layerId) {
+            for (var record : records) {
+                if (layerId(record) == layerId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void putRecord(long layerId, Item.Type type) {
+            var record = encode(layerId, type);
+            for (int i = 0; i < records.length; i++) {
+                if (layerId(records[i]) == layerId) {
+                    records[i] = record;
+                    return;
+                }
+            }
+            records = Arrays.copyOf(records, records.length + 1);
+            records[records.length - 1] = record;
+        }
+
+        private void removeRecord(long layerId) {
+            for (int i = 0; i < records.length; i++) {
+                if (layerId(records[i]) == layerId) {
+                    var remaining = new long[records.length - 1];
+                    System.arraycopy(records, 0, remaining, 0, i);
+                    System.arraycopy(records, i + 1, remaining, i, records.length - i - 1);
+                    records = remaining.length == 0 ? NO_RECORDS : remaining;
+                    return;
+                }
+            }
+        }
+
+        private Item.Type getType() {
+            // The newest layer determines what the path is
+            long newest = records[0];
+            for (var record : records) {
+                if (layerId(record) > layerId(newest)) {
+                    newest = record;
+                }
+            }
+            return (newest & 1) == 1 ? Item.Type.Directory : Item.Type.File;
+        }
+    }
+
+    private final Node root = new Node("");
+    private final Map<String, String> names = new HashMap<>();
+    private int size;
+
+    private static long encode(long layerId, Item.Type type) {
+        return layerId << 1 | (type == Item.Type.Directory ? 1 : 0);
+    }
+
+    private static long layerId(long record) {
+        return record >>> 1;
+    }
+
+    /**
+     * @return the number of paths with at least one record
+     */
+    int size() {
+        return size;
+    }
+
+    void add(String path, long layerId, Item.Type type) {
+        var node = root;
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.getOrAddChild(path.substring(start, end), names);
+            start = end + 1;
+        }
+        if (!node.hasRecords()) {
+            size++;
+        }
+        node.putRecord(layerId, type);
+    }
+
+    void remove(String path, long layerId) {
+        var branch = findBranch(path);
+        if (branch != null) {
+            var node = branch.get(branch.size() - 1);
+            removeRecord(node, layerId);
+            prune(branch);
+        }
+    }
+
+    /**
+     * Removes the records of a layer for everything under a path, but not for the path itself.
+     */
+    void removeDescendants(String path, long layerId) {
+        var branch = findBranch(path);
+        if (branch != null) {
+            removeDescendants(branch.get(branch.size() - 1), layerId);
+            prune(branch);
+        }
+    }
+
+    boolean exists(String path) {
+        var node = find(path);
+        return node != null && node.hasRecords();
+    }
+
+    boolean existsInLayer(long layerId, String path) {
+        var node = find(path);
+        return node != null && node.hasLayer(layerId);
+    }
+
+    /**
+     * @return the type of the item at the path, or null if there is no record for it
+     */
+    Item.Type getType(String path) {
+        var node = find(path);
+        return node != null && node.hasRecords() ? node.getType() : null;
+    }
+
+    void forEachChild(String path, BiConsumer<String, Item.Type> consumer) {
+        var node = find(path);
+        if (node != null) {
+            var prefix = path.isEmpty() ? "" : path + SEPARATOR;
+            for (int i = 0; i < node.childCount; i++) {
+                var child = node.children[i];
+                if (child.hasRecords()) {
+                    consumer.accept(prefix + child.name, child.getType());
+                }
+            }
+        }
+    }
+
+    void forEachDescendant(String path, BiConsumer<String, Item.Type> consumer) {
+        var node = find(path);
+        if (node != null) {
+            forEachDescendant(node, path.isEmpty() ? "" : path + SEPARATOR, consumer);
+        }
+    }
+
+    private void forEachDescendant(Node node, String prefix, BiConsumer<String, Item.Type> consumer) {
+        for (int i = 0; i < node.childCount; i++) {
+            var child = node.children[i];
+            var childPath = prefix + child.name;
+            if (child.hasRecords()) {
+                consumer.accept(childPath, child.getType());
+            }
+            forEachDescendant(child, childPath + SEPARATOR, consumer);
+        }
+    }
+
+    private Node find(String path) {
+        var node = root;
+        int start = 0;
+        while (node != null && start < path.length()) {
+            int end = path.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.getChild(path.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    // The nodes from the root to the node of the path, or null if the path is not in the trie
+    private List<Node> findBranch(String path) {
+        var branch = new ArrayList<Node>();
+        var node = root;
+        branch.add(node);
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = node.getChild(path.substring(start, end));
+            if (node == null) {
+                return null;
+            }
+            branch.add(node);
+            start = end + 1;
+        }
+        return branch;
+    }
+
+    private void removeRecord(Node node, long layerId) {
+        if (node.hasLayer(layerId)) {
+            node.removeRecord(layerId);
+            if (!node.hasRecords()) {
+                size--;
+            }
+        }
+    }
+
+    private void removeDescendants(Node node, long layerId) {
+        for (int i = node.childCount - 1; i >= 0; i--) {
+            var child = node.children[i];
+            removeDescendants(child, layerId);
+            removeRecord(child, layerId);
+            if (!child.hasRecords() && child.childCount == 0) {
+                node.removeChild(child);
+            }
+        }
+    }
+
+    // Removes the nodes at the end of the branch that no longer have records or children
+    private void prune(List<Node> branch) {
+        for (int i = branch.size() - 1; i > 0; i--) {
+            var node = branch.get(i);
+            if (node.hasRecords() || node.childCount > 0) {
+                return;
+            }
+            branch.get(i - 1).removeChild(node);
+        }
+    }
+}
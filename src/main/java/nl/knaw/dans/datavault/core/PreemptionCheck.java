@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ImportJobDao;
+
+import java.time.Duration;
+
+/**
+ * Tells a running batch whether it should yield to a pending job with a higher priority. The database is asked at most once per check interval. Once a job with a higher priority has been
+ * seen, the answer stays yes, so that the batch stops starting new objects.
+ */
+@Slf4j
+public class PreemptionCheck {
+    private final ImportJobDao importJobDao;
+    private final int priority;
+    private final long checkIntervalNanos;
+
+    private boolean preempted;
+    private long nextCheckNanos = System.nanoTime();
+
+    public PreemptionCheck(ImportJobDao importJobDao, int priority, Duration checkInterval) {
+        this.importJobDao = importJobDao;
+        this.priority = priority;
+        this.checkIntervalNanos = checkInterval.toNanos();
+    }
+
+    public synchronized boolean isPreempted() {
+        if (preempted) {
+            return true;
+        }
+        var now = System.nanoTime();
+        if (now - nextCheckNanos >= 0) {
+            nextCheckNanos = now + checkIntervalNanos;
+            try {
+                preempted = importJobDao.existsPendingWithPriorityAbove(priority);
+            }
+            catch (RuntimeException e) {
+                // Not being able to preempt is no reason to stop the batch
+                log.warn("Could not check for import jobs with a priority above {}", priority, e);
+            }
+        }
+        return preempted;
+    }
+}
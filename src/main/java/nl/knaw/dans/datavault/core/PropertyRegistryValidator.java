@@ -17,13 +17,12 @@ package nl.knaw.dans.datavault.core;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.NonNull;
 import nl.knaw.dans.layerstore.ItemStore;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -37,9 +36,10 @@ public class PropertyRegistryValidator {
     private final ObjectMapper mapper = new ObjectMapper();
 
     /**
-     * Map of property name to descriptor JSON.
+     * Map of property name to the validator compiled from its descriptor.
      */
-    private final Map<String, JsonNode> registry = new HashMap<>();
+    private final Map<String, PropertyValueValidator> registry = new LinkedHashMap<>();
+    private String[] requiredProperties;
 
     public PropertyRegistryValidator(@NonNull ItemStore itemStore) {
         this.itemStore = itemStore;
@@ -72,96 +72,21 @@ public class PropertyRegistryValidator {
         for (var entry : customProperties.entrySet()) {
             var key = entry.getKey();
             var value = entry.getValue();
-            var desc = registry.get(key);
-            if (desc == null) {
+            var validator = registry.get(key);
+            if (validator == null) {
                 throw new IllegalArgumentException("Unknown property per property-registry: " + key);
             }
-            validateValueAgainstDescriptor(key, value, desc);
+            validator.validate(value);
         }
 
         // 2. Check that all required properties are present
-        for (var entry : registry.entrySet()) {
-            var key = entry.getKey();
-            var desc = entry.getValue();
-            var requiredNode = desc.get("required");
-            boolean required = requiredNode != null && requiredNode.isBoolean() && requiredNode.asBoolean();
-            if (required && !customProperties.containsKey(key)) {
+        for (var key : requiredProperties) {
+            if (!customProperties.containsKey(key)) {
                 throw new IllegalArgumentException("Missing required property per property-registry: " + key);
             }
         }
     }
 
-    private void validateValueAgainstDescriptor(String path, JsonNode value, JsonNode descriptor) {
-        String type = descriptor.hasNonNull("type") ? descriptor.get("type").asText() : "string";
-        switch (type) {
-            case "string" -> {
-                if (!value.isTextual()) {
-                    throw new IllegalArgumentException("Property '" + path + "' must be of type string");
-                }
-            }
-            case "number" -> {
-                if (!value.isNumber()) {
-                    throw new IllegalArgumentException("Property '" + path + "' must be of type number");
-                }
-            }
-            case "boolean" -> {
-                if (!value.isBoolean()) {
-                    throw new IllegalArgumentException("Property '" + path + "' must be of type boolean");
-                }
-            }
-            case "array" -> {
-                if (!value.isArray()) {
-                    throw new IllegalArgumentException("Property '" + path + "' must be of type array");
-                }
-                String itemType = descriptor.hasNonNull("itemType") ? descriptor.get("itemType").asText() : "string";
-                if (!itemType.equals("string") && !itemType.equals("number") && !itemType.equals("boolean")) {
-                    throw new IllegalArgumentException("Unsupported itemType for array property '" + path + "': " + itemType);
-                }
-
-                // Create a synthetic descriptor for the items
-                ObjectNode itemDescriptor = mapper.createObjectNode();
-                itemDescriptor.put("type", itemType);
-                for (int i = 0; i < value.size(); i++) {
-                    validateValueAgainstDescriptor(path + "[" + i + "]", value.get(i), itemDescriptor);
-                }
-            }
-            case "object" -> {
-                if (!value.isObject()) {
-                    throw new IllegalArgumentException("Property '" + path + "' must be of type object");
-                }
-                JsonNode propsDesc = descriptor.get("properties");
-                if (propsDesc == null || !propsDesc.isObject()) {
-                    throw new IllegalStateException("Registry descriptor for object property '" + path + "' must define an object 'properties'");
-                }
-                ObjectNode valueObj = (ObjectNode) value;
-                // Check for unknown fields in provided value
-                Iterator<String> fieldNames = valueObj.fieldNames();
-                while (fieldNames.hasNext()) {
-                    String subKey = fieldNames.next();
-                    if (!propsDesc.has(subKey)) {
-                        throw new IllegalArgumentException("Unknown sub-property for '" + path + "': " + subKey);
-                    }
-                }
-                // Check required and validate each known property when present
-                Iterator<String> descFieldNames = propsDesc.fieldNames();
-                while (descFieldNames.hasNext()) {
-                    String subKey = descFieldNames.next();
-                    JsonNode subDesc = propsDesc.get(subKey);
-                    boolean subRequired = subDesc.has("required") && subDesc.get("required").isBoolean() && subDesc.get("required").asBoolean();
-                    JsonNode subValue = valueObj.get(subKey);
-                    if (subValue == null) {
-                        if (subRequired) {
-                            throw new IllegalArgumentException("Missing required sub-property for '" + path + "': " + subKey);
-                        }
-                        continue;
-                    }
-                    validateValueAgainstDescriptor(path + "." + subKey, subValue, subDesc);
-                }
-            }
-            default -> throw new IllegalArgumentException("Unsupported property type in registry for '" + path + "': " + type);
-        }
-    }
-
     private void loadRegistry() {
         try (var in = itemStore.readFile(REGISTRY_PATH)) {
             JsonNode root = mapper.readTree(in);
@@ -175,8 +100,12 @@ public class PropertyRegistryValidator {
             Iterator<String> fieldNames = registryNode.fieldNames();
             while (fieldNames.hasNext()) {
                 String key = fieldNames.next();
-                registry.put(key, registryNode.get(key));
+                registry.put(key, PropertyValueValidator.compile(key, registryNode.get(key)));
             }
+            requiredProperties = registry.entrySet().stream()
+                .filter(e -> e.getValue().isRequired())
+                .map(Map.Entry::getKey)
+                .toArray(String[]::new);
         }
         catch (IOException e) {
             throw new IllegalStateException("Failed to read property registry from " + REGISTRY_PATH, e);
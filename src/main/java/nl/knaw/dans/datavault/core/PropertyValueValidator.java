@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Validates the value of one property in the property registry. A registry descriptor is compiled once into a tree of validators, so that validating a value does not have to interpret the
+ * descriptor again. The paths used in error messages are fixed by the registry, except for array indices, and are therefore also computed once; a value that passes validation causes no
+ * allocations.
+ *
+ * <p>Errors in a descriptor are reported when a value for it is validated, as before compilation, so that a registry with an error in a property that is not used does not prevent the service
+ * from starting.</p>
+ */
+abstract class PropertyValueValidator {
+    protected final String path;
+    private final boolean required;
+
+    private PropertyValueValidator(String path, JsonNode descriptor) {
+        this.path = path;
+        var requiredNode = descriptor.get("required");
+        this.required = requiredNode != null && requiredNode.isBoolean() && requiredNode.asBoolean();
+    }
+
+    /**
+     * Compiles a registry descriptor.
+     *
+     * @param path       the path of the property, as used in error messages
+     * @param descriptor the descriptor of the property in the registry
+     * @return the validator
+     */
+    static PropertyValueValidator compile(String path, JsonNode descriptor) {
+        var type = descriptor.hasNonNull("type") ? descriptor.get("type").asText() : "string";
+        return switch (type) {
+            case "string" -> new PrimitiveValidator(path, descriptor, PrimitiveType.STRING);
+            case "number" -> new PrimitiveValidator(path, descriptor, PrimitiveType.NUMBER);
+            case "boolean" -> new PrimitiveValidator(path, descriptor, PrimitiveType.BOOLEAN);
+            case "array" -> new ArrayValidator(path, descriptor);
+            case "object" -> new ObjectValidator(path, descriptor);
+            default -> new UnsupportedTypeValidator(path, descriptor, type);
+        };
+    }
+
+    boolean isRequired() {
+        return required;
+    }
+
+    /**
+     * @param value the value to validate
+     * @throws IllegalArgumentException if the value does not match the descriptor
+     * @throws IllegalStateException    if the descriptor is invalid
+     */
+    abstract void validate(JsonNode value);
+
+    private enum PrimitiveType {
+        STRING("string"),
+        NUMBER("number"),
+        BOOLEAN("boolean");
+
+        private final String name;
+
+        PrimitiveType(String name) {
+            this.name = name;
+        }
+
+        boolean matches(JsonNode value) {
+            return switch (this) {
+                case STRING -> value.isTextual();
+                case NUMBER -> value.isNumber();
+                case BOOLEAN -> value.isBoolean();
+            };
+        }
+    }
+
+    private static final class PrimitiveValidator extends PropertyValueValidator {
+        private final PrimitiveType type;
+        private final String typeError;
+
+        private PrimitiveValidator(String path, JsonNode descriptor, PrimitiveType type) {
+            super(path, descriptor);
+            this.type = type;
+            this.typeError = "Property '" + path + "' must be of type " + type.name;
+        }
+
+        @Override
+        void validate(JsonNode value) {
+            if (!type.matches(value)) {
+                throw new IllegalArgumentException(typeError);
+            }
+        }
+    }
+
+    private static final class ArrayValidator extends PropertyValueValidator {
+        private final String itemTypeName;
+        // Null if the item type is not supported
+        private final PrimitiveType itemType;
+
+        private ArrayValidator(String path, JsonNode descriptor) {
+            super(path, descriptor);
+            this.itemTypeName = descriptor.hasNonNull("itemType") ? descriptor.get("itemType").asText() : "string";
+            this.itemType = switch (itemTypeName) {
+                case "string" -> PrimitiveType.STRING;
+                case "number" -> PrimitiveType.NUMBER;
+                case "boolean" -> PrimitiveType.BOOLEAN;
+                default -> null;
+            };
+        }
+
+        @Override
+        void validate(JsonNode value) {
+            if (!value.isArray()) {
+                throw new IllegalArgumentException("Property '" + path + "' must be of type array");
+            }
+            if (itemType == null) {
+                throw new IllegalArgumentException("Unsupported itemType for array property '" + path + "': " + itemTypeName);
+            }
+            for (int i = 0; i < value.size(); i++) {
+                if (!itemType.matches(value.get(i))) {
+                    throw new IllegalArgumentException("Property '" + path + "[" + i + "]' must be of type " + itemType.name);
+                }
+            }
+        }
+    }
+
+    private static final class ObjectValidator extends PropertyValueValidator {
+        // Null if the descriptor does not define its properties
+        private final String[] keys;
+        private final PropertyValueValidator[] validators;
+
+        private ObjectValidator(String path, JsonNode descriptor) {
+            super(path, descriptor);
+            var propertiesDescriptor = descriptor.get("properties");
+            if (propertiesDescriptor == null || !propertiesDescriptor.isObject()) {
+                keys = null;
+                validators = null;
+                return;
+            }
+            var compiled = new LinkedHashMap<String, PropertyValueValidator>();
+            propertiesDescriptor.fields().forEachRemaining(e -> compiled.put(e.getKey(), compile(path + "." + e.getKey(), e.getValue())));
+            keys = compiled.keySet().toArray(String[]::new);
+            validators = compiled.values().toArray(PropertyValueValidator[]::new);
+        }
+
+        @Override
+        void validate(JsonNode value) {
+            if (!value.isObject()) {
+                throw new IllegalArgumentException("Property '" + path + "' must be of type object");
+            }
+            if (keys == null) {
+                throw new IllegalStateException("Registry descriptor for object property '" + path + "' must define an object 'properties'");
+            }
+            // Unknown sub-properties first; if all present keys are known, their number equals the size of the value
+            int known = 0;
+            for (var key : keys) {
+                if (value.get(key) != null) {
+                    known++;
+                }
+            }
+            if (known != value.size()) {
+                throw new IllegalArgumentException("Unknown sub-property for '" + path + "': " + findUnknownKey(value));
+            }
+            for (int i = 0; i < keys.length; i++) {
+                var subValue = value.get(keys[i]);
+                if (subValue == null) {
+                    if (validators[i].isRequired()) {
+                        throw new IllegalArgumentException("Missing required sub-property for '" + path + "': " + keys[i]);
+                    }
+                    continue;
+                }
+                validators[i].validate(subValue);
+            }
+        }
+
+        private String findUnknownKey(JsonNode value) {
+            var knownKeys = List.of(keys);
+            for (Iterator<String> it = value.fieldNames(); it.hasNext(); ) {
+                var key = it.next();
+                if (!knownKeys.contains(key)) {
+                    return key;
+                }
+            }
+            throw new IllegalStateException("No unknown sub-property found for '" + path + "'");
+        }
+    }
+
+    private static final class UnsupportedTypeValidator extends PropertyValueValidator {
+        private final String type;
+
+        private UnsupportedTypeValidator(String path, JsonNode descriptor, String type) {
+            super(path, descriptor);
+            this.type = type;
+        }
+
+        @Override
+        void validate(JsonNode value) {
+            throw new IllegalArgumentException("Unsupported property type in registry for '" + path + "': " + type);
+        }
+    }
+}
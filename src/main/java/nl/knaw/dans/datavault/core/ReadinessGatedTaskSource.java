@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.lib.util.pollingtaskexec.TaskSource;
+
+import java.util.Optional;
+
+/**
+ * Hands out no tasks until the service is ready, so that polling for work only starts after the init checks have passed.
+ *
+ * @param <T> the type of task input
+ */
+@RequiredArgsConstructor
+public class ReadinessGatedTaskSource<T> implements TaskSource<T> {
+    private final TaskSource<T> delegate;
+    private final ServiceReadiness serviceReadiness;
+
+    @Override
+    public Optional<T> nextInput() {
+        if (!serviceReadiness.isReady()) {
+            return Optional.empty();
+        }
+        return delegate.nextInput();
+    }
+}
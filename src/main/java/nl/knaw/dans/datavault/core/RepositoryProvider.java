@@ -43,6 +43,27 @@ public interface RepositoryProvider extends Managed {
      */
     void addVersion(String objectId, int version, Path objectVersionDirectory);
 
+    /**
+     * Same as {@link #addVersion(String, int, Path)}, but with the version info JSON file already read, e.g. while validating the layout of the import directory.
+     *
+     * @param objectId               The identifier of the object
+     * @param version                The version number of the new version
+     * @param objectVersionDirectory The directory containing the new version of the object
+     * @param versionInfo            The version info JSON file that accompanies the directory
+     */
+    void addVersion(String objectId, int version, Path objectVersionDirectory, VersionInfoJsonReader versionInfo);
+
+    /**
+     * Same as {@link #addVersion(String, int, Path, VersionInfoJsonReader)}, but with the content files read one by one instead of from a directory, e.g. when streaming them from an import
+     * archive.
+     *
+     * @param objectId    The identifier of the object
+     * @param version     The version number of the new version
+     * @param content     The content files of the new version
+     * @param versionInfo The version info JSON file that accompanies the content
+     */
+    void addVersion(String objectId, int version, VersionContent content, VersionInfoJsonReader versionInfo);
+
     /**
      * Retrieves the version information for the object identified by the given object id and version number.
      *
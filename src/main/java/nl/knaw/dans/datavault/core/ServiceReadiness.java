@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tracks whether the service has passed its init checks. Until it has, the service only serves read requests: imports are not picked up and the item store cannot be written to. In a cluster,
+ * an instance is also read-only while it is not the writer of the layer store.
+ */
+@Slf4j
+@Getter
+public class ServiceReadiness {
+    public enum State {
+        INITIALIZING, READY, FAILED
+    }
+
+    private volatile State state = State.INITIALIZING;
+    private volatile String message = "Init checks are running";
+    // Null if the service does not share its database with other instances
+    private volatile ClusterCoordinator clusterCoordinator;
+
+    public boolean isReady() {
+        return state == State.READY && isWriter();
+    }
+
+    public String getMessage() {
+        if (state == State.READY && !isWriter()) {
+            return "Instance " + clusterCoordinator.getInstanceId() + " is not the writer of the layer store";
+        }
+        return message;
+    }
+
+    /**
+     * Makes the service read-only whenever this instance is not the writer of the layer store.
+     *
+     * @param clusterCoordinator the coordinator of the instances that share the database
+     */
+    public void setClusterCoordinator(ClusterCoordinator clusterCoordinator) {
+        this.clusterCoordinator = clusterCoordinator;
+    }
+
+    private boolean isWriter() {
+        var coordinator = clusterCoordinator;
+        return coordinator == null || coordinator.isWriter();
+    }
+
+    public void setReady() {
+        log.info("Service is ready; writes are enabled");
+        message = "Init checks passed";
+        state = State.READY;
+    }
+
+    public void setFailed(String message) {
+        log.error("Service stays read-only: {}", message);
+        this.message = message;
+        state = State.FAILED;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.datavault.db.RepositorySettingDao;
+
+/**
+ * Refuses to start with a number of shards other than the one the objects were stored with. {@link ShardedRepositoryProvider} finds the shard of an object by a hash modulo the number of
+ * shards, so after a change most objects would be looked for, and new versions stored, in the wrong shard. The number is recorded in the database of the main shard on the first start. Must be
+ * created as a unit-of-work-aware proxy.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ShardCountCheck {
+    static final String NUMBER_OF_SHARDS = "number-of-shards";
+
+    private final RepositorySettingDao repositorySettingDao;
+    private final ItemRecordDao itemRecordDao;
+
+    /**
+     * Records the number of shards if it was not recorded yet, or checks it against the recorded number.
+     *
+     * @param numberOfShards the configured number of shards, including the main shard
+     * @throws IllegalStateException if the number differs from the recorded one
+     */
+    @UnitOfWork
+    public void check(int numberOfShards) {
+        var recorded = repositorySettingDao.find(NUMBER_OF_SHARDS);
+        if (recorded.isPresent()) {
+            if (Integer.parseInt(recorded.get()) != numberOfShards) {
+                throw new IllegalStateException(String.format(
+                    "The repository was created with %s shard(s), but %d are configured. Objects would be looked for in the wrong shard; restore the shard configuration.",
+                    recorded.get(), numberOfShards));
+            }
+            return;
+        }
+        // Before the number was recorded there was only one shard, so existing objects are all in the main shard
+        if (numberOfShards > 1 && !itemRecordDao.listLayerIds().isEmpty()) {
+            throw new IllegalStateException(String.format(
+                "The main shard already contains objects that were stored without sharding, but %d shards are configured. Objects would be looked for in the wrong shard.", numberOfShards));
+        }
+        log.info("Recording the number of shards: {}", numberOfShards);
+        repositorySettingDao.save(NUMBER_OF_SHARDS, Integer.toString(numberOfShards));
+    }
+}
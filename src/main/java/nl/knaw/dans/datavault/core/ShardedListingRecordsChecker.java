@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.core.ConsistencyCheck.Result;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Performs the LISTING_RECORDS check on a layer by splitting it into {@link ConsistencyCheckShard shards}, one for each directory at the shard depth (see {@link LayerContentLister}), that are compared to the database in parallel.
+ * The progress is recorded per shard, so that a check that is interrupted by a restart only checks the remaining shards when it is picked up again.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ShardedListingRecordsChecker {
+    private final UnitOfWorkAwareProxyFactory unitOfWorkAwareProxyFactory;
+    private final ConsistencyCheckShardDao shardDao;
+    private final ItemRecordDao itemRecordDao;
+    private final ExecutorService executorService;
+    private final Path stagingRoot;
+    // Null if the archives are not on the local file system
+    private final Path archiveRoot;
+    private final int shardDepth;
+
+    /**
+     * @param layerId the layer
+     * @return whether the storage of the layer can be listed by this checker; if not, the check must be left to the layer store
+     */
+    public boolean canCheck(long layerId) {
+        return new LayerContentLister(stagingRoot, archiveRoot, shardDepth).canList(layerId);
+    }
+
+    /**
+     * Checks the shards of the given consistency check that are not finished yet and combines the results of all its shards. Must be called within a unit of work.
+     *
+     * @param consistencyCheck the LISTING_RECORDS check
+     * @return the combined result
+     * @throws IOException          if the layer could not be split into shards
+     * @throws InterruptedException if interrupted while waiting for the shards
+     */
+    public ConsistencyCheckOutcome check(ConsistencyCheck consistencyCheck) throws IOException, InterruptedException {
+        var layerId = consistencyCheck.getLayerId();
+        var lister = new LayerContentLister(stagingRoot, archiveRoot, shardDepth);
+        var pendingShardIds = planShards(consistencyCheck.getId(), layerId, lister);
+        var shardChecks = pendingShardIds.stream()
+            .map(shardId -> createShardCheck(shardId, layerId, lister))
+            .toList();
+        for (var future : executorService.invokeAll(shardChecks)) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedIOException || e.getCause() instanceof ClosedByInterruptException) {
+                    // The check must not be finished, so that it resumes with the unfinished shards
+                    throw new InterruptedException("Listing records check of layer " + layerId + " was interrupted");
+                }
+                // Any other failure shows up as an unfinished shard in the combined result
+                log.error("Shard check of layer {} failed", layerId, e.getCause());
+            }
+        }
+        return combineResults(consistencyCheck.getId(), layerId);
+    }
+
+    private List<UUID> planShards(UUID consistencyCheckId, long layerId, LayerContentLister lister) throws IOException, InterruptedException {
+        var planner = unitOfWorkAwareProxyFactory.create(
+            ListingRecordsShardPlanner.class,
+            new Class[] { UUID.class, long.class, ConsistencyCheckShardDao.class, LayerContentLister.class },
+            new Object[] { consistencyCheckId, layerId, shardDao, lister });
+        try {
+            // On a worker thread, because the shards must be committed in a unit of work of their own
+            return executorService.submit(planner).get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Could not split layer " + layerId + " into shards", e.getCause());
+        }
+    }
+
+    private ListingRecordsShardCheck createShardCheck(UUID shardId, long layerId, LayerContentLister lister) {
+        return unitOfWorkAwareProxyFactory.create(
+            ListingRecordsShardCheck.class,
+            new Class[] { UUID.class, long.class, ConsistencyCheckShardDao.class, ItemRecordDao.class, LayerContentLister.class },
+            new Object[] { shardId, layerId, shardDao, itemRecordDao, lister });
+    }
+
+    private ConsistencyCheckOutcome combineResults(UUID consistencyCheckId, long layerId) {
+        var shards = shardDao.findByConsistencyCheckId(consistencyCheckId);
+        var result = Result.OK;
+        var messages = new ArrayList<String>();
+        long recordsChecked = 0;
+        for (var shard : shards) {
+            if (shard.getFinished() == null) {
+                result = Result.ERROR;
+                messages.add(shard.getPathPrefix() + ": not finished");
+                continue;
+            }
+            recordsChecked += shard.getRecordsChecked();
+            if (shard.getResult() != Result.OK) {
+                result = shard.getResult() == Result.ERROR || result == Result.ERROR ? Result.ERROR : Result.NOT_OK;
+                messages.add(shard.getPathPrefix() + ": " + shard.getMessage());
+            }
+        }
+        var recordsInLayer = itemRecordDao.countByLayerId(layerId);
+        if (recordsInLayer != recordsChecked && result != Result.ERROR) {
+            // Records under a shard directory that does not exist in the storage are not in any shard
+            result = Result.NOT_OK;
+            messages.add((recordsInLayer - recordsChecked) + " item records in the database are outside the shard directories found in storage");
+        }
+        log.info("Listing records check of layer {} finished with result {} ({} shards, {} records)", layerId, result, shards.size(), recordsChecked);
+        return new ConsistencyCheckOutcome(result, messages.isEmpty() ? null : String.join("\n", messages));
+    }
+}
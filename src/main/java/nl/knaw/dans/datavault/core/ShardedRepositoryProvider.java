@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.api.OcflExtensionFileDetailsDto;
+import nl.knaw.dans.datavault.api.OcflFileDetailsDto;
+import nl.knaw.dans.datavault.api.OcflObjectDetailsDto;
+import nl.knaw.dans.datavault.api.OcflObjectVersionDto;
+import nl.knaw.dans.datavault.api.OcflVersionDetailsDto;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Spreads the objects over several repositories, each with its own storage, by a hash of the object ID. The hash is stable across restarts and platforms, so an object is always found in the
+ * shard it was stored in, as long as the list of shards does not change. {@link ShardCountCheck} refuses to start the service if the number of shards has changed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ShardedRepositoryProvider implements RepositoryProvider {
+    private final List<RepositoryProvider> shards;
+
+    /**
+     * Returns the shard that an object belongs to.
+     *
+     * @param objectId       the object ID
+     * @param numberOfShards the number of shards
+     * @return the index of the shard
+     */
+    public static int getShardIndex(String objectId, int numberOfShards) {
+        var hash = ByteBuffer.wrap(DigestUtils.sha256(objectId)).getInt();
+        return Math.floorMod(hash, numberOfShards);
+    }
+
+    private RepositoryProvider getShard(String objectId) {
+        return shards.get(getShardIndex(objectId, shards.size()));
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, Path objectVersionDirectory) {
+        getShard(objectId).addVersion(objectId, version, objectVersionDirectory);
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, Path objectVersionDirectory, VersionInfoJsonReader versionInfo) {
+        getShard(objectId).addVersion(objectId, version, objectVersionDirectory, versionInfo);
+    }
+
+    @Override
+    public void addVersion(String objectId, int version, VersionContent content, VersionInfoJsonReader versionInfo) {
+        getShard(objectId).addVersion(objectId, version, content, versionInfo);
+    }
+
+    @Override
+    public Optional<OcflObjectVersionDto> getOcflObjectVersion(String objectId, int version) {
+        return getShard(objectId).getOcflObjectVersion(objectId, version);
+    }
+
+    @Override
+    public List<String> listObjectIds() {
+        var objectIds = new ArrayList<String>();
+        for (var shard : shards) {
+            objectIds.addAll(shard.listObjectIds());
+        }
+        return objectIds;
+    }
+
+    @Override
+    public Optional<OcflObjectDetailsDto> describeObject(String objectId) {
+        return getShard(objectId).describeObject(objectId);
+    }
+
+    @Override
+    public Optional<OcflVersionDetailsDto> getVersionDetails(String objectId, String versionNumber) {
+        return getShard(objectId).getVersionDetails(objectId, versionNumber);
+    }
+
+    @Override
+    public Optional<List<OcflFileDetailsDto>> listFiles(String objectId, String versionNumber) {
+        return getShard(objectId).listFiles(objectId, versionNumber);
+    }
+
+    @Override
+    public List<OcflExtensionFileDetailsDto> listExtensionFiles(String objectId) throws NoSuchElementException {
+        return getShard(objectId).listExtensionFiles(objectId);
+    }
+
+    @Override
+    public InputStream getExtensionFile(String objectId, String path) throws NoSuchElementException {
+        return getShard(objectId).getExtensionFile(objectId, path);
+    }
+
+    @Override
+    public void start() throws Exception {
+        log.info("Starting {} repository shards", shards.size());
+        for (var shard : shards) {
+            shard.start();
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        for (var shard : shards) {
+            shard.stop();
+        }
+    }
+}
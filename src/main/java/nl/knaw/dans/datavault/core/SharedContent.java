@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+/**
+ * A content file in a staged layer that was replaced with a hard link to a file with the same content, found through the {@link ContentDigest content deduplication index}.
+ */
+@Entity
+@Table(name = "shared_content")
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SharedContent {
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    @Column(name = "id", nullable = false)
+    private UUID id;
+
+    @Column(name = "storage_path", nullable = false)
+    private String storagePath;
+
+    /**
+     * The path of the file that the content is shared with.
+     */
+    @Column(name = "source_path", nullable = false)
+    private String sourcePath;
+
+    @Column(name = "digest", nullable = false)
+    private String digest;
+
+    @Column(name = "layer_id", nullable = false)
+    private long layerId;
+
+    /**
+     * The number of bytes saved by sharing the content.
+     */
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "created", nullable = false)
+    private OffsetDateTime created;
+}
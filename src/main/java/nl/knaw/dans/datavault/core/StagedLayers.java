@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Helpers for direct access to the layers in the staging root of the layer store. Each staged layer is a directory named after the layer ID.
+ */
+@Slf4j
+public final class StagedLayers {
+    private StagedLayers() {
+    }
+
+    /**
+     * @param stagingRoot the staging root
+     * @return the IDs of the staged layers, newest first, as that is the layer that wins if a path occurs in more than one layer
+     * @throws IOException if the staging root cannot be listed
+     */
+    public static NavigableSet<Long> listLayerIds(Path stagingRoot) throws IOException {
+        var layerIds = new TreeSet<Long>(Comparator.reverseOrder());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(stagingRoot, Files::isDirectory)) {
+            for (var dir : stream) {
+                try {
+                    layerIds.add(Long.parseLong(dir.getFileName().toString()));
+                }
+                catch (NumberFormatException e) {
+                    log.debug("Ignoring non-layer directory {} in staging root", dir);
+                }
+            }
+        }
+        return layerIds;
+    }
+
+    /**
+     * Finds a file in a listing of the staged layers that was made earlier, so that the staging root need not be listed again for every file.
+     *
+     * @param stagingRoot the staging root
+     * @param layerIds    the staged layers as returned by {@link #listLayerIds(Path)}
+     * @param path        the item store path of a file
+     * @return the file in the newest of the given layers that contains it, or empty if it is not in any of them
+     */
+    public static Optional<Path> findFile(Path stagingRoot, NavigableSet<Long> layerIds, String path) {
+        for (var layerId : layerIds) {
+            var file = stagingRoot.resolve(layerId.toString()).resolve(path);
+            if (Files.isRegularFile(file)) {
+                return Optional.of(file);
+            }
+        }
+        return Optional.empty();
+    }
+}
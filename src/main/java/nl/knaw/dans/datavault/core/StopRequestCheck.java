@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.db.ImportJobDao;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Tells a running job whether a pause or cancel request was made for it. The database is asked at most once per check interval; in between, the request seen last is returned.
+ */
+@Slf4j
+public class StopRequestCheck {
+    private final ImportJobDao importJobDao;
+    private final UUID id;
+    private final long checkIntervalNanos;
+
+    private ImportJob.StopRequest stopRequest;
+    private long nextCheckNanos = System.nanoTime();
+
+    public StopRequestCheck(ImportJobDao importJobDao, UUID id, Duration checkInterval) {
+        this.importJobDao = importJobDao;
+        this.id = id;
+        this.checkIntervalNanos = checkInterval.toNanos();
+    }
+
+    public synchronized ImportJob.StopRequest getStopRequest() {
+        var now = System.nanoTime();
+        if (now - nextCheckNanos >= 0) {
+            nextCheckNanos = now + checkIntervalNanos;
+            try {
+                stopRequest = importJobDao.findStopRequest(id);
+            }
+            catch (RuntimeException e) {
+                // Not being able to pause or cancel is no reason to stop the job
+                log.warn("Could not check for a pause or cancel request for import job {}", id, e);
+            }
+        }
+        return stopRequest;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.config.StorageLayoutConfig;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks objects within this process. The objects are spread over a fixed number of stripes, each with its own lock, so that the memory used does not grow with the number of objects.
+ * Stripes are always acquired in the order of their index. A path above the object roots takes all stripes, so that it excludes changes to every object.
+ */
+public class StripedObjectLockManager extends ObjectLockManager {
+    private final ReentrantLock[] stripes;
+    private final Duration timeout;
+
+    public StripedObjectLockManager(StorageLayoutConfig storageLayout, int numberOfStripes, Duration timeout) {
+        super(storageLayout);
+        this.stripes = new ReentrantLock[numberOfStripes];
+        for (int i = 0; i < numberOfStripes; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.timeout = timeout;
+    }
+
+    @Override
+    protected Lock lock(SortedSet<String> keys) {
+        var acquired = lockStripes(keys, System.nanoTime() + timeout.toNanos());
+        return () -> unlockStripes(acquired);
+    }
+
+    /**
+     * Locks the stripes of the given keys.
+     *
+     * @param keys     the keys
+     * @param deadline the value of {@link System#nanoTime()} after which to give up
+     * @return the stripes locked, in the order they were locked
+     * @throws IllegalStateException if a stripe could not be locked before the deadline
+     */
+    protected List<ReentrantLock> lockStripes(Collection<String> keys, long deadline) {
+        var indexes = new TreeSet<Integer>();
+        for (var key : keys) {
+            if (isAboveObjectRoots(key)) {
+                for (int i = 0; i < stripes.length; i++) {
+                    indexes.add(i);
+                }
+                break;
+            }
+            indexes.add(Math.floorMod(key.hashCode(), stripes.length));
+        }
+        var acquired = new ArrayList<ReentrantLock>();
+        try {
+            for (var index : indexes) {
+                if (!stripes[index].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new IllegalStateException("Timed out waiting for the lock on objects " + keys);
+                }
+                acquired.add(stripes[index]);
+            }
+            return acquired;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unlockStripes(acquired);
+            throw new IllegalStateException("Interrupted while waiting for the lock on objects " + keys, e);
+        }
+        catch (RuntimeException e) {
+            unlockStripes(acquired);
+            throw e;
+        }
+    }
+
+    protected void unlockStripes(List<ReentrantLock> acquired) {
+        for (int i = acquired.size() - 1; i >= 0; i--) {
+            acquired.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.config.DurabilityConfig.Mode;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Makes the changes to the staged layers durable by syncing the written files and the directories that contain them. In {@link Mode#PER_FILE} mode every change is synced before the call
+ * returns. In {@link Mode#PER_OBJECT} mode the changes made by an action passed to {@link #runInGroup(Runnable)} are collected and synced together, in parallel, when the action has finished;
+ * changes made outside a group are synced at the end of the call, also in parallel.
+ */
+@Slf4j
+public class SyncingItemStore implements ItemStore {
+    private final ItemStore delegate;
+    private final LayeredItemStore layeredItemStore;
+    private final Path stagingRoot;
+    private final boolean syncPerFile;
+    private final ExecutorService executorService;
+    private final Timer fsyncTime;
+    private final Timer groupSyncTime;
+    // The paths to sync at the end of the group that the current thread is in, if any
+    private final ThreadLocal<Set<Path>> group = new ThreadLocal<>();
+
+    public SyncingItemStore(ItemStore delegate, LayeredItemStore layeredItemStore, Path stagingRoot, Mode mode, ExecutorService executorService, MetricRegistry metrics) {
+        if (mode == Mode.NONE) {
+            throw new IllegalArgumentException("No syncing needed in durability mode " + mode);
+        }
+        this.delegate = delegate;
+        this.layeredItemStore = layeredItemStore;
+        this.stagingRoot = stagingRoot;
+        this.syncPerFile = mode == Mode.PER_FILE;
+        this.executorService = executorService;
+        this.fsyncTime = metrics.timer(MetricRegistry.name(SyncingItemStore.class, "fsync-time"));
+        this.groupSyncTime = metrics.timer(MetricRegistry.name(SyncingItemStore.class, "group-sync-time"));
+    }
+
+    /**
+     * Runs the action and then syncs all changes it made through this item store, before returning. If the action fails, nothing is synced. Nested groups are part of the outer group.
+     *
+     * @param action the action, e.g. adding a version to an object
+     * @throws UncheckedIOException if the changes could not be synced
+     */
+    public void runInGroup(Runnable action) {
+        if (syncPerFile || group.get() != null) {
+            action.run();
+            return;
+        }
+        var paths = new LinkedHashSet<Path>();
+        group.set(paths);
+        try {
+            action.run();
+        }
+        finally {
+            group.remove();
+        }
+        try (var context = groupSyncTime.time()) {
+            syncInParallel(paths);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync " + paths.size() + " paths in staging layer", e);
+        }
+    }
+
+    @Override
+    public List<Item> listDirectory(String directoryPath) throws IOException {
+        return delegate.listDirectory(directoryPath);
+    }
+
+    @Override
+    public List<Item> listRecursive(String directoryPath) throws IOException {
+        return delegate.listRecursive(directoryPath);
+    }
+
+    @Override
+    public boolean existsPathLike(String path) {
+        return delegate.existsPathLike(path);
+    }
+
+    @Override
+    public InputStream readFile(String path) throws IOException {
+        return delegate.readFile(path);
+    }
+
+    @Override
+    public void writeFile(String path, InputStream content) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.writeFile(path, content);
+        sync(layerId, List.of(path), List.of());
+    }
+
+    @Override
+    public void moveDirectoryInto(Path source, String destination) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.moveDirectoryInto(source, destination);
+        sync(layerId, List.of(destination), List.of());
+    }
+
+    @Override
+    public void moveDirectoryInternal(String source, String destination) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.moveDirectoryInternal(source, destination);
+        sync(layerId, List.of(destination), List.of(source));
+    }
+
+    @Override
+    public void deleteDirectory(String path) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.deleteDirectory(path);
+        sync(layerId, List.of(), List.of(path));
+    }
+
+    @Override
+    public void deleteFiles(List<String> paths) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.deleteFiles(paths);
+        sync(layerId, List.of(), paths);
+    }
+
+    @Override
+    public void createDirectories(String path) throws IOException {
+        long layerId = layeredItemStore.getTopLayerId();
+        delegate.createDirectories(path);
+        sync(layerId, List.of(path), List.of());
+    }
+
+    @Override
+    public void copyDirectoryOutOf(String source, Path destination) throws IOException {
+        delegate.copyDirectoryOutOf(source, destination);
+    }
+
+    /*
+     * Syncs the written paths, with everything under them, and the directories containing the written and the removed paths. If the top layer changed, the staging root is synced as well, as
+     * it contains the directory of the new layer.
+     */
+    private void sync(long layerIdBefore, List<String> writtenPaths, List<String> removedPaths) throws IOException {
+        var paths = new LinkedHashSet<Path>();
+        // A new top layer may have been created while the change was made, in which case the change may have ended up in the new layer
+        long layerIdAfter = layeredItemStore.getTopLayerId();
+        if (layerIdAfter != layerIdBefore) {
+            paths.add(stagingRoot);
+        }
+        for (var layerId : layerIdAfter == layerIdBefore ? List.of(layerIdBefore) : List.of(layerIdBefore, layerIdAfter)) {
+            var layerDir = stagingRoot.resolve(Long.toString(layerId));
+            for (var writtenPath : writtenPaths) {
+                var target = layerDir.resolve(writtenPath);
+                if (Files.isDirectory(target)) {
+                    try (var tree = Files.walk(target)) {
+                        tree.forEach(paths::add);
+                    }
+                }
+                else if (Files.exists(target)) {
+                    paths.add(target);
+                }
+                addParents(paths, layerDir, target);
+            }
+            for (var removedPath : removedPaths) {
+                addParents(paths, layerDir, layerDir.resolve(removedPath));
+            }
+        }
+        var currentGroup = group.get();
+        if (currentGroup != null) {
+            currentGroup.addAll(paths);
+        }
+        else if (syncPerFile) {
+            for (var path : paths) {
+                fsync(path);
+            }
+        }
+        else {
+            syncInParallel(paths);
+        }
+    }
+
+    private static void addParents(Set<Path> paths, Path layerDir, Path target) {
+        var parent = target.getParent();
+        while (parent != null && parent.startsWith(layerDir)) {
+            if (Files.isDirectory(parent)) {
+                paths.add(parent);
+            }
+            parent = parent.getParent();
+        }
+    }
+
+    private void syncInParallel(Set<Path> paths) throws IOException {
+        if (paths.isEmpty()) {
+            return;
+        }
+        var tasks = new ArrayList<Callable<Void>>();
+        for (var path : paths) {
+            tasks.add(() -> {
+                fsync(path);
+                return null;
+            });
+        }
+        try {
+            for (var future : executorService.invokeAll(tasks)) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing staging layer");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Failed to sync staging layer", e.getCause());
+        }
+    }
+
+    private void fsync(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ); var context = fsyncTime.time()) {
+            channel.force(true);
+        }
+        catch (NoSuchFileException e) {
+            // Removed or moved in the meantime, so there is nothing left to make durable
+        }
+        catch (IOException e) {
+            if (!Files.isDirectory(path)) {
+                throw e;
+            }
+            // Not every platform supports syncing directories
+            log.debug("Could not sync directory {}", path, e);
+        }
+    }
+}
@@ -41,6 +41,18 @@ public class UnitOfWorkDeclaringRepositoryProviderAdapter implements RepositoryP
         delegate.addVersion(objectId, version, objectVersionDirectory);
     }
 
+    @Override
+    @UnitOfWork
+    public void addVersion(String objectId, int version, Path objectVersionDirectory, VersionInfoJsonReader versionInfo) {
+        delegate.addVersion(objectId, version, objectVersionDirectory, versionInfo);
+    }
+
+    @Override
+    @UnitOfWork
+    public void addVersion(String objectId, int version, VersionContent content, VersionInfoJsonReader versionInfo) {
+        delegate.addVersion(objectId, version, content, versionInfo);
+    }
+
     @Override
     @UnitOfWork
     public Optional<OcflObjectVersionDto> getOcflObjectVersion(String objectId, int version) {
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * The content files of an object version that are not available as a directory on the local file system, but can be read one by one, e.g. from an {@link ImportArchive}.
+ */
+public interface VersionContent {
+
+    /**
+     * @return the logical paths of the content files, relative to the version directory and separated by forward slashes
+     */
+    List<String> listFiles();
+
+    /**
+     * @param logicalPath one of the paths returned by {@link #listFiles()}
+     * @return a stream on the content of the file, to be closed by the caller
+     * @throws IOException if the file cannot be read
+     */
+    InputStream openFile(String logicalPath) throws IOException;
+}
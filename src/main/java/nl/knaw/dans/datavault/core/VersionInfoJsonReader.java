@@ -17,27 +17,41 @@ package nl.knaw.dans.datavault.core;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import io.ocfl.api.model.User;
 import io.ocfl.api.model.VersionInfo;
 import lombok.NonNull;
 import org.apache.commons.validator.routines.EmailValidator;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+/**
+ * Reads a version info JSON file. The file is parsed once, on construction; the reader can then be passed along with the version and is safe to share between threads.
+ */
 public class VersionInfoJsonReader {
+    // ObjectReaders are immutable and thread-safe, so a single instance serves all files
+    private static final ObjectReader JSON_READER = new ObjectMapper().reader();
     private static final String MAILTO_PREFIX = "mailto:";
     private static final String KEY_VERSION_INFO = "version-info";
     private static final String KEY_OBJECT_VERSION_PROPERTIES = "object-version-properties";
-    private static final Set<String> VERSION_PROPERTY_NAMES = Set.of(KEY_VERSION_INFO, KEY_OBJECT_VERSION_PROPERTIES);
+    private static final String KEY_VERSION_DELTA = "version-delta";
+    private static final Set<String> VERSION_PROPERTY_NAMES = Set.of(KEY_VERSION_INFO, KEY_OBJECT_VERSION_PROPERTIES, KEY_VERSION_DELTA);
+    private static final Set<String> VERSION_DELTA_PROPERTY_NAMES = Set.of("removed", "renamed");
 
     private final JsonNode root;
 
@@ -45,10 +59,24 @@ public class VersionInfoJsonReader {
         if (!Files.exists(file)) {
             throw new IllegalArgumentException("Version info JSON file does not exist: " + file);
         }
-        var mapper = new ObjectMapper();
         try (var in = Files.newInputStream(file)) {
-            this.root = mapper.readTree(in);
+            this.root = JSON_READER.readTree(in);
         }
+        validateTopLevelProperties();
+    }
+
+    /**
+     * Reads a version info JSON file from a stream, e.g. an entry in an import archive.
+     *
+     * @param in the content of the version info JSON file
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    public VersionInfoJsonReader(@NonNull InputStream in) throws IOException {
+        this.root = JSON_READER.readTree(in);
+        validateTopLevelProperties();
+    }
+
+    private void validateTopLevelProperties() {
         if (root == null || !root.isObject()) {
             throw new IllegalArgumentException("Version info JSON file must be a JSON object at root");
         }
@@ -68,6 +96,22 @@ public class VersionInfoJsonReader {
         }
     }
 
+    /**
+     * Reads the version info JSON file that accompanies the given version directory, i.e. the file with the name of the directory and extension ".json".
+     *
+     * @param objectVersionDirectory the version directory
+     * @return the reader
+     */
+    public static VersionInfoJsonReader forVersionDirectory(Path objectVersionDirectory) {
+        var versionInfoFile = objectVersionDirectory.resolveSibling(objectVersionDirectory.getFileName().toString() + ".json");
+        try {
+            return new VersionInfoJsonReader(versionInfoFile);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read version info JSON file from " + versionInfoFile, e);
+        }
+    }
+
     public Map<String, JsonNode> getObjectVersionProperties() {
         var customNode = root.get("object-version-properties");
         if (customNode == null) {
@@ -81,6 +125,56 @@ public class VersionInfoJsonReader {
             .collect(Collectors.toMap(Map.Entry::getKey, Entry::getValue));
     }
 
+    /**
+     * The changes with respect to the previous version, if the version directory only contains the added and changed files. Renames are applied before removals, and the files in the version
+     * directory are added last, replacing any file at the same logical path.
+     *
+     * @param removed the logical paths of the files to remove
+     * @param renamed the logical paths of the files to rename, mapped to their new logical paths
+     */
+    public record VersionDelta(List<String> removed, Map<String, String> renamed) {}
+
+    /**
+     * @return the changes with respect to the previous version, or empty if the version directory contains the complete state of the new version
+     */
+    public Optional<VersionDelta> getVersionDelta() {
+        var deltaNode = root.get(KEY_VERSION_DELTA);
+        if (deltaNode == null) {
+            return Optional.empty();
+        }
+        if (!deltaNode.isObject()) {
+            throw new IllegalArgumentException(KEY_VERSION_DELTA + " must be a JSON object");
+        }
+        for (var it = deltaNode.fieldNames(); it.hasNext(); ) {
+            var key = it.next();
+            if (!VERSION_DELTA_PROPERTY_NAMES.contains(key)) {
+                throw new IllegalArgumentException("Unknown property in " + KEY_VERSION_DELTA + ": " + key);
+            }
+        }
+        var removed = new ArrayList<String>();
+        var removedNode = deltaNode.get("removed");
+        if (removedNode != null) {
+            if (!removedNode.isArray()) {
+                throw new IllegalArgumentException(KEY_VERSION_DELTA + ".removed must be a JSON array");
+            }
+            for (int i = 0; i < removedNode.size(); i++) {
+                removed.add(requireText(removedNode.get(i), KEY_VERSION_DELTA + ".removed[" + i + "]"));
+            }
+        }
+        var renamed = new LinkedHashMap<String, String>();
+        var renamedNode = deltaNode.get("renamed");
+        if (renamedNode != null) {
+            if (!renamedNode.isObject()) {
+                throw new IllegalArgumentException(KEY_VERSION_DELTA + ".renamed must be a JSON object");
+            }
+            for (var it = renamedNode.fields(); it.hasNext(); ) {
+                var entry = it.next();
+                renamed.put(entry.getKey(), requireText(entry.getValue(), KEY_VERSION_DELTA + ".renamed." + entry.getKey()));
+            }
+        }
+        return Optional.of(new VersionDelta(List.copyOf(removed), Collections.unmodifiableMap(renamed)));
+    }
+
     public VersionInfo getVersionInfo() {
         var infoNode = root.get("version-info");
         if (infoNode == null) {
@@ -21,7 +21,11 @@ import nl.knaw.dans.lib.util.pollingtaskexec.TaskSource;
 import org.hibernate.SessionFactory;
 
 import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.UUID;
 
 public class ConsistencyCheckDao extends AbstractDAO<ConsistencyCheck> implements TaskSource<ConsistencyCheck> {
@@ -71,4 +75,68 @@ public class ConsistencyCheckDao extends AbstractDAO<ConsistencyCheck> implement
             .setMaxResults(1)
             .uniqueResultOptional();
     }
+
+    public List<ConsistencyCheck> findUnfinishedByType(ConsistencyCheck.Type type) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(ConsistencyCheck.class);
+        var root = criteriaQuery.from(ConsistencyCheck.class);
+        criteriaQuery.select(root)
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("type"), type),
+                    criteriaBuilder.isNull(root.get("finished"))
+                )
+            )
+            .orderBy(criteriaBuilder.asc(root.get("created")));
+        return currentSession().createQuery(criteriaQuery).getResultList();
+    }
+
+    public Optional<ConsistencyCheck> findLatestFinishedByType(ConsistencyCheck.Type type) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(ConsistencyCheck.class);
+        var root = criteriaQuery.from(ConsistencyCheck.class);
+        criteriaQuery.select(root)
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("type"), type),
+                    criteriaBuilder.isNotNull(root.get("finished"))
+                )
+            )
+            .orderBy(criteriaBuilder.desc(root.get("finished")));
+        return currentSession()
+            .createQuery(criteriaQuery)
+            .setMaxResults(1)
+            .uniqueResultOptional();
+    }
+
+    /**
+     * Finds the most recently finished check of the given type for every layer that has one.
+     *
+     * @param type the type of check
+     * @return the latest finished check by layer ID
+     */
+    public Map<Long, ConsistencyCheck> findLatestFinishedByTypePerLayer(ConsistencyCheck.Type type) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(ConsistencyCheck.class);
+        var root = criteriaQuery.from(ConsistencyCheck.class);
+        var latest = criteriaQuery.subquery(OffsetDateTime.class);
+        var other = latest.from(ConsistencyCheck.class);
+        latest.select(criteriaBuilder.greatest(other.<OffsetDateTime> get("finished")))
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(other.get("type"), type),
+                    criteriaBuilder.equal(other.get("layerId"), root.get("layerId"))
+                )
+            );
+        criteriaQuery.select(root)
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("type"), type),
+                    criteriaBuilder.equal(root.get("finished"), latest)
+                )
+            );
+        return currentSession().createQuery(criteriaQuery).getResultStream()
+            // Two checks of one layer finishing at the exact same moment are unlikely, but must not break the report
+            .collect(Collectors.toMap(ConsistencyCheck::getLayerId, Function.identity(), (a, b) -> a));
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.ConsistencyCheck;
+import nl.knaw.dans.datavault.core.ConsistencyCheckShard;
+import org.hibernate.SessionFactory;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public class ConsistencyCheckShardDao extends AbstractDAO<ConsistencyCheckShard> {
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public ConsistencyCheckShardDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public ConsistencyCheckShard create(ConsistencyCheckShard shard) {
+        return super.persist(shard);
+    }
+
+    public ConsistencyCheckShard get(UUID id) {
+        return super.get(id);
+    }
+
+    public ConsistencyCheckShard start(ConsistencyCheckShard shard) {
+        shard.setStarted(OffsetDateTime.now());
+        return super.persist(shard);
+    }
+
+    public ConsistencyCheckShard recordProgress(ConsistencyCheckShard shard, int objectsChecked, long recordsChecked, long itemsSkipped, long mismatches) {
+        shard.setObjectsChecked(objectsChecked);
+        shard.setRecordsChecked(valueOf(shard.getRecordsChecked()) + recordsChecked);
+        shard.setItemsSkipped(valueOf(shard.getItemsSkipped()) + itemsSkipped);
+        shard.setMismatches(valueOf(shard.getMismatches()) + mismatches);
+        return super.persist(shard);
+    }
+
+    public ConsistencyCheckShard finish(ConsistencyCheckShard shard, long recordsChecked, ConsistencyCheck.Result result, String message) {
+        shard.setFinished(OffsetDateTime.now());
+        shard.setRecordsChecked(recordsChecked);
+        shard.setResult(result);
+        shard.setMessage(message);
+        return super.persist(shard);
+    }
+
+    public List<ConsistencyCheckShard> findByConsistencyCheckId(UUID consistencyCheckId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(ConsistencyCheckShard.class);
+        var root = criteriaQuery.from(ConsistencyCheckShard.class);
+        criteriaQuery.select(root)
+            .where(criteriaBuilder.equal(root.get("consistencyCheckId"), consistencyCheckId))
+            .orderBy(criteriaBuilder.asc(root.get("pathPrefix")));
+        return currentSession().createQuery(criteriaQuery).getResultList();
+    }
+
+    private static long valueOf(Long value) {
+        return value == null ? 0 : value;
+    }
+}
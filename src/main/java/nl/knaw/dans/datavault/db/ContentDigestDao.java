@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.ContentDigest;
+import org.hibernate.SessionFactory;
+
+import javax.persistence.criteria.Predicate;
+import java.util.List;
+import java.util.Optional;
+
+public class ContentDigestDao extends AbstractDAO<ContentDigest> {
+    private static final char LIKE_ESCAPE = '!';
+
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public ContentDigestDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public ContentDigest save(ContentDigest contentDigest) {
+        return super.persist(contentDigest);
+    }
+
+    /**
+     * @param digest  the digest of the content
+     * @param layerId the layer
+     * @return an entry for the digest in the layer, if any
+     */
+    public Optional<ContentDigest> findByDigestAndLayerId(String digest, long layerId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(ContentDigest.class);
+        var root = criteriaQuery.from(ContentDigest.class);
+        criteriaQuery.select(root)
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("digest"), digest),
+                    criteriaBuilder.equal(root.get("layerId"), layerId)
+                )
+            );
+        return currentSession().createQuery(criteriaQuery).setMaxResults(1).uniqueResultOptional();
+    }
+
+    public void delete(ContentDigest contentDigest) {
+        currentSession().delete(contentDigest);
+    }
+
+    /**
+     * Deletes the entries for the files at the given paths or under them, so that a file that is later written to one of the paths is not linked to content it does not have.
+     *
+     * @param paths item store paths of files or directories
+     * @return the number of entries deleted
+     */
+    public int deleteByStoragePaths(List<String> paths) {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var delete = criteriaBuilder.createCriteriaDelete(ContentDigest.class);
+        var root = delete.from(ContentDigest.class);
+        var storagePath = root.<String> get("storagePath");
+        delete.where(criteriaBuilder.or(paths.stream()
+            .map(path -> criteriaBuilder.or(
+                criteriaBuilder.equal(storagePath, path),
+                criteriaBuilder.like(storagePath, escapeLike(path) + "/%", LIKE_ESCAPE)))
+            .toArray(Predicate[]::new)));
+        return currentSession().createQuery(delete).executeUpdate();
+    }
+
+    /**
+     * @param layerId the layer
+     * @return the number of entries deleted
+     */
+    public int deleteByLayerId(long layerId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var delete = criteriaBuilder.createCriteriaDelete(ContentDigest.class);
+        var root = delete.from(ContentDigest.class);
+        delete.where(criteriaBuilder.equal(root.get("layerId"), layerId));
+        return currentSession().createQuery(delete).executeUpdate();
+    }
+
+    private static String escapeLike(String value) {
+        return value
+            .replace(String.valueOf(LIKE_ESCAPE), "" + LIKE_ESCAPE + LIKE_ESCAPE)
+            .replace("%", LIKE_ESCAPE + "%")
+            .replace("_", LIKE_ESCAPE + "_");
+    }
+}
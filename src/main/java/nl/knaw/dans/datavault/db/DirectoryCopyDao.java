@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.DirectoryCopy;
+import org.hibernate.SessionFactory;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Records the {@link DirectoryCopy}s that are in progress. Every operation is committed in a session of its own, so that the record of a copy is in the database before the first item of the
+ * copy is written, and remains there if the service stops before the copy is done.
+ */
+public class DirectoryCopyDao extends AbstractDAO<DirectoryCopy> {
+    private final SessionFactory sessionFactory;
+
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public DirectoryCopyDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+        this.sessionFactory = sessionFactory;
+    }
+
+    /*
+     * Replaces the record of an earlier copy to the same destination, if it could not be removed after that copy was rolled back.
+     */
+    public void create(String destination) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            session.merge(new DirectoryCopy(destination, OffsetDateTime.now()));
+            transaction.commit();
+        }
+    }
+
+    public void delete(String destination) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            var copy = session.get(DirectoryCopy.class, destination);
+            if (copy != null) {
+                session.remove(copy);
+            }
+            transaction.commit();
+        }
+    }
+
+    public List<DirectoryCopy> findAll() {
+        try (var session = sessionFactory.openSession()) {
+            var criteriaQuery = session.getCriteriaBuilder().createQuery(DirectoryCopy.class);
+            criteriaQuery.select(criteriaQuery.from(DirectoryCopy.class));
+            return session.createQuery(criteriaQuery).getResultList();
+        }
+    }
+}
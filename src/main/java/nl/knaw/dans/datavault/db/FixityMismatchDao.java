@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.FixityMismatch;
+import org.hibernate.SessionFactory;
+
+import java.util.List;
+import java.util.UUID;
+
+public class FixityMismatchDao extends AbstractDAO<FixityMismatch> {
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public FixityMismatchDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public FixityMismatch create(FixityMismatch mismatch) {
+        return super.persist(mismatch);
+    }
+
+    public List<FixityMismatch> findByConsistencyCheckId(UUID consistencyCheckId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(FixityMismatch.class);
+        var root = criteriaQuery.from(FixityMismatch.class);
+        criteriaQuery.select(root)
+            .where(criteriaBuilder.equal(root.get("consistencyCheckId"), consistencyCheckId))
+            .orderBy(criteriaBuilder.asc(root.get("objectId")), criteriaBuilder.asc(root.get("storageRelativePath")));
+        return currentSession().createQuery(criteriaQuery).getResultList();
+    }
+
+    public long countByConsistencyCheckId(UUID consistencyCheckId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        var root = criteriaQuery.from(FixityMismatch.class);
+        criteriaQuery.select(criteriaBuilder.count(root))
+            .where(criteriaBuilder.equal(root.get("consistencyCheckId"), consistencyCheckId));
+        return currentSession().createQuery(criteriaQuery).getSingleResult();
+    }
+}
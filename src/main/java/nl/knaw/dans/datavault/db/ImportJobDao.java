@@ -18,13 +18,28 @@ package nl.knaw.dans.datavault.db;
 import io.dropwizard.hibernate.AbstractDAO;
 import nl.knaw.dans.datavault.core.ImportJob;
 import nl.knaw.dans.lib.util.pollingtaskexec.TaskSource;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 public class ImportJobDao extends AbstractDAO<ImportJob> implements TaskSource<ImportJob> {
+    private static final int CLAIM_CANDIDATES = 10;
+
+    private final SessionFactory sessionFactory;
+
     /**
      * Creates a new DAO with a given session provider.
      *
@@ -32,6 +47,7 @@ public class ImportJobDao extends AbstractDAO<ImportJob> implements TaskSource<I
      */
     public ImportJobDao(SessionFactory sessionFactory) {
         super(sessionFactory);
+        this.sessionFactory = sessionFactory;
     }
 
     public ImportJob create(ImportJob batch) {
@@ -48,8 +64,8 @@ public class ImportJobDao extends AbstractDAO<ImportJob> implements TaskSource<I
         var query = criteria.createQuery(ImportJob.class);
         var root = query.from(ImportJob.class);
         var statusPath = root.get("status");
-        query.where(criteria.equal(statusPath, ImportJob.Status.PENDING));
-        query.orderBy(criteria.asc(root.get("created")));
+        query.where(criteria.and(criteria.equal(statusPath, ImportJob.Status.PENDING), isNotPaused(criteria, root)));
+        query.orderBy(byPriorityAndAge(criteria, root));
 
         return currentSession()
             .createQuery(query)
@@ -79,4 +95,189 @@ public class ImportJobDao extends AbstractDAO<ImportJob> implements TaskSource<I
         query.orderBy(criteria.asc(root.get("created")));
         return currentSession().createQuery(query).getResultList();
     }
+
+    /**
+     * Finds out whether a job with a higher priority than the given one is waiting to be dispatched; paused jobs are not dispatched, so they do not count. Runs in a session of its own, so that it can be called from the workers of a running job.
+     *
+     * @param priority the priority of the running job
+     * @return whether a pending job with a higher priority exists
+     */
+    public boolean existsPendingWithPriorityAbove(int priority) {
+        return inOwnTransaction(session -> {
+            var criteriaBuilder = session.getCriteriaBuilder();
+            var query = criteriaBuilder.createQuery(Long.class);
+            var root = query.from(ImportJob.class);
+            query.select(criteriaBuilder.count(root))
+                .where(criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("status"), ImportJob.Status.PENDING),
+                    isNotPaused(criteriaBuilder, root),
+                    criteriaBuilder.greaterThan(priorityOf(criteriaBuilder, root), priority)));
+            return session.createQuery(query).getSingleResult() > 0;
+        });
+    }
+
+    /**
+     * Looks up whether a pause or cancel request was made for the given job. Runs in a session of its own, so that it sees requests made while the job runs.
+     *
+     * @param id the ID of the job
+     * @return the stop request, or null if there is none
+     */
+    public ImportJob.StopRequest findStopRequest(UUID id) {
+        return inOwnTransaction(session -> {
+            var criteriaBuilder = session.getCriteriaBuilder();
+            var query = criteriaBuilder.createQuery(ImportJob.StopRequest.class);
+            var root = query.from(ImportJob.class);
+            query.select(root.get("stopRequest"))
+                .where(criteriaBuilder.equal(root.get("id"), id));
+            return session.createQuery(query).getResultStream().findFirst().orElse(null);
+        });
+    }
+
+    /**
+     * Claims the job with the highest priority, and of those the oldest, that is pending or running, and not claimed by an instance with a valid lease. A running job with an expired lease
+     * was claimed by an instance that stopped sending heartbeats, and is taken over. The claimed job is set to RUNNING. The claim is committed in a session of its own, so that other instances
+     * see it at once, whatever the unit of work of the caller.
+     *
+     * @param instanceId    the claiming instance
+     * @param leaseDuration how long the claim holds if it is not renewed
+     * @return the ID of the claimed job, or empty if there was nothing to claim
+     */
+    public Optional<UUID> claimNext(String instanceId, Duration leaseDuration) {
+        return inOwnTransaction(session -> {
+            var now = OffsetDateTime.now();
+            for (var candidate : findClaimable(session, now)) {
+                // Another instance may have claimed the job since it was found; the conditions are checked again by the update
+                if (claim(session, candidate, instanceId, now, now.plus(leaseDuration)) == 1) {
+                    return Optional.of(candidate);
+                }
+            }
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * Extends the leases of the given running jobs, as far as they are still claimed by the given instance. A job that another instance took over, or that is no longer running, is not
+     * renewed.
+     *
+     * @param instanceId    the instance
+     * @param jobIds        the jobs that the instance is running
+     * @param leaseDuration how long the claims hold from now
+     * @return the IDs of the jobs whose leases were renewed
+     */
+    public List<UUID> renewLeases(String instanceId, Collection<UUID> jobIds, Duration leaseDuration) {
+        var leaseExpires = OffsetDateTime.now().plus(leaseDuration);
+        return inOwnTransaction(session -> {
+            var renewed = new ArrayList<UUID>();
+            for (var jobId : jobIds) {
+                var criteriaBuilder = session.getCriteriaBuilder();
+                var update = criteriaBuilder.createCriteriaUpdate(ImportJob.class);
+                var root = update.from(ImportJob.class);
+                update.set(root.<OffsetDateTime> get("leaseExpires"), leaseExpires)
+                    .where(criteriaBuilder.and(
+                        criteriaBuilder.equal(root.get("id"), jobId),
+                        isClaimedRunningBy(criteriaBuilder, root, instanceId)));
+                if (session.createQuery(update).executeUpdate() == 1) {
+                    renewed.add(jobId);
+                }
+            }
+            return renewed;
+        });
+    }
+
+    /**
+     * Stops tracking the changes to the given job in the current session, so that they are not written when the unit of work ends.
+     *
+     * @param job the job
+     */
+    public void detach(ImportJob job) {
+        currentSession().detach(job);
+    }
+
+    /**
+     * Ends the leases of the running jobs claimed by the given instance, so that other instances can take them over at once.
+     *
+     * @param instanceId the instance
+     * @return the number of leases released
+     */
+    public int releaseLeases(String instanceId) {
+        return updateLeases(instanceId, OffsetDateTime.now());
+    }
+
+    private List<UUID> findClaimable(Session session, OffsetDateTime now) {
+        var criteriaBuilder = session.getCriteriaBuilder();
+        var query = criteriaBuilder.createQuery(UUID.class);
+        var root = query.from(ImportJob.class);
+        query.select(root.get("id"))
+            .where(isClaimable(criteriaBuilder, root, now))
+            .orderBy(byPriorityAndAge(criteriaBuilder, root));
+        return session.createQuery(query).setMaxResults(CLAIM_CANDIDATES).getResultList();
+    }
+
+    private int claim(Session session, UUID id, String instanceId, OffsetDateTime now, OffsetDateTime leaseExpires) {
+        var criteriaBuilder = session.getCriteriaBuilder();
+        var update = criteriaBuilder.createCriteriaUpdate(ImportJob.class);
+        var root = update.from(ImportJob.class);
+        update.set(root.<String> get("claimedBy"), instanceId)
+            .set(root.<OffsetDateTime> get("leaseExpires"), leaseExpires)
+            .set(root.<ImportJob.Status> get("status"), ImportJob.Status.RUNNING)
+            .where(criteriaBuilder.and(
+                criteriaBuilder.equal(root.get("id"), id),
+                isClaimable(criteriaBuilder, root, now)));
+        return session.createQuery(update).executeUpdate();
+    }
+
+    private int updateLeases(String instanceId, OffsetDateTime leaseExpires) {
+        return inOwnTransaction(session -> {
+            var criteriaBuilder = session.getCriteriaBuilder();
+            var update = criteriaBuilder.createCriteriaUpdate(ImportJob.class);
+            var root = update.from(ImportJob.class);
+            update.set(root.<OffsetDateTime> get("leaseExpires"), leaseExpires)
+                .where(isClaimedRunningBy(criteriaBuilder, root, instanceId));
+            return session.createQuery(update).executeUpdate();
+        });
+    }
+
+    private static Predicate isClaimedRunningBy(CriteriaBuilder criteriaBuilder, Root<ImportJob> root, String instanceId) {
+        return criteriaBuilder.and(
+            criteriaBuilder.equal(root.get("claimedBy"), instanceId),
+            criteriaBuilder.equal(root.get("status"), ImportJob.Status.RUNNING));
+    }
+
+    private static List<Order> byPriorityAndAge(CriteriaBuilder criteriaBuilder, Root<ImportJob> root) {
+        return List.of(criteriaBuilder.desc(priorityOf(criteriaBuilder, root)), criteriaBuilder.asc(root.get("created")));
+    }
+
+    private static Expression<Integer> priorityOf(CriteriaBuilder criteriaBuilder, Root<ImportJob> root) {
+        return criteriaBuilder.coalesce(root.<Integer> get("priority"), 0);
+    }
+
+    private static Predicate isClaimable(CriteriaBuilder criteriaBuilder, Root<ImportJob> root, OffsetDateTime now) {
+        return criteriaBuilder.and(
+            root.get("status").in(ImportJob.Status.PENDING, ImportJob.Status.RUNNING),
+            isNotPaused(criteriaBuilder, root),
+            criteriaBuilder.or(
+                criteriaBuilder.isNull(root.get("claimedBy")),
+                criteriaBuilder.lessThan(root.<OffsetDateTime> get("leaseExpires"), now)));
+    }
+
+    private static Predicate isNotPaused(CriteriaBuilder criteriaBuilder, Root<ImportJob> root) {
+        return criteriaBuilder.or(
+            criteriaBuilder.isNull(root.get("stopRequest")),
+            criteriaBuilder.notEqual(root.get("stopRequest"), ImportJob.StopRequest.PAUSE));
+    }
+
+    private <T> T inOwnTransaction(Function<Session, T> work) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            try {
+                var result = work.apply(session);
+                transaction.commit();
+                return result;
+            }
+            catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
 }
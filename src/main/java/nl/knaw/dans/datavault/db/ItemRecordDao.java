@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.ConsistencyCheckShard;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemRecord;
+import org.hibernate.ScrollMode;
+import org.hibernate.SessionFactory;
+
+import javax.persistence.criteria.CriteriaQuery;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only queries on the item records of the layer store that are not offered by the layer database itself. Used for checks and indexes that need to go through many records without loading them all
+ * into memory.
+ */
+public class ItemRecordDao extends AbstractDAO<ItemRecord> {
+    private static final int FETCH_SIZE = 1000;
+    private static final char LIKE_ESCAPE = '!';
+
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public ItemRecordDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public long countByLayerId(long layerId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        var root = criteriaQuery.from(ItemRecord.class);
+        criteriaQuery.select(criteriaBuilder.count(root))
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("layerId"), layerId),
+                    criteriaBuilder.notEqual(root.get("path"), "")
+                )
+            );
+        return currentSession().createQuery(criteriaQuery).getSingleResult();
+    }
+
+    public Optional<Item.Type> findType(long layerId, String path) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Item.Type.class);
+        var root = criteriaQuery.from(ItemRecord.class);
+        criteriaQuery.select(root.get("type"))
+            .where(
+                criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("layerId"), layerId),
+                    criteriaBuilder.equal(root.get("path"), path)
+                )
+            );
+        return currentSession().createQuery(criteriaQuery).uniqueResultOptional();
+    }
+
+    public List<Long> listLayerIds() {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        var root = criteriaQuery.from(ItemRecord.class);
+        criteriaQuery.select(root.get("layerId"))
+            .distinct(true)
+            .orderBy(criteriaBuilder.asc(root.get("layerId")));
+        return currentSession().createQuery(criteriaQuery).getResultList();
+    }
+
+    /**
+     * Streams the path and type of the item records of a layer that belong to the given shard. The records are read with a forward-only cursor, so that the size of the shard does not
+     * matter for the memory use.
+     *
+     * @param layerId    the layer
+     * @param pathPrefix the directory of the shard, or {@link ConsistencyCheckShard#SHALLOW_ITEMS}
+     * @param shardDepth the number of path segments of the shard directories
+     * @param consumer   receives the path and type of each record
+     * @return the number of records streamed
+     */
+    public long forEachInShard(long layerId, String pathPrefix, int shardDepth, BiConsumer<String, Item.Type> consumer) {
+        if (!ConsistencyCheckShard.SHALLOW_ITEMS.equals(pathPrefix)) {
+            return forEachInSubtree(layerId, pathPrefix, consumer);
+        }
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Object[].class);
+        var root = criteriaQuery.from(ItemRecord.class);
+        var path = root.<String> get("path");
+        // Items with fewer segments than the shard directories, and files with as many
+        var fewerSegments = criteriaBuilder.notLike(path, "%" + "/%".repeat(shardDepth - 1));
+        var sameSegments = criteriaBuilder.and(
+            criteriaBuilder.like(path, "%" + "/%".repeat(shardDepth - 1)),
+            criteriaBuilder.notLike(path, "%" + "/%".repeat(shardDepth)));
+        criteriaQuery.multiselect(path, root.get("type"))
+            .where(criteriaBuilder.and(
+                criteriaBuilder.equal(root.get("layerId"), layerId),
+                criteriaBuilder.notEqual(path, ""),
+                criteriaBuilder.or(
+                    fewerSegments,
+                    criteriaBuilder.and(sameSegments, criteriaBuilder.equal(root.get("type"), Item.Type.File)))));
+        return scroll(criteriaQuery, consumer);
+    }
+
+    /**
+     * Streams the path and type of the item records of a layer for the given path and everything under it.
+     *
+     * @param layerId  the layer
+     * @param path     the path
+     * @param consumer receives the path and type of each record
+     * @return the number of records streamed
+     */
+    public long forEachInSubtree(long layerId, String path, BiConsumer<String, Item.Type> consumer) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Object[].class);
+        var root = criteriaQuery.from(ItemRecord.class);
+        var recordPath = root.<String> get("path");
+        criteriaQuery.multiselect(recordPath, root.get("type"))
+            .where(criteriaBuilder.and(
+                criteriaBuilder.equal(root.get("layerId"), layerId),
+                criteriaBuilder.or(
+                    criteriaBuilder.equal(recordPath, path),
+                    criteriaBuilder.like(recordPath, escapeLike(path) + "/%", LIKE_ESCAPE))));
+        return scroll(criteriaQuery, consumer);
+    }
+
+    /**
+     * Streams the path and type of all item records of a layer, including the root record.
+     *
+     * @param layerId  the layer
+     * @param consumer receives the path and type of each record
+     * @return the number of records streamed
+     */
+    public long forEachInLayer(long layerId, BiConsumer<String, Item.Type> consumer) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Object[].class);
+        var root = criteriaQuery.from(ItemRecord.class);
+        criteriaQuery.multiselect(root.get("path"), root.get("type"))
+            .where(criteriaBuilder.equal(root.get("layerId"), layerId));
+        return scroll(criteriaQuery, consumer);
+    }
+
+    private long scroll(CriteriaQuery<Object[]> criteriaQuery, BiConsumer<String, Item.Type> consumer) {
+        long count = 0;
+        try (var results = currentSession().createQuery(criteriaQuery)
+            .setReadOnly(true)
+            .setFetchSize(FETCH_SIZE)
+            .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                consumer.accept((String) results.get(0), (Item.Type) results.get(1));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String escapeLike(String value) {
+        return value
+            .replace(String.valueOf(LIKE_ESCAPE), "" + LIKE_ESCAPE + LIKE_ESCAPE)
+            .replace("%", LIKE_ESCAPE + "%")
+            .replace("_", LIKE_ESCAPE + "_");
+    }
+}
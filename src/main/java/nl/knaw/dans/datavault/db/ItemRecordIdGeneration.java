@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.layerstore.ItemRecord;
+import org.hibernate.Session;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import javax.persistence.Column;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Makes the IDs of the listing records ({@link ItemRecord}) come from a sequence in blocks, instead of from an identity column. Hibernate cannot batch the inserts of an entity with an identity
+ * ID, as it needs the ID generated by each insert before it can do the next; with the IDs allocated in advance, the records of one object version are inserted in JDBC batches.
+ * <p>
+ * {@link ItemRecord} is defined in the layer-store library, so its ID mapping is overridden with an XML mapping. The identity column that an existing database may have is left in place: the
+ * IDs are only taken from the sequence, which {@link #initializeSequence(Session)} moves past the IDs that are already in use.
+ */
+@Slf4j
+public final class ItemRecordIdGeneration {
+    public static final String SEQUENCE_NAME = "listing_record_id_block_seq";
+    // The number of IDs that are allocated per round trip to the database
+    private static final int ALLOCATION_SIZE = 100;
+
+    private ItemRecordIdGeneration() {
+    }
+
+    /**
+     * Overrides the ID generation of {@link ItemRecord} in the configuration of a session factory, if it uses an identity column.
+     *
+     * @param configuration the configuration of the session factory
+     */
+    public static void configure(Configuration configuration) {
+        var idField = findIdentityIdField();
+        if (idField.isEmpty()) {
+            log.debug("ItemRecord does not use an identity ID; leaving its ID generation unchanged");
+            return;
+        }
+        // With pooled-lo, the value from the sequence is the lowest ID of the block, so that IDs below the sequence value are never handed out
+        configuration.setProperty("hibernate.id.optimizer.pooled.preferred", "pooled-lo");
+        configuration.addInputStream(new ByteArrayInputStream(createMapping(idField.get()).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Moves the sequence past the highest ID in use, if it is behind. That is only the case just after the sequence was created in a database that already has listing records. The sequence
+     * is only ever moved forward, as other instances may be inserting listing records while this one starts. Must be called in a transaction, before listing records are written.
+     *
+     * @param session the session to use
+     */
+    public static void initializeSequence(Session session) {
+        var idField = findIdentityIdField();
+        if (idField.isEmpty()) {
+            return;
+        }
+        var dialect = ((SessionFactoryImplementor) session.getSessionFactory()).getJdbcServices().getDialect();
+        var next = ((Number) session.createNativeQuery(dialect.getSequenceNextValString(SEQUENCE_NAME)).getSingleResult()).longValue();
+        var maxId = session.createQuery("select max(r." + idField.get().getName() + ") from ItemRecord r", Number.class).getSingleResult();
+        if (maxId != null && next <= maxId.longValue()) {
+            log.info("Moving sequence {} past the highest listing record ID in use ({})", SEQUENCE_NAME, maxId);
+            var target = maxId.longValue() + 1;
+            if (isPostgreSql(session)) {
+                // Another instance that shares the database may have taken IDs from the sequence since it was read above; it must never be moved back past those
+                session.createNativeQuery("SELECT setval('" + SEQUENCE_NAME + "', GREATEST(" + target + ", (SELECT last_value FROM " + SEQUENCE_NAME + ")))").getSingleResult();
+            }
+            else {
+                // H2 has no setval, but its database is not shared by several instances
+                session.createNativeQuery("ALTER SEQUENCE " + SEQUENCE_NAME + " RESTART WITH " + target).executeUpdate();
+            }
+        }
+    }
+
+    private static boolean isPostgreSql(Session session) {
+        return session.doReturningWork(connection -> connection.getMetaData().getDatabaseProductName()).equalsIgnoreCase("PostgreSQL");
+    }
+
+    private static Optional<Field> findIdentityIdField() {
+        return Arrays.stream(ItemRecord.class.getDeclaredFields())
+            .filter(field -> field.isAnnotationPresent(Id.class))
+            .filter(field -> field.isAnnotationPresent(GeneratedValue.class) && field.getAnnotation(GeneratedValue.class).strategy() == GenerationType.IDENTITY)
+            .findFirst();
+    }
+
+    private static String createMapping(Field idField) {
+        // The overriding <id> replaces the annotations of the field, so its column must be repeated
+        var column = Optional.ofNullable(idField.getAnnotation(Column.class))
+            .map(Column::name)
+            .filter(name -> !name.isEmpty())
+            .map(name -> "<column name=\"" + name + "\"/>")
+            .orElse("");
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<entity-mappings xmlns=\"http://xmlns.jcp.org/xml/ns/persistence/orm\" version=\"2.1\">\n"
+            + "  <sequence-generator name=\"listing_record_id\" sequence-name=\"" + SEQUENCE_NAME + "\" allocation-size=\"" + ALLOCATION_SIZE + "\"/>\n"
+            + "  <entity class=\"" + ItemRecord.class.getName() + "\" metadata-complete=\"false\">\n"
+            + "    <attributes>\n"
+            + "      <id name=\"" + idField.getName() + "\">\n"
+            + "        " + column + "\n"
+            + "        <generated-value strategy=\"SEQUENCE\" generator=\"listing_record_id\"/>\n"
+            + "      </id>\n"
+            + "    </attributes>\n"
+            + "  </entity>\n"
+            + "</entity-mappings>\n";
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.SharedContent;
+import org.hibernate.SessionFactory;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.List;
+
+public class SharedContentDao extends AbstractDAO<SharedContent> {
+    private static final char LIKE_ESCAPE = '!';
+
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public SharedContentDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public SharedContent create(SharedContent sharedContent) {
+        return super.persist(sharedContent);
+    }
+
+    /**
+     * @param layerId the layer, or null for all layers
+     * @return the number of content files that share their content with another file
+     */
+    public long countFiles(Long layerId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        var root = criteriaQuery.from(SharedContent.class);
+        criteriaQuery.select(criteriaBuilder.count(root));
+        if (layerId != null) {
+            criteriaQuery.where(criteriaBuilder.equal(root.get("layerId"), layerId));
+        }
+        return currentSession().createQuery(criteriaQuery).getSingleResult();
+    }
+
+    /**
+     * @param layerId the layer, or null for all layers
+     * @return the number of bytes saved by sharing content
+     */
+    public long sumSize(Long layerId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        var root = criteriaQuery.from(SharedContent.class);
+        criteriaQuery.select(criteriaBuilder.coalesce(criteriaBuilder.sum(root.<Long> get("size")), 0L));
+        if (layerId != null) {
+            criteriaQuery.where(criteriaBuilder.equal(root.get("layerId"), layerId));
+        }
+        return currentSession().createQuery(criteriaQuery).getSingleResult();
+    }
+
+    /**
+     * Deletes the records of the content that is shared by or with a file at one of the given paths or under one of them.
+     *
+     * @param paths item store paths of files or directories
+     * @return the number of records deleted
+     */
+    public int deleteByPaths(List<String> paths) {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var delete = criteriaBuilder.createCriteriaDelete(SharedContent.class);
+        var root = delete.from(SharedContent.class);
+        delete.where(criteriaBuilder.or(paths.stream()
+            .flatMap(path -> List.of(isAtOrUnder(criteriaBuilder, root, "storagePath", path), isAtOrUnder(criteriaBuilder, root, "sourcePath", path)).stream())
+            .toArray(Predicate[]::new)));
+        return currentSession().createQuery(delete).executeUpdate();
+    }
+
+    /**
+     * @param layerId the layer
+     * @return the number of records deleted
+     */
+    public int deleteByLayerId(long layerId) {
+        var criteriaBuilder = currentSession().getCriteriaBuilder();
+        var delete = criteriaBuilder.createCriteriaDelete(SharedContent.class);
+        var root = delete.from(SharedContent.class);
+        delete.where(criteriaBuilder.equal(root.get("layerId"), layerId));
+        return currentSession().createQuery(delete).executeUpdate();
+    }
+
+    private static Predicate isAtOrUnder(CriteriaBuilder criteriaBuilder, Root<SharedContent> root, String attribute, String path) {
+        var value = root.<String> get(attribute);
+        return criteriaBuilder.or(
+            criteriaBuilder.equal(value, path),
+            criteriaBuilder.like(value, escapeLike(path) + "/%", LIKE_ESCAPE));
+    }
+
+    private static String escapeLike(String value) {
+        return value
+            .replace(String.valueOf(LIKE_ESCAPE), "" + LIKE_ESCAPE + LIKE_ESCAPE)
+            .replace("%", LIKE_ESCAPE + "%")
+            .replace("_", LIKE_ESCAPE + "_");
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.datavault.core.WriterLease;
+import org.hibernate.SessionFactory;
+
+import javax.persistence.PersistenceException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * Acquires and renews {@link WriterLease}s. Every operation is committed in a session of its own, so that other instances see the outcome at once, whatever the unit of work of the caller.
+ */
+public class WriterLeaseDao extends AbstractDAO<WriterLease> {
+    private final SessionFactory sessionFactory;
+
+    /**
+     * Creates a new DAO with a given session provider.
+     *
+     * @param sessionFactory a session provider
+     */
+    public WriterLeaseDao(SessionFactory sessionFactory) {
+        super(sessionFactory);
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Acquires the lease with the given name, or renews it if the instance already holds it. A lease held by another instance can only be acquired after it has expired.
+     *
+     * @param name          the name of the lease
+     * @param holder        the instance
+     * @param leaseDuration how long the lease holds from now
+     * @return whether the instance holds the lease
+     */
+    public boolean tryAcquire(String name, String holder, Duration leaseDuration) {
+        var now = OffsetDateTime.now();
+        var expires = now.plus(leaseDuration);
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            try {
+                var criteriaBuilder = session.getCriteriaBuilder();
+                var update = criteriaBuilder.createCriteriaUpdate(WriterLease.class);
+                var root = update.from(WriterLease.class);
+                update.set(root.<String> get("holder"), holder)
+                    .set(root.<OffsetDateTime> get("expires"), expires)
+                    .where(criteriaBuilder.and(
+                        criteriaBuilder.equal(root.get("name"), name),
+                        criteriaBuilder.or(
+                            criteriaBuilder.equal(root.get("holder"), holder),
+                            criteriaBuilder.lessThan(root.<OffsetDateTime> get("expires"), now))));
+                var acquired = session.createQuery(update).executeUpdate() == 1;
+                if (!acquired && session.get(WriterLease.class, name) == null) {
+                    session.persist(new WriterLease(name, holder, expires));
+                    session.flush();
+                    acquired = true;
+                }
+                transaction.commit();
+                return acquired;
+            }
+            catch (PersistenceException e) {
+                // Another instance created the lease at the same time
+                transaction.rollback();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Ends the lease, if the instance holds it, so that another instance can acquire it at once.
+     *
+     * @param name   the name of the lease
+     * @param holder the instance
+     */
+    public void release(String name, String holder) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            var criteriaBuilder = session.getCriteriaBuilder();
+            var update = criteriaBuilder.createCriteriaUpdate(WriterLease.class);
+            var root = update.from(WriterLease.class);
+            update.set(root.<OffsetDateTime> get("expires"), OffsetDateTime.now())
+                .where(criteriaBuilder.and(
+                    criteriaBuilder.equal(root.get("name"), name),
+                    criteriaBuilder.equal(root.get("holder"), holder)));
+            session.createQuery(update).executeUpdate();
+            transaction.commit();
+        }
+    }
+}
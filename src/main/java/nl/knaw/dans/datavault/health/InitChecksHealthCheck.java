@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+
+/**
+ * Reports the state of the init checks. While they are running the service is healthy but read-only, so it reports "initializing" rather than failing.
+ */
+@RequiredArgsConstructor
+public class InitChecksHealthCheck extends HealthCheck {
+    private final ServiceReadiness serviceReadiness;
+
+    @Override
+    protected Result check() {
+        return switch (serviceReadiness.getState()) {
+            case INITIALIZING -> Result.builder().healthy().withMessage("initializing").withDetail("details", serviceReadiness.getMessage()).build();
+            case READY -> Result.healthy("ready");
+            case FAILED -> Result.unhealthy(serviceReadiness.getMessage());
+        };
+    }
+}
@@ -20,6 +20,7 @@ import lombok.RequiredArgsConstructor;
 import nl.knaw.dans.datavault.Conversions;
 import nl.knaw.dans.datavault.api.ConsistencyCheckRequestDto;
 import nl.knaw.dans.datavault.core.ConsistencyCheck;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
 import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
 import org.mapstruct.factory.Mappers;
 
@@ -32,6 +33,7 @@ import java.util.UUID;
 public class ConsistencyChecksApiResource implements ConsistencyChecksApi {
     private final Conversions conversions = Mappers.getMapper(Conversions.class);
     private final ConsistencyCheckDao consistencyCheckDao;
+    private final ServiceReadiness serviceReadiness;
 
     @Override
     @UnitOfWork
@@ -46,6 +48,9 @@ public class ConsistencyChecksApiResource implements ConsistencyChecksApi {
     @Override
     @UnitOfWork
     public Response consistencyChecksPost(ConsistencyCheckRequestDto consistencyCheckRequestDto) {
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
+        }
         var consistencyCheck = new ConsistencyCheck();
         consistencyCheck.setCreated(OffsetDateTime.now(ZoneOffset.UTC));
         consistencyCheck.setType(conversions.convert(consistencyCheckRequestDto.getType()));
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.config.ConsistencyCheckScheduleConfig;
+import nl.knaw.dans.datavault.core.ConsistencyCheck;
+import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+
+/**
+ * Reports how well the store is covered by consistency checks: the latest LISTING_RECORDS check of every layer, and the latest LAYER_IDS and FIXITY checks. A layer counts as covered if its
+ * latest LISTING_RECORDS check finished within the coverage period of the {@link ConsistencyCheckScheduleConfig schedule}.
+ */
+@Path("/consistency-coverage")
+@Produces(MediaType.APPLICATION_JSON)
+@RequiredArgsConstructor
+public class ConsistencyCoverageApiResource {
+    private final ConsistencyCheckDao consistencyCheckDao;
+    private final LayeredItemStore layeredItemStore;
+    private final ConsistencyCheckScheduleConfig scheduleConfig;
+
+    public record CheckSummary(
+        UUID id,
+        OffsetDateTime finished,
+        ConsistencyCheck.Result result,
+        String message) {}
+
+    public record LayerCoverage(
+        long layerId,
+        boolean covered,
+        CheckSummary latestListingRecordsCheck) {}
+
+    public record CoverageReport(
+        OffsetDateTime coveredSince,
+        int layersTotal,
+        int layersCovered,
+        int layersNeverChecked,
+        int layersNotOk,
+        OffsetDateTime oldestLatestListingRecordsCheck,
+        CheckSummary latestLayerIdsCheck,
+        CheckSummary latestFixityCheck,
+        List<LayerCoverage> layers) {}
+
+    @GET
+    @UnitOfWork
+    public Response consistencyCoverageGet() {
+        try {
+            var coveredSince = OffsetDateTime.now().minus(scheduleConfig.getListingRecordsCoveragePeriod().toJavaDuration());
+            var latestChecks = consistencyCheckDao.findLatestFinishedByTypePerLayer(ConsistencyCheck.Type.LISTING_RECORDS);
+            var layers = layeredItemStore.listLayerIds().stream()
+                .sorted()
+                .map(layerId -> {
+                    var latest = latestChecks.get(layerId);
+                    return new LayerCoverage(layerId, latest != null && latest.getFinished().isAfter(coveredSince), toSummary(latest));
+                })
+                .toList();
+            var checkedLayers = layers.stream().map(LayerCoverage::latestListingRecordsCheck).filter(Objects::nonNull).toList();
+            return Response.ok(new CoverageReport(
+                coveredSince,
+                layers.size(),
+                (int) layers.stream().filter(LayerCoverage::covered).count(),
+                layers.size() - checkedLayers.size(),
+                (int) checkedLayers.stream().filter(check -> check.result() != ConsistencyCheck.Result.OK).count(),
+                checkedLayers.stream().map(CheckSummary::finished).min(OffsetDateTime::compareTo).orElse(null),
+                toSummary(consistencyCheckDao.findLatestFinishedByType(ConsistencyCheck.Type.LAYER_IDS).orElse(null)),
+                toSummary(consistencyCheckDao.findLatestFinishedByType(ConsistencyCheck.Type.FIXITY).orElse(null)),
+                layers)).build();
+        }
+        catch (IOException e) {
+            return Response.status(INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    private CheckSummary toSummary(ConsistencyCheck check) {
+        if (check == null) {
+            return null;
+        }
+        return new CheckSummary(check.getId(), check.getFinished(), check.getResult(), check.getMessage());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.db.SharedContentDao;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Reports on the content that is shared across objects by content deduplication.
+ */
+@Path("/content-deduplication")
+@Produces(MediaType.APPLICATION_JSON)
+@RequiredArgsConstructor
+public class ContentDeduplicationApiResource {
+    private final SharedContentDao sharedContentDao;
+
+    public record DeduplicationReport(
+        Long layerId,
+        long sharedFiles,
+        long bytesSaved) {}
+
+    @GET
+    @UnitOfWork
+    public Response contentDeduplicationGet(@QueryParam("layerId") Long layerId) {
+        return Response.ok(new DeduplicationReport(layerId, sharedContentDao.countFiles(layerId), sharedContentDao.sumSize(layerId))).build();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.core.ConsistencyCheck;
+import nl.knaw.dans.datavault.core.ConsistencyCheckShard;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.FixityMismatchDao;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Schedules FIXITY checks and reports on their progress and the mismatches found. FIXITY checks are not part of the consistency-checks API, because they take parameters of their own; they
+ * are executed by the same executor as the other consistency checks.
+ */
+@Path("/fixity-checks")
+@Produces(MediaType.APPLICATION_JSON)
+@RequiredArgsConstructor
+public class FixityChecksApiResource {
+    private final ConsistencyCheckDao consistencyCheckDao;
+    private final ConsistencyCheckShardDao shardDao;
+    private final FixityMismatchDao fixityMismatchDao;
+    private final ServiceReadiness serviceReadiness;
+
+    public record FixityCheckStatus(
+        UUID id,
+        String objectIdPrefix,
+        Double sampleRate,
+        OffsetDateTime created,
+        OffsetDateTime started,
+        OffsetDateTime finished,
+        ConsistencyCheck.Result result,
+        String message,
+        int shardsTotal,
+        int shardsFinished,
+        long filesChecked,
+        long filesSkipped) {}
+
+    public record FixityMismatchReport(
+        String objectId,
+        String storageRelativePath,
+        String digestAlgorithm,
+        String expectedDigest,
+        String actualDigest,
+        String message) {}
+
+    @POST
+    @UnitOfWork
+    public Response fixityChecksPost(@QueryParam("objectIdPrefix") String objectIdPrefix, @QueryParam("sampleRate") Double sampleRate) {
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
+        }
+        if (sampleRate != null && (sampleRate <= 0 || sampleRate > 1)) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("sampleRate must be greater than 0 and at most 1").build();
+        }
+        var consistencyCheck = new ConsistencyCheck();
+        consistencyCheck.setCreated(OffsetDateTime.now(ZoneOffset.UTC));
+        consistencyCheck.setType(ConsistencyCheck.Type.FIXITY);
+        consistencyCheck.setObjectIdPrefix(objectIdPrefix);
+        consistencyCheck.setSampleRate(sampleRate);
+        return Response.accepted(toStatus(consistencyCheckDao.create(consistencyCheck))).build();
+    }
+
+    @GET
+    @Path("/{id}")
+    @UnitOfWork
+    public Response fixityChecksIdGet(@PathParam("id") UUID id) {
+        var consistencyCheck = consistencyCheckDao.get(id);
+        if (consistencyCheck == null || consistencyCheck.getType() != ConsistencyCheck.Type.FIXITY) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok(toStatus(consistencyCheck)).build();
+    }
+
+    @GET
+    @Path("/{id}/mismatches")
+    @UnitOfWork
+    public Response fixityChecksIdMismatchesGet(@PathParam("id") UUID id) {
+        var consistencyCheck = consistencyCheckDao.get(id);
+        if (consistencyCheck == null || consistencyCheck.getType() != ConsistencyCheck.Type.FIXITY) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        var mismatches = fixityMismatchDao.findByConsistencyCheckId(id).stream()
+            .map(m -> new FixityMismatchReport(m.getObjectId(), m.getStorageRelativePath(), m.getDigestAlgorithm(), m.getExpectedDigest(), m.getActualDigest(), m.getMessage()))
+            .toList();
+        return Response.ok(mismatches).build();
+    }
+
+    private FixityCheckStatus toStatus(ConsistencyCheck check) {
+        var shards = shardDao.findByConsistencyCheckId(check.getId());
+        var finishedShards = shards.stream().filter(shard -> shard.getFinished() != null).toList();
+        return new FixityCheckStatus(
+            check.getId(),
+            check.getObjectIdPrefix(),
+            check.getSampleRate(),
+            check.getCreated(),
+            check.getStarted(),
+            check.getFinished(),
+            check.getResult(),
+            check.getMessage(),
+            shards.size(),
+            finishedShards.size(),
+            finishedShards.stream().map(ConsistencyCheckShard::getRecordsChecked).filter(Objects::nonNull).mapToLong(Long::longValue).sum(),
+            finishedShards.stream().map(ConsistencyCheckShard::getItemsSkipped).filter(Objects::nonNull).mapToLong(Long::longValue).sum());
+    }
+}
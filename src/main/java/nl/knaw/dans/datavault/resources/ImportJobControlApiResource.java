@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.core.ImportArchive;
+import nl.knaw.dans.datavault.core.ImportJob;
+import nl.knaw.dans.datavault.db.ImportJobDao;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.UUID;
+
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+/**
+ * Cancels, pauses and resumes import jobs. A running job stops starting new objects as soon as it sees the request; the objects in progress are finished, and the outcome of every object is
+ * recorded in the outbox of the batch. A paused job is continued with the objects that were not imported yet when it is resumed. Import archives cannot be paused, as their objects are not
+ * moved out of the inbox one by one. The actions are not part of the imports API, because the job status it reports cannot express them.
+ */
+@Path("/imports/{id}/{action: cancel|pause|resume}")
+@Produces(MediaType.APPLICATION_JSON)
+@RequiredArgsConstructor
+public class ImportJobControlApiResource {
+    private final ImportJobDao importJobDao;
+    private final java.nio.file.Path inbox;
+
+    public record ImportJobControlStatus(
+        UUID id,
+        ImportJob.Status status,
+        ImportJob.StopRequest stopRequest,
+        String message) {}
+
+    @POST
+    @UnitOfWork
+    public Response importsIdActionPost(@PathParam("id") UUID id, @PathParam("action") String action) {
+        var job = importJobDao.get(id);
+        if (job == null) {
+            return Response.status(NOT_FOUND).build();
+        }
+        if (isFinished(job)) {
+            return Response.status(CONFLICT).entity("Import job " + id + " has already finished").build();
+        }
+        return switch (action) {
+            case "cancel" -> cancel(job);
+            case "pause" -> pause(job);
+            default -> resume(job);
+        };
+    }
+
+    private Response cancel(ImportJob job) {
+        job.setStopRequest(ImportJob.StopRequest.CANCEL);
+        importJobDao.update(job);
+        return Response.accepted(toStatus(job)).build();
+    }
+
+    private Response pause(ImportJob job) {
+        if (job.getStopRequest() == ImportJob.StopRequest.CANCEL) {
+            return Response.status(CONFLICT).entity("Import job " + job.getId() + " is being cancelled").build();
+        }
+        if (ImportArchive.isImportArchive(inbox.resolve(job.getPath()))) {
+            return Response.status(CONFLICT).entity("Import job " + job.getId() + " imports an archive, which cannot be paused").build();
+        }
+        job.setStopRequest(ImportJob.StopRequest.PAUSE);
+        importJobDao.update(job);
+        return Response.accepted(toStatus(job)).build();
+    }
+
+    private Response resume(ImportJob job) {
+        if (job.getStopRequest() != ImportJob.StopRequest.PAUSE) {
+            return Response.status(CONFLICT).entity("Import job " + job.getId() + " is not paused").build();
+        }
+        job.setStopRequest(null);
+        importJobDao.update(job);
+        return Response.ok(toStatus(job)).build();
+    }
+
+    private boolean isFinished(ImportJob job) {
+        return job.getStatus() == ImportJob.Status.SUCCESS || job.getStatus() == ImportJob.Status.FAILED;
+    }
+
+    private ImportJobControlStatus toStatus(ImportJob job) {
+        return new ImportJobControlStatus(job.getId(), job.getStatus(), job.getStopRequest(), job.getMessage());
+    }
+}
@@ -16,7 +16,9 @@
 package nl.knaw.dans.datavault.resources;
 
 import io.dropwizard.hibernate.UnitOfWork;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import nl.knaw.dans.datavault.Conversions;
 import nl.knaw.dans.datavault.api.ImportCommandDto;
 import nl.knaw.dans.datavault.core.BatchCleaner;
@@ -24,20 +26,28 @@ import nl.knaw.dans.datavault.core.ImportJob;
 import nl.knaw.dans.datavault.db.ImportJobDao;
 import org.mapstruct.factory.Mappers;
 
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.nio.file.Path;
 import java.time.OffsetDateTime;
+import java.util.Optional;
 import java.util.UUID;
 
 import static javax.ws.rs.core.Response.Status.CREATED;
 
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class ImportsApiResource implements ImportsApi {
     private final Conversions conversions = Mappers.getMapper(Conversions.class);
     private final ImportJobDao importJobDao;
     private final Path inbox;
     private final Path outbox;
 
+    // The priority is not part of the import command, so it is taken from the query parameters
+    @Context
+    @Setter(AccessLevel.PACKAGE)
+    private UriInfo uriInfo;
+
     @Override
     @UnitOfWork
     public Response importsGet() {
@@ -58,11 +68,16 @@ public class ImportsApiResource implements ImportsApi {
     @Override
     @UnitOfWork
     public Response importsPost(ImportCommandDto importJobDto) {
+        var priority = getPriority();
+        if (priority.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("priority must be an integer").build();
+        }
         try {
             var job = conversions.convert(importJobDto);
             job.setPath(getInboxRelativePath(Path.of(job.getPath())));
             job.setCreated(OffsetDateTime.now());
             job.setStatus(ImportJob.Status.PENDING);
+            job.setPriority(priority.get());
             return Response
                 .status(CREATED)
                 .entity(conversions.convert(importJobDao.create(job)))
@@ -85,6 +100,20 @@ public class ImportsApiResource implements ImportsApi {
         return Response.ok().build();
     }
 
+    // Empty if the priority is not an integer; the default priority is 0
+    private Optional<Integer> getPriority() {
+        var priority = uriInfo != null ? uriInfo.getQueryParameters().getFirst("priority") : null;
+        if (priority == null) {
+            return Optional.of(0);
+        }
+        try {
+            return Optional.of(Integer.parseInt(priority.trim()));
+        }
+        catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
     private String getInboxRelativePath(Path path) {
         Path normalizedPath = path.toAbsolutePath().normalize();
         Path normalizedInbox = inbox.toAbsolutePath().normalize();
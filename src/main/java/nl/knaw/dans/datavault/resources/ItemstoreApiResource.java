@@ -23,27 +23,43 @@ import nl.knaw.dans.datavault.api.CopyFileOutOfRequestDto;
 import nl.knaw.dans.datavault.api.CreateDirectoryRequestDto;
 import nl.knaw.dans.datavault.api.DeleteDirectoryRequestDto;
 import nl.knaw.dans.datavault.api.DeleteFilesRequestDto;
+import nl.knaw.dans.datavault.core.ContentDeduplicator;
+import nl.knaw.dans.datavault.core.DirectoryCopier;
+import nl.knaw.dans.datavault.core.ObjectLockManager;
+import nl.knaw.dans.datavault.core.OperationRegistry;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
 import nl.knaw.dans.layerstore.ItemStore;
-import org.apache.commons.io.FileUtils;
 
 import javax.ws.rs.core.Response;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.UUID;
+import java.util.List;
 
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.CONFLICT;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.NO_CONTENT;
 import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
 
 @Slf4j
 @AllArgsConstructor
 public class ItemstoreApiResource implements ItemstoreApi {
     private final ItemStore layeredItemStore;
     private final nl.knaw.dans.datavault.config.ItemstoreConfig itemstoreConfig;
+    private final ServiceReadiness serviceReadiness;
+    private final OperationRegistry operationRegistry;
+    private final DirectoryCopier directoryCopier;
+    // If not null, the objects changed are locked, so that the changes do not interleave with versions being added to them
+    private final ObjectLockManager objectLockManager;
+    // If not null, the shared content of deleted files is forgotten; wrapped in a UnitOfWorkAwareProxy on app initialization
+    private final ContentDeduplicator contentDeduplicator;
+
+    public ItemstoreApiResource(ItemStore layeredItemStore, nl.knaw.dans.datavault.config.ItemstoreConfig itemstoreConfig, ServiceReadiness serviceReadiness,
+        OperationRegistry operationRegistry, DirectoryCopier directoryCopier) {
+        this(layeredItemStore, itemstoreConfig, serviceReadiness, operationRegistry, directoryCopier, null, null);
+    }
 
     @Override
     public Response itemstoreCopyDirectoryIntoPost(CopyDirectoryIntoRequestDto copyDirectoryIntoRequestDto) {
@@ -51,32 +67,34 @@ public class ItemstoreApiResource implements ItemstoreApi {
             log.warn("End-point called while disabled: itemstoreCopyDirectoryIntoPost");
             return Response.status(Response.Status.FORBIDDEN).build();
         }
-        try {
-            var source = Paths.get(copyDirectoryIntoRequestDto.getSource());
-            if (!source.isAbsolute()) {
-                log.warn("Source path must be absolute: {}", source);
-                return Response.status(BAD_REQUEST).entity("Source path must be absolute").build();
-            }
-            var stagingDir = Paths.get(itemstoreConfig.getWorkDir()).resolve(UUID.randomUUID().toString());
-            Files.createDirectories(stagingDir);
-            try {
-                FileUtils.copyDirectory(source.toFile(), stagingDir.toFile());
-                layeredItemStore.moveDirectoryInto(stagingDir, removeLeadingSlashes(copyDirectoryIntoRequestDto.getDestination()));
-            }
-            finally {
-                FileUtils.deleteQuietly(stagingDir.toFile());
-            }
-            return Response.status(OK).build();
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
         }
-        catch (IllegalStateException e) {
-            return Response.status(CONFLICT).build();
+        var source = Paths.get(copyDirectoryIntoRequestDto.getSource());
+        if (!source.isAbsolute()) {
+            log.warn("Source path must be absolute: {}", source);
+            return Response.status(BAD_REQUEST).entity("Source path must be absolute").build();
         }
-        catch (IllegalArgumentException e) {
-            return Response.status(BAD_REQUEST).entity(e.getMessage()).build();
+        var destination = removeLeadingSlashes(copyDirectoryIntoRequestDto.getDestination());
+        return OperationsApiResource.submit(operationRegistry, "copy-directory-into", () -> {
+            try (var lock = lockItemPaths(List.of(destination))) {
+                directoryCopier.copy(source, destination);
+            }
+            return null;
+        }, result -> Response.status(OK).build());
+    }
+
+    private ObjectLockManager.Lock lockItemPaths(List<String> paths) {
+        if (objectLockManager == null) {
+            return () -> {
+            };
         }
-        catch (IOException e) {
-            log.error("Internal server error", e);
-            return Response.status(INTERNAL_SERVER_ERROR).build();
+        return objectLockManager.lockItemPaths(paths);
+    }
+
+    private void forgetSharedContent(List<String> paths) {
+        if (contentDeduplicator != null) {
+            contentDeduplicator.forgetDeleted(paths);
         }
     }
 
@@ -90,28 +108,22 @@ public class ItemstoreApiResource implements ItemstoreApi {
             log.warn("End-point called while disabled: itemstoreCopyFileToPost");
             return Response.status(Response.Status.FORBIDDEN).build();
         }
-        try {
-            var source = Paths.get(copyFileIntoRequestDto.getSource());
-            if (!source.isAbsolute()) {
-                log.warn("Source path must be absolute: {}", source);
-                return Response.status(BAD_REQUEST).entity("Source path must be absolute").build();
-            }
-            try (var is = new FileInputStream(copyFileIntoRequestDto.getSource())) {
-                layeredItemStore.writeFile(removeLeadingSlashes(copyFileIntoRequestDto.getDestination()), is);
-                log.debug("Copied file {} to item store at {}", copyFileIntoRequestDto.getSource(), copyFileIntoRequestDto.getDestination());
-            }
-            return Response.status(OK).build();
-        }
-        catch (IllegalStateException e) {
-            return Response.status(CONFLICT).build();
-        }
-        catch (IllegalArgumentException e) {
-            return Response.status(BAD_REQUEST).entity(e.getMessage()).build();
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
         }
-        catch (IOException e) {
-            log.error("Internal server error", e);
-            return Response.status(INTERNAL_SERVER_ERROR).build();
+        var source = Paths.get(copyFileIntoRequestDto.getSource());
+        if (!source.isAbsolute()) {
+            log.warn("Source path must be absolute: {}", source);
+            return Response.status(BAD_REQUEST).entity("Source path must be absolute").build();
         }
+        var destination = removeLeadingSlashes(copyFileIntoRequestDto.getDestination());
+        return OperationsApiResource.submit(operationRegistry, "copy-file-into", () -> {
+            try (var lock = lockItemPaths(List.of(destination)); var is = Files.newInputStream(source)) {
+                layeredItemStore.writeFile(destination, is);
+                log.debug("Copied file {} to item store at {}", source, destination);
+            }
+            return null;
+        }, result -> Response.status(OK).build());
     }
 
     @Override
@@ -120,28 +132,19 @@ public class ItemstoreApiResource implements ItemstoreApi {
             log.warn("End-point called while disabled: itemstoreCopyFileOutOfPost");
             return Response.status(Response.Status.FORBIDDEN).build();
         }
-        try {
-            var destination = Paths.get(copyFileOutOfRequestDto.getDestination());
-            if (!destination.isAbsolute()) {
-                log.warn("Destination path must be absolute: {}", destination);
-                return Response.status(BAD_REQUEST).entity("Destination path must be absolute").build();
-            }
-            try (var is = layeredItemStore.readFile(removeLeadingSlashes(copyFileOutOfRequestDto.getSource()))) {
+        var destination = Paths.get(copyFileOutOfRequestDto.getDestination());
+        if (!destination.isAbsolute()) {
+            log.warn("Destination path must be absolute: {}", destination);
+            return Response.status(BAD_REQUEST).entity("Destination path must be absolute").build();
+        }
+        var source = removeLeadingSlashes(copyFileOutOfRequestDto.getSource());
+        return OperationsApiResource.submit(operationRegistry, "copy-file-out-of", () -> {
+            try (var is = layeredItemStore.readFile(source)) {
                 Files.copy(is, destination);
-                log.debug("Copied file {} from item store to {}", copyFileOutOfRequestDto.getSource(), copyFileOutOfRequestDto.getDestination());
+                log.debug("Copied file {} from item store to {}", source, destination);
             }
-            return Response.status(OK).build();
-        }
-        catch (IllegalStateException e) {
-            return Response.status(CONFLICT).build();
-        }
-        catch (IllegalArgumentException e) {
-            return Response.status(BAD_REQUEST).entity(e.getMessage()).build();
-        }
-        catch (IOException e) {
-            log.error("Internal server error", e);
-            return Response.status(INTERNAL_SERVER_ERROR).build();
-        }
+            return null;
+        }, result -> Response.status(OK).build());
     }
 
     @Override
@@ -150,8 +153,12 @@ public class ItemstoreApiResource implements ItemstoreApi {
             log.debug("End-point called while disabled: itemstoreCreateDirectoryPost");
             return Response.status(Response.Status.FORBIDDEN).build();
         }
-        try {
-            layeredItemStore.createDirectories(removeLeadingSlashes(createDirectoryRequestDto.getPath()));
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
+        }
+        var path = removeLeadingSlashes(createDirectoryRequestDto.getPath());
+        try (var lock = lockItemPaths(List.of(path))) {
+            layeredItemStore.createDirectories(path);
             log.debug("Created directory in item store at {}", createDirectoryRequestDto.getPath());
             return Response.status(OK).build();
         }
@@ -173,8 +180,13 @@ public class ItemstoreApiResource implements ItemstoreApi {
             log.warn("End-point called while disabled: itemstoreDeleteDirectoryPost");
             return Response.status(Response.Status.FORBIDDEN).build();
         }
-        try {
-            layeredItemStore.deleteDirectory(removeLeadingSlashes(deleteDirectoryRequestDto.getPath()));
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
+        }
+        var path = removeLeadingSlashes(deleteDirectoryRequestDto.getPath());
+        try (var lock = lockItemPaths(List.of(path))) {
+            layeredItemStore.deleteDirectory(path);
+            forgetSharedContent(List.of(path));
             log.debug("Deleted directory from item store at {}", deleteDirectoryRequestDto.getPath());
             return Response.status(NO_CONTENT).build();
         }
@@ -196,8 +208,13 @@ public class ItemstoreApiResource implements ItemstoreApi {
             log.warn("End-point called while disabled: itemstoreDeleteFilesPost");
             return Response.status(Response.Status.FORBIDDEN).build();
         }
-        try {
-            layeredItemStore.deleteFiles(deleteFilesRequestDto.getPaths().stream().map(this::removeLeadingSlashes).toList());
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
+        }
+        var paths = deleteFilesRequestDto.getPaths().stream().map(this::removeLeadingSlashes).toList();
+        try (var lock = lockItemPaths(paths)) {
+            layeredItemStore.deleteFiles(paths);
+            forgetSharedContent(paths);
             log.debug("Deleted files from item store at {}", deleteFilesRequestDto.getPaths());
             return Response.status(NO_CONTENT).build();
         }
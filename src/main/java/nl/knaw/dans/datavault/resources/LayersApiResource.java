@@ -18,13 +18,15 @@ package nl.knaw.dans.datavault.resources;
 import io.dropwizard.hibernate.UnitOfWork;
 import lombok.AllArgsConstructor;
 import nl.knaw.dans.datavault.api.LayerStatusDto;
+import nl.knaw.dans.datavault.core.LayerOperations;
+import nl.knaw.dans.datavault.core.OperationRegistry;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
 import nl.knaw.dans.layerstore.LayeredItemStore;
 
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 
 import static javax.ws.rs.core.Response.Status.ACCEPTED;
-import static javax.ws.rs.core.Response.Status.CONFLICT;
 import static javax.ws.rs.core.Response.Status.CREATED;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
@@ -33,34 +35,35 @@ import static javax.ws.rs.core.Response.Status.OK;
 @AllArgsConstructor
 public class LayersApiResource implements LayersApi {
     private final LayeredItemStore layeredItemStore;
+    // Wrapped in a UnitOfWorkAwareProxy on app initialization, as the operations are executed outside the request thread
+    private final LayerOperations layerOperations;
+    private final OperationRegistry operationRegistry;
+    private final ServiceReadiness serviceReadiness;
 
     /*
-     * The @UnitOfWork annotation will do no good here, as the archiving process is off-loaded to a separate thread. The part that interacts with the database is the LayerConsistencyChecker which
-     * is wrapped in a UnitOfWorkAwareProxy on app initialization.
+     * Submitted as an operation, as the hard links of the layer are replaced with copies first if content deduplication is enabled, which can take minutes on a full layer. The archiving itself is
+     * off-loaded to a separate thread by the layer store.
      */
     @Override
     public Response layersIdArchivePost(Long layerId) {
-        try {
-            layeredItemStore.archiveLayer(layerId, false);
-            return Response.status(ACCEPTED).build();
-        }
-        catch (IllegalArgumentException e) {
-            return Response.status(NOT_FOUND).build();
-        }
-        catch (IllegalStateException e) {
-            return Response.status(CONFLICT).build();
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
         }
+        return OperationsApiResource.submit(operationRegistry, "archive-layer", () -> {
+            layerOperations.archiveLayer(layerId, false);
+            return null;
+        }, result -> Response.status(ACCEPTED).build());
     }
 
     @Override
     public Response layersIdClosePost(Long layerId) {
-        try {
-            layeredItemStore.closeLayer(layerId);
-            return Response.status(OK).build();
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
         }
+        return OperationsApiResource.submit(operationRegistry, "close-layer", () -> {
+            layerOperations.closeLayer(layerId);
+            return null;
+        }, result -> Response.status(OK).build());
     }
 
     @Override
@@ -82,17 +85,20 @@ public class LayersApiResource implements LayersApi {
 
     @Override
     public Response layersIdRearchivePost(Long layerId) {
-        try {
-            layeredItemStore.archiveLayer(layerId, true);
-            return Response.status(ACCEPTED).build();
-        }
-        catch (IllegalArgumentException e) {
-            return Response.status(Response.Status.NOT_FOUND).build();
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
         }
+        return OperationsApiResource.submit(operationRegistry, "rearchive-layer", () -> {
+            layerOperations.archiveLayer(layerId, true);
+            return null;
+        }, result -> Response.status(ACCEPTED).build());
     }
 
     @Override
     public Response layersIdReopenPost(Long layerId) {
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
+        }
         return null;
     }
 
@@ -108,15 +114,16 @@ public class LayersApiResource implements LayersApi {
         }
     }
 
+    /*
+     * The ID of the new layer is the result of the operation.
+     */
     @Override
-    @UnitOfWork
     public Response layersPost() {
-        try {
-            return Response.status(CREATED).entity(new LayerStatusDto().layerId(layeredItemStore.newTopLayer())).build();
-        }
-        catch (IOException e) {
-            return Response.status(INTERNAL_SERVER_ERROR).build();
+        if (!serviceReadiness.isReady()) {
+            return ReadinessResponses.notReady(serviceReadiness);
         }
+        return OperationsApiResource.submit(operationRegistry, "new-top-layer", layerOperations::newTopLayer,
+            layerId -> Response.status(CREATED).entity(new LayerStatusDto().layerId((Long) layerId)).build());
     }
 
     @Override
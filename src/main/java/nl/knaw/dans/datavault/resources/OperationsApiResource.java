@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavault.core.Operation;
+import nl.knaw.dans.datavault.core.OperationRegistry;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+/**
+ * Reports on the long-running operations that were accepted by the other end-points and are executed in the background.
+ */
+@Path("/operations")
+@Produces(MediaType.APPLICATION_JSON)
+@RequiredArgsConstructor
+public class OperationsApiResource {
+    private final OperationRegistry operationRegistry;
+
+    public record OperationStatus(
+        UUID id,
+        String type,
+        Operation.Status status,
+        OffsetDateTime created,
+        OffsetDateTime started,
+        OffsetDateTime finished,
+        Object result,
+        String message) {}
+
+    @GET
+    @Path("/{id}")
+    public Response operationsIdGet(@PathParam("id") UUID id) {
+        return operationRegistry.get(id)
+            .map(operation -> Response.ok(toStatus(operation)).build())
+            .orElseGet(() -> Response.status(Response.Status.NOT_FOUND).build());
+    }
+
+    /**
+     * Submits the work to the registry and waits for it to finish for the completion wait of the registry. If it finishes in time, the response is the one the end-point gave when the work
+     * was done in the request thread: the success response, 409 Conflict for an IllegalStateException, 400 Bad Request for an IllegalArgumentException and 500 Internal Server Error for
+     * other failures. Otherwise it is 202 Accepted with the status of the operation. If the queue of the registry is full, it is 503 Service Unavailable.
+     *
+     * @param operationRegistry the registry
+     * @param type              the type of the operation
+     * @param work              the work to do
+     * @param onSuccess         creates the success response from the result of the work
+     * @return the response
+     */
+    static Response submit(OperationRegistry operationRegistry, String type, OperationRegistry.Work work, Function<Object, Response> onSuccess) {
+        Operation operation;
+        try {
+            operation = operationRegistry.submit(type, work);
+        }
+        catch (RejectedExecutionException e) {
+            return Response.status(SERVICE_UNAVAILABLE).entity("No more operations accepted").build();
+        }
+        try {
+            var completionWait = operationRegistry.getCompletionWait();
+            if (!completionWait.isZero() && operation.awaitFinished(completionWait)) {
+                return toOutcome(operation, onSuccess);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Response.accepted(toStatus(operation)).location(URI.create("operations/" + operation.getId())).build();
+    }
+
+    private static Response toOutcome(Operation operation, Function<Object, Response> onSuccess) {
+        if (operation.getStatus() == Operation.Status.SUCCESS) {
+            return onSuccess.apply(operation.getResult());
+        }
+        var failure = operation.getFailure();
+        if (failure instanceof IllegalStateException) {
+            return Response.status(CONFLICT).build();
+        }
+        if (failure instanceof IllegalArgumentException) {
+            return Response.status(BAD_REQUEST).entity(failure.getMessage()).build();
+        }
+        return Response.status(INTERNAL_SERVER_ERROR).build();
+    }
+
+    private static OperationStatus toStatus(Operation operation) {
+        // Status first, so that the other fields are at least as recent
+        var status = operation.getStatus();
+        return new OperationStatus(
+            operation.getId(),
+            operation.getType(),
+            status,
+            operation.getCreated(),
+            operation.getStarted(),
+            operation.getFinished(),
+            operation.getResult(),
+            operation.getMessage());
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+
+import javax.ws.rs.core.Response;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+/**
+ * The response of the endpoints that change the vault while the service is read-only.
+ */
+final class ReadinessResponses {
+    private ReadinessResponses() {
+    }
+
+    static Response notReady(ServiceReadiness serviceReadiness) {
+        return Response.status(SERVICE_UNAVAILABLE).entity("Service is read-only: " + serviceReadiness.getMessage()).build();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.datavault.config.ImportConcurrencyConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveConcurrencyLimiterTest {
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void limit_should_increase_by_one_when_reached_during_window() throws Exception {
+        var limiter = createLimiter(1, 4, 2);
+
+        runWindow(limiter, 2, 100);
+
+        assertThat(limiter.getLimit()).isEqualTo(3);
+        assertThat(counter("increases")).isEqualTo(1);
+    }
+
+    @Test
+    public void limit_should_not_exceed_max_limit() throws Exception {
+        var limiter = createLimiter(1, 2, 2);
+
+        runWindow(limiter, 2, 100);
+        runWindow(limiter, 2, 100);
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    public void limit_should_be_kept_when_not_reached() throws Exception {
+        var limiter = createLimiter(1, 4, 4);
+
+        // One at a time, so the limit of 4 is never reached
+        for (int i = 0; i < 2; i++) {
+            limiter.acquire();
+            clock.addAndGet(ms(100));
+            limiter.release(ms(100));
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(4);
+        assertThat(counter("holds")).isEqualTo(1);
+    }
+
+    @Test
+    public void limit_should_back_off_when_throughput_drops() throws Exception {
+        var limiter = createLimiter(1, 8, 2);
+        runWindow(limiter, 2, 100); // 20 objects/s, limit reached, so increased to 3
+
+        runWindow(limiter, 2, 400); // 5 objects/s
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        assertThat(counter("decreases")).isEqualTo(1);
+    }
+
+    @Test
+    public void limit_should_back_off_when_latency_rises_without_more_throughput() throws Exception {
+        var limiter = createLimiter(1, 8, 2);
+        runWindow(limiter, 2, 100); // 20 objects/s, limit reached, so increased to 3
+
+        // Still 20 objects/s, but with four times the latency per object
+        limiter.acquire();
+        limiter.acquire();
+        clock.addAndGet(ms(100));
+        limiter.release(ms(400));
+        limiter.release(ms(400));
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        assertThat(counter("decreases")).isEqualTo(1);
+    }
+
+    @Test
+    public void acquire_should_block_while_limit_reached() throws Exception {
+        var limiter = createLimiter(1, 1, 1);
+        limiter.acquire();
+        var thread = new Thread(() -> {
+            try {
+                limiter.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join(200);
+        assertThat(thread.isAlive()).isTrue();
+
+        limiter.release(ms(100));
+        thread.join(5000);
+        assertThat(thread.isAlive()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    public void constructor_should_reject_min_limit_above_max_limit() {
+        assertThatThrownBy(() -> createLimiter(4, 2, 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private AdaptiveConcurrencyLimiter createLimiter(int minLimit, int maxLimit, int initialLimit) {
+        var config = new ImportConcurrencyConfig();
+        config.setMinLimit(minLimit);
+        config.setMaxLimit(maxLimit);
+        config.setInitialLimit(initialLimit);
+        config.setWindowSize(2);
+        return new AdaptiveConcurrencyLimiter(config, metrics, clock::get);
+    }
+
+    // Runs the objects at the same time, each taking the given number of milliseconds
+    private void runWindow(AdaptiveConcurrencyLimiter limiter, int objects, long millis) throws InterruptedException {
+        for (int i = 0; i < objects; i++) {
+            limiter.acquire();
+        }
+        clock.addAndGet(ms(millis));
+        for (int i = 0; i < objects; i++) {
+            limiter.release(ms(millis));
+        }
+    }
+
+    private long counter(String name) {
+        return metrics.counter(MetricRegistry.name(AdaptiveConcurrencyLimiter.class, name)).getCount();
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArchiveOffsetIndexTest extends AbstractTestFixture {
+    private static final Map<String, String> FILES = Map.of(
+        "object1/v1/content/file1.txt", "Hello, world!",
+        "object1/v2/content/file2.txt", "A somewhat longer file, to make sure that it ends up beyond the first block of the archive. ".repeat(20));
+
+    @Test
+    public void tar_entries_should_be_readable_through_the_index() throws Exception {
+        var archive = createTar("1.tar");
+
+        assertAllFilesReadable(ArchiveOffsetIndex.create(archive));
+    }
+
+    @Test
+    public void zip_entries_should_be_readable_through_the_index() throws Exception {
+        var archive = testDir.resolve("2.zip");
+        try (var out = new ZipArchiveOutputStream(archive)) {
+            for (var file : FILES.entrySet()) {
+                out.putArchiveEntry(new ZipArchiveEntry(file.getKey()));
+                out.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeArchiveEntry();
+            }
+        }
+
+        assertAllFilesReadable(ArchiveOffsetIndex.create(archive));
+    }
+
+    @Test
+    public void saved_index_should_be_loaded_from_sidecar() throws Exception {
+        var archive = createTar("3.tar");
+        ArchiveOffsetIndex.create(archive).save();
+
+        assertThat(ArchiveOffsetIndex.getSidecar(archive)).exists();
+        var loaded = ArchiveOffsetIndex.load(archive);
+        assertThat(loaded).isPresent();
+        assertAllFilesReadable(loaded.get());
+        assertThat(loaded.get().getEntry("object1/v1/content/file1.txt").get().sha256())
+            .isEqualTo(DigestUtils.sha256Hex("Hello, world!"));
+    }
+
+    @Test
+    public void load_should_ignore_index_of_modified_archive() throws Exception {
+        var archive = createTar("4.tar");
+        ArchiveOffsetIndex.create(archive).save();
+        Files.setLastModifiedTime(archive, FileTime.fromMillis(Files.getLastModifiedTime(archive).toMillis() + 10_000));
+
+        assertThat(ArchiveOffsetIndex.load(archive)).isEmpty();
+    }
+
+    @Test
+    public void load_should_return_empty_if_there_is_no_sidecar() throws Exception {
+        assertThat(ArchiveOffsetIndex.load(createTar("5.tar"))).isEmpty();
+    }
+
+    @Test
+    public void hasIndex_should_only_accept_index_of_current_archive() throws Exception {
+        var archive = createTar("6.tar");
+        assertThat(ArchiveOffsetIndex.hasIndex(archive)).isFalse();
+
+        ArchiveOffsetIndex.create(archive).save();
+        assertThat(ArchiveOffsetIndex.hasIndex(archive)).isTrue();
+
+        Files.setLastModifiedTime(archive, FileTime.fromMillis(Files.getLastModifiedTime(archive).toMillis() + 10_000));
+        assertThat(ArchiveOffsetIndex.hasIndex(archive)).isFalse();
+    }
+
+    @Test
+    public void indexer_should_index_remaining_archives_when_one_fails() throws Exception {
+        var archiveRoot = createSubdir("archive-root");
+        var goodArchive = Files.move(createTar("7.tar"), archiveRoot.resolve("7.tar"));
+        // The newest archive is handled first; its corrupt sidecar makes it fail
+        var badArchive = Files.move(createTar("8.tar"), archiveRoot.resolve("8.tar"));
+        Files.writeString(ArchiveOffsetIndex.getSidecar(badArchive), "not an index");
+        var anHourAgo = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        Files.setLastModifiedTime(goodArchive, anHourAgo);
+        Files.setLastModifiedTime(badArchive, anHourAgo);
+
+        new ArchiveOffsetIndexer(archiveRoot, null, Duration.ofMinutes(1)).indexNewArchives();
+
+        assertThat(ArchiveOffsetIndex.hasIndex(goodArchive)).isTrue();
+    }
+
+    @Test
+    public void hard_link_entries_should_be_left_out_of_the_index() throws Exception {
+        var archive = testDir.resolve("9.tar");
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(archive))) {
+            var bytes = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+            var entry = new TarArchiveEntry("object1/v1/content/file1.txt");
+            entry.setSize(bytes.length);
+            out.putArchiveEntry(entry);
+            out.write(bytes);
+            out.closeArchiveEntry();
+            var link = new TarArchiveEntry("object2/v1/content/file1.txt", TarArchiveEntry.LF_LINK);
+            link.setLinkName("object1/v1/content/file1.txt");
+            out.putArchiveEntry(link);
+            out.closeArchiveEntry();
+        }
+
+        var index = ArchiveOffsetIndex.create(archive);
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.getEntry("object2/v1/content/file1.txt")).isEmpty();
+    }
+
+    @Test
+    public void openEntry_should_fail_if_the_indexed_offset_is_wrong() throws Exception {
+        var archive = createTar("10.tar");
+        ArchiveOffsetIndex.create(archive).save();
+        // Point the entry at the start of the archive, i.e. at the header of the first entry
+        var sidecar = ArchiveOffsetIndex.getSidecar(archive);
+        var lines = Files.readAllLines(sidecar, StandardCharsets.UTF_8).stream()
+            .map(line -> line.endsWith("\tobject1/v1/content/file1.txt") ? "0" + line.substring(line.indexOf('\t')) : line)
+            .toList();
+        Files.write(sidecar, lines, StandardCharsets.UTF_8);
+        var index = ArchiveOffsetIndex.load(archive).orElseThrow();
+
+        try (var in = index.openEntry("object1/v1/content/file1.txt")) {
+            assertThatThrownBy(in::readAllBytes)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("does not match the offset index");
+        }
+    }
+
+    private Path createTar(String name) throws IOException {
+        var archive = testDir.resolve(name);
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(archive))) {
+            for (var file : FILES.entrySet()) {
+                var bytes = file.getValue().getBytes(StandardCharsets.UTF_8);
+                var entry = new TarArchiveEntry(file.getKey());
+                entry.setSize(bytes.length);
+                out.putArchiveEntry(entry);
+                out.write(bytes);
+                out.closeArchiveEntry();
+            }
+        }
+        return archive;
+    }
+
+    private void assertAllFilesReadable(ArchiveOffsetIndex index) throws IOException {
+        assertThat(index.size()).isEqualTo(FILES.size());
+        for (var file : FILES.entrySet()) {
+            try (var in = index.openEntry(file.getKey())) {
+                assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(file.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArchiveReadCacheTest extends AbstractTestFixture {
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Test
+    public void readFile_should_call_loader_only_on_first_read() throws Exception {
+        var cache = new ArchiveReadCache(testDir.resolve("cache"), 1024, 1, metrics);
+        var loads = new AtomicInteger();
+
+        assertThat(readString(cache, "a/file.txt", () -> load(loads, "content"))).isEqualTo("content");
+        assertThat(readString(cache, "a/file.txt", () -> load(loads, "other"))).isEqualTo("content");
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(metrics.counter(MetricRegistry.name(ArchiveReadCache.class, "hits")).getCount()).isEqualTo(1);
+        assertThat(metrics.counter(MetricRegistry.name(ArchiveReadCache.class, "misses")).getCount()).isEqualTo(1);
+        assertThat(metrics.timer(MetricRegistry.name(ArchiveReadCache.class, "extraction-time")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void readFile_should_evict_least_recently_used_entry_when_budget_exceeded() throws Exception {
+        var cache = new ArchiveReadCache(testDir.resolve("cache"), 10, 1, metrics);
+        var loads = new AtomicInteger();
+
+        readString(cache, "one", () -> load(loads, "1111"));
+        readString(cache, "two", () -> load(loads, "2222"));
+        readString(cache, "one", () -> load(loads, "1111")); // "two" is now least recently used
+        readString(cache, "three", () -> load(loads, "3333"));
+
+        assertThat(loads.get()).isEqualTo(3);
+        assertThat(cache.getCurrentSizeInBytes()).isEqualTo(8);
+        readString(cache, "one", () -> load(loads, "1111"));
+        assertThat(loads.get()).isEqualTo(3);
+        readString(cache, "two", () -> load(loads, "2222"));
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void readFile_should_share_one_extraction_between_concurrent_requests() throws Exception {
+        var cache = new ArchiveReadCache(testDir.resolve("cache"), 1024, 1, metrics);
+        var loads = new AtomicInteger();
+        var loaderStarted = new CountDownLatch(1);
+        var releaseLoader = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> readString(cache, "shared", () -> {
+                    loaderStarted.countDown();
+                    awaitQuietly(releaseLoader);
+                    return load(loads, "shared content");
+                })));
+            }
+            loaderStarted.await(5, TimeUnit.SECONDS);
+            releaseLoader.countDown();
+            for (var future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("shared content");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void readFile_should_not_cache_failed_extraction() throws Exception {
+        var cache = new ArchiveReadCache(testDir.resolve("cache"), 1024, 1, metrics);
+        var loads = new AtomicInteger();
+
+        assertThatThrownBy(() -> cache.readFile("missing", () -> {
+            throw new IOException("not found");
+        })).isInstanceOf(IOException.class).hasMessage("not found");
+        assertThat(readString(cache, "missing", () -> load(loads, "found after all"))).isEqualTo("found after all");
+    }
+
+    @Test
+    public void clear_should_remove_all_entries() throws Exception {
+        var cache = new ArchiveReadCache(testDir.resolve("cache"), 1024, 1, metrics);
+        var loads = new AtomicInteger();
+        readString(cache, "file", () -> load(loads, "content"));
+
+        cache.clear();
+
+        assertThat(cache.getCurrentSizeInBytes()).isZero();
+        readString(cache, "file", () -> load(loads, "content"));
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidate_should_only_remove_the_path_and_the_paths_under_it() throws Exception {
+        var cache = new ArchiveReadCache(testDir.resolve("cache"), 1024, 1, metrics);
+        var loads = new AtomicInteger();
+        readString(cache, "dir/file", () -> load(loads, "content"));
+        readString(cache, "dir/sub/file", () -> load(loads, "content"));
+        readString(cache, "dir2/file", () -> load(loads, "content"));
+
+        cache.invalidate("dir");
+
+        assertThat(cache.getCurrentSizeInBytes()).isEqualTo("content".length());
+        readString(cache, "dir2/file", () -> load(loads, "content"));
+        assertThat(loads.get()).isEqualTo(3);
+        readString(cache, "dir/file", () -> load(loads, "content"));
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    private String readString(ArchiveReadCache cache, String path, ArchiveReadCache.ContentLoader loader) throws IOException {
+        try (var in = cache.readFile(path, loader)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private InputStream load(AtomicInteger loads, String content) {
+        loads.incrementAndGet();
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.core.ChangeJournal.Entry;
+import nl.knaw.dans.datavault.core.ChangeJournal.Kind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChangeJournalTest extends AbstractTestFixture {
+    private ScheduledExecutorService scheduledExecutorService;
+    private Path journalDir;
+    private Path stagingRoot;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        journalDir = testDir.resolve("journal");
+        stagingRoot = createSubdir("staging");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduledExecutorService.shutdownNow();
+    }
+
+    private ChangeJournal startJournal() throws Exception {
+        var journal = new ChangeJournal(journalDir, stagingRoot, scheduledExecutorService, Duration.ofSeconds(1));
+        journal.start();
+        return journal;
+    }
+
+    private ChangeJournal restartCleanly(ChangeJournal journal) throws Exception {
+        journal.stop();
+        return startJournal();
+    }
+
+    @Test
+    public void readChangesSinceCheckpoint_should_return_changes_recorded_after_checkpoint() throws Exception {
+        var journal = restartCleanly(startJournal());
+        Files.createDirectories(stagingRoot.resolve("1/a"));
+        journal.checkpoint(1);
+        journal.record(1, List.of(new Entry(Kind.PATH, "a/b.txt"), new Entry(Kind.TREE, "c\nd")));
+        journal = restartCleanly(journal);
+
+        assertThat(journal.readChangesSinceCheckpoint(1)).get().asList().containsExactly(
+            new Entry(Kind.PATH, "a/b.txt"),
+            new Entry(Kind.TREE, "c\nd"));
+    }
+
+    @Test
+    public void readChangesSinceCheckpoint_should_trust_journal_of_layer_that_was_empty_when_first_changed() throws Exception {
+        var journal = restartCleanly(startJournal());
+        Files.createDirectories(stagingRoot.resolve("2"));
+        journal.record(2, List.of(new Entry(Kind.PATH, "x")));
+        journal = restartCleanly(journal);
+
+        assertThat(journal.readChangesSinceCheckpoint(2)).get().asList().containsExactly(new Entry(Kind.PATH, "x"));
+    }
+
+    @Test
+    public void readChangesSinceCheckpoint_should_not_trust_journal_of_layer_that_had_content_before_journaling() throws Exception {
+        var journal = restartCleanly(startJournal());
+        Files.createDirectories(stagingRoot.resolve("3/existing"));
+        journal.record(3, List.of(new Entry(Kind.PATH, "x")));
+        journal = restartCleanly(journal);
+
+        assertThat(journal.readChangesSinceCheckpoint(3)).isEmpty();
+    }
+
+    @Test
+    public void readChangesSinceCheckpoint_should_not_trust_journal_after_unclean_shutdown() throws Exception {
+        var journal = restartCleanly(startJournal());
+        journal.checkpoint(1);
+        journal.record(1, List.of(new Entry(Kind.PATH, "x")));
+        journal.sync();
+        // No stop(), as after a crash
+        journal = startJournal();
+
+        assertThat(journal.readChangesSinceCheckpoint(1)).isEmpty();
+    }
+
+    @Test
+    public void checkpoint_should_discard_recorded_changes() throws Exception {
+        var journal = restartCleanly(startJournal());
+        journal.checkpoint(1);
+        journal.record(1, List.of(new Entry(Kind.PATH, "x")));
+        journal.checkpoint(1);
+
+        assertThat(journal.readChangesSinceCheckpoint(1)).get().asList().isEmpty();
+    }
+
+    @Test
+    public void escape_should_round_trip_backslashes_and_newlines() {
+        var path = "a\\b\nc";
+
+        assertThat(ChangeJournal.unescape(ChangeJournal.escape(path))).isEqualTo(path);
+        assertThat(ChangeJournal.escape(path)).doesNotContain("\n");
+    }
+}
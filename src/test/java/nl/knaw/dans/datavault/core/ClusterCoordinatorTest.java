@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.db.ImportJobDao;
+import nl.knaw.dans.datavault.db.WriterLeaseDao;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class ClusterCoordinatorTest {
+    private final ImportJobDao importJobDao = Mockito.mock(ImportJobDao.class);
+    private final WriterLeaseDao writerLeaseDao = Mockito.mock(WriterLeaseDao.class);
+    private final ClusterCoordinator clusterCoordinator = new ClusterCoordinator("instance-1", Duration.ofMinutes(1), Duration.ofSeconds(10), importJobDao, writerLeaseDao,
+        Mockito.mock(ScheduledExecutorService.class));
+
+    @Test
+    public void heartbeat_should_renew_only_the_leases_of_the_jobs_claimed_by_this_instance() {
+        var kept = UUID.randomUUID();
+        var takenOver = UUID.randomUUID();
+        Mockito.when(writerLeaseDao.tryAcquire(ClusterCoordinator.LAYER_STORE_LEASE, "instance-1", Duration.ofMinutes(1))).thenReturn(true);
+        Mockito.when(importJobDao.renewLeases(eq("instance-1"), anyCollection(), eq(Duration.ofMinutes(1)))).thenReturn(List.of(kept));
+        clusterCoordinator.heartbeat();
+        clusterCoordinator.jobClaimed(kept, System.nanoTime());
+        clusterCoordinator.jobClaimed(takenOver, System.nanoTime());
+
+        clusterCoordinator.heartbeat();
+
+        Mockito.verify(importJobDao).renewLeases(eq("instance-1"), Mockito.argThat(jobIds -> jobIds.size() == 2 && jobIds.containsAll(List.of(kept, takenOver))),
+            eq(Duration.ofMinutes(1)));
+        assertThat(clusterCoordinator.holdsLease(kept)).isTrue();
+        assertThat(clusterCoordinator.holdsLease(takenOver)).isFalse();
+    }
+
+    @Test
+    public void holdsLease_should_be_false_for_good_once_the_lease_of_a_job_has_run_out() {
+        var job = UUID.randomUUID();
+        Mockito.when(writerLeaseDao.tryAcquire(ClusterCoordinator.LAYER_STORE_LEASE, "instance-1", Duration.ofMinutes(1))).thenReturn(true);
+        clusterCoordinator.heartbeat();
+        // Claimed longer ago than the lease minus one heartbeat interval, for instance because the heartbeats could not reach the database
+        clusterCoordinator.jobClaimed(job, System.nanoTime() - Duration.ofSeconds(51).toNanos());
+
+        assertThat(clusterCoordinator.holdsLease(job)).isFalse();
+        clusterCoordinator.heartbeat();
+
+        Mockito.verify(importJobDao, Mockito.never()).renewLeases(any(), anyCollection(), any());
+        assertThat(clusterCoordinator.holdsLease(job)).isFalse();
+    }
+
+    @Test
+    public void holdsLease_should_be_false_when_instance_is_not_the_writer() {
+        var job = UUID.randomUUID();
+        Mockito.when(writerLeaseDao.tryAcquire(ClusterCoordinator.LAYER_STORE_LEASE, "instance-1", Duration.ofMinutes(1))).thenReturn(false);
+        clusterCoordinator.jobClaimed(job, System.nanoTime());
+
+        clusterCoordinator.heartbeat();
+
+        assertThat(clusterCoordinator.isWriter()).isFalse();
+        assertThat(clusterCoordinator.holdsLease(job)).isFalse();
+        Mockito.verifyNoInteractions(importJobDao);
+    }
+}
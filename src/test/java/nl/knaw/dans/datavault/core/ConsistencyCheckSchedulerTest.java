@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.datavault.config.ConsistencyCheckScheduleConfig;
+import nl.knaw.dans.datavault.core.ConsistencyCheck.Type;
+import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConsistencyCheckSchedulerTest {
+
+    @Test
+    public void getLayersPerRun_should_cover_all_layers_within_coverage_period() {
+        var config = new ConsistencyCheckScheduleConfig();
+        config.setInterval(Duration.days(1));
+        config.setListingRecordsCoveragePeriod(Duration.days(30));
+        config.setMaxListingRecordsChecksPerRun(100);
+        var scheduler = new ConsistencyCheckScheduler(config, null, null, null, null);
+
+        assertThat(scheduler.getLayersPerRun(0)).isEqualTo(0);
+        assertThat(scheduler.getLayersPerRun(30)).isEqualTo(1);
+        assertThat(scheduler.getLayersPerRun(31)).isEqualTo(2);
+        assertThat(scheduler.getLayersPerRun(300)).isEqualTo(10);
+    }
+
+    @Test
+    public void getLayersPerRun_should_not_exceed_maximum() {
+        var config = new ConsistencyCheckScheduleConfig();
+        config.setMaxListingRecordsChecksPerRun(5);
+        var scheduler = new ConsistencyCheckScheduler(config, null, null, null, null);
+
+        assertThat(scheduler.getLayersPerRun(10_000)).isEqualTo(5);
+    }
+
+    @Test
+    public void getDelayUntilNextRun_should_wait_until_next_day_if_run_time_has_passed() {
+        var config = new ConsistencyCheckScheduleConfig();
+        config.setRunAt(LocalTime.of(2, 0));
+        var scheduler = new ConsistencyCheckScheduler(config, null, null, null, null);
+        var zone = ZoneId.of("UTC");
+
+        assertThat(scheduler.getDelayUntilNextRun(ZonedDateTime.of(2024, 5, 1, 1, 30, 0, 0, zone))).isEqualTo(java.time.Duration.ofMinutes(30));
+        assertThat(scheduler.getDelayUntilNextRun(ZonedDateTime.of(2024, 5, 1, 2, 0, 0, 0, zone))).isEqualTo(java.time.Duration.ofHours(24));
+    }
+
+    @Test
+    public void scheduleChecks_should_schedule_listing_records_checks_for_closed_layers_not_pending_least_recently_checked_first() throws Exception {
+        var config = new ConsistencyCheckScheduleConfig();
+        config.setLayerIds(false);
+        config.setInterval(Duration.days(1));
+        config.setListingRecordsCoveragePeriod(Duration.days(1));
+        var dao = Mockito.mock(ConsistencyCheckDao.class);
+        var layeredItemStore = Mockito.mock(LayeredItemStore.class);
+        // Outside the range of cached Long instances, so that the IDs are compared by value
+        when(layeredItemStore.getTopLayerId()).thenReturn(Long.valueOf(4000L));
+        when(layeredItemStore.listLayerIds()).thenReturn(List.of(Long.valueOf(1000L), Long.valueOf(2000L), Long.valueOf(3000L), Long.valueOf(4000L)));
+        var pending = new ConsistencyCheck();
+        pending.setLayerId(3000L);
+        when(dao.findUnfinishedByType(Type.LISTING_RECORDS)).thenReturn(List.of(pending));
+        var checkedBefore = new ConsistencyCheck();
+        checkedBefore.setLayerId(1000L);
+        checkedBefore.setFinished(OffsetDateTime.now().minusDays(2));
+        when(dao.findLatestFinishedByTypePerLayer(Type.LISTING_RECORDS)).thenReturn(Map.of(1000L, checkedBefore));
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setReady();
+        var scheduler = new ConsistencyCheckScheduler(config, dao, layeredItemStore, null, serviceReadiness);
+
+        scheduler.scheduleChecks();
+
+        var created = ArgumentCaptor.forClass(ConsistencyCheck.class);
+        verify(dao, times(2)).create(created.capture());
+        assertThat(created.getAllValues()).extracting(ConsistencyCheck::getLayerId).containsExactly(2000L, 1000L);
+        assertThat(created.getAllValues()).extracting(ConsistencyCheck::getType).containsOnly(Type.LISTING_RECORDS);
+    }
+
+    @Test
+    public void scheduleChecks_should_not_schedule_anything_while_service_is_not_ready() {
+        var config = new ConsistencyCheckScheduleConfig();
+        var dao = Mockito.mock(ConsistencyCheckDao.class);
+        var scheduler = new ConsistencyCheckScheduler(config, dao, Mockito.mock(LayeredItemStore.class), null, new ServiceReadiness());
+
+        scheduler.scheduleChecks();
+
+        Mockito.verifyNoInteractions(dao);
+    }
+}
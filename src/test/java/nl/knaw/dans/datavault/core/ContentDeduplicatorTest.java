@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.db.ContentDigestDao;
+import nl.knaw.dans.datavault.db.SharedContentDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class ContentDeduplicatorTest extends AbstractTestFixture {
+    private final DAOTestExtension db = DAOTestExtension.newBuilder()
+        .addEntityClass(ContentDigest.class)
+        .addEntityClass(SharedContent.class)
+        .build();
+
+    private SharedContentDao sharedContentDao;
+    private ContentDeduplicator contentDeduplicator;
+    private Path stagingRoot;
+    private Path layerDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        stagingRoot = testDir.resolve("staging");
+        layerDir = Files.createDirectories(stagingRoot.resolve("1"));
+        sharedContentDao = new SharedContentDao(db.getSessionFactory());
+        contentDeduplicator = new ContentDeduplicator(new ContentDigestDao(db.getSessionFactory()), sharedContentDao, stagingRoot);
+    }
+
+    @Test
+    public void deduplicate_should_hard_link_identical_content_of_different_objects() throws Exception {
+        // Given
+        var first = writeFile("o1/v1/content/data.bin", "shared content");
+        var second = writeFile("o2/v1/content/copy.bin", "shared content");
+        var other = writeFile("o2/v1/content/other.bin", "other content");
+
+        // When
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o1/v1/content/data.bin", "ABC")));
+        var saved = db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of(
+            "o2/v1/content/copy.bin", "abc",
+            "o2/v1/content/other.bin", "def")));
+
+        // Then
+        assertThat(saved).isEqualTo("shared content".length());
+        assertThat(Files.isSameFile(first, second)).isTrue();
+        assertThat(Files.isSameFile(first, other)).isFalse();
+        assertThat(second).hasContent("shared content");
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(null))).isEqualTo(1);
+        assertThat(db.inTransaction(() -> sharedContentDao.sumSize(1L))).isEqualTo("shared content".length());
+        assertThat(db.inTransaction(() -> sharedContentDao.sumSize(2L))).isZero();
+    }
+
+    @Test
+    public void deduplicate_should_let_file_take_the_place_of_deleted_stored_file() throws Exception {
+        // Given
+        var first = writeFile("o1/v1/content/data.bin", "shared content");
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o1/v1/content/data.bin", "abc")));
+        Files.delete(first);
+        var second = writeFile("o2/v1/content/copy.bin", "shared content");
+        var third = writeFile("o3/v1/content/copy.bin", "shared content");
+
+        // When
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o2/v1/content/copy.bin", "abc")));
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o3/v1/content/copy.bin", "abc")));
+
+        // Then
+        assertThat(Files.isSameFile(second, third)).isTrue();
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(null))).isEqualTo(1);
+    }
+
+    @Test
+    public void unshareLayer_should_replace_links_so_that_archived_layer_can_be_read_back() throws Exception {
+        // Given
+        var first = writeFile("o1/v1/content/data.bin", "shared content");
+        var second = writeFile("o2/v1/content/copy.bin", "shared content");
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o1/v1/content/data.bin", "abc")));
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o2/v1/content/copy.bin", "abc")));
+        assertThat(Files.isSameFile(first, second)).isTrue();
+        // A newer layer, so that layer 1 can be archived
+        Files.createDirectories(stagingRoot.resolve("2"));
+
+        // When
+        var copied = db.inTransaction(() -> contentDeduplicator.unshareLayer(1L));
+
+        // Then
+        assertThat(copied).isGreaterThan(0);
+        assertThat(Files.isSameFile(first, second)).isFalse();
+        assertThat(first).hasContent("shared content");
+        assertThat(second).hasContent("shared content");
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(1L))).isZero();
+        // GNU tar, as used for the TAR and DMFTAR archives, stores a hard link as an entry without content
+        var archive = testDir.resolve("1.tar");
+        assumeTrue(runTar(archive), "GNU tar is not available");
+        var index = ArchiveOffsetIndex.create(archive);
+        for (var path : List.of("o1/v1/content/data.bin", "o2/v1/content/copy.bin")) {
+            try (var in = index.openEntry(path)) {
+                assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("shared content");
+            }
+        }
+    }
+
+    @Test
+    public void unshareLayer_should_leave_top_layer_alone() throws Exception {
+        // Given
+        var first = writeFile("o1/v1/content/data.bin", "shared content");
+        var second = writeFile("o2/v1/content/copy.bin", "shared content");
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o1/v1/content/data.bin", "abc")));
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o2/v1/content/copy.bin", "abc")));
+
+        // When
+        var copied = db.inTransaction(() -> contentDeduplicator.unshareLayer(1L));
+
+        // Then
+        assertThat(copied).isZero();
+        assertThat(Files.isSameFile(first, second)).isTrue();
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(1L))).isEqualTo(1);
+    }
+
+    @Test
+    public void retireTopLayer_should_replace_links_of_top_layer_before_the_switch() throws Exception {
+        // Given
+        var first = writeFile("o1/v1/content/data.bin", "shared content");
+        var second = writeFile("o2/v1/content/copy.bin", "shared content");
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o1/v1/content/data.bin", "abc")));
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o2/v1/content/copy.bin", "abc")));
+        assertThat(Files.isSameFile(first, second)).isTrue();
+
+        // When
+        var newLayerId = db.inTransaction(() -> contentDeduplicator.retireTopLayer(() -> {
+            // The layer store may hand the old top layer to the archiver now
+            assertThat(Files.isSameFile(first, second)).isFalse();
+            Files.createDirectories(stagingRoot.resolve("2"));
+            return 2L;
+        }));
+
+        // Then
+        assertThat(newLayerId).isEqualTo(2L);
+        assertThat(first).hasContent("shared content");
+        assertThat(second).hasContent("shared content");
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(1L))).isZero();
+    }
+
+    @Test
+    public void forgetDeleted_should_forget_shared_content_under_deleted_paths_only() throws Exception {
+        // Given
+        writeFile("o1/v1/content/data.bin", "shared content");
+        writeFile("o2/v1/content/copy.bin", "shared content");
+        writeFile("o3/v1/content/copy.bin", "shared content");
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o1/v1/content/data.bin", "abc")));
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o2/v1/content/copy.bin", "abc")));
+        db.inTransaction(() -> contentDeduplicator.deduplicate("sha512", Map.of("o3/v1/content/copy.bin", "abc")));
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(null))).isEqualTo(2);
+
+        // When
+        // The underscore is not a wildcard, so this matches none of the paths
+        db.inTransaction(() -> contentDeduplicator.forgetDeleted(List.of("o_")));
+        db.inTransaction(() -> contentDeduplicator.forgetDeleted(List.of("o2")));
+
+        // Then
+        assertThat(db.inTransaction(() -> sharedContentDao.countFiles(null))).isEqualTo(1);
+        assertThat(db.inTransaction(() -> sharedContentDao.sumSize(null))).isEqualTo("shared content".length());
+    }
+
+    private boolean runTar(Path archive) throws Exception {
+        try {
+            var process = new ProcessBuilder("tar", "-cf", archive.toAbsolutePath().toString(), "-C", layerDir.toAbsolutePath().toString(), "o1", "o2")
+                .redirectErrorStream(true)
+                .start();
+            process.getInputStream().readAllBytes();
+            return process.waitFor() == 0;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Path writeFile(String path, String content) throws Exception {
+        var file = layerDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.config.StorageLayoutConfig;
+import nl.knaw.dans.datavault.db.WriterLeaseDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DatabaseObjectLockManagerTest {
+    private static final String OBJECT_ID = "urn:nbn:nl:ui:13-abc";
+    private static final String LEASE_NAME = "object:13-abc";
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(10);
+
+    private WriterLeaseDao writerLeaseDao;
+    private DatabaseObjectLockManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        writerLeaseDao = Mockito.mock(WriterLeaseDao.class);
+        manager = new DatabaseObjectLockManager(new StorageLayoutConfig(), 16, Duration.ofMillis(100), writerLeaseDao, "instance-1", LEASE_DURATION, Duration.ofSeconds(1),
+            Mockito.mock(ScheduledExecutorService.class));
+    }
+
+    @Test
+    public void lockObject_should_acquire_and_release_the_lease_of_the_object() {
+        when(writerLeaseDao.tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION)).thenReturn(true);
+
+        try (var lock = manager.lockObject(OBJECT_ID)) {
+            verify(writerLeaseDao).tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION);
+            verify(writerLeaseDao, never()).release(anyString(), anyString());
+            assertThatCode(() -> manager.checkObjectLocked(OBJECT_ID)).doesNotThrowAnyException();
+        }
+        verify(writerLeaseDao).release(LEASE_NAME, "instance-1");
+    }
+
+    @Test
+    public void lockObject_should_be_reentrant_and_release_the_lease_on_the_last_close() {
+        when(writerLeaseDao.tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION)).thenReturn(true);
+
+        try (var outer = manager.lockObject(OBJECT_ID)) {
+            try (var inner = manager.lockObject(OBJECT_ID)) {
+                verify(writerLeaseDao, times(1)).tryAcquire(anyString(), anyString(), any());
+            }
+            verify(writerLeaseDao, never()).release(anyString(), anyString());
+        }
+        verify(writerLeaseDao).release(LEASE_NAME, "instance-1");
+    }
+
+    @Test
+    public void lockObject_should_time_out_if_another_instance_holds_the_lease() {
+        when(writerLeaseDao.tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION)).thenReturn(false);
+
+        assertThatThrownBy(() -> manager.lockObject(OBJECT_ID))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("held by another instance");
+        assertThatThrownBy(() -> manager.checkObjectLocked(OBJECT_ID))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void checkObjectLocked_should_throw_if_the_lock_is_not_held() {
+        assertThatThrownBy(() -> manager.checkObjectLocked(OBJECT_ID))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("lost the lock on object 13-abc");
+    }
+
+    @Test
+    public void renewLeases_should_keep_the_lock_if_the_lease_is_renewed() {
+        when(writerLeaseDao.tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION)).thenReturn(true);
+
+        try (var lock = manager.lockObject(OBJECT_ID)) {
+            manager.renewLeases();
+
+            verify(writerLeaseDao, times(2)).tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION);
+            assertThatCode(() -> manager.checkObjectLocked(OBJECT_ID)).doesNotThrowAnyException();
+        }
+    }
+
+    @Test
+    public void renewLeases_should_mark_the_lock_as_lost_and_stop_renewing_it_if_the_renewal_fails() {
+        when(writerLeaseDao.tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION)).thenReturn(true, false, true);
+
+        try (var lock = manager.lockObject(OBJECT_ID)) {
+            manager.renewLeases();
+            assertThatThrownBy(() -> manager.checkObjectLocked(OBJECT_ID))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("the change is not committed");
+
+            // Another instance may have changed the object in the meantime, so the lease must not be taken back
+            manager.renewLeases();
+            verify(writerLeaseDao, times(2)).tryAcquire(LEASE_NAME, "instance-1", LEASE_DURATION);
+            assertThatThrownBy(() -> manager.checkObjectLocked(OBJECT_ID))
+                .isInstanceOf(IllegalStateException.class);
+        }
+        verify(writerLeaseDao).release(LEASE_NAME, "instance-1");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+public class DeferredInitChecksTest {
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        executorService = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void start_should_make_service_ready_when_checks_pass() throws Exception {
+        var ocflRepositoryProvider = Mockito.mock(OcflRepositoryProvider.class);
+        var serviceReadiness = new ServiceReadiness();
+
+        new DeferredInitChecks(List.of(ocflRepositoryProvider), serviceReadiness, executorService).start();
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        verify(ocflRepositoryProvider).performDeferredInitChecks();
+        assertThat(serviceReadiness.getState()).isEqualTo(ServiceReadiness.State.READY);
+    }
+
+    @Test
+    public void start_should_keep_service_read_only_when_checks_fail() throws Exception {
+        var ocflRepositoryProvider = Mockito.mock(OcflRepositoryProvider.class);
+        doThrow(new IllegalStateException("layer 42 is missing")).when(ocflRepositoryProvider).performDeferredInitChecks();
+        var serviceReadiness = new ServiceReadiness();
+
+        new DeferredInitChecks(List.of(ocflRepositoryProvider), serviceReadiness, executorService).start();
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(serviceReadiness.getState()).isEqualTo(ServiceReadiness.State.FAILED);
+        assertThat(serviceReadiness.getMessage()).isEqualTo("Init checks failed: layer 42 is missing");
+    }
+
+    @Test
+    public void service_should_not_be_ready_while_checks_are_running() throws Exception {
+        var ocflRepositoryProvider = Mockito.mock(OcflRepositoryProvider.class);
+        var checksStarted = new CountDownLatch(1);
+        var finishChecks = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            checksStarted.countDown();
+            finishChecks.await();
+            return null;
+        }).when(ocflRepositoryProvider).performDeferredInitChecks();
+        var serviceReadiness = new ServiceReadiness();
+
+        new DeferredInitChecks(List.of(ocflRepositoryProvider), serviceReadiness, executorService).start();
+        assertThat(checksStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(serviceReadiness.getState()).isEqualTo(ServiceReadiness.State.INITIALIZING);
+        finishChecks.countDown();
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(serviceReadiness.isReady()).isTrue();
+    }
+}
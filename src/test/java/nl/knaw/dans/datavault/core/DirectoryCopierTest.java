@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.db.DirectoryCopyDao;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class DirectoryCopierTest extends AbstractTestFixture {
+    public final DAOTestExtension daoTestRule = DAOTestExtension.newBuilder()
+        .addEntityClass(ImportJob.class)
+        .addEntityClass(DirectoryCopy.class)
+        .build();
+
+    private ItemStore itemStore;
+    private DirectoryCopyDao directoryCopyDao;
+    private ExecutorService executorService;
+    private DirectoryCopier directoryCopier;
+    private Path source;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        itemStore = Mockito.mock(ItemStore.class);
+        executorService = Executors.newFixedThreadPool(3);
+        directoryCopyDao = new DirectoryCopyDao(daoTestRule.getSessionFactory());
+        directoryCopier = createDirectoryCopier(null);
+        source = createSubdir("source");
+        Files.createDirectories(source.resolve("a/b"));
+        Files.writeString(source.resolve("file1.txt"), "1");
+        Files.writeString(source.resolve("a/file2.txt"), "2");
+        Files.writeString(source.resolve("a/b/file3.txt"), "3");
+        Files.writeString(source.resolve("a/b/file4.txt"), "4");
+        Files.writeString(source.resolve("a/b/file5.txt"), "5");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private DirectoryCopier createDirectoryCopier(ClusterCoordinator clusterCoordinator) {
+        return new DirectoryCopier(new UnitOfWorkAwareProxyFactory("hibernate", daoTestRule.getSessionFactory()), itemStore, itemStore, directoryCopyDao, executorService, 2,
+            clusterCoordinator);
+    }
+
+    private static Item directory(String path) {
+        return Item.builder().path(path).type(Item.Type.Directory).build();
+    }
+
+    @Test
+    public void copy_should_write_all_directories_and_files_into_destination() throws Exception {
+        directoryCopier.copy(source, "dest");
+
+        verify(itemStore).createDirectories("dest");
+        verify(itemStore).createDirectories("dest/a");
+        verify(itemStore).createDirectories("dest/a/b");
+        verify(itemStore).writeFile(eq("dest/file1.txt"), any(InputStream.class));
+        verify(itemStore).writeFile(eq("dest/a/file2.txt"), any(InputStream.class));
+        verify(itemStore).writeFile(eq("dest/a/b/file3.txt"), any(InputStream.class));
+        verify(itemStore).writeFile(eq("dest/a/b/file4.txt"), any(InputStream.class));
+        verify(itemStore).writeFile(eq("dest/a/b/file5.txt"), any(InputStream.class));
+        verify(itemStore, never()).deleteDirectory(anyString());
+        assertThat(directoryCopyDao.findAll()).isEmpty();
+    }
+
+    @Test
+    public void copy_should_remove_destination_if_a_file_cannot_be_written() throws Exception {
+        doThrow(new IOException("Disk full")).when(itemStore).writeFile(eq("dest/a/b/file4.txt"), any(InputStream.class));
+
+        assertThatThrownBy(() -> directoryCopier.copy(source, "dest"))
+            .isInstanceOf(IOException.class)
+            .hasMessage("Disk full");
+        verify(itemStore, times(1)).deleteDirectory("dest");
+        assertThat(directoryCopyDao.findAll()).isEmpty();
+    }
+
+    @Test
+    public void copy_should_refuse_existing_destination() throws Exception {
+        when(itemStore.listDirectory("")).thenReturn(List.of(directory("parent")));
+        when(itemStore.listDirectory("parent")).thenReturn(List.of(directory("parent/dest")));
+
+        assertThatThrownBy(() -> directoryCopier.copy(source, "parent/dest"))
+            .isInstanceOf(IllegalStateException.class);
+        verify(itemStore, never()).createDirectories(anyString());
+        verify(itemStore, never()).writeFile(anyString(), any(InputStream.class));
+        assertThat(directoryCopyDao.findAll()).isEmpty();
+    }
+
+    @Test
+    public void copy_should_not_treat_wildcards_in_destination_as_wildcards() throws Exception {
+        when(itemStore.listDirectory("")).thenReturn(List.of(directory("destX")));
+
+        directoryCopier.copy(source, "dest_");
+
+        verify(itemStore).createDirectories("dest_");
+    }
+
+    @Test
+    public void start_should_remove_destinations_of_interrupted_copies() throws Exception {
+        directoryCopyDao.create("interrupted");
+        directoryCopyDao.create("not-started");
+        when(itemStore.listDirectory("")).thenReturn(List.of(directory("interrupted")));
+
+        directoryCopier.start();
+
+        verify(itemStore).deleteDirectory("interrupted");
+        verify(itemStore, never()).deleteDirectory("not-started");
+        assertThat(directoryCopyDao.findAll()).isEmpty();
+    }
+
+    @Test
+    public void start_should_leave_interrupted_copies_to_writer() throws Exception {
+        var clusterCoordinator = Mockito.mock(ClusterCoordinator.class);
+        directoryCopier = createDirectoryCopier(clusterCoordinator);
+        directoryCopyDao.create("interrupted");
+        when(itemStore.listDirectory("")).thenReturn(List.of(directory("interrupted")));
+
+        directoryCopier.start();
+
+        verify(itemStore, never()).deleteDirectory(anyString());
+        assertThat(directoryCopyDao.findAll()).extracting(DirectoryCopy::getDestination).containsExactly("interrupted");
+
+        // Once this instance has become the writer, the first copy removes the leftovers first
+        directoryCopier.copy(source, "dest");
+
+        verify(itemStore).deleteDirectory("interrupted");
+        assertThat(directoryCopyDao.findAll()).isEmpty();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.core.FixityShardOperations.ObjectFiles;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FixityShardCheckTest extends AbstractTestFixture {
+    private final UUID shardId = UUID.randomUUID();
+    private final UUID consistencyCheckId = UUID.randomUUID();
+    private Path stagingRoot;
+    private FixityShardOperations operations;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        stagingRoot = Files.createDirectories(testDir.resolve("staging"));
+        operations = Mockito.mock(FixityShardOperations.class);
+    }
+
+    @Test
+    public void resumed_shard_should_continue_after_the_objects_already_checked() throws Exception {
+        var layerDir = Files.createDirectories(stagingRoot.resolve("1/b"));
+        Files.writeString(layerDir.resolve("file.txt"), "content");
+        when(operations.start(shardId)).thenReturn(createShard(1, "a", "b"));
+        when(operations.listFiles("b")).thenReturn(Optional.of(new ObjectFiles("sha512", Map.of("b/file.txt", DigestUtils.sha512Hex("content")))));
+
+        new FixityShardCheck(shardId, consistencyCheckId, null, operations, stagingRoot, new IoThrottle(0)).call();
+
+        verify(operations, never()).listFiles("a");
+        verify(operations).recordObject(shardId, 2, 1, 0, List.of());
+        verify(operations).finish(shardId);
+    }
+
+    @Test
+    public void interrupted_shard_should_be_left_unfinished() throws Exception {
+        var layerDir = Files.createDirectories(stagingRoot.resolve("1/a"));
+        Files.writeString(layerDir.resolve("file.txt"), "content");
+        when(operations.start(shardId)).thenReturn(createShard(0, "a"));
+        when(operations.listFiles("a")).thenReturn(Optional.of(new ObjectFiles("sha512", Map.of("a/file.txt", DigestUtils.sha512Hex("content")))));
+        var ioThrottle = Mockito.mock(IoThrottle.class);
+        Mockito.doThrow(new InterruptedIOException("shutting down")).when(ioThrottle).acquire(anyLong());
+
+        assertThatThrownBy(() -> new FixityShardCheck(shardId, consistencyCheckId, null, operations, stagingRoot, ioThrottle).call())
+            .isInstanceOf(InterruptedIOException.class);
+
+        verify(operations, never()).recordObject(eq(shardId), anyInt(), anyLong(), anyLong(), any());
+        verify(operations, never()).finish(shardId);
+        verify(operations, never()).fail(eq(shardId), any());
+    }
+
+    private ConsistencyCheckShard createShard(int objectsChecked, String... objectIds) {
+        var shard = new ConsistencyCheckShard(consistencyCheckId, objectIds[0]);
+        shard.setObjectIds(String.join("\n", objectIds));
+        shard.setObjectsChecked(objectsChecked);
+        return shard;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ImportArchiveTest extends AbstractTestFixture {
+
+    @Test
+    public void openObject_should_map_entries_of_tar_under_mount_point() throws Exception {
+        var files = new LinkedHashMap<String, String>();
+        files.put("v1.json", "{}");
+        files.put("v1/file1.txt", "file1");
+        files.put("./v1/sub/file2.txt", "file2");
+        files.put("v2/file3.txt", "file3");
+        var tar = createTar("o1.tar", files);
+
+        try (var archive = ImportArchive.openObject(tar)) {
+            var mountPoint = archive.getMountPoint();
+            assertThat(mountPoint).isEqualTo(testDir.resolve("o1"));
+            assertThat(archive.list(mountPoint)).containsExactly(mountPoint.resolve("v1"), mountPoint.resolve("v1.json"), mountPoint.resolve("v2"));
+            assertThat(archive.isDirectory(mountPoint.resolve("v1/sub"))).isTrue();
+            var content = archive.getVersionContent(mountPoint.resolve("v1"));
+            assertThat(content.listFiles()).containsExactly("file1.txt", "sub/file2.txt");
+            try (var in = content.openFile("sub/file2.txt")) {
+                assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("file2");
+            }
+        }
+    }
+
+    @Test
+    public void openBatch_should_reject_entry_that_points_outside_of_archive() throws Exception {
+        var tar = createTar("batch.tar", Map.of("o1/v1/../../../escaped.txt", "evil"));
+
+        assertThatThrownBy(() -> ImportArchive.openBatch(tar))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("points outside of the archive");
+    }
+
+    @Test
+    public void openBatch_should_reject_symbolic_link() throws Exception {
+        var tar = testDir.resolve("batch.tar");
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            var entry = new TarArchiveEntry("o1/v1/link.txt", TarArchiveEntry.LF_SYMLINK);
+            entry.setLinkName("/etc/passwd");
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+        }
+
+        assertThatThrownBy(() -> ImportArchive.openBatch(tar))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Unsupported entry type");
+    }
+
+    @Test
+    public void openBatch_should_reject_hard_link() throws Exception {
+        var tar = testDir.resolve("batch.tar");
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            writeFile(out, "o1/v1/file1.txt", "file1");
+            var entry = new TarArchiveEntry("o1/v1/link.txt", TarArchiveEntry.LF_LINK);
+            entry.setLinkName("o1/v1/file1.txt");
+            out.putArchiveEntry(entry);
+            out.closeArchiveEntry();
+        }
+
+        assertThatThrownBy(() -> ImportArchive.openBatch(tar))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Unsupported entry type");
+    }
+
+    @Test
+    public void openBatch_should_reject_duplicate_entry() throws Exception {
+        var tar = testDir.resolve("batch.tar");
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            writeFile(out, "o1/v1/file1.txt", "file1");
+            writeFile(out, "o1/v1/./file1.txt", "other");
+        }
+
+        assertThatThrownBy(() -> ImportArchive.openBatch(tar))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Duplicate entry");
+    }
+
+    @Test
+    public void openBatch_should_reject_file_that_is_also_a_directory() throws Exception {
+        var tar = testDir.resolve("batch.tar");
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            writeFile(out, "o1/v1", "not a directory");
+            writeFile(out, "o1/v1/file1.txt", "file1");
+        }
+
+        assertThatThrownBy(() -> ImportArchive.openBatch(tar))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Duplicate entry");
+    }
+
+    @Test
+    public void openBatch_should_let_objects_read_tar_entries_concurrently() throws Exception {
+        // Large enough that the reads of the objects interleave
+        var files = new LinkedHashMap<String, String>();
+        for (var i = 0; i < 8; i++) {
+            files.put("o" + i + "/v1/file.txt", String.valueOf((char) ('a' + i)).repeat(1024 * 1024));
+        }
+        var tar = createTar("batch.tar", files);
+        var executor = Executors.newFixedThreadPool(8);
+
+        try (var archive = ImportArchive.openBatch(tar)) {
+            var futures = new ArrayList<Future<String>>();
+            for (var i = 0; i < 8; i++) {
+                var content = archive.getVersionContent(archive.getMountPoint().resolve("o" + i + "/v1"));
+                futures.add(executor.submit(() -> {
+                    try (var in = content.openFile("file.txt")) {
+                        var bytes = new ByteArrayOutputStream();
+                        var buffer = new byte[512];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            bytes.write(buffer, 0, read);
+                        }
+                        return bytes.toString(StandardCharsets.UTF_8);
+                    }
+                }));
+            }
+            for (var i = 0; i < 8; i++) {
+                assertThat(futures.get(i).get(30, TimeUnit.SECONDS)).isEqualTo(files.get("o" + i + "/v1/file.txt"));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Path createTar(String name, Map<String, String> files) throws IOException {
+        var tar = testDir.resolve(name);
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            for (var file : files.entrySet()) {
+                writeFile(out, file.getKey(), file.getValue());
+            }
+        }
+        return tar;
+    }
+
+    private static void writeFile(TarArchiveOutputStream out, String name, String content) throws IOException {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        var entry = new TarArchiveEntry(name);
+        entry.setSize(bytes.length);
+        out.putArchiveEntry(entry);
+        out.write(bytes);
+        out.closeArchiveEntry();
+    }
+}
@@ -19,15 +19,22 @@ import nl.knaw.dans.datavault.db.ImportJobDao;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static nl.knaw.dans.lib.util.TestUtils.assertDirectoriesEqual;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 
@@ -69,8 +76,8 @@ public class ImportJobTaskTest extends AbstractTestFixture {
         task.run();
 
         // Then
-        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")));
-        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(simpleObject.resolve("v2")));
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")), any(VersionInfoJsonReader.class));
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(simpleObject.resolve("v2")), any(VersionInfoJsonReader.class));
         assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.SUCCESS);
         assertDirectoriesEqual(getTestInput("simple-object"), outbox.resolve("processed/simple-object"));
     }
@@ -108,9 +115,9 @@ public class ImportJobTaskTest extends AbstractTestFixture {
         task.run();
 
         // Then
-        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")));
-        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(1), eq(multiVersionObject.resolve("v1")));
-        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(multiVersionObject.resolve("v2")));
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")), any(VersionInfoJsonReader.class));
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(1), eq(multiVersionObject.resolve("v1")), any(VersionInfoJsonReader.class));
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(multiVersionObject.resolve("v2")), any(VersionInfoJsonReader.class));
         assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.SUCCESS);
         assertDirectoriesEqual(getTestInput("simple-object"), outbox.resolve("processed/simple-object"));
         assertDirectoriesEqual(getTestInput("multi-version-object"), outbox.resolve("processed/multi-version-object"));
@@ -178,7 +185,7 @@ public class ImportJobTaskTest extends AbstractTestFixture {
         // Make the second version of the multi-version-object fail
         doThrow(new RuntimeException("Failed to add version"))
             .when(repositoryProvider)
-            .addVersion(eq("multi-version-object"), eq(2), eq(multiVersionObject.resolve("v2")));
+            .addVersion(eq("multi-version-object"), eq(2), eq(multiVersionObject.resolve("v2")), any(VersionInfoJsonReader.class));
 
         // When
         var task = new ImportJobTask(
@@ -304,7 +311,7 @@ public class ImportJobTaskTest extends AbstractTestFixture {
         // Make the second version of the multi-version-object fail
         doThrow(new RuntimeException("Failed to add version"))
             .when(repositoryProvider)
-            .addVersion(eq("multi-version-object"), eq(2), eq(multiVersionObject.resolve("v2")));
+            .addVersion(eq("multi-version-object"), eq(2), eq(multiVersionObject.resolve("v2")), any(VersionInfoJsonReader.class));
 
         // When
         var task = new ImportJobTask(
@@ -421,4 +428,301 @@ public class ImportJobTaskTest extends AbstractTestFixture {
             .contains("Unknown property in version info JSON file: key");
         assertThat(outbox.resolve("failed/urn:nbn:nl:ui:13-invalid-json-object")).doesNotExist();
     }
+
+    @Test
+    public void run_should_stream_versions_from_batch_zip_without_unpacking() throws Exception {
+        // Given
+        var simpleObject = getTestInput("simple-object");
+        var batchZip = testDir.resolve("batch1.zip");
+        writeZip(batchZip, simpleObject, "simple-object/");
+        var outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox);
+
+        var id = UUID.randomUUID();
+        var importJob = new ImportJob();
+        importJob.setId(id);
+        importJob.setPath(batchZip.toString());
+        importJob.setSingleObject(false);
+        importJob.setStatus(ImportJob.Status.PENDING);
+
+        var importBatchDao = Mockito.mock(ImportJobDao.class);
+        Mockito.when(importBatchDao.get(id)).thenReturn(importJob);
+        var filesByVersion = new ConcurrentHashMap<Integer, List<String>>();
+        Mockito.doAnswer(invocation -> {
+            VersionContent content = invocation.getArgument(2);
+            for (var file : content.listFiles()) {
+                try (var in = content.openFile(file)) {
+                    assertThat(in.readAllBytes()).isEqualTo(Files.readAllBytes(simpleObject.resolve("v" + invocation.getArgument(1)).resolve(file)));
+                }
+            }
+            filesByVersion.put(invocation.getArgument(1), content.listFiles());
+            return null;
+        }).when(repositoryProvider).addVersion(eq("simple-object"), Mockito.anyInt(), any(VersionContent.class), any(VersionInfoJsonReader.class));
+
+        // When
+        var task = new ImportJobTask(
+            id,
+            batchZip,
+            outbox,
+            importBatchDao,
+            executorService,
+            repositoryProvider,
+            Pattern.compile(".+"),
+            layerThresholdHandler,
+            false
+        );
+        task.run();
+
+        // Then
+        assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.SUCCESS);
+        assertThat(filesByVersion.get(1)).containsExactlyInAnyOrder("file1.txt", "file2.txt");
+        assertThat(filesByVersion.get(2)).containsExactlyInAnyOrder("file1.txt", "file3.txt");
+        assertThat(batchZip).doesNotExist();
+        assertThat(outbox.resolve("processed/batch1.zip")).isRegularFile();
+    }
+
+    @Test
+    public void run_should_reject_batch_zip_with_invalid_layout_before_adding_versions() throws Exception {
+        // Given
+        var batchZip = testDir.resolve("batch1.zip");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(batchZip))) {
+            zip.putNextEntry(new ZipEntry("simple-object/v1/file1.txt"));
+            zip.write("content".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        var outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox);
+
+        var id = UUID.randomUUID();
+        var importJob = new ImportJob();
+        importJob.setId(id);
+        importJob.setPath(batchZip.toString());
+        importJob.setSingleObject(false);
+        importJob.setStatus(ImportJob.Status.PENDING);
+
+        var importBatchDao = Mockito.mock(ImportJobDao.class);
+        Mockito.when(importBatchDao.get(id)).thenReturn(importJob);
+
+        // When
+        var task = new ImportJobTask(
+            id,
+            batchZip,
+            outbox,
+            importBatchDao,
+            executorService,
+            repositoryProvider,
+            Pattern.compile(".+"),
+            layerThresholdHandler,
+            false
+        );
+        task.run();
+
+        // Then
+        assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.FAILED);
+        assertThat(importJob.getMessage()).contains("missing version info JSON file");
+        Mockito.verifyNoInteractions(repositoryProvider);
+        assertThat(batchZip).isRegularFile();
+    }
+
+
+    @Test
+    public void run_should_yield_remaining_objects_to_job_with_higher_priority() throws Exception {
+        // Given
+        var simpleObject = copyToTestDir("simple-object", "batch-preempted");
+        var multiVersionObject = copyToTestDir("multi-version-object", "batch-preempted");
+        var outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox);
+
+        var id = UUID.randomUUID();
+        var importJob = new ImportJob();
+        importJob.setId(id);
+        importJob.setPath(simpleObject.getParent().toString());
+        importJob.setSingleObject(false);
+        importJob.setStatus(ImportJob.Status.PENDING);
+
+        var importBatchDao = Mockito.mock(ImportJobDao.class);
+        Mockito.when(importBatchDao.get(id)).thenReturn(importJob);
+        // A job with a higher priority arrives while the first object is being imported
+        Mockito.when(importBatchDao.existsPendingWithPriorityAbove(0)).thenReturn(false, true);
+
+        // When
+        var singleWorker = Executors.newSingleThreadExecutor();
+        var task = new ImportJobTask(
+            id,
+            simpleObject.getParent(),
+            outbox,
+            importBatchDao,
+            singleWorker,
+            repositoryProvider,
+            Pattern.compile(".+"),
+            layerThresholdHandler,
+            false,
+            null,
+            null,
+            Duration.ZERO
+        );
+        task.run();
+        singleWorker.shutdown();
+
+        // Then
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(multiVersionObject.resolve("v2")), any(VersionInfoJsonReader.class));
+        Mockito.verify(repositoryProvider, Mockito.never()).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")), any(VersionInfoJsonReader.class));
+        assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.PENDING);
+        assertThat(importJob.getFinished()).isNull();
+        assertThat(importJob.getMessage()).contains("after 1 of 2 objects");
+        assertThat(simpleObject).exists();
+        assertDirectoriesEqual(getTestInput("multi-version-object"), outbox.resolve("processed/multi-version-object"));
+    }
+
+    @Test
+    public void run_should_finish_objects_in_progress_and_record_remaining_objects_when_cancelled() throws Exception {
+        // Given
+        var simpleObject = copyToTestDir("simple-object", "batch-cancelled");
+        var multiVersionObject = copyToTestDir("multi-version-object", "batch-cancelled");
+        var outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox);
+
+        var id = UUID.randomUUID();
+        var importJob = new ImportJob();
+        importJob.setId(id);
+        importJob.setPath(simpleObject.getParent().toString());
+        importJob.setSingleObject(false);
+        importJob.setStatus(ImportJob.Status.PENDING);
+
+        var importBatchDao = Mockito.mock(ImportJobDao.class);
+        Mockito.when(importBatchDao.get(id)).thenReturn(importJob);
+        // The job is cancelled while the first object is being imported
+        Mockito.when(importBatchDao.findStopRequest(id)).thenReturn(null, ImportJob.StopRequest.CANCEL);
+
+        // When
+        var singleWorker = Executors.newSingleThreadExecutor();
+        var task = new ImportJobTask(
+            id,
+            simpleObject.getParent(),
+            outbox,
+            importBatchDao,
+            singleWorker,
+            repositoryProvider,
+            Pattern.compile(".+"),
+            layerThresholdHandler,
+            false
+        );
+        task.run();
+        singleWorker.shutdown();
+
+        // Then
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(multiVersionObject.resolve("v2")), any(VersionInfoJsonReader.class));
+        Mockito.verify(repositoryProvider, Mockito.never()).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")), any(VersionInfoJsonReader.class));
+        assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.FAILED);
+        assertThat(importJob.getFinished()).isNotNull();
+        assertThat(importJob.getMessage()).startsWith("Cancelled after 1 of 2 objects");
+        assertThat(simpleObject).exists();
+        assertThat(Files.readAllLines(outbox.resolve("import-job-" + id + "-objects.txt"))).containsExactly("multi-version-object\tSUCCESS", "simple-object\tNOT_STARTED");
+    }
+
+    @Test
+    public void run_should_look_up_stop_requests_at_most_once_per_check_interval() throws Exception {
+        // Given
+        var simpleObject = copyToTestDir("simple-object", "batch-stop-request-interval");
+        copyToTestDir("multi-version-object", "batch-stop-request-interval");
+        var outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox);
+
+        var id = UUID.randomUUID();
+        var importJob = new ImportJob();
+        importJob.setId(id);
+        importJob.setPath(simpleObject.getParent().toString());
+        importJob.setSingleObject(false);
+        importJob.setStatus(ImportJob.Status.PENDING);
+
+        var importBatchDao = Mockito.mock(ImportJobDao.class);
+        Mockito.when(importBatchDao.get(id)).thenReturn(importJob);
+
+        // When
+        var singleWorker = Executors.newSingleThreadExecutor();
+        var task = new ImportJobTask(
+            id,
+            simpleObject.getParent(),
+            outbox,
+            importBatchDao,
+            singleWorker,
+            repositoryProvider,
+            Pattern.compile(".+"),
+            layerThresholdHandler,
+            false,
+            null,
+            null,
+            null,
+            null,
+            Duration.ofHours(1)
+        );
+        task.run();
+        singleWorker.shutdown();
+
+        // Then
+        Mockito.verify(importBatchDao, Mockito.times(1)).findStopRequest(id);
+        assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.SUCCESS);
+    }
+
+    @Test
+    public void run_should_stop_starting_objects_and_leave_job_unchanged_when_lease_is_lost() throws Exception {
+        // Given
+        var simpleObject = copyToTestDir("simple-object", "batch-lease-lost");
+        var multiVersionObject = copyToTestDir("multi-version-object", "batch-lease-lost");
+        var outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox);
+
+        var id = UUID.randomUUID();
+        var importJob = new ImportJob();
+        importJob.setId(id);
+        importJob.setPath(simpleObject.getParent().toString());
+        importJob.setSingleObject(false);
+        importJob.setStatus(ImportJob.Status.RUNNING);
+
+        var importBatchDao = Mockito.mock(ImportJobDao.class);
+        Mockito.when(importBatchDao.get(id)).thenReturn(importJob);
+        // Another instance takes the job over while the first object is being imported
+        var clusterCoordinator = Mockito.mock(ClusterCoordinator.class);
+        Mockito.when(clusterCoordinator.holdsLease(id)).thenReturn(true, false);
+
+        // When
+        var singleWorker = Executors.newSingleThreadExecutor();
+        var task = new ImportJobTask(
+            id,
+            simpleObject.getParent(),
+            outbox,
+            importBatchDao,
+            singleWorker,
+            repositoryProvider,
+            Pattern.compile(".+"),
+            layerThresholdHandler,
+            false,
+            null,
+            null,
+            null,
+            clusterCoordinator
+        );
+        task.run();
+        singleWorker.shutdown();
+
+        // Then
+        Mockito.verify(repositoryProvider).addVersion(Mockito.anyString(), eq(2), eq(multiVersionObject.resolve("v2")), any(VersionInfoJsonReader.class));
+        Mockito.verify(repositoryProvider, Mockito.never()).addVersion(Mockito.anyString(), eq(1), eq(simpleObject.resolve("v1")), any(VersionInfoJsonReader.class));
+        Mockito.verify(importBatchDao, Mockito.never()).update(any());
+        Mockito.verify(importBatchDao).detach(importJob);
+        Mockito.verify(clusterCoordinator).jobEnded(id);
+        assertThat(importJob.getStatus()).isEqualTo(ImportJob.Status.RUNNING);
+        assertThat(importJob.getFinished()).isNull();
+        assertThat(simpleObject).exists();
+    }
+
+    private static void writeZip(Path zipFile, Path sourceDir, String prefix) throws Exception {
+        try (var zip = new ZipOutputStream(Files.newOutputStream(zipFile)); var files = Files.walk(sourceDir)) {
+            for (var file : files.filter(Files::isRegularFile).toList()) {
+                zip.putNextEntry(new ZipEntry(prefix + sourceDir.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        }
+    }
 }
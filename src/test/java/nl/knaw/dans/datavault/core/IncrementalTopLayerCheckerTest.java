@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.core.ChangeJournal.Entry;
+import nl.knaw.dans.datavault.core.ChangeJournal.Kind;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.LayerConsistencyChecker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IncrementalTopLayerCheckerTest extends AbstractTestFixture {
+    private ChangeJournal changeJournal;
+    private ItemRecordDao itemRecordDao;
+    private LayerConsistencyChecker layerConsistencyChecker;
+    private Path stagingRoot;
+    private IncrementalTopLayerChecker checker;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        changeJournal = Mockito.mock(ChangeJournal.class);
+        itemRecordDao = Mockito.mock(ItemRecordDao.class);
+        layerConsistencyChecker = Mockito.mock(LayerConsistencyChecker.class);
+        stagingRoot = createSubdir("staging");
+        checker = new IncrementalTopLayerChecker(changeJournal, itemRecordDao, stagingRoot, layerConsistencyChecker);
+    }
+
+    @Test
+    public void check_should_perform_full_check_if_journal_is_not_trusted() throws Exception {
+        when(changeJournal.readChangesSinceCheckpoint(1)).thenReturn(Optional.empty());
+
+        checker.check(1);
+
+        verify(layerConsistencyChecker).check(1);
+        verify(changeJournal).checkpoint(1);
+    }
+
+    @Test
+    public void check_should_only_compare_journaled_paths() throws Exception {
+        Files.createDirectories(stagingRoot.resolve("1/a"));
+        Files.writeString(stagingRoot.resolve("1/a/b.txt"), "content");
+        when(changeJournal.readChangesSinceCheckpoint(1)).thenReturn(Optional.of(Set.of(new Entry(Kind.PATH, "a"), new Entry(Kind.PATH, "a/b.txt"))));
+        when(itemRecordDao.findType(1, "a")).thenReturn(Optional.of(Item.Type.Directory));
+        when(itemRecordDao.findType(1, "a/b.txt")).thenReturn(Optional.of(Item.Type.File));
+
+        checker.check(1);
+
+        verify(layerConsistencyChecker, never()).check(anyLong());
+        verify(changeJournal).checkpoint(1);
+    }
+
+    @Test
+    public void check_should_fail_without_checkpoint_if_tree_does_not_match_records() throws Exception {
+        Files.createDirectories(stagingRoot.resolve("1/d"));
+        Files.writeString(stagingRoot.resolve("1/d/x.txt"), "content");
+        when(changeJournal.readChangesSinceCheckpoint(1)).thenReturn(Optional.of(Set.of(new Entry(Kind.TREE, "d"))));
+        doAnswer(invocation -> {
+            BiConsumer<String, Item.Type> consumer = invocation.getArgument(2);
+            consumer.accept("d", Item.Type.Directory);
+            consumer.accept("d/y.txt", Item.Type.File);
+            return 2L;
+        }).when(itemRecordDao).forEachInSubtree(eq(1L), eq("d"), any());
+
+        assertThatThrownBy(() -> checker.check(1))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("2 mismatches")
+            .hasMessageContaining("d/x.txt: File on storage, absent in database")
+            .hasMessageContaining("d/y.txt: absent on storage, File in database");
+        verify(changeJournal, never()).checkpoint(anyLong());
+    }
+
+    @Test
+    public void check_should_accept_inventory_records_without_file_in_storage_like_the_full_check() throws Exception {
+        Files.createDirectories(stagingRoot.resolve("1/o/v1"));
+        when(changeJournal.readChangesSinceCheckpoint(1)).thenReturn(Optional.of(Set.of(new Entry(Kind.PATH, "o/inventory.json"), new Entry(Kind.TREE, "o/v1"))));
+        when(itemRecordDao.findType(1, "o/inventory.json")).thenReturn(Optional.of(Item.Type.File));
+        doAnswer(invocation -> {
+            BiConsumer<String, Item.Type> consumer = invocation.getArgument(2);
+            consumer.accept("o/v1", Item.Type.Directory);
+            consumer.accept("o/v1/inventory.json.sha512", Item.Type.File);
+            return 2L;
+        }).when(itemRecordDao).forEachInSubtree(eq(1L), eq("o/v1"), any());
+
+        checker.check(1);
+
+        verify(layerConsistencyChecker, never()).check(anyLong());
+        verify(changeJournal).checkpoint(1);
+    }
+
+    @Test
+    public void markVerified_should_write_checkpoint_without_checking() throws Exception {
+        checker.markVerified(1);
+
+        verify(changeJournal).checkpoint(1);
+        verify(changeJournal, never()).readChangesSinceCheckpoint(anyLong());
+        verify(layerConsistencyChecker, never()).check(anyLong());
+    }
+}
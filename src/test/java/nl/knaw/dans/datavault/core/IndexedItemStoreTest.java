@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.layerstore.Item;
+import nl.knaw.dans.layerstore.ItemStore;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexedItemStoreTest {
+    private ItemStore delegate;
+    private LayeredItemStore layeredItemStore;
+    private ItemPathIndex itemPathIndex;
+    private ItemPathIndexLoader itemPathIndexLoader;
+    private Transaction transaction;
+    private IndexedItemStore itemStore;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = Mockito.mock(ItemStore.class);
+        layeredItemStore = Mockito.mock(LayeredItemStore.class);
+        when(layeredItemStore.getTopLayerId()).thenReturn(1L);
+        itemPathIndex = new ItemPathIndex();
+        var rebuild = itemPathIndex.beginRebuild();
+        rebuild.add(1, "", Item.Type.Directory);
+        rebuild.add(1, "a", Item.Type.Directory);
+        rebuild.add(1, "a/old.txt", Item.Type.File);
+        itemPathIndex.finishRebuild(rebuild);
+        itemPathIndexLoader = Mockito.mock(ItemPathIndexLoader.class);
+        var sessionFactory = Mockito.mock(SessionFactory.class);
+        var session = Mockito.mock(Session.class);
+        transaction = Mockito.mock(Transaction.class);
+        when(sessionFactory.getCurrentSession()).thenReturn(session);
+        when(session.getTransaction()).thenReturn(transaction);
+        itemStore = new IndexedItemStore(delegate, layeredItemStore, itemPathIndex, itemPathIndexLoader, Mockito.mock(ItemRecordDao.class), sessionFactory);
+    }
+
+    private Synchronization getSynchronization() {
+        var synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        verify(transaction).registerSynchronization(synchronization.capture());
+        return synchronization.getValue();
+    }
+
+    @Test
+    public void writeFile_should_apply_change_to_index_only_after_commit() throws Exception {
+        itemStore.writeFile("a/new.txt", new ByteArrayInputStream(new byte[0]));
+
+        assertThat(itemPathIndex.exists("a/new.txt")).isFalse();
+        getSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+
+        assertThat(itemPathIndex.exists("a/new.txt")).isTrue();
+        assertThat(itemStore.existsPathLike("a/new.txt")).isTrue();
+        verify(delegate, never()).existsPathLike(anyString());
+    }
+
+    @Test
+    public void writeFile_should_leave_index_unchanged_if_transaction_is_rolled_back() throws Exception {
+        itemStore.writeFile("a/new.txt", new ByteArrayInputStream(new byte[0]));
+
+        getSynchronization().afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        assertThat(itemPathIndex.exists("a/new.txt")).isFalse();
+        assertThat(itemPathIndex.isReady()).isTrue();
+        verify(itemPathIndexLoader, never()).requestRebuild();
+    }
+
+    @Test
+    public void lookups_of_paths_changed_in_uncommitted_transaction_should_go_to_database() throws Exception {
+        when(delegate.existsPathLike("a/new.txt")).thenReturn(true);
+        itemStore.writeFile("a/new.txt", new ByteArrayInputStream(new byte[0]));
+
+        assertThat(itemStore.existsPathLike("a/new.txt")).isTrue();
+        itemStore.listDirectory("a");
+        // Not changed, so still answered by the index
+        assertThat(itemStore.existsPathLike("b/other.txt")).isFalse();
+
+        verify(delegate).existsPathLike("a/new.txt");
+        verify(delegate).listDirectory("a");
+        verify(delegate, never()).existsPathLike("b/other.txt");
+    }
+
+    @Test
+    public void changes_in_one_transaction_should_register_one_synchronization() throws Exception {
+        itemStore.writeFile("a/new1.txt", new ByteArrayInputStream(new byte[0]));
+        itemStore.deleteFiles(List.of("a/old.txt"));
+
+        getSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(transaction, times(1)).registerSynchronization(Mockito.any());
+        assertThat(itemPathIndex.exists("a/new1.txt")).isTrue();
+        assertThat(itemPathIndex.exists("a/old.txt")).isFalse();
+    }
+
+    @Test
+    public void existsPathLike_should_pass_patterns_with_wildcards_to_database() {
+        itemStore.existsPathLike("a/old%");
+        itemStore.existsPathLike("a/old_txt");
+
+        verify(delegate).existsPathLike("a/old%");
+        verify(delegate).existsPathLike("a/old_txt");
+    }
+
+    @Test
+    public void change_during_which_top_layer_changed_should_request_rebuild() throws Exception {
+        when(layeredItemStore.getTopLayerId()).thenReturn(1L, 2L);
+
+        itemStore.createDirectories("a/b");
+
+        verify(itemPathIndexLoader).requestRebuild();
+    }
+}
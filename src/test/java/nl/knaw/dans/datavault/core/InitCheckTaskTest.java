@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.db.InitCheckResultDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class InitCheckTaskTest {
+    public final DAOTestExtension daoTestRule = DAOTestExtension.newBuilder()
+        .addEntityClass(InitCheckResult.class)
+        .build();
+
+    private InitCheckResultDao dao;
+    private final AtomicInteger performed = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        dao = new InitCheckResultDao(daoTestRule.getSessionFactory());
+    }
+
+    @Test
+    public void call_should_skip_check_if_fingerprint_unchanged_since_last_success() throws Exception {
+        var check = new InitCheck("check", () -> "fingerprint-1", performed::incrementAndGet);
+
+        assertThat(daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, true).call())).isTrue();
+        assertThat(daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, true).call())).isFalse();
+        assertThat(performed).hasValue(1);
+    }
+
+    @Test
+    public void call_should_perform_check_if_fingerprint_changed() throws Exception {
+        daoTestRule.inTransaction(() -> new InitCheckTask(new InitCheck("check", () -> "fingerprint-1", performed::incrementAndGet), dao, true).call());
+
+        assertThat(daoTestRule.inTransaction(() -> new InitCheckTask(new InitCheck("check", () -> "fingerprint-2", performed::incrementAndGet), dao, true).call())).isTrue();
+        assertThat(performed).hasValue(2);
+        assertThat(daoTestRule.inTransaction(() -> dao.find("check"))).get().extracting(InitCheckResult::getFingerprint).isEqualTo("fingerprint-2");
+    }
+
+    @Test
+    public void call_should_not_record_failed_check() {
+        var check = new InitCheck("check", () -> "fingerprint-1", () -> {
+            throw new IllegalStateException("inconsistent");
+        });
+
+        assertThatThrownBy(() -> daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, true).call())).hasMessageContaining("inconsistent");
+        assertThat(daoTestRule.inTransaction(() -> dao.find("check"))).isEmpty();
+    }
+
+    @Test
+    public void call_should_perform_check_if_skipping_disabled() throws Exception {
+        var check = new InitCheck("check", () -> "fingerprint-1", performed::incrementAndGet);
+
+        daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, false).call());
+        daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, false).call());
+        assertThat(performed).hasValue(2);
+    }
+
+    @Test
+    public void call_should_perform_on_skipped_action_if_check_is_skipped() throws Exception {
+        var skipped = new AtomicInteger();
+        var check = new InitCheck("check", () -> "fingerprint-1", performed::incrementAndGet, skipped::incrementAndGet);
+
+        daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, true).call());
+        assertThat(skipped).hasValue(0);
+        daoTestRule.inTransaction(() -> new InitCheckTask(check, dao, true).call());
+        assertThat(performed).hasValue(1);
+        assertThat(skipped).hasValue(1);
+    }
+}
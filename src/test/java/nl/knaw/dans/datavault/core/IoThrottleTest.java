@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IoThrottleTest {
+
+    @Test
+    public void acquire_should_limit_combined_rate() throws Exception {
+        var throttle = new IoThrottle(1024 * 1024);
+        var start = System.nanoTime();
+
+        throttle.acquire(512 * 1024); // within budget, no wait
+        throttle.acquire(512 * 1024); // waits until the first half second is used up
+        throttle.acquire(1);
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(950);
+    }
+
+    @Test
+    public void acquire_should_not_wait_when_unlimited() throws Exception {
+        var throttle = new IoThrottle(0);
+        var start = System.nanoTime();
+
+        throttle.acquire(Integer.MAX_VALUE);
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(100);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.core.ItemPathIndex.Change;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.layerstore.Item;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+public class ItemPathIndexLoaderTest {
+
+    private static void answerRecords(ItemRecordDao itemRecordDao, long layerId, Map<String, Item.Type> records) {
+        doAnswer(invocation -> {
+            BiConsumer<String, Item.Type> consumer = invocation.getArgument(1);
+            records.forEach(consumer);
+            return (long) records.size();
+        }).when(itemRecordDao).forEachInLayer(eq(layerId), any());
+    }
+
+    @Test
+    public void rebuild_should_fill_index_from_all_layers() {
+        var itemRecordDao = Mockito.mock(ItemRecordDao.class);
+        when(itemRecordDao.listLayerIds()).thenReturn(List.of(1L, 2L));
+        answerRecords(itemRecordDao, 1L, Map.of("", Item.Type.Directory, "a", Item.Type.Directory, "a/file1.txt", Item.Type.File));
+        answerRecords(itemRecordDao, 2L, Map.of("", Item.Type.Directory, "a", Item.Type.Directory, "a/file2.txt", Item.Type.File));
+        var index = new ItemPathIndex();
+
+        new ItemPathIndexLoader(index, itemRecordDao, null).rebuild();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.existsInLayer(1, "a/file1.txt")).isTrue();
+        assertThat(index.existsInLayer(2, "a/file2.txt")).isTrue();
+    }
+
+    @Test
+    public void rebuild_should_replay_changes_committed_while_it_was_reading() {
+        var itemRecordDao = Mockito.mock(ItemRecordDao.class);
+        var index = new ItemPathIndex();
+        when(itemRecordDao.listLayerIds()).thenReturn(List.of(1L));
+        doAnswer(invocation -> {
+            // A change that is committed after the rebuild has read the records of the layer
+            index.apply(new Change(1, "a/new.txt", false, Map.of("a/new.txt", Item.Type.File)));
+            return 0L;
+        }).when(itemRecordDao).forEachInLayer(eq(1L), any());
+
+        new ItemPathIndexLoader(index, itemRecordDao, null).rebuild();
+
+        assertThat(index.exists("a/new.txt")).isTrue();
+    }
+
+    @Test
+    public void rebuild_should_leave_index_not_ready_if_reading_fails() {
+        var itemRecordDao = Mockito.mock(ItemRecordDao.class);
+        when(itemRecordDao.listLayerIds()).thenThrow(new IllegalStateException("database down"));
+        var index = new ItemPathIndex();
+
+        assertThatThrownBy(() -> new ItemPathIndexLoader(index, itemRecordDao, null).rebuild()).hasMessage("database down");
+        assertThat(index.isReady()).isFalse();
+    }
+
+    @Test
+    public void requestRebuild_should_invalidate_index_and_rebuild_in_background() throws Exception {
+        var itemRecordDao = Mockito.mock(ItemRecordDao.class);
+        when(itemRecordDao.listLayerIds()).thenReturn(List.of(1L));
+        answerRecords(itemRecordDao, 1L, Map.of("", Item.Type.Directory, "a.txt", Item.Type.File));
+        var index = new ItemPathIndex();
+        index.finishRebuild(index.beginRebuild());
+        var executorService = Executors.newSingleThreadExecutor();
+
+        new ItemPathIndexLoader(index, itemRecordDao, executorService).requestRebuild();
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.exists("a.txt")).isTrue();
+    }
+}
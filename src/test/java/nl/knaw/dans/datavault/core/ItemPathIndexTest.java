@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.core.ItemPathIndex.Change;
+import nl.knaw.dans.layerstore.Item;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ItemPathIndexTest {
+
+    private ItemPathIndex createIndex() {
+        var index = new ItemPathIndex();
+        var rebuild = index.beginRebuild();
+        rebuild.add(1, "", Item.Type.Directory);
+        rebuild.add(1, "a", Item.Type.Directory);
+        rebuild.add(1, "a/b", Item.Type.Directory);
+        rebuild.add(1, "a/b/file1.txt", Item.Type.File);
+        rebuild.add(1, "a-c", Item.Type.File);
+        rebuild.add(2, "", Item.Type.Directory);
+        rebuild.add(2, "a", Item.Type.Directory);
+        rebuild.add(2, "a/file2.txt", Item.Type.File);
+        index.finishRebuild(rebuild);
+        return index;
+    }
+
+    private static List<String> paths(List<Item> items) {
+        return items.stream().map(Item::getPath).toList();
+    }
+
+    @Test
+    public void exists_should_find_paths_in_any_layer() {
+        var index = createIndex();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.exists("a/b/file1.txt")).isTrue();
+        assertThat(index.exists("a/file2.txt")).isTrue();
+        assertThat(index.exists("a/b/file3.txt")).isFalse();
+        assertThat(index.existsInLayer(2, "a/b")).isFalse();
+    }
+
+    @Test
+    public void listDirectory_should_return_direct_children_from_all_layers() {
+        var index = createIndex();
+
+        assertThat(index.listDirectory("a")).hasValueSatisfying(items -> assertThat(paths(items)).containsExactly("a/b", "a/file2.txt"));
+        assertThat(index.listDirectory("")).hasValueSatisfying(items -> assertThat(paths(items)).containsExactly("a", "a-c"));
+    }
+
+    @Test
+    public void listDirectory_should_return_empty_for_files_and_unknown_paths() {
+        var index = createIndex();
+
+        assertThat(index.listDirectory("a-c")).isEmpty();
+        assertThat(index.listDirectory("x")).isEmpty();
+    }
+
+    @Test
+    public void listRecursive_should_not_include_siblings_with_the_same_prefix() {
+        var index = createIndex();
+
+        assertThat(index.listRecursive("a")).hasValueSatisfying(items -> assertThat(paths(items)).containsExactly("a/b", "a/b/file1.txt", "a/file2.txt"));
+    }
+
+    @Test
+    public void apply_should_replace_the_records_of_one_layer_only() {
+        var index = createIndex();
+
+        index.apply(new Change(2, "a", true, Map.of("a", Item.Type.Directory, "a/file3.txt", Item.Type.File)));
+
+        assertThat(index.exists("a/file2.txt")).isFalse();
+        assertThat(index.exists("a/file3.txt")).isTrue();
+        // Layer 1 still has a record for "a" and everything under it
+        assertThat(index.exists("a/b/file1.txt")).isTrue();
+        assertThat(index.existsInLayer(1, "a")).isTrue();
+    }
+
+    @Test
+    public void apply_should_remove_paths_without_records() {
+        var index = createIndex();
+
+        index.apply(new Change(2, "a/file2.txt", false, Map.of()));
+
+        assertThat(index.exists("a/file2.txt")).isFalse();
+        assertThat(index.exists("a")).isTrue();
+    }
+
+    @Test
+    public void apply_should_remove_a_deleted_subtree_from_listings() {
+        var index = createIndex();
+
+        index.apply(new Change(1, "a/b", true, Map.of()));
+
+        assertThat(index.listDirectory("a")).hasValueSatisfying(items -> assertThat(paths(items)).containsExactly("a/file2.txt"));
+        assertThat(index.exists("a/b/file1.txt")).isFalse();
+        assertThat(index.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void listDirectory_should_use_the_type_of_the_newest_layer() {
+        var index = createIndex();
+
+        index.apply(new Change(2, "a-c", false, Map.of("a-c", Item.Type.Directory)));
+
+        assertThat(index.listDirectory("a-c")).hasValueSatisfying(items -> assertThat(items).isEmpty());
+    }
+
+    @Test
+    public void finishRebuild_should_replay_changes_made_during_the_rebuild() {
+        var index = createIndex();
+        var rebuild = index.beginRebuild();
+        rebuild.add(1, "a", Item.Type.Directory);
+
+        index.apply(new Change(1, "a/new.txt", false, Map.of("a/new.txt", Item.Type.File)));
+        index.finishRebuild(rebuild);
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.exists("a/new.txt")).isTrue();
+        assertThat(index.exists("a/b/file1.txt")).isFalse();
+    }
+
+    @Test
+    public void finishRebuild_should_leave_index_not_ready_if_invalidated_during_the_rebuild() {
+        var index = createIndex();
+        var rebuild = index.beginRebuild();
+
+        index.invalidate();
+        index.finishRebuild(rebuild);
+
+        assertThat(index.isReady()).isFalse();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.core.ChangeJournal.Entry;
+import nl.knaw.dans.datavault.core.ChangeJournal.Kind;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JournalingItemStoreTest {
+    private LayeredItemStore delegate;
+    private ChangeJournal changeJournal;
+    private JournalingItemStore itemStore;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        delegate = Mockito.mock(LayeredItemStore.class);
+        changeJournal = Mockito.mock(ChangeJournal.class);
+        when(delegate.getTopLayerId()).thenReturn(1L);
+        itemStore = new JournalingItemStore(delegate, changeJournal);
+    }
+
+    @Test
+    public void writeFile_should_journal_path_and_parents_before_writing() throws Exception {
+        var content = new ByteArrayInputStream(new byte[0]);
+
+        itemStore.writeFile("a/b/c.txt", content);
+
+        var inOrder = inOrder(changeJournal, delegate);
+        inOrder.verify(changeJournal).record(1, List.of(new Entry(Kind.PATH, "a"), new Entry(Kind.PATH, "a/b"), new Entry(Kind.PATH, "a/b/c.txt")));
+        inOrder.verify(delegate).writeFile("a/b/c.txt", content);
+    }
+
+    @Test
+    public void deleteDirectory_should_journal_tree() throws Exception {
+        itemStore.deleteDirectory("a/b");
+
+        verify(changeJournal).record(1, List.of(new Entry(Kind.TREE, "a/b")));
+        verify(delegate).deleteDirectory("a/b");
+    }
+
+    @Test
+    public void moveDirectoryInternal_should_journal_source_and_destination_trees() throws Exception {
+        itemStore.moveDirectoryInternal("a/src", "b/dst");
+
+        verify(changeJournal).record(1, List.of(new Entry(Kind.PATH, "b"), new Entry(Kind.TREE, "b/dst"), new Entry(Kind.TREE, "a/src")));
+    }
+
+    @Test
+    public void change_should_also_be_journaled_in_new_top_layer_created_while_it_was_made() throws Exception {
+        when(delegate.getTopLayerId()).thenReturn(1L, 2L);
+
+        itemStore.createDirectories("a/b");
+
+        var entries = List.of(new Entry(Kind.PATH, "a"), new Entry(Kind.PATH, "a/b"));
+        verify(changeJournal).record(1, entries);
+        verify(changeJournal).record(2, entries);
+    }
+
+    @Test
+    public void change_should_not_be_made_if_journal_cannot_be_written() throws Exception {
+        doThrow(new IOException("disk full")).when(changeJournal).record(anyLong(), any());
+
+        assertThatThrownBy(() -> itemStore.deleteFiles(List.of("a.txt"))).hasMessage("disk full");
+        verify(delegate, never()).deleteFiles(any());
+        verify(changeJournal, times(1)).record(eq(1L), any());
+    }
+}
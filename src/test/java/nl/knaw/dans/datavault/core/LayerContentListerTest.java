@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.layerstore.Item;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LayerContentListerTest extends AbstractTestFixture {
+    private Path stagingRoot;
+    private Path archiveRoot;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        stagingRoot = Files.createDirectories(testDir.resolve("staging"));
+        archiveRoot = Files.createDirectories(testDir.resolve("archive"));
+    }
+
+    @Test
+    public void staged_layer_should_be_split_into_top_level_directories_and_root_files() throws Exception {
+        var layerDir = stagingRoot.resolve("1");
+        Files.createDirectories(layerDir.resolve("abc/def"));
+        Files.createDirectories(layerDir.resolve("xyz"));
+        Files.writeString(layerDir.resolve("abc/def/file.txt"), "content");
+        Files.writeString(layerDir.resolve("0=ocfl_1.1"), "ocfl_1.1");
+        var lister = new LayerContentLister(stagingRoot, archiveRoot, 1);
+
+        assertThat(lister.canList(1)).isTrue();
+        assertThat(lister.listShardPrefixes(1)).containsExactly(ConsistencyCheckShard.SHALLOW_ITEMS, "abc", "xyz");
+        assertThat(lister.listShard(1, "abc")).isEqualTo(Map.of(
+            "abc", Item.Type.Directory,
+            "abc/def", Item.Type.Directory,
+            "abc/def/file.txt", Item.Type.File));
+        assertThat(lister.listShard(1, ConsistencyCheckShard.SHALLOW_ITEMS)).isEqualTo(Map.of("0=ocfl_1.1", Item.Type.File));
+    }
+
+    @Test
+    public void archived_layer_should_be_split_including_implied_directories() throws Exception {
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(archiveRoot.resolve("2.tar")))) {
+            for (var path : new String[] { "0=ocfl_1.1", "abc/def/file.txt" }) {
+                var bytes = path.getBytes(StandardCharsets.UTF_8);
+                var entry = new TarArchiveEntry(path);
+                entry.setSize(bytes.length);
+                out.putArchiveEntry(entry);
+                out.write(bytes);
+                out.closeArchiveEntry();
+            }
+        }
+        var lister = new LayerContentLister(stagingRoot, archiveRoot, 1);
+
+        assertThat(lister.canList(2)).isTrue();
+        assertThat(lister.listShardPrefixes(2)).containsExactly(ConsistencyCheckShard.SHALLOW_ITEMS, "abc");
+        assertThat(lister.listShard(2, "abc")).isEqualTo(Map.of(
+            "abc", Item.Type.Directory,
+            "abc/def", Item.Type.Directory,
+            "abc/def/file.txt", Item.Type.File));
+    }
+
+    @Test
+    public void objects_sharing_the_first_tuple_should_be_split_at_the_shard_depth() throws Exception {
+        var layerDir = stagingRoot.resolve("4");
+        Files.createDirectories(layerDir.resolve("13-/abc/urn:nbn:nl:ui:13-abc"));
+        Files.createDirectories(layerDir.resolve("13-/xyz/urn:nbn:nl:ui:13-xyz"));
+        Files.writeString(layerDir.resolve("13-/abc/urn:nbn:nl:ui:13-abc/0=ocfl_object_1.1"), "ocfl_object_1.1");
+        Files.writeString(layerDir.resolve("0=ocfl_1.1"), "ocfl_1.1");
+        var lister = new LayerContentLister(stagingRoot, archiveRoot, 2);
+
+        assertThat(lister.listShardPrefixes(4)).containsExactly(ConsistencyCheckShard.SHALLOW_ITEMS, "13-/abc", "13-/xyz");
+        assertThat(lister.listShard(4, ConsistencyCheckShard.SHALLOW_ITEMS)).isEqualTo(Map.of(
+            "0=ocfl_1.1", Item.Type.File,
+            "13-", Item.Type.Directory));
+        assertThat(lister.listShard(4, "13-/abc")).isEqualTo(Map.of(
+            "13-/abc", Item.Type.Directory,
+            "13-/abc/urn:nbn:nl:ui:13-abc", Item.Type.Directory,
+            "13-/abc/urn:nbn:nl:ui:13-abc/0=ocfl_object_1.1", Item.Type.File));
+    }
+
+    @Test
+    public void layer_without_local_storage_cannot_be_listed() {
+        assertThat(new LayerContentLister(stagingRoot, null, 1).canList(3)).isFalse();
+    }
+}
@@ -20,6 +20,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.nio.file.Files;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static nl.knaw.dans.lib.util.TestUtils.assertDirectoriesEqual;
@@ -71,6 +72,28 @@ public class ObjectCreateOrUpdateTaskTest extends AbstractTestFixture {
         assertThat(task.getStatus()).isEqualTo(ObjectCreateOrUpdateTask.Status.SUCCESS);
     }
 
+    @Test
+    public void version_info_read_during_validation_should_be_passed_on() throws Exception {
+        String objectName = "multi-version-object";
+        var multiVersionObject = copyToTestDir(objectName);
+        var v1Info = new VersionInfoJsonReader(multiVersionObject.resolve("v1.json"));
+        var task = new ObjectCreateOrUpdateTask(multiVersionObject, testDir.resolve("out"), repositoryProvider, Map.of("v1", v1Info));
+        task.run();
+        Mockito.verify(repositoryProvider).addVersion(
+            objectName,
+            1,
+            multiVersionObject.resolve("v1"),
+            v1Info
+        );
+        // Not read before, so read when the version is added
+        Mockito.verify(repositoryProvider).addVersion(
+            objectName,
+            2,
+            multiVersionObject.resolve("v2")
+        );
+        assertThat(task.getStatus()).isEqualTo(ObjectCreateOrUpdateTask.Status.SUCCESS);
+    }
+
     @Test
     public void invalid_version_directories_because_of_non_number_version_should_fail() throws Exception {
         // Note that this will NOT result in a failure if there is only one version, because then the comparison will not be made. However, the layout is
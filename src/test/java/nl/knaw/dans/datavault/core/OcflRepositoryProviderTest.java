@@ -18,20 +18,26 @@ package nl.knaw.dans.datavault.core;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.testing.junit5.DAOTestExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.api.OcflFileDetailsDto;
 import nl.knaw.dans.datavault.config.InitChecksConfig;
 import nl.knaw.dans.datavault.config.RootExtensionsInitChecksConfig;
 import nl.knaw.dans.layerstore.ItemRecord;
+import nl.knaw.dans.layerstore.LayerConsistencyChecker;
 import nl.knaw.dans.layerstore.LayerDatabase;
 import nl.knaw.dans.layerstore.LayerDatabaseImpl;
 import nl.knaw.dans.layerstore.LayeredItemStore;
 import nl.knaw.dans.layerstore.ZipArchiveProvider;
 import nl.knaw.dans.lib.ocflext.StoreInventoryDbBackedContentManager;
 import nl.knaw.dans.lib.util.PersistenceProviderImpl;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -219,6 +225,144 @@ public class OcflRepositoryProviderTest extends AbstractTestFixture {
         assertThat(objectVersionProperties.get("v2")).containsEntry("packaging-format", "DANS RDA BagPack Profile/0.1.0");
     }
 
+    @Test
+    public void addVersion_should_apply_version_delta_to_previous_version() throws Exception {
+        // Given
+        copyToTestDir("simple-object/v1", TEST_INPUT);
+        var jsonV1 = """
+            {
+              "version-info": {
+                "user": {"name": "Test User", "email": "test.user@mail.com"},
+                "message": "Initial version"
+              }
+            }
+            """;
+        Files.writeString(testDir.resolve(TEST_INPUT + "/v1.json"), jsonV1);
+        ocflRepositoryProvider.addVersion("urn:nbn:o1", 1, testDir.resolve(TEST_INPUT + "/v1"));
+        var v2 = Files.createDirectories(testDir.resolve(TEST_INPUT + "/v2/sub"));
+        Files.writeString(v2.resolve("file3.txt"), "file3 content");
+        var jsonV2 = """
+            {
+              "version-info": {
+                "user": {"name": "Test User", "email": "test.user@mail.com"},
+                "message": "Version 2"
+              },
+              "version-delta": {
+                "removed": ["file2.txt"],
+                "renamed": {"file1.txt": "renamed/file1.txt"}
+              }
+            }
+            """;
+        Files.writeString(testDir.resolve(TEST_INPUT + "/v2.json"), jsonV2);
+
+        // When
+        ocflRepositoryProvider.addVersion("urn:nbn:o1", 2, testDir.resolve(TEST_INPUT + "/v2"));
+
+        // Then
+        var files = ocflRepositoryProvider.listFiles("urn:nbn:o1", "v2").orElseThrow();
+        assertThat(files).extracting(OcflFileDetailsDto::getPath)
+            .containsExactlyInAnyOrder("renamed/file1.txt", "sub/file3.txt");
+        // The renamed file is not copied again, but refers to the content stored in v1
+        assertThat(files).filteredOn(f -> f.getPath().equals("renamed/file1.txt"))
+            .allMatch(f -> f.getStorageRelativePath().endsWith("/v1/content/file1.txt"));
+    }
+
+    @Test
+    public void addVersion_should_add_versions_streamed_from_import_archive() throws Exception {
+        // Given
+        var tar = testDir.resolve("o1.tar");
+        try (var out = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            writeTarEntry(out, "v1.json", """
+                {
+                  "version-info": {
+                    "user": {"name": "Test User", "email": "test.user@mail.com"},
+                    "message": "Initial version"
+                  }
+                }
+                """);
+            writeTarEntry(out, "v1/file1.txt", "file1 content");
+            writeTarEntry(out, "v1/sub/file2.txt", "file2 content");
+            writeTarEntry(out, "v2.json", """
+                {
+                  "version-info": {
+                    "user": {"name": "Test User", "email": "test.user@mail.com"},
+                    "message": "Version 2"
+                  },
+                  "version-delta": {
+                    "removed": ["file1.txt"]
+                  }
+                }
+                """);
+            writeTarEntry(out, "v2/file3.txt", "file3 content");
+        }
+
+        // When
+        try (var archive = ImportArchive.openObject(tar)) {
+            var mountPoint = archive.getMountPoint();
+            for (int version = 1; version <= 2; version++) {
+                ocflRepositoryProvider.addVersion("urn:nbn:o1", version, archive.getVersionContent(mountPoint.resolve("v" + version)),
+                    archive.readVersionInfo(mountPoint.resolve("v" + version + ".json")));
+            }
+        }
+
+        // Then
+        long layerId = itemStore.getTopLayerId();
+        var objectRoot = testDir.resolve(LAYER_STAGING_ROOT).resolve(Long.toString(layerId)).resolve("000/000/0o1/o1");
+        assertThat(objectRoot.resolve("v1/content/sub/file2.txt")).hasContent("file2 content");
+        assertThat(ocflRepositoryProvider.listFiles("urn:nbn:o1", "v1").orElseThrow()).extracting(OcflFileDetailsDto::getPath)
+            .containsExactlyInAnyOrder("file1.txt", "sub/file2.txt");
+        var files = ocflRepositoryProvider.listFiles("urn:nbn:o1", "v2").orElseThrow();
+        assertThat(files).extracting(OcflFileDetailsDto::getPath)
+            .containsExactlyInAnyOrder("sub/file2.txt", "file3.txt");
+        // The file that was kept by the delta is not stored again
+        assertThat(files).filteredOn(f -> f.getPath().equals("sub/file2.txt"))
+            .allMatch(f -> f.getStorageRelativePath().endsWith("/v1/content/sub/file2.txt"));
+        assertThat(objectRoot.resolve("v2/content/file3.txt")).hasContent("file3 content");
+    }
+
+    private static void writeTarEntry(TarArchiveOutputStream out, String name, String content) throws IOException {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        var entry = new TarArchiveEntry(name);
+        entry.setSize(bytes.length);
+        out.putArchiveEntry(entry);
+        out.write(bytes);
+        out.closeArchiveEntry();
+    }
+
+    @Test
+    public void addVersion_should_reject_version_delta_that_removes_unknown_file() throws Exception {
+        // Given
+        copyToTestDir("simple-object/v1", TEST_INPUT);
+        var jsonV1 = """
+            {
+              "version-info": {
+                "user": {"name": "Test User", "email": "test.user@mail.com"},
+                "message": "Initial version"
+              }
+            }
+            """;
+        Files.writeString(testDir.resolve(TEST_INPUT + "/v1.json"), jsonV1);
+        ocflRepositoryProvider.addVersion("urn:nbn:o1", 1, testDir.resolve(TEST_INPUT + "/v1"));
+        Files.createDirectories(testDir.resolve(TEST_INPUT + "/v2"));
+        var jsonV2 = """
+            {
+              "version-info": {
+                "user": {"name": "Test User", "email": "test.user@mail.com"},
+                "message": "Version 2"
+              },
+              "version-delta": {
+                "removed": ["no-such-file.txt"]
+              }
+            }
+            """;
+        Files.writeString(testDir.resolve(TEST_INPUT + "/v2.json"), jsonV2);
+
+        // When / Then
+        assertThatThrownBy(() -> ocflRepositoryProvider.addVersion("urn:nbn:o1", 2, testDir.resolve(TEST_INPUT + "/v2")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("no-such-file.txt");
+    }
+
     // TODO: sidecar file must have the algorithm as inventory sidecar file (this must then first be made configurable in OcflRepositoryProvider)
 
     @Test
@@ -308,4 +452,49 @@ public class OcflRepositoryProviderTest extends AbstractTestFixture {
         assertThatThrownBy(() -> ocflRepositoryProvider.getExtensionFile("urn:nbn:o1", "non-existent-file"))
             .isInstanceOf(NoSuchElementException.class);
     }
+
+    @Test
+    public void start_should_leave_top_layer_and_root_extensions_to_the_writer() throws Exception {
+        // Given
+        var topLayerId = itemStore.getTopLayerId();
+        var clusterCoordinator = Mockito.mock(ClusterCoordinator.class);
+        Mockito.when(clusterCoordinator.isWriter()).thenReturn(false);
+        var reader = OcflRepositoryProvider.builder()
+            .itemStore(itemStore)
+            .layerConsistencyChecker(itemStore.getLayerConsistencyChecker())
+            // Copying the extensions would fail, as this source does not exist
+            .rootExtensionsSourcePath(testDir.resolve("non-existent-extensions"))
+            .workDir(testDir.resolve("reader-work-dir"))
+            .initChecks(new InitChecksConfig())
+            .rootExtensionsInitChecks(new RootExtensionsInitChecksConfig())
+            .clusterCoordinator(clusterCoordinator)
+            .build();
+
+        // When
+        reader.start();
+
+        // Then
+        assertThat(itemStore.getTopLayerId()).isEqualTo(topLayerId);
+    }
+
+    @Test
+    public void start_should_refuse_to_create_first_top_layer_when_not_the_writer() throws Exception {
+        // Given
+        var emptyItemStore = Mockito.mock(LayeredItemStore.class);
+        var clusterCoordinator = Mockito.mock(ClusterCoordinator.class);
+        Mockito.when(clusterCoordinator.isWriter()).thenReturn(false);
+        var reader = OcflRepositoryProvider.builder()
+            .itemStore(emptyItemStore)
+            .layerConsistencyChecker(Mockito.mock(LayerConsistencyChecker.class))
+            .workDir(testDir.resolve("reader-work-dir"))
+            .initChecks(new InitChecksConfig())
+            .clusterCoordinator(clusterCoordinator)
+            .build();
+
+        // When/Then
+        assertThatThrownBy(reader::start)
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("is not the writer");
+        Mockito.verify(emptyItemStore, Mockito.never()).newTopLayer();
+    }
 }
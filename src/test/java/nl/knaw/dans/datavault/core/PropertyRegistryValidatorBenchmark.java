@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.layerstore.ItemStore;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the compiled property registry validators with interpreting the registry descriptors for every value, as was done before. Not part of the regular test run (the class name does not
+ * match the surefire includes); run it explicitly with:
+ *
+ * <pre>
+ * mvn test -Dtest=PropertyRegistryValidatorBenchmark
+ * </pre>
+ *
+ * The registry resembles the ones used for Dataverse dataset versions: a dozen scalar properties, several arrays and a few nested objects.
+ */
+@Slf4j
+public class PropertyRegistryValidatorBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int VERSIONS = Integer.getInteger("benchmark.versions", 200_000);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 5);
+
+    private static final String REGISTRY = """
+        {
+          "extensionName": "property-registry",
+          "propertyRegistry": {
+            "dataversePid": { "type": "string", "required": true },
+            "dataversePidVersion": { "type": "string", "required": true },
+            "bagId": { "type": "string", "required": true },
+            "nbn": { "type": "string", "required": true },
+            "otherId": { "type": "string" },
+            "otherIdVersion": { "type": "string" },
+            "swordToken": { "type": "string" },
+            "dataSupplier": { "type": "string" },
+            "title": { "type": "string" },
+            "exporter": { "type": "string" },
+            "exporterVersion": { "type": "string" },
+            "sizeInBytes": { "type": "number" },
+            "deaccessioned": { "type": "boolean" },
+            "keywords": { "type": "array", "itemType": "string" },
+            "subjects": { "type": "array", "itemType": "string" },
+            "fileCounts": { "type": "array", "itemType": "number" },
+            "packaging": {
+              "type": "object",
+              "properties": {
+                "format": { "type": "string", "required": true },
+                "formatVersion": { "type": "string" },
+                "checksumAlgorithm": { "type": "string" }
+              }
+            },
+            "deposit": {
+              "type": "object",
+              "properties": {
+                "depositor": { "type": "string", "required": true },
+                "created": { "type": "string", "required": true },
+                "contact": {
+                  "type": "object",
+                  "properties": {
+                    "name": { "type": "string" },
+                    "email": { "type": "string" },
+                    "affiliations": { "type": "array", "itemType": "string" }
+                  }
+                }
+              }
+            }
+          }
+        }""";
+
+    private static final String PROPERTIES = """
+        {
+          "dataversePid": "doi:10.17026/dans-xyz-abcd",
+          "dataversePidVersion": "2.1",
+          "bagId": "urn:uuid:0b9bb5ee-3187-4387-bb39-2c09536c79f7",
+          "nbn": "urn:nbn:nl:ui:13-abcd-ef",
+          "swordToken": "sword:0b9bb5ee-3187-4387-bb39-2c09536c79f7",
+          "dataSupplier": "Some Institute",
+          "title": "A dataset with a reasonably long title",
+          "exporter": "dd-dve-exporter",
+          "exporterVersion": "1.2.3",
+          "sizeInBytes": 123456789,
+          "deaccessioned": false,
+          "keywords": ["archaeology", "excavation", "pottery", "roman period"],
+          "subjects": ["Humanities"],
+          "fileCounts": [12, 3, 0],
+          "packaging": { "format": "bagit", "formatVersion": "1.0", "checksumAlgorithm": "sha1" },
+          "deposit": {
+            "depositor": "user001",
+            "created": "2024-05-01T12:00:00Z",
+            "contact": { "name": "J. Doe", "email": "j.doe@example.org", "affiliations": ["DANS", "KNAW"] }
+          }
+        }""";
+
+    @Test
+    public void compiled_versus_interpreted() throws Exception {
+        var itemStore = Mockito.mock(ItemStore.class);
+        when(itemStore.readFile("extensions/property-registry/config.json"))
+            .thenAnswer(invocation -> new ByteArrayInputStream(REGISTRY.getBytes(StandardCharsets.UTF_8)));
+        var compiled = new PropertyRegistryValidator(itemStore);
+        var interpreted = new InterpretingValidator(MAPPER.readTree(REGISTRY).get("propertyRegistry"));
+        var properties = new HashMap<String, JsonNode>();
+        MAPPER.readTree(PROPERTIES).fields().forEachRemaining(e -> properties.put(e.getKey(), e.getValue()));
+
+        double bestCompiled = Double.MAX_VALUE;
+        double bestInterpreted = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            var start = System.nanoTime();
+            for (int i = 0; i < VERSIONS; i++) {
+                interpreted.validate(properties);
+            }
+            bestInterpreted = Math.min(bestInterpreted, (double) (System.nanoTime() - start) / VERSIONS);
+            start = System.nanoTime();
+            for (int i = 0; i < VERSIONS; i++) {
+                compiled.validate(properties);
+            }
+            bestCompiled = Math.min(bestCompiled, (double) (System.nanoTime() - start) / VERSIONS);
+        }
+        log.info("Validating the properties of one version: {} ns interpreted, {} ns compiled ({}x)",
+            Math.round(bestInterpreted), Math.round(bestCompiled), String.format("%.1f", bestInterpreted / bestCompiled));
+    }
+
+    /**
+     * The implementation before the registry was compiled.
+     */
+    private static class InterpretingValidator {
+        private final Map<String, JsonNode> registry = new HashMap<>();
+
+        InterpretingValidator(JsonNode registryNode) {
+            registryNode.fields().forEachRemaining(e -> registry.put(e.getKey(), e.getValue()));
+        }
+
+        void validate(Map<String, JsonNode> customProperties) {
+            for (var entry : customProperties.entrySet()) {
+                var desc = registry.get(entry.getKey());
+                if (desc == null) {
+                    throw new IllegalArgumentException("Unknown property per property-registry: " + entry.getKey());
+                }
+                validateValueAgainstDescriptor(entry.getKey(), entry.getValue(), desc);
+            }
+            for (var entry : registry.entrySet()) {
+                var requiredNode = entry.getValue().get("required");
+                boolean required = requiredNode != null && requiredNode.isBoolean() && requiredNode.asBoolean();
+                if (required && !customProperties.containsKey(entry.getKey())) {
+                    throw new IllegalArgumentException("Missing required property per property-registry: " + entry.getKey());
+                }
+            }
+        }
+
+        private void validateValueAgainstDescriptor(String path, JsonNode value, JsonNode descriptor) {
+            String type = descriptor.hasNonNull("type") ? descriptor.get("type").asText() : "string";
+            switch (type) {
+                case "string" -> {
+                    if (!value.isTextual()) {
+                        throw new IllegalArgumentException("Property '" + path + "' must be of type string");
+                    }
+                }
+                case "number" -> {
+                    if (!value.isNumber()) {
+                        throw new IllegalArgumentException("Property '" + path + "' must be of type number");
+                    }
+                }
+                case "boolean" -> {
+                    if (!value.isBoolean()) {
+                        throw new IllegalArgumentException("Property '" + path + "' must be of type boolean");
+                    }
+                }
+                case "array" -> {
+                    if (!value.isArray()) {
+                        throw new IllegalArgumentException("Property '" + path + "' must be of type array");
+                    }
+                    String itemType = descriptor.hasNonNull("itemType") ? descriptor.get("itemType").asText() : "string";
+                    ObjectNode itemDescriptor = MAPPER.createObjectNode();
+                    itemDescriptor.put("type", itemType);
+                    for (int i = 0; i < value.size(); i++) {
+                        validateValueAgainstDescriptor(path + "[" + i + "]", value.get(i), itemDescriptor);
+                    }
+                }
+                case "object" -> {
+                    if (!value.isObject()) {
+                        throw new IllegalArgumentException("Property '" + path + "' must be of type object");
+                    }
+                    JsonNode propsDesc = descriptor.get("properties");
+                    Iterator<String> fieldNames = value.fieldNames();
+                    while (fieldNames.hasNext()) {
+                        String subKey = fieldNames.next();
+                        if (!propsDesc.has(subKey)) {
+                            throw new IllegalArgumentException("Unknown sub-property for '" + path + "': " + subKey);
+                        }
+                    }
+                    Iterator<String> descFieldNames = propsDesc.fieldNames();
+                    while (descFieldNames.hasNext()) {
+                        String subKey = descFieldNames.next();
+                        JsonNode subDesc = propsDesc.get(subKey);
+                        boolean subRequired = subDesc.has("required") && subDesc.get("required").isBoolean() && subDesc.get("required").asBoolean();
+                        JsonNode subValue = value.get(subKey);
+                        if (subValue == null) {
+                            if (subRequired) {
+                                throw new IllegalArgumentException("Missing required sub-property for '" + path + "': " + subKey);
+                            }
+                            continue;
+                        }
+                        validateValueAgainstDescriptor(path + "." + subKey, subValue, subDesc);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported property type in registry for '" + path + "': " + type);
+            }
+        }
+    }
+}
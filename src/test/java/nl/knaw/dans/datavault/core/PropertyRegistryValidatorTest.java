@@ -273,4 +273,32 @@ class PropertyRegistryValidatorTest {
     private static InputStream toStream(String json) {
         return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
     }
+
+    @Test
+    void validate_arrayItemTypeMismatch_throws_with_index_in_path() throws Exception {
+        Map<String, JsonNode> customProps = Map.of(
+            "version", MAPPER.readTree("1"),
+            "tags", MAPPER.readTree("""
+                ["a", "b", 3]
+                """)
+        );
+
+        assertThatThrownBy(() -> validator.validate(customProps))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Property 'tags[2]' must be of type string");
+    }
+
+    @Test
+    void validate_unknownSubProperty_names_the_property() throws Exception {
+        Map<String, JsonNode> customProps = Map.of(
+            "version", MAPPER.readTree("1"),
+            "meta", MAPPER.readTree("""
+                {"author":"Jane","pages":200,"publisher":"X"}
+                """)
+        );
+
+        assertThatThrownBy(() -> validator.validate(customProps))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Unknown sub-property for 'meta': publisher");
+    }
 }
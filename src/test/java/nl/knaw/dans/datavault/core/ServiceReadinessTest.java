@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceReadinessTest {
+
+    @Test
+    public void should_start_initializing_and_not_ready() {
+        var serviceReadiness = new ServiceReadiness();
+
+        assertThat(serviceReadiness.getState()).isEqualTo(ServiceReadiness.State.INITIALIZING);
+        assertThat(serviceReadiness.isReady()).isFalse();
+    }
+
+    @Test
+    public void setReady_should_make_service_ready() {
+        var serviceReadiness = new ServiceReadiness();
+
+        serviceReadiness.setReady();
+
+        assertThat(serviceReadiness.getState()).isEqualTo(ServiceReadiness.State.READY);
+        assertThat(serviceReadiness.isReady()).isTrue();
+    }
+
+    @Test
+    public void setFailed_should_keep_service_not_ready_and_record_message() {
+        var serviceReadiness = new ServiceReadiness();
+
+        serviceReadiness.setFailed("Init checks failed: boom");
+
+        assertThat(serviceReadiness.getState()).isEqualTo(ServiceReadiness.State.FAILED);
+        assertThat(serviceReadiness.isReady()).isFalse();
+        assertThat(serviceReadiness.getMessage()).isEqualTo("Init checks failed: boom");
+    }
+
+    @Test
+    public void isReady_should_be_false_while_instance_is_not_the_writer() {
+        var clusterCoordinator = Mockito.mock(ClusterCoordinator.class);
+        Mockito.when(clusterCoordinator.getInstanceId()).thenReturn("instance-2");
+        Mockito.when(clusterCoordinator.isWriter()).thenReturn(false);
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setClusterCoordinator(clusterCoordinator);
+        serviceReadiness.setReady();
+
+        assertThat(serviceReadiness.isReady()).isFalse();
+        assertThat(serviceReadiness.getMessage()).isEqualTo("Instance instance-2 is not the writer of the layer store");
+
+        Mockito.when(clusterCoordinator.isWriter()).thenReturn(true);
+        assertThat(serviceReadiness.isReady()).isTrue();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.db.ItemRecordDao;
+import nl.knaw.dans.datavault.db.RepositorySettingDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class ShardCountCheckTest {
+    public final DAOTestExtension daoTestRule = DAOTestExtension.newBuilder()
+        .addEntityClass(RepositorySetting.class)
+        .build();
+
+    private RepositorySettingDao dao;
+    private ItemRecordDao itemRecordDao;
+    private ShardCountCheck shardCountCheck;
+
+    @BeforeEach
+    public void setUp() {
+        dao = new RepositorySettingDao(daoTestRule.getSessionFactory());
+        itemRecordDao = Mockito.mock(ItemRecordDao.class);
+        shardCountCheck = new ShardCountCheck(dao, itemRecordDao);
+    }
+
+    @Test
+    public void check_should_record_number_of_shards_on_first_start() {
+        daoTestRule.inTransaction(() -> shardCountCheck.check(3));
+
+        assertThat(daoTestRule.inTransaction(() -> dao.find(ShardCountCheck.NUMBER_OF_SHARDS))).contains("3");
+    }
+
+    @Test
+    public void check_should_accept_recorded_number_of_shards() {
+        daoTestRule.inTransaction(() -> shardCountCheck.check(3));
+
+        daoTestRule.inTransaction(() -> shardCountCheck.check(3));
+    }
+
+    @Test
+    public void check_should_refuse_other_number_of_shards() {
+        daoTestRule.inTransaction(() -> shardCountCheck.check(1));
+
+        assertThatThrownBy(() -> daoTestRule.inTransaction(() -> shardCountCheck.check(2)))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("created with 1 shard(s), but 2 are configured");
+    }
+
+    @Test
+    public void check_should_refuse_shards_for_existing_unsharded_repository() {
+        when(itemRecordDao.listLayerIds()).thenReturn(List.of(1L));
+
+        assertThatThrownBy(() -> daoTestRule.inTransaction(() -> shardCountCheck.check(2)))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("stored without sharding");
+        assertThat(daoTestRule.inTransaction(() -> dao.find(ShardCountCheck.NUMBER_OF_SHARDS))).isEmpty();
+    }
+}
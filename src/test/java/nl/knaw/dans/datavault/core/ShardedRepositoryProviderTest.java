@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardedRepositoryProviderTest {
+
+    @Test
+    public void getShardIndex_should_be_stable() {
+        // Changing the hash would make existing objects unreachable, so the expected values are fixed here
+        assertThat(ShardedRepositoryProvider.getShardIndex("urn:nbn:nl:ui:13-abc", 1)).isEqualTo(0);
+        assertThat(ShardedRepositoryProvider.getShardIndex("urn:nbn:nl:ui:13-abc", 4)).isEqualTo(3);
+        assertThat(ShardedRepositoryProvider.getShardIndex("urn:nbn:nl:ui:13-abc", 3)).isEqualTo(2);
+    }
+
+    @Test
+    public void getShardIndex_should_spread_objects_over_all_shards() {
+        var counts = new int[4];
+        for (int i = 0; i < 4000; i++) {
+            counts[ShardedRepositoryProvider.getShardIndex("urn:nbn:nl:ui:13-" + i, 4)]++;
+        }
+        for (var count : counts) {
+            assertThat(count).isBetween(800, 1200);
+        }
+    }
+
+    @Test
+    public void addVersion_should_go_to_the_shard_of_the_object_only() {
+        var shards = List.of(Mockito.mock(RepositoryProvider.class), Mockito.mock(RepositoryProvider.class));
+        var provider = new ShardedRepositoryProvider(shards);
+        var objectId = "urn:nbn:nl:ui:13-xyz";
+        var index = ShardedRepositoryProvider.getShardIndex(objectId, 2);
+
+        provider.addVersion(objectId, 1, Path.of("v1"));
+
+        verify(shards.get(index)).addVersion(objectId, 1, Path.of("v1"));
+        verify(shards.get(1 - index), never()).addVersion(any(), anyInt(), any());
+    }
+
+    @Test
+    public void listObjectIds_should_combine_all_shards() {
+        var shard1 = Mockito.mock(RepositoryProvider.class);
+        var shard2 = Mockito.mock(RepositoryProvider.class);
+        when(shard1.listObjectIds()).thenReturn(List.of("a"));
+        when(shard2.listObjectIds()).thenReturn(List.of("b", "c"));
+
+        assertThat(new ShardedRepositoryProvider(List.of(shard1, shard2)).listObjectIds()).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    public void describeObject_should_ask_the_shard_of_the_object() {
+        var shards = List.of(Mockito.mock(RepositoryProvider.class), Mockito.mock(RepositoryProvider.class));
+        var objectId = "urn:nbn:nl:ui:13-xyz";
+        var index = ShardedRepositoryProvider.getShardIndex(objectId, 2);
+        when(shards.get(index).describeObject(objectId)).thenReturn(Optional.empty());
+
+        assertThat(new ShardedRepositoryProvider(shards).describeObject(objectId)).isEmpty();
+        verify(shards.get(1 - index), never()).describeObject(any());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import nl.knaw.dans.datavault.config.StorageLayoutConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StripedObjectLockManagerTest {
+
+    @Test
+    public void lockObject_should_block_other_thread_until_released() throws Exception {
+        var manager = new StripedObjectLockManager(new StorageLayoutConfig(), 16, Duration.ofSeconds(10));
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var lockedByOther = new AtomicBoolean();
+            var lock = manager.lockObject("urn:nbn:nl:ui:13-abc");
+            var future = executor.submit(() -> {
+                try (var otherLock = manager.lockObject("urn:nbn:nl:ui:13-abc")) {
+                    lockedByOther.set(true);
+                }
+            });
+            Thread.sleep(200);
+            assertThat(lockedByOther.get()).isFalse();
+
+            lock.close();
+            future.get(5, TimeUnit.SECONDS);
+            assertThat(lockedByOther.get()).isTrue();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockItemPaths_should_lock_the_object_that_the_path_belongs_to() throws Exception {
+        // With the default layout the object root is three tuple directories deep, and is named after the object ID without its prefix
+        var manager = new StripedObjectLockManager(new StorageLayoutConfig(), 1, Duration.ofMillis(100));
+        var executor = Executors.newSingleThreadExecutor();
+        try (var lock = manager.lockItemPaths(List.of("13-/abc/000/13-abc/inventory.json"))) {
+            var future = executor.submit(() -> manager.lockObject("urn:nbn:nl:ui:13-abc"));
+            assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Timed out");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockItemPaths_should_lock_all_objects_for_a_path_above_the_object_roots() throws Exception {
+        var manager = new StripedObjectLockManager(new StorageLayoutConfig(), 1024, Duration.ofMillis(100));
+        var executor = Executors.newSingleThreadExecutor();
+        try (var lock = manager.lockItemPaths(List.of("13-"))) {
+            var future = executor.submit(() -> manager.lockObject("urn:nbn:nl:ui:13-abc"));
+            assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Timed out");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockObject_should_be_reentrant() {
+        var manager = new StripedObjectLockManager(new StorageLayoutConfig(), 1, Duration.ofMillis(100));
+
+        try (var outer = manager.lockObject("urn:nbn:nl:ui:13-abc"); var inner = manager.lockObject("urn:nbn:nl:ui:13-def")) {
+            assertThat(inner).isNotNull();
+        }
+    }
+
+    @Test
+    public void lockObject_should_not_block_on_different_objects() throws Exception {
+        var manager = new StripedObjectLockManager(new StorageLayoutConfig(), 1024, Duration.ofSeconds(10));
+        var executor = Executors.newSingleThreadExecutor();
+        var started = new CountDownLatch(1);
+        try (var lock = manager.lockObject("urn:nbn:nl:ui:13-abc")) {
+            var future = executor.submit(() -> {
+                started.countDown();
+                try (var otherLock = manager.lockObject("urn:nbn:nl:ui:13-xyz")) {
+                    return true;
+                }
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(future.get(5, TimeUnit.SECONDS)).isTrue();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
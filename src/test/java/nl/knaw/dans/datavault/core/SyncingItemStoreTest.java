@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.datavault.config.DurabilityConfig.Mode;
+import nl.knaw.dans.layerstore.ItemStore;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SyncingItemStoreTest extends AbstractTestFixture {
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final ItemStore delegate = mock(ItemStore.class);
+    private final LayeredItemStore layeredItemStore = mock(LayeredItemStore.class);
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        executorService = Executors.newFixedThreadPool(2);
+        when(layeredItemStore.getTopLayerId()).thenReturn(1L);
+        // Simulate the staging layer by writing the file to the directory of layer 1
+        doAnswer(invocation -> {
+            var file = testDir.resolve("staging/1").resolve((String) invocation.getArgument(0));
+            Files.createDirectories(file.getParent());
+            try (InputStream in = invocation.getArgument(1)) {
+                Files.copy(in, file);
+            }
+            return null;
+        }).when(delegate).writeFile(anyString(), any());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void writeFile_should_sync_immediately_in_per_file_mode() throws Exception {
+        var store = createStore(Mode.PER_FILE);
+
+        store.writeFile("object/v1/content/file.txt", content("content"));
+
+        // The file and its four parent directories within the layer
+        assertThat(fsyncCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void writeFile_should_sync_staging_root_if_top_layer_changed() throws Exception {
+        var store = createStore(Mode.PER_FILE);
+        when(layeredItemStore.getTopLayerId()).thenReturn(1L, 2L);
+        doAnswer(invocation -> {
+            var file = testDir.resolve("staging/2").resolve((String) invocation.getArgument(0));
+            Files.createDirectories(file.getParent());
+            try (InputStream in = invocation.getArgument(1)) {
+                Files.copy(in, file);
+            }
+            return null;
+        }).when(delegate).writeFile(anyString(), any());
+
+        store.writeFile("object/v1/content/file.txt", content("content"));
+
+        // The file and its four parent directories within the new layer, and the staging root that contains the new layer
+        assertThat(fsyncCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void runInGroup_should_sync_all_changes_once_when_group_finishes() throws Exception {
+        var store = createStore(Mode.PER_OBJECT);
+
+        store.runInGroup(() -> {
+            try {
+                store.writeFile("object/v1/content/file1.txt", content("one"));
+                store.writeFile("object/v1/content/file2.txt", content("two"));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            assertThat(fsyncCount()).isZero();
+        });
+
+        // Two files and the four directories they share
+        assertThat(fsyncCount()).isEqualTo(6);
+        assertThat(metrics.timer(MetricRegistry.name(SyncingItemStore.class, "group-sync-time")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void runInGroup_should_not_sync_when_action_fails() {
+        var store = createStore(Mode.PER_OBJECT);
+
+        assertThatThrownBy(() -> store.runInGroup(() -> {
+            try {
+                store.writeFile("object/v1/content/file.txt", content("content"));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(fsyncCount()).isZero();
+        assertThat(metrics.timer(MetricRegistry.name(SyncingItemStore.class, "group-sync-time")).getCount()).isZero();
+    }
+
+    @Test
+    public void constructor_should_reject_mode_none() {
+        assertThatThrownBy(() -> createStore(Mode.NONE)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private SyncingItemStore createStore(Mode mode) {
+        return new SyncingItemStore(delegate, layeredItemStore, testDir.resolve("staging"), mode, executorService, metrics);
+    }
+
+    private long fsyncCount() {
+        return metrics.timer(MetricRegistry.name(SyncingItemStore.class, "fsync-time")).getCount();
+    }
+
+    private static InputStream content(String s) {
+        return new ByteArrayInputStream(s.getBytes());
+    }
+}
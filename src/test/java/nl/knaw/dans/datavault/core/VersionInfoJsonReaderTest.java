@@ -20,6 +20,7 @@ import org.junit.jupiter.api.Test;
 import java.nio.file.Files;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class VersionInfoJsonReaderTest extends AbstractTestFixture {
@@ -157,6 +158,57 @@ public class VersionInfoJsonReaderTest extends AbstractTestFixture {
         assertThat(customProps).isEmpty();
     }
 
+    @Test
+    public void should_read_version_delta() throws Exception {
+        // Given
+        var json = """
+            {
+               "version-info": {
+                     "user": {
+                        "name": "Test User",
+                        "email": "test.user@mail.com"
+                     },
+                     "message": "Version 2"
+               },
+               "version-delta": {
+                     "removed": ["a.txt", "b.txt"],
+                     "renamed": {"c.txt": "d/c.txt"}
+               }
+            }
+            """;
+        var vJson = testDir.resolve("v-delta.json");
+        Files.writeString(vJson, json);
+
+        // When
+        var delta = new VersionInfoJsonReader(vJson).getVersionDelta();
+
+        // Then
+        assertThat(delta).isPresent();
+        assertThat(delta.get().removed()).containsExactly("a.txt", "b.txt");
+        assertThat(delta.get().renamed()).containsExactly(entry("c.txt", "d/c.txt"));
+    }
+
+    @Test
+    public void should_return_empty_version_delta_when_none_present() throws Exception {
+        // Given
+        var json = """
+            {
+               "version-info": {
+                     "user": {
+                        "name": "Test User",
+                        "email": "test.user@mail.com"
+                     },
+                     "message": "Initial version"
+               }
+            }
+            """;
+        var vJson = testDir.resolve("v-no-delta.json");
+        Files.writeString(vJson, json);
+
+        // When / Then
+        assertThat(new VersionInfoJsonReader(vJson).getVersionDelta()).isEmpty();
+    }
+
     @Test
     public void should_throw_exception_for_unknown_property() throws Exception {
         // Given
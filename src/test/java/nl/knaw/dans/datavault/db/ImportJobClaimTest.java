@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.core.ImportJob;
+import nl.knaw.dans.datavault.core.WriterLease;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The instances share a file database in H2's mixed mode, so that several processes can connect to it. Concurrent claiming is tested with a separate JVM per instance, as instances in the
+ * same JVM would share more than the database.
+ */
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class ImportJobClaimTest {
+    @TempDir
+    static Path databaseDir;
+
+    public final DAOTestExtension daoTestRule = DAOTestExtension.newBuilder()
+        .setUrl(databaseUrl(databaseDir))
+        .addEntityClass(ImportJob.class)
+        .addEntityClass(WriterLease.class)
+        .build();
+
+    private ImportJobDao importJobDao;
+    private WriterLeaseDao writerLeaseDao;
+
+    @BeforeEach
+    public void setUp() {
+        importJobDao = new ImportJobDao(daoTestRule.getSessionFactory());
+        writerLeaseDao = new WriterLeaseDao(daoTestRule.getSessionFactory());
+    }
+
+    @Test
+    public void claimNext_should_hand_out_each_job_to_exactly_one_instance() throws Exception {
+        var jobIds = new ArrayList<UUID>();
+        for (int i = 0; i < 20; i++) {
+            jobIds.add(createJob("batch" + i, OffsetDateTime.now().minusMinutes(20 - i)).getId());
+        }
+        var startSignal = databaseDir.resolve("start-" + UUID.randomUUID());
+        var instances = new ArrayList<Process>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                instances.add(new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    ClaimingInstance.class.getName(),
+                    databaseUrl(databaseDir),
+                    "instance-" + i,
+                    startSignal.toString())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+            }
+            // All instances start claiming at the same time, once they have connected
+            Files.createFile(startSignal);
+            var allClaimed = new ArrayList<UUID>();
+            for (var instance : instances) {
+                allClaimed.addAll(readClaimed(instance));
+                assertThat(instance.waitFor(1, TimeUnit.MINUTES)).isTrue();
+                assertThat(instance.exitValue()).isZero();
+            }
+            assertThat(allClaimed).containsExactlyInAnyOrderElementsOf(jobIds);
+        }
+        finally {
+            instances.forEach(Process::destroyForcibly);
+        }
+        assertThat(daoTestRule.inTransaction(() -> importJobDao.findByStatus(ImportJob.Status.RUNNING))).hasSize(20);
+    }
+
+    @Test
+    public void claimNext_should_take_over_running_job_only_after_its_lease_expired() {
+        var job = createJob("batch", OffsetDateTime.now());
+
+        assertThat(importJobDao.claimNext("instance-1", Duration.ofMinutes(1))).contains(job.getId());
+        assertThat(importJobDao.claimNext("instance-2", Duration.ofMinutes(1))).isEmpty();
+
+        // Instance 1 stops sending heartbeats
+        daoTestRule.inTransaction(() -> {
+            var claimed = importJobDao.get(job.getId());
+            claimed.setLeaseExpires(OffsetDateTime.now().minusSeconds(1));
+            importJobDao.update(claimed);
+        });
+
+        assertThat(importJobDao.claimNext("instance-2", Duration.ofMinutes(1))).contains(job.getId());
+        assertThat(importJobDao.renewLeases("instance-1", List.of(job.getId()), Duration.ofMinutes(1))).isEmpty();
+        assertThat(importJobDao.renewLeases("instance-2", List.of(job.getId()), Duration.ofMinutes(1))).containsExactly(job.getId());
+    }
+
+    @Test
+    public void claimNext_should_not_hand_out_finished_jobs() {
+        var job = createJob("batch", OffsetDateTime.now());
+        daoTestRule.inTransaction(() -> {
+            var finished = importJobDao.get(job.getId());
+            finished.setStatus(ImportJob.Status.SUCCESS);
+            importJobDao.update(finished);
+        });
+
+        assertThat(importJobDao.claimNext("instance-1", Duration.ofMinutes(1))).isEmpty();
+    }
+
+    @Test
+    public void tryAcquire_should_grant_writer_lease_to_one_instance_until_it_expires_or_is_released() {
+        assertThat(writerLeaseDao.tryAcquire("layer-store", "instance-1", Duration.ofMinutes(1))).isTrue();
+        assertThat(writerLeaseDao.tryAcquire("layer-store", "instance-2", Duration.ofMinutes(1))).isFalse();
+        // Renewal by the holder
+        assertThat(writerLeaseDao.tryAcquire("layer-store", "instance-1", Duration.ofMinutes(1))).isTrue();
+
+        writerLeaseDao.release("layer-store", "instance-2");
+        assertThat(writerLeaseDao.tryAcquire("layer-store", "instance-2", Duration.ofMinutes(1))).isFalse();
+
+        writerLeaseDao.release("layer-store", "instance-1");
+        assertThat(writerLeaseDao.tryAcquire("layer-store", "instance-2", Duration.ofMinutes(1))).isTrue();
+        assertThat(writerLeaseDao.tryAcquire("layer-store", "instance-1", Duration.ofMinutes(1))).isFalse();
+    }
+
+    private ImportJob createJob(String path, OffsetDateTime created) {
+        return daoTestRule.inTransaction(() -> importJobDao.create(ImportJob.builder()
+            .path(path)
+            .singleObject(false)
+            .status(ImportJob.Status.PENDING)
+            .created(created)
+            .build()));
+    }
+
+    private static List<UUID> readClaimed(Process instance) throws Exception {
+        try (var reader = new BufferedReader(new InputStreamReader(instance.getInputStream(), StandardCharsets.UTF_8))) {
+            return reader.lines().map(UUID::fromString).toList();
+        }
+    }
+
+    private static String databaseUrl(Path dir) {
+        return "jdbc:h2:" + dir.resolve("vault").toAbsolutePath() + ";AUTO_SERVER=TRUE";
+    }
+
+    /**
+     * An instance that claims jobs until there are none left, and prints the IDs of the jobs it claimed. Arguments: the database URL, the instance ID and the file whose creation is the
+     * signal to start.
+     */
+    public static class ClaimingInstance {
+        public static void main(String[] args) throws Exception {
+            var sessionFactory = buildSessionFactory(args[0]);
+            try {
+                var startSignal = Path.of(args[2]);
+                while (!Files.exists(startSignal)) {
+                    Thread.sleep(10);
+                }
+                var importJobDao = new ImportJobDao(sessionFactory);
+                var next = importJobDao.claimNext(args[1], Duration.ofMinutes(1));
+                while (next.isPresent()) {
+                    System.out.println(next.get());
+                    next = importJobDao.claimNext(args[1], Duration.ofMinutes(1));
+                }
+            }
+            finally {
+                sessionFactory.close();
+            }
+        }
+
+        private static SessionFactory buildSessionFactory(String url) {
+            return new Configuration()
+                .addAnnotatedClass(ImportJob.class)
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.hbm2ddl.auto", "none")
+                .buildSessionFactory();
+        }
+    }
+}
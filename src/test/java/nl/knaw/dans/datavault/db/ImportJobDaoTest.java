@@ -69,4 +69,25 @@ public class ImportJobDaoTest {
             .extracting(ImportJob::getId)
             .containsExactly(job1.getId(), job3.getId());
     }
+
+    @Test
+    public void existsPendingWithPriorityAbove_should_ignore_paused_jobs() {
+        var job = daoTestRule.inTransaction(() -> dao.create(ImportJob.builder()
+            .path("batch1")
+            .singleObject(false)
+            .status(ImportJob.Status.PENDING)
+            .priority(10)
+            .created(OffsetDateTime.now())
+            .build()));
+
+        assertThat(dao.existsPendingWithPriorityAbove(5)).isTrue();
+        assertThat(dao.existsPendingWithPriorityAbove(10)).isFalse();
+
+        daoTestRule.inTransaction(() -> {
+            job.setStopRequest(ImportJob.StopRequest.PAUSE);
+            dao.update(job);
+        });
+
+        assertThat(dao.existsPendingWithPriorityAbove(5)).isFalse();
+    }
 }
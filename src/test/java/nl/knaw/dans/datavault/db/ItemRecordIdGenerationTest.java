@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.datavault.core.AbstractTestFixture;
+import nl.knaw.dans.layerstore.ItemRecord;
+import nl.knaw.dans.layerstore.LayerDatabaseImpl;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import nl.knaw.dans.layerstore.ZipArchiveProvider;
+import nl.knaw.dans.lib.ocflext.StoreInventoryDbBackedContentManager;
+import nl.knaw.dans.lib.util.PersistenceProviderImpl;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class ItemRecordIdGenerationTest extends AbstractTestFixture {
+    private static final int DIRECTORIES = 5;
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    /**
+     * Counts the statements that insert listing records. A statement is prepared once per JDBC batch, so without batching there is one per record.
+     */
+    public static class InsertCounter implements StatementInspector {
+        static final AtomicInteger inserts = new AtomicInteger();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.toLowerCase().startsWith("insert into listing_record")) {
+                inserts.incrementAndGet();
+            }
+            return sql;
+        }
+    }
+
+    public final DAOTestExtension db = DAOTestExtension.newBuilder()
+        .addEntityClass(ItemRecord.class)
+        .customizeConfiguration(ItemRecordIdGeneration::configure)
+        .setProperty("hibernate.jdbc.batch_size", "100")
+        .setProperty("hibernate.order_inserts", "true")
+        .setProperty("hibernate.session_factory.statement_inspector", InsertCounter.class.getName())
+        .build();
+
+    private LayeredItemStore itemStore;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        InsertCounter.inserts.set(0);
+        itemStore = new LayeredItemStore.Builder()
+            .database(new LayerDatabaseImpl(new PersistenceProviderImpl<>(db.getSessionFactory(), ItemRecord.class)))
+            .stagingRoot(createSubdir("staging"))
+            .archiveProvider(new ZipArchiveProvider(createSubdir("archive")))
+            .databaseBackedContentManager(new StoreInventoryDbBackedContentManager())
+            .build();
+        db.inTransaction(() -> {
+            try {
+                itemStore.newTopLayer();
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void listing_records_of_a_version_should_be_inserted_in_batches() throws Exception {
+        moveIntoItemStore(createVersionContent(testDir.resolve("source")), "object");
+
+        var records = countRecords();
+        assertThat(records).isGreaterThanOrEqualTo((long) DIRECTORIES * FILES_PER_DIRECTORY);
+        assertThat(InsertCounter.inserts.get()).isGreaterThan(0).isLessThan((int) (records / 10));
+    }
+
+    @Test
+    public void initializeSequence_should_move_sequence_past_ids_in_use() throws Exception {
+        moveIntoItemStore(createVersionContent(testDir.resolve("source-1")), "object-1");
+        // As in a database that had listing records before the sequence was created
+        db.inTransaction(() -> db.getSessionFactory().getCurrentSession()
+            .createNativeQuery("ALTER SEQUENCE " + ItemRecordIdGeneration.SEQUENCE_NAME + " RESTART WITH 1").executeUpdate());
+        var recordsBefore = countRecords();
+
+        db.inTransaction(() -> ItemRecordIdGeneration.initializeSequence(db.getSessionFactory().getCurrentSession()));
+        // Fails with a primary key violation if the sequence hands out IDs that are in use
+        moveIntoItemStore(createVersionContent(testDir.resolve("source-2")), "object-2");
+
+        assertThat(countRecords()).isGreaterThan(recordsBefore);
+    }
+
+    private void moveIntoItemStore(Path source, String destination) {
+        db.inTransaction(() -> {
+            try {
+                itemStore.moveDirectoryInto(source, destination);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private long countRecords() {
+        return db.inTransaction(() -> db.getSessionFactory().getCurrentSession()
+            .createQuery("select count(*) from ItemRecord", Long.class).getSingleResult());
+    }
+
+    private Path createVersionContent(Path dir) throws Exception {
+        for (int d = 0; d < DIRECTORIES; d++) {
+            var subdir = Files.createDirectories(dir.resolve("dir-" + d));
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                Files.writeString(subdir.resolve("file-" + f + ".txt"), "content " + d + "/" + f);
+            }
+        }
+        return dir;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavault.core.AbstractTestFixture;
+import nl.knaw.dans.layerstore.ItemRecord;
+import nl.knaw.dans.layerstore.LayerDatabaseImpl;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import nl.knaw.dans.layerstore.ZipArchiveProvider;
+import nl.knaw.dans.lib.ocflext.StoreInventoryDbBackedContentManager;
+import nl.knaw.dans.lib.util.PersistenceProviderImpl;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the rate at which the listing records of one object version are inserted, with and without JDBC batching. The IDs are taken from the sequence, as configured by
+ * {@link ItemRecordIdGeneration}, as Hibernate does not batch the inserts of identity IDs. Not part of the regular test run (the class name does not match the
+ * surefire includes); run it explicitly with:
+ *
+ * <pre>
+ * mvn test -Dtest=ItemRecordInsertBenchmark
+ * </pre>
+ *
+ * By default, only H2 is measured. To measure PostgreSQL as well, pass <code>-Dbenchmark.postgresql.url=jdbc:postgresql://...?reWriteBatchedInserts=true</code>,
+ * <code>-Dbenchmark.postgresql.user=...</code> and <code>-Dbenchmark.postgresql.password=...</code>. The database is cleared by the benchmark, so do not point it at a database that is in use.
+ */
+@Slf4j
+public class ItemRecordInsertBenchmark extends AbstractTestFixture {
+    private static final int DIRECTORIES = Integer.getInteger("benchmark.directories", 50);
+    private static final int FILES_PER_DIRECTORY = Integer.getInteger("benchmark.filesPerDirectory", 100);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 3);
+
+    @Test
+    public void h2() throws Throwable {
+        compare("H2", DAOTestExtension::newBuilder);
+    }
+
+    @Test
+    public void postgresql() throws Throwable {
+        var url = System.getProperty("benchmark.postgresql.url");
+        assumeTrue(url != null, "benchmark.postgresql.url not set");
+        compare("PostgreSQL", () -> DAOTestExtension.newBuilder()
+            .setDriver(org.postgresql.Driver.class)
+            .setUrl(url)
+            .setUsername(System.getProperty("benchmark.postgresql.user", ""))
+            .setPassword(System.getProperty("benchmark.postgresql.password", ""))
+            .useSqlComments(false));
+    }
+
+    // A new builder for every measurement, so that the ID mapping is added to the configuration only once
+    private void compare(String databaseName, Supplier<DAOTestExtension.Builder> builder) throws Throwable {
+        var unbatched = measure(builder, 1);
+        var batched = measure(builder, 100);
+        log.info("{}: {} inserts/s without batching, {} inserts/s with batch size 100 ({}x)",
+            databaseName, Math.round(unbatched), Math.round(batched), String.format("%.1f", batched / unbatched));
+    }
+
+    private double measure(Supplier<DAOTestExtension.Builder> builder, int batchSize) throws Throwable {
+        var db = builder.get()
+            .addEntityClass(ItemRecord.class)
+            .customizeConfiguration(ItemRecordIdGeneration::configure)
+            .setProperty("hibernate.jdbc.batch_size", Integer.toString(batchSize))
+            .setProperty("hibernate.order_inserts", "true")
+            .build();
+        db.before();
+        try {
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                super.setUp();
+                var itemStore = new LayeredItemStore.Builder()
+                    .database(new LayerDatabaseImpl(new PersistenceProviderImpl<>(db.getSessionFactory(), ItemRecord.class)))
+                    .stagingRoot(createSubdir("staging"))
+                    .archiveProvider(new ZipArchiveProvider(createSubdir("archive")))
+                    .databaseBackedContentManager(new StoreInventoryDbBackedContentManager())
+                    .build();
+                var source = createVersionContent(testDir.resolve("source"));
+                db.inTransaction(() -> {
+                    try {
+                        itemStore.newTopLayer();
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                var start = System.nanoTime();
+                db.inTransaction(() -> {
+                    try {
+                        itemStore.moveDirectoryInto(source, "object");
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                var seconds = (System.nanoTime() - start) / 1e9;
+                var records = db.inTransaction(() -> db.getSessionFactory().getCurrentSession()
+                    .createQuery("select count(*) from ItemRecord", Long.class).getSingleResult());
+                assertThat(records).isGreaterThanOrEqualTo((long) DIRECTORIES * FILES_PER_DIRECTORY);
+                best = Math.max(best, DIRECTORIES * (FILES_PER_DIRECTORY + 1) / seconds);
+                db.inTransaction(() -> db.getSessionFactory().getCurrentSession().createQuery("delete from ItemRecord").executeUpdate());
+            }
+            return best;
+        }
+        finally {
+            db.after();
+        }
+    }
+
+    private Path createVersionContent(Path dir) throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+        for (int d = 0; d < DIRECTORIES; d++) {
+            var subdir = Files.createDirectories(dir.resolve("dir-" + d));
+            for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+                Files.writeString(subdir.resolve("file-" + f + ".txt"), "content " + d + "/" + f);
+            }
+        }
+        return dir;
+    }
+}
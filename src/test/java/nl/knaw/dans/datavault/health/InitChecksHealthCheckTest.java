@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.health;
+
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InitChecksHealthCheckTest {
+
+    @Test
+    public void should_be_healthy_and_report_initializing_while_checks_run() {
+        var result = new InitChecksHealthCheck(new ServiceReadiness()).execute();
+
+        assertThat(result.isHealthy()).isTrue();
+        assertThat(result.getMessage()).isEqualTo("initializing");
+        assertThat(result.getDetails()).containsEntry("details", "Init checks are running");
+    }
+
+    @Test
+    public void should_be_healthy_and_report_ready_when_checks_passed() {
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setReady();
+
+        var result = new InitChecksHealthCheck(serviceReadiness).execute();
+
+        assertThat(result.isHealthy()).isTrue();
+        assertThat(result.getMessage()).isEqualTo("ready");
+    }
+
+    @Test
+    public void should_be_unhealthy_with_failure_message_when_checks_failed() {
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setFailed("Init checks failed: boom");
+
+        var result = new InitChecksHealthCheck(serviceReadiness).execute();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).isEqualTo("Init checks failed: boom");
+    }
+}
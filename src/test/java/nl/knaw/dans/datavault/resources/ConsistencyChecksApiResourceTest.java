@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import nl.knaw.dans.datavault.api.ConsistencyCheckRequestDto;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+import nl.knaw.dans.datavault.db.ConsistencyCheckDao;
+import nl.knaw.dans.datavault.db.ConsistencyCheckShardDao;
+import nl.knaw.dans.datavault.db.FixityMismatchDao;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.ws.rs.core.Response;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class ConsistencyChecksApiResourceTest {
+
+    @Test
+    public void consistencyChecksPost_should_return_service_unavailable_while_init_checks_run() {
+        var consistencyCheckDao = Mockito.mock(ConsistencyCheckDao.class);
+        var resource = new ConsistencyChecksApiResource(consistencyCheckDao, new ServiceReadiness());
+
+        var response = resource.consistencyChecksPost(new ConsistencyCheckRequestDto());
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        assertEquals("Service is read-only: Init checks are running", response.getEntity());
+        verifyNoInteractions(consistencyCheckDao);
+    }
+
+    @Test
+    public void fixityChecksPost_should_return_service_unavailable_while_init_checks_run() {
+        var consistencyCheckDao = Mockito.mock(ConsistencyCheckDao.class);
+        var resource = new FixityChecksApiResource(consistencyCheckDao, Mockito.mock(ConsistencyCheckShardDao.class), Mockito.mock(FixityMismatchDao.class), new ServiceReadiness());
+
+        var response = resource.fixityChecksPost(null, null);
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        verifyNoInteractions(consistencyCheckDao);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import nl.knaw.dans.datavault.core.ImportJob;
+import nl.knaw.dans.datavault.db.ImportJobDao;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImportJobControlApiResourceTest {
+    private final Path testDir = Path.of("target/test/ImportJobControlApiResourceTest");
+    private Path inbox;
+    private ImportJobDao importJobDao;
+    private ImportJobControlApiResource resource;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        FileUtils.deleteDirectory(testDir.toFile());
+        inbox = testDir.resolve("inbox");
+        Files.createDirectories(inbox.resolve("batch1"));
+
+        importJobDao = Mockito.mock(ImportJobDao.class);
+        resource = new ImportJobControlApiResource(importJobDao, inbox);
+    }
+
+    @Test
+    public void importsIdActionPost_should_return_404_when_job_not_found() {
+        var id = UUID.randomUUID();
+
+        var response = resource.importsIdActionPost(id, "cancel");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+    }
+
+    @Test
+    public void importsIdActionPost_should_return_409_when_job_has_finished() {
+        var job = createJob("batch1", ImportJob.Status.SUCCESS, null);
+
+        var response = resource.importsIdActionPost(job.getId(), "cancel");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        verify(importJobDao, never()).update(any());
+    }
+
+    @Test
+    public void importsIdActionPost_should_request_cancel_of_running_job() {
+        var job = createJob("batch1", ImportJob.Status.RUNNING, null);
+
+        var response = resource.importsIdActionPost(job.getId(), "cancel");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.ACCEPTED.getStatusCode());
+        assertThat(job.getStopRequest()).isEqualTo(ImportJob.StopRequest.CANCEL);
+        verify(importJobDao).update(job);
+    }
+
+    @Test
+    public void importsIdActionPost_should_request_pause_of_running_job() {
+        var job = createJob("batch1", ImportJob.Status.RUNNING, null);
+
+        var response = resource.importsIdActionPost(job.getId(), "pause");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.ACCEPTED.getStatusCode());
+        assertThat(job.getStopRequest()).isEqualTo(ImportJob.StopRequest.PAUSE);
+        verify(importJobDao).update(job);
+    }
+
+    @Test
+    public void importsIdActionPost_should_not_pause_job_that_is_being_cancelled() {
+        var job = createJob("batch1", ImportJob.Status.RUNNING, ImportJob.StopRequest.CANCEL);
+
+        var response = resource.importsIdActionPost(job.getId(), "pause");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        assertThat(job.getStopRequest()).isEqualTo(ImportJob.StopRequest.CANCEL);
+        verify(importJobDao, never()).update(any());
+    }
+
+    @Test
+    public void importsIdActionPost_should_not_pause_import_archive() throws Exception {
+        Files.writeString(inbox.resolve("batch2.zip"), "not really a ZIP");
+        var job = createJob("batch2.zip", ImportJob.Status.RUNNING, null);
+
+        var response = resource.importsIdActionPost(job.getId(), "pause");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        assertThat(job.getStopRequest()).isNull();
+        verify(importJobDao, never()).update(any());
+    }
+
+    @Test
+    public void importsIdActionPost_should_resume_paused_job() {
+        var job = createJob("batch1", ImportJob.Status.PENDING, ImportJob.StopRequest.PAUSE);
+
+        var response = resource.importsIdActionPost(job.getId(), "resume");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(job.getStopRequest()).isNull();
+        verify(importJobDao).update(job);
+    }
+
+    @Test
+    public void importsIdActionPost_should_return_409_when_resuming_job_that_is_not_paused() {
+        var job = createJob("batch1", ImportJob.Status.RUNNING, null);
+
+        var response = resource.importsIdActionPost(job.getId(), "resume");
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        verify(importJobDao, never()).update(any());
+    }
+
+    private ImportJob createJob(String path, ImportJob.Status status, ImportJob.StopRequest stopRequest) {
+        var job = ImportJob.builder()
+            .id(UUID.randomUUID())
+            .path(path)
+            .status(status)
+            .stopRequest(stopRequest)
+            .created(OffsetDateTime.now())
+            .build();
+        when(importJobDao.get(job.getId())).thenReturn(job);
+        return job;
+    }
+}
@@ -21,9 +21,12 @@ import nl.knaw.dans.datavault.db.ImportJobDao;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,6 +36,8 @@ import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ImportsApiResourceTest {
@@ -190,4 +195,42 @@ public class ImportsApiResourceTest {
 
         assertThat(response.getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
     }
+
+    @Test
+    public void importsPost_should_set_priority_from_query_parameter() {
+        resource.setUriInfo(uriInfoWithPriority("5"));
+        var cmd = new ImportCommandDto();
+        cmd.setPath(inbox.resolve("my-batch").toString());
+        cmd.setSingleObject(false);
+        when(importJobDao.create(any(ImportJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        var response = resource.importsPost(cmd);
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        var created = ArgumentCaptor.forClass(ImportJob.class);
+        verify(importJobDao).create(created.capture());
+        assertThat(created.getValue().getPriority()).isEqualTo(5);
+    }
+
+    @Test
+    public void importsPost_should_return_bad_request_when_priority_is_not_an_integer() {
+        resource.setUriInfo(uriInfoWithPriority("high"));
+        var cmd = new ImportCommandDto();
+        cmd.setPath(inbox.resolve("my-batch").toString());
+        cmd.setSingleObject(false);
+
+        var response = resource.importsPost(cmd);
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+        assertThat(response.getEntity()).isEqualTo("priority must be an integer");
+        verify(importJobDao, never()).create(any());
+    }
+
+    private UriInfo uriInfoWithPriority(String priority) {
+        var queryParameters = new MultivaluedHashMap<String, String>();
+        queryParameters.putSingle("priority", priority);
+        var uriInfo = Mockito.mock(UriInfo.class);
+        when(uriInfo.getQueryParameters()).thenReturn(queryParameters);
+        return uriInfo;
+    }
 }
@@ -20,18 +20,38 @@ import nl.knaw.dans.datavault.api.CopyFileIntoRequestDto;
 import nl.knaw.dans.datavault.api.CopyFileOutOfRequestDto;
 import nl.knaw.dans.datavault.config.ItemstoreConfig;
 import nl.knaw.dans.datavault.config.ItemstoreEndpointsConfig;
+import nl.knaw.dans.datavault.core.DirectoryCopier;
+import nl.knaw.dans.datavault.core.Operation;
+import nl.knaw.dans.datavault.core.OperationRegistry;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
 import nl.knaw.dans.layerstore.ItemStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 
 public class ItemstoreApiResourceTest {
     private ItemStore layeredItemStore;
     private ItemstoreConfig itemstoreConfig;
+    private ExecutorService executorService;
+    private OperationRegistry operationRegistry;
     private ItemstoreApiResource resource;
 
     @BeforeEach
@@ -43,8 +63,11 @@ public class ItemstoreApiResourceTest {
         endpoints.setCopyFileOutOf(true);
         endpoints.setCopyFileInto(true);
         itemstoreConfig.setEnableEndpoints(endpoints);
-        itemstoreConfig.setWorkDir("target/test/ItemstoreApiResourceTest/work");
-        resource = new ItemstoreApiResource(layeredItemStore, itemstoreConfig);
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setReady();
+        executorService = Executors.newSingleThreadExecutor();
+        operationRegistry = new OperationRegistry(executorService, Duration.ofMinutes(1));
+        resource = new ItemstoreApiResource(layeredItemStore, itemstoreConfig, serviceReadiness, operationRegistry, Mockito.mock(DirectoryCopier.class));
     }
 
     @Test
@@ -82,4 +105,142 @@ public class ItemstoreApiResourceTest {
         assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
         assertEquals("Destination path must be absolute", response.getEntity());
     }
+
+    @Test
+    public void itemstoreCopyFileIntoPost_should_accept_copy_and_report_its_outcome_as_operation() throws Exception {
+        var source = Path.of("target/test/ItemstoreApiResourceTest/source.txt").toAbsolutePath();
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, "content");
+        var request = new CopyFileIntoRequestDto();
+        request.setSource(source.toString());
+        request.setDestination("/dest.txt");
+
+        var response = resource.itemstoreCopyFileIntoPost(request);
+
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+        var status = (OperationsApiResource.OperationStatus) response.getEntity();
+        assertEquals("operations/" + status.id(), response.getLocation().toString());
+        awaitOperations();
+        assertEquals(Operation.Status.SUCCESS, operationRegistry.get(status.id()).orElseThrow().getStatus());
+        Mockito.verify(layeredItemStore).writeFile(eq("dest.txt"), any(InputStream.class));
+    }
+
+    @Test
+    public void itemstoreCopyFileOutOfPost_should_report_failure_in_operation() throws Exception {
+        Mockito.when(layeredItemStore.readFile("missing.txt")).thenThrow(new IllegalArgumentException("No such file: missing.txt"));
+        var request = new CopyFileOutOfRequestDto();
+        request.setSource("missing.txt");
+        request.setDestination(Path.of("target/test/ItemstoreApiResourceTest", UUID.randomUUID().toString()).toAbsolutePath().toString());
+
+        var response = resource.itemstoreCopyFileOutOfPost(request);
+
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+        var id = ((OperationsApiResource.OperationStatus) response.getEntity()).id();
+        awaitOperations();
+        var operation = operationRegistry.get(id).orElseThrow();
+        assertEquals(Operation.Status.FAILED, operation.getStatus());
+        assertTrue(operation.getMessage().contains("No such file: missing.txt"));
+    }
+
+    @Test
+    public void itemstoreCopyFileIntoPost_should_return_service_unavailable_while_init_checks_run() {
+        var resource = new ItemstoreApiResource(layeredItemStore, itemstoreConfig, new ServiceReadiness(), operationRegistry, Mockito.mock(DirectoryCopier.class));
+        var request = new CopyFileIntoRequestDto();
+        request.setSource("/some/file.txt");
+        request.setDestination("dest.txt");
+
+        var response = resource.itemstoreCopyFileIntoPost(request);
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        assertEquals("Service is read-only: Init checks are running", response.getEntity());
+        Mockito.verifyNoInteractions(layeredItemStore);
+    }
+
+    @Test
+    public void itemstoreCopyFileIntoPost_should_respond_with_outcome_when_copy_finishes_within_completion_wait() throws Exception {
+        var source = Path.of("target/test/ItemstoreApiResourceTest/source.txt").toAbsolutePath();
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, "content");
+        var waitingResource = createResource(new OperationRegistry(executorService, Duration.ofMinutes(1), Duration.ofSeconds(10)));
+        var request = new CopyFileIntoRequestDto();
+        request.setSource(source.toString());
+        request.setDestination("/dest.txt");
+
+        var response = waitingResource.itemstoreCopyFileIntoPost(request);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Mockito.verify(layeredItemStore).writeFile(eq("dest.txt"), any(InputStream.class));
+    }
+
+    @Test
+    public void itemstoreCopyFileIntoPost_should_return_conflict_when_copy_fails_with_IllegalStateException_within_completion_wait() throws Exception {
+        var source = Path.of("target/test/ItemstoreApiResourceTest/source.txt").toAbsolutePath();
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, "content");
+        Mockito.doThrow(new IllegalStateException("Layer is closed")).when(layeredItemStore).writeFile(eq("dest.txt"), any(InputStream.class));
+        var waitingResource = createResource(new OperationRegistry(executorService, Duration.ofMinutes(1), Duration.ofSeconds(10)));
+        var request = new CopyFileIntoRequestDto();
+        request.setSource(source.toString());
+        request.setDestination("/dest.txt");
+
+        var response = waitingResource.itemstoreCopyFileIntoPost(request);
+
+        assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void itemstoreCopyFileOutOfPost_should_return_bad_request_when_copy_fails_with_IllegalArgumentException_within_completion_wait() throws Exception {
+        Mockito.when(layeredItemStore.readFile("missing.txt")).thenThrow(new IllegalArgumentException("No such file: missing.txt"));
+        var waitingResource = createResource(new OperationRegistry(executorService, Duration.ofMinutes(1), Duration.ofSeconds(10)));
+        var request = new CopyFileOutOfRequestDto();
+        request.setSource("missing.txt");
+        request.setDestination(Path.of("target/test/ItemstoreApiResourceTest", UUID.randomUUID().toString()).toAbsolutePath().toString());
+
+        var response = waitingResource.itemstoreCopyFileOutOfPost(request);
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        assertEquals("No such file: missing.txt", response.getEntity());
+    }
+
+    @Test
+    public void itemstoreCopyFileIntoPost_should_return_service_unavailable_when_operation_queue_is_full() throws Exception {
+        var blocked = new CountDownLatch(1);
+        var fullExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        try {
+            fullExecutor.execute(() -> awaitQuietly(blocked));
+            fullExecutor.execute(() -> awaitQuietly(blocked));
+            var request = new CopyFileIntoRequestDto();
+            request.setSource("/some/file.txt");
+            request.setDestination("dest.txt");
+
+            var response = createResource(new OperationRegistry(fullExecutor, Duration.ofMinutes(1))).itemstoreCopyFileIntoPost(request);
+
+            assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+            assertEquals("No more operations accepted", response.getEntity());
+        }
+        finally {
+            blocked.countDown();
+            fullExecutor.shutdown();
+        }
+    }
+
+    private ItemstoreApiResource createResource(OperationRegistry registry) {
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setReady();
+        return new ItemstoreApiResource(layeredItemStore, itemstoreConfig, serviceReadiness, registry, Mockito.mock(DirectoryCopier.class));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitOperations() throws InterruptedException {
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavault.resources;
+
+import nl.knaw.dans.datavault.api.LayerStatusDto;
+import nl.knaw.dans.datavault.core.LayerOperations;
+import nl.knaw.dans.datavault.core.OperationRegistry;
+import nl.knaw.dans.datavault.core.ServiceReadiness;
+import nl.knaw.dans.layerstore.LayeredItemStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class LayersApiResourceTest {
+    private LayeredItemStore layeredItemStore;
+    private LayerOperations layerOperations;
+    private OperationRegistry operationRegistry;
+    private LayersApiResource resource;
+
+    @BeforeEach
+    public void setUp() {
+        layeredItemStore = Mockito.mock(LayeredItemStore.class);
+        layerOperations = Mockito.mock(LayerOperations.class);
+        operationRegistry = Mockito.mock(OperationRegistry.class);
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setFailed("Init checks failed: boom");
+        resource = new LayersApiResource(layeredItemStore, layerOperations, operationRegistry, serviceReadiness);
+    }
+
+    @Test
+    public void layer_changes_should_return_service_unavailable_when_service_is_not_ready() {
+        assertServiceUnavailable(resource.layersPost());
+        assertServiceUnavailable(resource.layersIdClosePost(1L));
+        assertServiceUnavailable(resource.layersIdArchivePost(1L));
+        assertServiceUnavailable(resource.layersIdRearchivePost(1L));
+        assertServiceUnavailable(resource.layersIdReopenPost(1L));
+
+        verifyNoInteractions(layeredItemStore, layerOperations, operationRegistry);
+    }
+
+    @Test
+    public void layersPost_should_return_created_with_new_layer_when_it_is_created_within_completion_wait() throws Exception {
+        Mockito.when(layerOperations.newTopLayer()).thenReturn(42L);
+        var executorService = Executors.newSingleThreadExecutor();
+        try {
+            var readyResource = createReadyResource(new OperationRegistry(executorService, Duration.ofMinutes(1), Duration.ofSeconds(10)));
+
+            var response = readyResource.layersPost();
+
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            assertEquals(42L, ((LayerStatusDto) response.getEntity()).getLayerId());
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void layersIdClosePost_should_return_conflict_when_layer_cannot_be_closed() throws Exception {
+        Mockito.doThrow(new IllegalStateException("Layer 1 is not the top layer")).when(layerOperations).closeLayer(1L);
+        var executorService = Executors.newSingleThreadExecutor();
+        try {
+            var readyResource = createReadyResource(new OperationRegistry(executorService, Duration.ofMinutes(1), Duration.ofSeconds(10)));
+
+            var response = readyResource.layersIdClosePost(1L);
+
+            assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void layersIdArchivePost_should_archive_layer_in_an_operation() throws Exception {
+        var executorService = Executors.newSingleThreadExecutor();
+        try {
+            var readyResource = createReadyResource(new OperationRegistry(executorService, Duration.ofMinutes(1), Duration.ofSeconds(10)));
+
+            var response = readyResource.layersIdArchivePost(1L);
+
+            assertEquals(Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+            Mockito.verify(layerOperations).archiveLayer(1L, false);
+            verifyNoInteractions(layeredItemStore);
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    private LayersApiResource createReadyResource(OperationRegistry registry) {
+        var serviceReadiness = new ServiceReadiness();
+        serviceReadiness.setReady();
+        return new LayersApiResource(layeredItemStore, layerOperations, registry, serviceReadiness);
+    }
+
+    private void assertServiceUnavailable(Response response) {
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        assertEquals("Service is read-only: Init checks failed: boom", response.getEntity());
+    }
+}